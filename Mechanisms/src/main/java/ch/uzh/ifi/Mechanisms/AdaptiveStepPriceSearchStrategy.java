@@ -0,0 +1,103 @@
+package ch.uzh.ifi.Mechanisms;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The class implements the tatonement with an adaptive step: price += excessDemand * step. A step is accepted only if it
+ * does not increase the absolute excess demand; then the step grows. Otherwise the step is rejected and shrunk (backtracking).
+ * Thus, the step does not need to be tuned for every instance of the market. The search stops once the absolute excess
+ * demand is below the tolerance level or the price change becomes smaller than the price tolerance.
+ * @author Dmitry Moor
+ *
+ */
+public class AdaptiveStepPriceSearchStrategy implements IPriceSearchStrategy
+{
+
+	private static final Logger _logger = LogManager.getLogger(AdaptiveStepPriceSearchStrategy.class);
+
+	/**
+	 * Constructor.
+	 */
+	public AdaptiveStepPriceSearchStrategy()
+	{
+		this(1e-7, 1e-9, 0.01, 1000);
+	}
+
+	/**
+	 * Constructor.
+	 * @param tolerance the tolerance level for the excess demand
+	 * @param priceTolerance the smallest price change at which the search continues
+	 * @param initialStep the initial step of the price update
+	 * @param maxIter the maximal number of evaluations of the excess demand
+	 */
+	public AdaptiveStepPriceSearchStrategy(double tolerance, double priceTolerance, double initialStep, int maxIter)
+	{
+		if( initialStep <= 0 ) throw new RuntimeException("The initial step should be positive: " + initialStep);
+		_tolerance = tolerance;
+		_priceTolerance = priceTolerance;
+		_initialStep = initialStep;
+		_maxIter = maxIter;
+		_numberOfIterations = 0;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ch.uzh.ifi.Mechanisms.IPriceSearchStrategy#searchPrice(ch.uzh.ifi.Mechanisms.IExcessDemandFunction, double)
+	 */
+	@Override
+	public double searchPrice(IExcessDemandFunction excessDemand, double startPrice) throws Exception
+	{
+		double price = Math.max(0., startPrice);
+		double step = _initialStep;
+		double z = excessDemand.computeExcessDemand(price);
+		_numberOfIterations = 1;
+
+		while( Math.abs(z) >= _tolerance )
+		{
+			if( price == 0. && z < 0 )									//The excess demand is negative at any price
+				break;
+			if( _numberOfIterations >= _maxIter )
+			{
+				_logger.warn("Reached MAX_ITER.");
+				break;
+			}
+
+			double newPrice = Math.max(0., price + z * step);
+			if( Math.abs(newPrice - price) < _priceTolerance )
+				break;
+
+			double newZ = excessDemand.computeExcessDemand(newPrice);
+			_numberOfIterations += 1;
+			if( Math.abs(newZ) <= Math.abs(z) )
+			{
+				price = newPrice;
+				z = newZ;
+				step *= _GROWTH_FACTOR;
+			}
+			else
+				step *= _BACKTRACKING_FACTOR;
+		}
+
+		_logger.debug("Found price: " + price + "; diff=" + Math.abs(z) + "; iterations=" + _numberOfIterations);
+		return price;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ch.uzh.ifi.Mechanisms.IPriceSearchStrategy#getNumberOfIterations()
+	 */
+	@Override
+	public int getNumberOfIterations()
+	{
+		return _numberOfIterations;
+	}
+
+	private static final double _GROWTH_FACTOR = 2.;				//The factor of the step after an accepted update
+	private static final double _BACKTRACKING_FACTOR = 0.5;			//The factor of the step after a rejected update
+	private double _tolerance;										//The tolerance level for the excess demand
+	private double _priceTolerance;									//The smallest price change at which the search continues
+	private double _initialStep;									//The initial step of the price update
+	private int _maxIter;											//The maximal number of evaluations of the excess demand
+	private int _numberOfIterations;								//The number of evaluations of the last search
+}
@@ -16,7 +16,6 @@ import org.apache.logging.log4j.Logger;
 import ch.uzh.ifi.MechanismDesignPrimitives.Allocation;
 import ch.uzh.ifi.MechanismDesignPrimitives.AllocationEC;
 import ch.uzh.ifi.MechanismDesignPrimitives.AtomicBid;
-import ch.uzh.ifi.MechanismDesignPrimitives.JointProbabilityMass;
 import ch.uzh.ifi.MechanismDesignPrimitives.Type;
 
 public class AllocationRuleNonDiscriminatingBidders extends AllocationRuleProbabilistic
@@ -28,15 +27,16 @@ public class AllocationRuleNonDiscriminatingBidders extends AllocationRuleProbab
 	 * Constructor.
 	 * @param bids submitted bids of bidders
 	 * @param costs per-good costs
-	 * @param jpmf joint probability mass function
+	 * @param availabilities memoized marginal availabilities of the joint probability mass function
 	 */
-	AllocationRuleNonDiscriminatingBidders(List<Type> bids, List<Double> costs, JointProbabilityMass jpmf, int numberOfGoods, List<int[][]> binaryBids)
+	AllocationRuleNonDiscriminatingBidders(List<Type> bids, List<Double> costs, MarginalAvailabilityCache availabilities, int numberOfGoods, BinaryBids binaryBids)
 	{
-		super(bids, costs, jpmf);
+		super(bids, costs, availabilities);
 		_numberOfBidders = _bids.size();
 		_numberOfGoods = numberOfGoods;
 		_binaryBids = binaryBids;
 		_cplexSolver = null;
+		_wdpSolver = null;
 	}
 	
 	/**
@@ -48,6 +48,15 @@ public class AllocationRuleNonDiscriminatingBidders extends AllocationRuleProbab
 		_cplexSolver = solver;
 	}
 	
+	/**
+	 * The method sets up a solver for the WDP which is used instead of CPLEX.
+	 * @param solver WDP solver
+	 */
+	public void setWDPSolver(IWinnerDeterminationSolver solver)
+	{
+		_wdpSolver = solver;
+	}
+	
 	/**
 	 * (non-Javadoc)
 	 * @throws IloException 
@@ -57,6 +66,84 @@ public class AllocationRuleNonDiscriminatingBidders extends AllocationRuleProbab
 	public void computeAllocation(List<Integer> allocatedGoods, List<Double> realizedAvailabilities) throws IloException 
 	{
 		_logger.debug("-> computeAllocation(allocatedGoods="+ (allocatedGoods!=null?allocatedGoods.toString():"") + ", realizedAvailabilities="+ (realizedAvailabilities!=null?realizedAvailabilities.toString():"") + ")");
+		int[] allocatedAtoms = _wdpSolver != null ? solveWDP(allocatedGoods, realizedAvailabilities) : solveWDPCplex(allocatedGoods, realizedAvailabilities);
+		
+		_allocation = new AllocationEC();
+		
+		List<Integer> allocatedBidders    = new ArrayList<Integer>();
+		List<Integer> allocatedBundles    = new ArrayList<Integer>();
+		List<Double> buyersExpectedValues = new ArrayList<Double>();
+		List<Double> realizedRandomVars   = new ArrayList<Double>();
+		List<Double> allocatedBiddersValues = new ArrayList<Double>();
+		List<Double> realizedRVsPerGood = new ArrayList<Double>();
+		
+		double sellerExpectedCost = 0.;
+		double[] realizedSample = _availabilities.getSample();
+		for(Double rRV : realizedSample)
+			realizedRVsPerGood.add(rRV);
+		
+		for(int i = 0; i < _numberOfBidders; ++i)
+		{
+			int j = allocatedAtoms[i];
+			if( j >= 0 )																			//if allocated
+			{
+				AtomicBid allocatedAtom = _bids.get(i).getAtom(j);
+				double value = allocatedAtom.getValue();
+				double cost = allocatedAtom.computeCost(_costs);
+				double expectedMarginalAvailability = computeExpectedMarginalAvailability( allocatedAtom, allocatedGoods, realizedAvailabilities );
+				sellerExpectedCost += addAllocatedAgent(allocatedBidders, allocatedBundles, buyersExpectedValues, realizedRandomVars,
+									allocatedBiddersValues, realizedSample, allocatedAtom, value, cost, expectedMarginalAvailability, j);
+			}
+		}
+		
+		if(allocatedBidders.size() > 0)
+			try
+			{
+				_allocation.addAllocatedAgents( 0, allocatedBidders, allocatedBundles, sellerExpectedCost, buyersExpectedValues, false);
+				_allocation.addRealizedRVs(realizedRandomVars);
+				_allocation.addRealizedValuesPerGood(realizedRVsPerGood);
+				_allocation.setAllocatedBiddersValues(allocatedBiddersValues);
+			}
+			catch (Exception e) 
+			{
+				e.printStackTrace();
+			}
+		_logger.debug("<- computeAllocation(...)");
+	}
+	
+	/**
+	 * The method solves the WDP using the non-CPLEX solver.
+	 * @param allocatedGoods a list of previously allocated goods (null if no allocation happened so far)
+	 * @param realizedAvailabilities realizations of availabilities of allocated goods (null if no allocation happened so far)
+	 * @return an array which i-th element is the index of the atom allocated to the i-th bidder or -1
+	 */
+	private int[] solveWDP(List<Integer> allocatedGoods, List<Double> realizedAvailabilities)
+	{
+		double[][] weights = computeWeights(allocatedGoods, realizedAvailabilities);
+		return _wdpSolver.solve(weights, _binaryBids);
+	}
+	
+	/**
+	 * The method computes coefficients of the WDP objective, i.e., expected surpluses of all atoms (see
+	 * MarginalAvailabilityCache.getExpectedSurpluses()).
+	 * @param allocatedGoods a list of previously allocated goods (null if no allocation happened so far)
+	 * @param realizedAvailabilities realizations of availabilities of allocated goods (null if no allocation happened so far)
+	 * @return an array which [i][j] element is the expected surplus of the j-th atom of the i-th bidder
+	 */
+	private double[][] computeWeights(List<Integer> allocatedGoods, List<Double> realizedAvailabilities)
+	{
+		return _availabilities.getExpectedSurpluses(_bids, _costs, allocatedGoods, realizedAvailabilities);
+	}
+	
+	/**
+	 * The method solves the WDP using CPLEX.
+	 * @param allocatedGoods a list of previously allocated goods (null if no allocation happened so far)
+	 * @param realizedAvailabilities realizations of availabilities of allocated goods (null if no allocation happened so far)
+	 * @return an array which i-th element is the index of the atom allocated to the i-th bidder or -1
+	 * @throws IloException if CPLEX fails
+	 */
+	private int[] solveWDPCplex(List<Integer> allocatedGoods, List<Double> realizedAvailabilities) throws IloException
+	{
 		_cplexSolver.clearModel();
 		_cplexSolver.setOut(null);
 		List<List<IloNumVar> > variables = new ArrayList<List<IloNumVar> >();// i-th element of the list contains the list of variables 
@@ -64,6 +151,7 @@ public class AllocationRuleNonDiscriminatingBidders extends AllocationRuleProbab
 		//Create the optimization variables and set the objective function:
 		IloNumExpr objective = _cplexSolver.constant(0.);
 		IloLPMatrix lp = _cplexSolver.addLPMatrix();
+		double[][] weights = computeWeights(allocatedGoods, realizedAvailabilities);
 				
 		for(int i = 0; i < _numberOfBidders; ++i)
 		{
@@ -74,11 +162,7 @@ public class AllocationRuleNonDiscriminatingBidders extends AllocationRuleProbab
 				IloNumVar x = _cplexSolver.numVar(0, 1, IloNumVarType.Int, "x" + i + "_" + j);
 				varI.add(x);
 				
-				double value = bid.getAtom(j).getValue();
-				double cost  = bid.getAtom(j).computeCost(_costs);
-				double expectedMarginalAvailability = computeExpectedMarginalAvailability( bid.getAtom(j), allocatedGoods, realizedAvailabilities );
-				
-				IloNumExpr term = _cplexSolver.prod((value - cost) * expectedMarginalAvailability, x);
+				IloNumExpr term = _cplexSolver.prod(weights[i][j], x);
 				objective = _cplexSolver.sum(objective, term);				
 			}
 			variables.add(varI);
@@ -91,17 +175,12 @@ public class AllocationRuleNonDiscriminatingBidders extends AllocationRuleProbab
 		{
 			IloNumExpr constraint = _cplexSolver.constant(0);
 			
-			for(int j = 0; j < _numberOfBidders; ++j)
+			int[] bidders = _binaryBids.getBiddersOfItem(i);				//Only atoms containing the i-th item ( itemId = i+1)
+			int[] atoms = _binaryBids.getAtomsOfItem(i);
+			for(int k = 0; k < bidders.length; ++k)
 			{
-				int[][] binaryBid = _binaryBids.get(j);						//Binary bid of agent j
-				List<IloNumVar> varI = (List<IloNumVar>)(variables.get(j));
-
-				for( int q = 0; q < varI.size(); ++q )			//Find an atom which contains the i-th item ( itemId = i+1)
-					if( binaryBid[q][i] > 0)
-					{
-						IloNumExpr term = _cplexSolver.prod(binaryBid[q][i], varI.get(q));
-						constraint = _cplexSolver.sum(constraint, term);
-					}
+				IloNumExpr term = _cplexSolver.prod(1., variables.get(bidders[k]).get(atoms[k]));
+				constraint = _cplexSolver.sum(constraint, term);
 			}
 			lp.addRow( _cplexSolver.ge(1.0, constraint, "Item_"+i) );
 		}
@@ -135,54 +214,23 @@ public class AllocationRuleNonDiscriminatingBidders extends AllocationRuleProbab
 			e1.printStackTrace();
 		}
 
-		_allocation = new AllocationEC();
-		
-		List<Integer> allocatedBidders    = new ArrayList<Integer>();
-		List<Integer> allocatedBundles    = new ArrayList<Integer>();
-		List<Double> buyersExpectedValues = new ArrayList<Double>();
-		List<Double> realizedRandomVars   = new ArrayList<Double>();
-		List<Double> allocatedBiddersValues = new ArrayList<Double>();
-		List<Double> realizedRVsPerGood = new ArrayList<Double>();
-		
-		double sellerExpectedCost = 0.;
-		double[] realizedSample = _jpmf.getSample();
-		for(Double rRV : realizedSample)
-			realizedRVsPerGood.add(rRV);
-		
+		int[] allocatedAtoms = new int[_numberOfBidders];
 		for(int i = 0; i < _numberOfBidders; ++i)
 		{
+			allocatedAtoms[i] = -1;
 			for(int j = 0; j < _bids.get(i).getNumberOfAtoms(); ++j)
-			{
 				if( Math.abs( _cplexSolver.getValue(variables.get(i).get(j)) - 1.0 ) < 1e-6 )			//if allocated
 				{
-					AtomicBid allocatedAtom = _bids.get(i).getAtom(j);
-					double value = allocatedAtom.getValue();
-					double cost = allocatedAtom.computeCost(_costs);
-					double expectedMarginalAvailability = computeExpectedMarginalAvailability( allocatedAtom, allocatedGoods, realizedAvailabilities );
-					sellerExpectedCost += addAllocatedAgent(allocatedBidders, allocatedBundles, buyersExpectedValues, realizedRandomVars,
-										allocatedBiddersValues, realizedSample, allocatedAtom, value, cost, expectedMarginalAvailability, j);
+					allocatedAtoms[i] = j;
 					break;
 				}
-			}
 		}
-		
-		if(allocatedBidders.size() > 0)
-			try
-			{
-				_allocation.addAllocatedAgents( 0, allocatedBidders, allocatedBundles, sellerExpectedCost, buyersExpectedValues, false);
-				_allocation.addRealizedRVs(realizedRandomVars);
-				_allocation.addRealizedValuesPerGood(realizedRVsPerGood);
-				_allocation.setAllocatedBiddersValues(allocatedBiddersValues);
-			}
-			catch (Exception e) 
-			{
-				e.printStackTrace();
-			}
-		_logger.debug("<- computeAllocation(...)");
+		return allocatedAtoms;
 	}
 
 	private int _numberOfBidders;					//Number of bidders
 	private int _numberOfGoods;						//Number of goods
-	private List<int[][]> _binaryBids;				//Bids converted into a binary matrix format	
+	private BinaryBids _binaryBids;					//Bids converted into a binary (bitset) format
 	private IloCplex _cplexSolver;					//CPLEX solver
+	private IWinnerDeterminationSolver _wdpSolver;	//A non-CPLEX solver for the WDP (CPLEX is used if null)
 }
@@ -23,13 +23,14 @@ public abstract class AllocationRuleProbabilistic implements IAllocationRule
 	 * Constructor.
 	 * @param bids submitted bids of bidders
 	 * @param costs per-good costs
-	 * @param jpmf joint probability mass function
+	 * @param availabilities memoized marginal availabilities of the joint probability mass function
 	 */
-	AllocationRuleProbabilistic(List<Type> bids, List<Double> costs, JointProbabilityMass jpmf)
+	AllocationRuleProbabilistic(List<Type> bids, List<Double> costs, MarginalAvailabilityCache availabilities)
 	{
 		_bids = bids;
 		_costs = costs;
-		_jpmf = jpmf;
+		_jpmf = availabilities.getJPMF();
+		_availabilities = availabilities;
 	}
 	
 	@Override
@@ -59,7 +60,7 @@ public abstract class AllocationRuleProbabilistic implements IAllocationRule
 	protected double computeExpectedMarginalAvailability(AtomicBid atom, List<Integer> allocatedGoods, List<Double> realizedAvailabilities)
 	{
 		_logger.debug("-> computeExpectedMarginalAvailability(atom: "+atom.toString()+ ", " + (allocatedGoods != null ? allocatedGoods.toString(): "")+ ", " + (realizedAvailabilities != null ? realizedAvailabilities.toString():"")+ ")");
-		double res =  _jpmf.getMarginalProbability( atom.getInterestingSet(), allocatedGoods, realizedAvailabilities);
+		double res =  _availabilities.getMarginalProbability( atom.getInterestingSet(), allocatedGoods, realizedAvailabilities);
 		_logger.debug("<- computeExpectedMarginalAvailability() = " + res);
 		return res;
 	}
@@ -117,5 +118,6 @@ public abstract class AllocationRuleProbabilistic implements IAllocationRule
 	protected List<Type> _bids;						//Types of bidders
 	protected List<Double> _costs;					//Per-good costs
 	protected JointProbabilityMass _jpmf;			//Joint probability mass function
+	protected MarginalAvailabilityCache _availabilities;	//Memoized marginal availabilities of bundles
 	protected AllocationEC _allocation;				//An allocation object
 }
@@ -0,0 +1,245 @@
+package ch.uzh.ifi.Mechanisms;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import ch.uzh.ifi.MechanismDesignPrimitives.Allocation;
+import ch.uzh.ifi.MechanismDesignPrimitives.Type;
+
+/**
+ * The class solves a batch of independent auctions (e.g., sample games of a benchmark or of a BNE estimation loop)
+ * concurrently. Auctions are produced by a mechanism factory from a stream of type profiles and seeds and are solved
+ * by a fixed number of workers. Every worker uses its own CPLEX solver obtained from a pool of solver contexts
+ * (see SolverContextPool.java). Results are delivered in the order of type profiles.
+ *
+ * Every auction is produced from its own seed on the calling thread. Still, results do not depend on the number of
+ * workers only if auctions derive all their random choices from their seeds. In particular, realizations of
+ * availabilities should not be drawn from a JPMF shared by concurrent auctions, e.g., every auction should use its own
+ * cache of marginal availabilities with an index of samples and a seed derived from the seed of the auction
+ * (see MarginalAvailabilityCache.setSeed()).
+ */
+public class AuctionBatchExecutor
+{
+
+	private static final Logger _logger = LogManager.getLogger(AuctionBatchExecutor.class);
+
+	/**
+	 * The class contains the outcome of one auction of the batch.
+	 */
+	public static class AuctionResult
+	{
+		/**
+		 * Constructor.
+		 * @param index the position of the auction in the batch
+		 * @param seed the seed used to produce the auction
+		 */
+		public AuctionResult(int index, long seed)
+		{
+			_index = index;
+			_seed = seed;
+			_allocation = null;
+			_payments = null;
+			_paymentExceptionMessage = null;
+			_error = null;
+		}
+
+		/**
+		 * The method returns the position of the auction in the batch.
+		 * @return the index of the auction
+		 */
+		public int getIndex()
+		{
+			return _index;
+		}
+
+		/**
+		 * The method returns the seed used to produce the auction.
+		 * @return the seed
+		 */
+		public long getSeed()
+		{
+			return _seed;
+		}
+
+		/**
+		 * The method returns the allocation of the auction.
+		 * @return the allocation or null if the auction failed before the WDP was solved
+		 */
+		public Allocation getAllocation()
+		{
+			return _allocation;
+		}
+
+		/**
+		 * The method returns payments of allocated bidders.
+		 * @return payments or null if payments were not computed (e.g., if the core was empty)
+		 */
+		public double[] getPayments()
+		{
+			return _payments;
+		}
+
+		/**
+		 * The method returns the message of the payment exception thrown by the auction, i.e., "Empty Core" or "VCG is in the Core".
+		 * @return the message of the payment exception or null if no payment exception was thrown
+		 */
+		public String getPaymentExceptionMessage()
+		{
+			return _paymentExceptionMessage;
+		}
+
+		/**
+		 * The method checks if the core of the auction was empty.
+		 * @return true if the auction threw the "Empty Core" exception
+		 */
+		public boolean isEmptyCore()
+		{
+			return "Empty Core".equals(_paymentExceptionMessage);
+		}
+
+		/**
+		 * The method checks if VCG payments were in the core.
+		 * @return true if the auction threw the "VCG is in the Core" exception
+		 */
+		public boolean isVCGInCore()
+		{
+			return "VCG is in the Core".equals(_paymentExceptionMessage);
+		}
+
+		/**
+		 * The method returns an exception (other than PaymentException) thrown by the auction.
+		 * @return the exception or null if the auction was solved
+		 */
+		public Exception getError()
+		{
+			return _error;
+		}
+
+		private int _index;										//The position of the auction in the batch
+		private long _seed;										//The seed used to produce the auction
+		private Allocation _allocation;							//The allocation of the auction
+		private double[] _payments;								//Payments of allocated bidders
+		private String _paymentExceptionMessage;				//The message of the payment exception (null if none)
+		private Exception _error;								//Any other exception thrown by the auction (null if none)
+	}
+
+	/**
+	 * Constructor.
+	 * @param factory a factory producing auctions of the batch; the factory must support solver context pools
+	 * @param numberOfThreads the number of workers
+	 */
+	public AuctionBatchExecutor(IMechanismFactory factory, int numberOfThreads)
+	{
+		if( numberOfThreads < 1 ) throw new RuntimeException("The number of threads should be positive: " + numberOfThreads);
+		_factory = factory;
+		_numberOfThreads = numberOfThreads;
+		_maxNumberOfPendingAuctions = 4 * numberOfThreads;
+		_solverContextPool = new SolverContextPool(numberOfThreads);
+		_factory.setSolverContextPool(_solverContextPool);
+	}
+
+	/**
+	 * The method solves all auctions of the batch and passes results to the consumer in the order of type profiles.
+	 * At most a fixed number of auctions is produced in advance, so that long streams of type profiles can be processed.
+	 * @param typeProfiles a stream of type profiles (one profile per auction)
+	 * @param seeds a stream of seeds (one seed per auction)
+	 * @param consumer a consumer of results
+	 * @throws InterruptedException if the calling thread is interrupted while waiting for results
+	 */
+	public void run(Iterator<List<Type>> typeProfiles, Iterator<Long> seeds, Consumer<AuctionResult> consumer) throws InterruptedException
+	{
+		_logger.debug("-> run(...)");
+		OrderedTaskExecutor<AuctionResult> executor = new OrderedTaskExecutor<AuctionResult>(_numberOfThreads, _maxNumberOfPendingAuctions);
+		int index = 0;
+		try
+		{
+			while( typeProfiles.hasNext() )
+			{
+				if( !seeds.hasNext() ) throw new RuntimeException("The number of seeds is smaller than the number of type profiles.");
+				final AuctionResult result = new AuctionResult(index++, seeds.next());
+				final Auction auction = _factory.produceMechanism(typeProfiles.next(), result.getSeed());
+				executor.submit( () -> solve(auction, result) );
+
+				if( executor.isFull() )
+					consumer.accept( executor.take() );
+			}
+
+			while( !executor.isEmpty() )
+				consumer.accept( executor.take() );
+		}
+		finally
+		{
+			executor.close();
+		}
+		_logger.debug("<- run(...): " + index + " auctions");
+	}
+
+	/**
+	 * The method solves all auctions of the batch.
+	 * @param typeProfiles type profiles (one profile per auction)
+	 * @param seeds seeds (one seed per auction)
+	 * @return results in the order of type profiles
+	 * @throws InterruptedException if the calling thread is interrupted while waiting for results
+	 */
+	public List<AuctionResult> run(List<List<Type>> typeProfiles, List<Long> seeds) throws InterruptedException
+	{
+		if( typeProfiles.size() != seeds.size() ) throw new RuntimeException("The number of seeds should be equal to the number of type profiles.");
+
+		List<AuctionResult> results = new ArrayList<AuctionResult>(typeProfiles.size());
+		run(typeProfiles.iterator(), seeds.iterator(), results::add);
+		return results;
+	}
+
+	/**
+	 * The method terminates CPLEX solvers used by the executor.
+	 */
+	public void shutdown()
+	{
+		_solverContextPool.close();
+	}
+
+	/**
+	 * The method solves an auction and records its outcome.
+	 * @param auction the auction to be solved
+	 * @param result a result to be filled
+	 * @return the result
+	 */
+	private AuctionResult solve(Auction auction, AuctionResult result)
+	{
+		try
+		{
+			auction.solveIt();
+		}
+		catch(PaymentException e)
+		{
+			result._paymentExceptionMessage = e.getMessage();
+		}
+		catch(Exception e)
+		{
+			_logger.error("Auction " + result.getIndex() + " (seed=" + result.getSeed() + ") failed: " + e.toString());
+			result._error = e;
+		}
+
+		result._allocation = auction.getAllocation();
+		if( result._error == null && !result.isEmptyCore() )
+			try
+			{
+				result._payments = auction.getPayments();
+			}
+			catch(Exception e)
+			{
+				result._payments = null;						//No payments are computed if nobody is allocated
+			}
+		return result;
+	}
+
+	private IMechanismFactory _factory;							//A factory producing auctions of the batch
+	private int _numberOfThreads;								//The number of workers
+	private int _maxNumberOfPendingAuctions;					//The maximal number of auctions produced but not yet consumed
+	private SolverContextPool _solverContextPool;				//Solver contexts of workers
+}
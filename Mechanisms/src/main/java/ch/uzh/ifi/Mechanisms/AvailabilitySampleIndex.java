@@ -0,0 +1,218 @@
+package ch.uzh.ifi.Mechanisms;
+
+import java.util.List;
+import java.util.Random;
+
+import ch.uzh.ifi.MechanismDesignPrimitives.JointProbabilityMass;
+
+/**
+ * The class stores samples of availabilities of goods column-major, i.e., availabilities of a good in all samples are
+ * contiguous. The marginal availability of a bundle in a sample is the minimal availability of goods of the bundle, so
+ * the expected marginal availability is computed by element-wise minima of columns of the bundle's goods. These loops
+ * run over contiguous arrays and are vectorized by the JIT compiler.
+ *
+ * The index may be used instead of the JPMF to answer misses of the MarginalAvailabilityCache. Note that the JPMF does
+ * not expose its samples, i.e., an index built by fromJPMF() draws its own samples and its estimates differ from the
+ * ones of the JPMF within the sampling error. In particular, a realization drawn from the JPMF may be inconsistent with
+ * all samples of the index; the cache then falls back to the JPMF (see condition()).
+ * @author Dmitry Moor
+ *
+ */
+public class AvailabilitySampleIndex
+{
+
+	/**
+	 * Constructor.
+	 * @param samples samples of availabilities (the k-th element of a sample is the availability of the good with id = k+1)
+	 */
+	public AvailabilitySampleIndex(List<double[]> samples)
+	{
+		if( samples.size() == 0 ) throw new RuntimeException("No samples specified.");
+
+		_numberOfSamples = samples.size();
+		_numberOfGoods = samples.get(0).length;
+		_availabilities = new double[_numberOfGoods][_numberOfSamples];
+		for(int s = 0; s < _numberOfSamples; ++s)
+		{
+			double[] sample = samples.get(s);
+			if( sample.length != _numberOfGoods ) throw new RuntimeException("Samples should have the same number of goods: " + sample.length + " vs " + _numberOfGoods);
+
+			for(int k = 0; k < _numberOfGoods; ++k)
+				_availabilities[k][s] = sample[k];
+		}
+	}
+
+	/**
+	 * Constructor.
+	 * @param availabilities availabilities of goods (the k-th row contains availabilities of the good with id = k+1 in all samples)
+	 */
+	private AvailabilitySampleIndex(double[][] availabilities)
+	{
+		_numberOfGoods = availabilities.length;
+		_numberOfSamples = _numberOfGoods > 0 ? availabilities[0].length : 0;
+		_availabilities = availabilities;
+	}
+
+	/**
+	 * The method creates an index from samples drawn from the JPMF.
+	 * @param jpmf joint probability mass function for availabilities of goods (should be updated)
+	 * @param numberOfSamples the number of samples to be drawn
+	 * @return the index
+	 */
+	public static AvailabilitySampleIndex fromJPMF(JointProbabilityMass jpmf, int numberOfSamples)
+	{
+		if( numberOfSamples <= 0 ) throw new RuntimeException("Wrong number of samples: " + numberOfSamples);
+
+		double[] sample = jpmf.getSample();
+		double[][] availabilities = new double[sample.length][numberOfSamples];
+		for(int s = 0; s < numberOfSamples; ++s)
+		{
+			if( s > 0 )
+				sample = jpmf.getSample();
+
+			for(int k = 0; k < sample.length; ++k)
+				availabilities[k][s] = sample[k];
+		}
+		return new AvailabilitySampleIndex(availabilities);
+	}
+
+	/**
+	 * The method projects the index on samples consistent with the realized availabilities of some goods.
+	 * @param goods ids of goods with known availabilities (null if none)
+	 * @param realizations realized availabilities of these goods (null if none)
+	 * @return the index containing only consistent samples or null if no sample is consistent with realizations
+	 */
+	public AvailabilitySampleIndex condition(List<Integer> goods, List<Double> realizations)
+	{
+		if( goods == null || goods.size() == 0 )
+			return this;
+		if( realizations == null || realizations.size() != goods.size() ) throw new RuntimeException("Realizations of all goods should be specified.");
+
+		boolean[] isConsistent = new boolean[_numberOfSamples];
+		int numberOfConsistentSamples = 0;
+		for(int s = 0; s < _numberOfSamples; ++s)
+		{
+			isConsistent[s] = true;
+			for(int i = 0; i < goods.size() && isConsistent[s]; ++i)
+				isConsistent[s] = Math.abs(_availabilities[goods.get(i) - 1][s] - realizations.get(i)) < _TOL;
+
+			if( isConsistent[s] )
+				numberOfConsistentSamples += 1;
+		}
+		if( numberOfConsistentSamples == 0 )
+			return null;
+
+		double[][] availabilities = new double[_numberOfGoods][numberOfConsistentSamples];
+		for(int k = 0; k < _numberOfGoods; ++k)
+			for(int s = 0, c = 0; s < _numberOfSamples; ++s)
+				if( isConsistent[s] )
+					availabilities[k][c++] = _availabilities[k][s];
+
+		return new AvailabilitySampleIndex(availabilities);
+	}
+
+	/**
+	 * The method computes the expected marginal availability of a bundle, i.e., the mean over samples of the minimal
+	 * availability of goods of the bundle.
+	 * @param bundle ids of goods of the bundle
+	 * @param goods ids of goods with known availabilities (null if none)
+	 * @param realizations realized availabilities of these goods (null if none)
+	 * @return the expected marginal availability of the bundle
+	 */
+	public double getMarginalProbability(List<Integer> bundle, List<Integer> goods, List<Double> realizations)
+	{
+		AvailabilitySampleIndex index = conditionOrFail(goods, realizations);
+		return index.computeMeanOfMinima(bundle, new double[index._numberOfSamples]);
+	}
+
+	/**
+	 * The method computes expected marginal availabilities of several bundles given the same realizations. Samples are
+	 * conditioned only once.
+	 * @param bundles bundles (lists of ids of goods)
+	 * @param goods ids of goods with known availabilities (null if none)
+	 * @param realizations realized availabilities of these goods (null if none)
+	 * @return expected marginal availabilities of bundles
+	 */
+	public double[] getMarginalProbabilities(List<List<Integer>> bundles, List<Integer> goods, List<Double> realizations)
+	{
+		AvailabilitySampleIndex index = conditionOrFail(goods, realizations);
+		double[] minima = new double[index._numberOfSamples];
+		double[] probabilities = new double[bundles.size()];
+		for(int i = 0; i < bundles.size(); ++i)
+			probabilities[i] = index.computeMeanOfMinima(bundles.get(i), minima);
+		return probabilities;
+	}
+
+	/**
+	 * The method draws one of the samples uniformly at random.
+	 * @param generator a random numbers generator
+	 * @return availabilities of goods in the sample (the k-th element is the availability of the good with id = k+1)
+	 */
+	public double[] getSample(Random generator)
+	{
+		int s = generator.nextInt(_numberOfSamples);
+		double[] sample = new double[_numberOfGoods];
+		for(int k = 0; k < _numberOfGoods; ++k)
+			sample[k] = _availabilities[k][s];
+		return sample;
+	}
+
+	/**
+	 * @return the number of goods
+	 */
+	public int getNumberOfGoods()
+	{
+		return _numberOfGoods;
+	}
+
+	/**
+	 * @return the number of samples
+	 */
+	public int getNumberOfSamples()
+	{
+		return _numberOfSamples;
+	}
+
+	/**
+	 * The method projects the index on samples consistent with the realized availabilities of some goods.
+	 * @param goods ids of goods with known availabilities (null if none)
+	 * @param realizations realized availabilities of these goods (null if none)
+	 * @return the index containing only consistent samples
+	 */
+	private AvailabilitySampleIndex conditionOrFail(List<Integer> goods, List<Double> realizations)
+	{
+		AvailabilitySampleIndex index = condition(goods, realizations);
+		if( index == null ) throw new RuntimeException("No samples are consistent with realizations " + realizations + " of goods " + goods);
+		return index;
+	}
+
+	/**
+	 * The method computes the mean over samples of the minimal availability of goods of the bundle.
+	 * @param bundle ids of goods of the bundle
+	 * @param minima a buffer of the size equal to the number of samples
+	 * @return the mean of minima
+	 */
+	private double computeMeanOfMinima(List<Integer> bundle, double[] minima)
+	{
+		if( bundle.size() == 0 )
+			return 1.;
+
+		System.arraycopy(_availabilities[bundle.get(0) - 1], 0, minima, 0, _numberOfSamples);
+		for(int i = 1; i < bundle.size(); ++i)
+		{
+			double[] column = _availabilities[bundle.get(i) - 1];
+			for(int s = 0; s < _numberOfSamples; ++s)
+				minima[s] = Math.min(minima[s], column[s]);
+		}
+
+		double sum = 0.;
+		for(int s = 0; s < _numberOfSamples; ++s)
+			sum += minima[s];
+		return sum / _numberOfSamples;
+	}
+
+	private static final double _TOL = 1e-9;						//Tolerance used to compare realized availabilities
+	private int _numberOfGoods;										//The number of goods
+	private int _numberOfSamples;									//The number of samples
+	private double[][] _availabilities;								//Availabilities of goods, the k-th row for the good with id = k+1
+}
@@ -0,0 +1,193 @@
+package ch.uzh.ifi.Mechanisms;
+
+import java.util.List;
+
+import ch.uzh.ifi.MechanismDesignPrimitives.Type;
+
+/**
+ * The class stores XOR bids of all bidders in a compact binary format. The bundle of every atomic bid is represented
+ * as a bitset of goods (one bit per good, packed into 64-bit words). In addition, an inverted index item -> atoms is
+ * maintained, so that the constraint of a good can be built by iterating only over atoms which contain the good.
+ * Goods are indexed from 0, i.e., the good with id itemId corresponds to the index itemId-1.
+ */
+public class BinaryBids
+{
+	/**
+	 * Constructor.
+	 * @param bids XOR bids of bidders
+	 * @param numberOfItems the number of goods in the auction
+	 */
+	public BinaryBids(List<Type> bids, int numberOfItems)
+	{
+		_numberOfBidders = bids.size();
+		_numberOfItems = numberOfItems;
+		_numberOfWords = (numberOfItems + 63) / 64;
+		_bundles = new long[_numberOfBidders][][];
+		_bundleSizes = new int[_numberOfBidders][];
+
+		int[] numberOfAtomsPerItem = new int[numberOfItems];
+		for(int i = 0; i < _numberOfBidders; ++i)
+		{
+			Type bid = bids.get(i);
+			_bundles[i] = new long[bid.getNumberOfAtoms()][_numberOfWords];
+			_bundleSizes[i] = new int[bid.getNumberOfAtoms()];
+			for(int j = 0; j < bid.getNumberOfAtoms(); ++j)
+			{
+				for(Integer itemId : bid.getAtom(j).getInterestingSet())
+				{
+					int item = itemId - 1;
+					if( !contains(i, j, item) )
+					{
+						_bundles[i][j][item >> 6] |= 1L << (item & 63);
+						_bundleSizes[i][j] += 1;
+						numberOfAtomsPerItem[item] += 1;
+					}
+				}
+			}
+		}
+
+		//Build the inverted index item -> atoms
+		_biddersOfItem = new int[numberOfItems][];
+		_atomsOfItem = new int[numberOfItems][];
+		for(int k = 0; k < numberOfItems; ++k)
+		{
+			_biddersOfItem[k] = new int[numberOfAtomsPerItem[k]];
+			_atomsOfItem[k] = new int[numberOfAtomsPerItem[k]];
+		}
+
+		int[] position = new int[numberOfItems];
+		for(int i = 0; i < _numberOfBidders; ++i)
+			for(int j = 0; j < _bundles[i].length; ++j)
+				for(int w = 0; w < _numberOfWords; ++w)
+				{
+					long word = _bundles[i][j][w];
+					while( word != 0 )
+					{
+						int item = (w << 6) + Long.numberOfTrailingZeros(word);
+						_biddersOfItem[item][position[item]] = i;
+						_atomsOfItem[item][position[item]] = j;
+						position[item] += 1;
+						word &= word - 1;
+					}
+				}
+	}
+
+	/**
+	 * The method returns the number of bidders.
+	 * @return the number of bidders
+	 */
+	public int getNumberOfBidders()
+	{
+		return _numberOfBidders;
+	}
+
+	/**
+	 * The method returns the number of goods.
+	 * @return the number of goods
+	 */
+	public int getNumberOfItems()
+	{
+		return _numberOfItems;
+	}
+
+	/**
+	 * The method returns the number of 64-bit words used to store the bundle of an atom.
+	 * @return the number of words per bitset
+	 */
+	public int getNumberOfWords()
+	{
+		return _numberOfWords;
+	}
+
+	/**
+	 * The method returns the number of atoms in the XOR bid of a bidder.
+	 * @param bidderIdx an index of the bidder
+	 * @return the number of atoms
+	 */
+	public int getNumberOfAtoms(int bidderIdx)
+	{
+		return _bundles[bidderIdx].length;
+	}
+
+	/**
+	 * The method returns the bitset of goods of an atom. The returned array must not be modified.
+	 * @param bidderIdx an index of the bidder
+	 * @param atomIdx an index of the atom in the bid of the bidder
+	 * @return the bitset of goods
+	 */
+	public long[] getBundle(int bidderIdx, int atomIdx)
+	{
+		return _bundles[bidderIdx][atomIdx];
+	}
+
+	/**
+	 * The method returns the number of goods in the bundle of an atom.
+	 * @param bidderIdx an index of the bidder
+	 * @param atomIdx an index of the atom in the bid of the bidder
+	 * @return the size of the bundle
+	 */
+	public int getBundleSize(int bidderIdx, int atomIdx)
+	{
+		return _bundleSizes[bidderIdx][atomIdx];
+	}
+
+	/**
+	 * The method checks if the bundle of an atom contains a good.
+	 * @param bidderIdx an index of the bidder
+	 * @param atomIdx an index of the atom in the bid of the bidder
+	 * @param itemIdx an index of the good (itemId-1)
+	 * @return true if the bundle contains the good
+	 */
+	public boolean contains(int bidderIdx, int atomIdx, int itemIdx)
+	{
+		return (_bundles[bidderIdx][atomIdx][itemIdx >> 6] & (1L << (itemIdx & 63))) != 0;
+	}
+
+	/**
+	 * The method checks if bundles of two atoms have at least one good in common.
+	 * @param bidder1 an index of the first bidder
+	 * @param atom1 an index of the atom of the first bidder
+	 * @param bidder2 an index of the second bidder
+	 * @param atom2 an index of the atom of the second bidder
+	 * @return true if the bundles intersect
+	 */
+	public boolean isConflicting(int bidder1, int atom1, int bidder2, int atom2)
+	{
+		long[] bundle1 = _bundles[bidder1][atom1];
+		long[] bundle2 = _bundles[bidder2][atom2];
+		for(int w = 0; w < _numberOfWords; ++w)
+			if( (bundle1[w] & bundle2[w]) != 0 )
+				return true;
+		return false;
+	}
+
+	/**
+	 * The method returns bidders of atoms containing a good. The k-th element corresponds to the k-th element of getAtomsOfItem(itemIdx).
+	 * The returned array must not be modified.
+	 * @param itemIdx an index of the good (itemId-1)
+	 * @return indices of bidders
+	 */
+	public int[] getBiddersOfItem(int itemIdx)
+	{
+		return _biddersOfItem[itemIdx];
+	}
+
+	/**
+	 * The method returns indices of atoms containing a good (within bids of the corresponding bidders, see getBiddersOfItem(itemIdx)).
+	 * The returned array must not be modified.
+	 * @param itemIdx an index of the good (itemId-1)
+	 * @return indices of atoms
+	 */
+	public int[] getAtomsOfItem(int itemIdx)
+	{
+		return _atomsOfItem[itemIdx];
+	}
+
+	private int _numberOfBidders;								//The number of bidders
+	private int _numberOfItems;									//The number of goods
+	private int _numberOfWords;									//The number of 64-bit words per bitset of goods
+	private long[][][] _bundles;								//_bundles[i][j] is the bitset of goods of the j-th atom of the i-th bidder
+	private int[][] _bundleSizes;								//The number of goods in every atom
+	private int[][] _biddersOfItem;								//Inverted index: bidders of atoms containing a good
+	private int[][] _atomsOfItem;								//Inverted index: atoms containing a good
+}
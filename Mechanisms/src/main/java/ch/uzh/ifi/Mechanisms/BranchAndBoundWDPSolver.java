@@ -0,0 +1,372 @@
+package ch.uzh.ifi.Mechanisms;
+
+import java.util.Arrays;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The class implements an exact pure-Java solver for the WDP with the XOR bidding language. The solver uses
+ * depth-first branch-and-bound over atomic bids. Conflicts between atoms are checked using bitsets of goods and bidders.
+ * The upper bound at every node is the minimum of two relaxations of the remaining problem: every free bidder gets its best
+ * compatible atom, and every free good gets the best per-good share of the weight of a compatible atom.
+ * The search tree is traversed using an explicit stack, so that its depth (up to the number of atoms) is not limited by
+ * the stack size of the calling thread.
+ */
+public class BranchAndBoundWDPSolver implements IWinnerDeterminationSolver
+{
+
+	private static final Logger _logger = LogManager.getLogger(BranchAndBoundWDPSolver.class);
+
+	/**
+	 * Constructor
+	 */
+	public BranchAndBoundWDPSolver()
+	{
+
+	}
+
+	/**
+	 * (non-Javadoc)
+	 * The method is thread-safe: every call uses its own search state, so one instance can be shared by several workers.
+	 * @see ch.uzh.ifi.Mechanisms.IWinnerDeterminationSolver#solve(double[][], ch.uzh.ifi.Mechanisms.BinaryBids)
+	 */
+	@Override
+	public int[] solve(double[][] weights, BinaryBids binaryBids)
+	{
+		return computeSolution(weights, binaryBids).getAllocation();
+	}
+
+	/**
+	 * The method solves the WDP and returns the optimal allocation together with statistics of the search. The method is
+	 * thread-safe.
+	 * @param weights weights[i][j] is the objective coefficient of the j-th atom of the i-th bidder
+	 * @param binaryBids bids of bidders in the binary format
+	 * @return the solution of the WDP
+	 */
+	public Solution computeSolution(double[][] weights, BinaryBids binaryBids)
+	{
+		_logger.debug("-> computeSolution(...)");
+		Search search = new Search();
+		int[] allocation = search.run(weights, binaryBids);
+		_logger.debug("<- computeSolution(...): value=" + search._bestValue + ", nodes=" + search._numberOfNodes);
+		return new Solution(allocation, search._bestValue, search._numberOfNodes);
+	}
+
+	/**
+	 * The class contains the solution of one WDP.
+	 */
+	public static class Solution
+	{
+		/**
+		 * Constructor.
+		 * @param allocation an array which i-th element is the index of the atom allocated to the i-th bidder or -1
+		 * @param objectiveValue the total weight of the allocation
+		 * @param numberOfNodes the number of explored nodes of the search tree
+		 */
+		public Solution(int[] allocation, double objectiveValue, long numberOfNodes)
+		{
+			_allocation = allocation;
+			_objectiveValue = objectiveValue;
+			_numberOfNodes = numberOfNodes;
+		}
+
+		/**
+		 * @return an array which i-th element is the index of the atom allocated to the i-th bidder or -1
+		 */
+		public int[] getAllocation()
+		{
+			return _allocation;
+		}
+
+		/**
+		 * @return the total weight of the optimal allocation
+		 */
+		public double getObjectiveValue()
+		{
+			return _objectiveValue;
+		}
+
+		/**
+		 * @return the number of nodes of the search tree explored while solving the WDP
+		 */
+		public long getNumberOfNodes()
+		{
+			return _numberOfNodes;
+		}
+
+		private int[] _allocation;									//Indices of allocated atoms of bidders
+		private double _objectiveValue;								//The total weight of the allocation
+		private long _numberOfNodes;								//The number of explored nodes
+	}
+
+	/**
+	 * The class contains the state of one branch-and-bound search.
+	 */
+	private static class Search
+	{
+		/**
+		 * The method solves the WDP.
+		 * @param weights weights[i][j] is the objective coefficient of the j-th atom of the i-th bidder
+		 * @param binaryBids bids of bidders in the binary format
+		 * @return an array which i-th element is the index of the atom allocated to the i-th bidder or -1
+		 */
+		int[] run(double[][] weights, BinaryBids binaryBids)
+		{
+			int numberOfBidders = weights.length;
+			int numberOfItems = binaryBids.getNumberOfItems();
+			_numberOfWords = binaryBids.getNumberOfWords();
+			_numberOfNodes = 0;
+
+			//Only atoms with positive weights can be part of an optimal allocation
+			int numberOfAtoms = 0;
+			for(int i = 0; i < numberOfBidders; ++i)
+				for(int j = 0; j < weights[i].length; ++j)
+					if( weights[i][j] > _TOL )
+						numberOfAtoms += 1;
+
+			Integer[] order = new Integer[numberOfAtoms];
+			_bidderOfAtom = new int[numberOfAtoms];
+			_idxOfAtom = new int[numberOfAtoms];
+			_weights = new double[numberOfAtoms];
+			_itemsOfAtom = new long[numberOfAtoms][];
+			_sizeOfAtom = new int[numberOfAtoms];
+
+			int k = 0;
+			for(int i = 0; i < numberOfBidders; ++i)
+				for(int j = 0; j < weights[i].length; ++j)
+					if( weights[i][j] > _TOL )
+					{
+						_bidderOfAtom[k] = i;
+						_idxOfAtom[k] = j;
+						_weights[k] = weights[i][j];
+						_itemsOfAtom[k] = binaryBids.getBundle(i, j);
+						_sizeOfAtom[k] = binaryBids.getBundleSize(i, j);
+						order[k] = k;
+						k += 1;
+					}
+
+			//Atoms with higher weights are explored first, so that good incumbents are found early
+			Arrays.sort(order, (a, b) -> Double.compare(_weights[b], _weights[a]));
+			sortAtoms(order);
+
+			_usedItems = new long[_numberOfWords];
+			_usedBidders = new boolean[numberOfBidders];
+			_bestBidderValue = new double[numberOfBidders];
+			_bestItemValue = new double[numberOfItems];
+			_currentAtoms = new int[numberOfBidders];
+			_bestAtoms = new int[numberOfBidders];
+			_bestValue = 0.;
+			_numberOfSelected = 0;
+			_numberOfBestSelected = 0;
+
+			search();
+
+			int[] allocation = new int[numberOfBidders];
+			Arrays.fill(allocation, -1);
+			for(int q = 0; q < _numberOfBestSelected; ++q)
+				allocation[ _bidderOfAtom[_bestAtoms[q]] ] = _idxOfAtom[_bestAtoms[q]];
+
+			return allocation;
+		}
+
+		/**
+		 * The method explores the search tree depth-first. Every frame of the stack corresponds to an atom on which the
+		 * search branched: first the subtree with the atom allocated is explored and then the subtree without it.
+		 */
+		private void search()
+		{
+			int numberOfAtoms = _weights.length;
+			int[] framePos = new int[numberOfAtoms];				//Positions of atoms of frames (increase along the stack)
+			double[] frameValue = new double[numberOfAtoms];		//Weights of partial allocations before atoms of frames
+			boolean[] isExcluded = new boolean[numberOfAtoms];		//True if the subtree without the atom is being explored
+			int depth = 0;
+
+			int pos = 0;
+			double value = 0.;
+			while( true )
+			{
+				_numberOfNodes += 1;
+				if( value > _bestValue + _TOL )
+				{
+					_bestValue = value;
+					_numberOfBestSelected = _numberOfSelected;
+					System.arraycopy(_currentAtoms, 0, _bestAtoms, 0, _numberOfSelected);
+				}
+
+				//Skip atoms which are in conflict with the partial allocation
+				while( pos < numberOfAtoms && !isCompatible(pos) )
+					pos += 1;
+
+				if( pos < numberOfAtoms && value + computeUpperBound(pos) > _bestValue + _TOL )
+				{
+					//1. Allocate the atom
+					framePos[depth] = pos;
+					frameValue[depth] = value;
+					isExcluded[depth] = false;
+					depth += 1;
+					allocate(pos);
+					value += _weights[pos];
+					pos += 1;
+					continue;
+				}
+
+				//Backtrack to the deepest frame which subtree without the atom is not explored yet
+				while( depth > 0 && isExcluded[depth - 1] )
+					depth -= 1;
+				if( depth == 0 )
+					break;
+
+				//2. Do not allocate the atom
+				int frame = depth - 1;
+				deallocate(framePos[frame]);
+				isExcluded[frame] = true;
+				pos = framePos[frame] + 1;
+				value = frameValue[frame];
+			}
+		}
+
+		/**
+		 * The method adds the atom to the current partial allocation.
+		 * @param atom the position of the atom
+		 */
+		private void allocate(int atom)
+		{
+			long[] items = _itemsOfAtom[atom];
+			for(int w = 0; w < _numberOfWords; ++w)
+				_usedItems[w] |= items[w];
+			_usedBidders[ _bidderOfAtom[atom] ] = true;
+			_currentAtoms[_numberOfSelected++] = atom;
+		}
+
+		/**
+		 * The method removes the last added atom from the current partial allocation.
+		 * @param atom the position of the atom
+		 */
+		private void deallocate(int atom)
+		{
+			_numberOfSelected -= 1;
+			_usedBidders[ _bidderOfAtom[atom] ] = false;
+			long[] items = _itemsOfAtom[atom];
+			for(int w = 0; w < _numberOfWords; ++w)
+				_usedItems[w] ^= items[w];
+		}
+
+		/**
+		 * The method checks whether the atom can be added to the current partial allocation.
+		 * @param atom the position of the atom
+		 * @return true if neither the bidder nor any of the goods of the atom are allocated
+		 */
+		private boolean isCompatible(int atom)
+		{
+			if( _usedBidders[ _bidderOfAtom[atom] ] )
+				return false;
+			long[] items = _itemsOfAtom[atom];
+			for(int w = 0; w < _numberOfWords; ++w)
+				if( (items[w] & _usedItems[w]) != 0 )
+					return false;
+			return true;
+		}
+
+		/**
+		 * The method computes an upper bound on the weight which can be added by atoms starting from the specified position.
+		 * @param pos the position of the first atom to consider
+		 * @return the upper bound
+		 */
+		private double computeUpperBound(int pos)
+		{
+			Arrays.fill(_bestBidderValue, 0.);
+			Arrays.fill(_bestItemValue, 0.);
+			boolean isItemBoundValid = true;
+
+			for(int a = pos; a < _weights.length; ++a)
+			{
+				if( !isCompatible(a) )
+					continue;
+
+				int bidder = _bidderOfAtom[a];
+				if( _weights[a] > _bestBidderValue[bidder] )
+					_bestBidderValue[bidder] = _weights[a];
+
+				if( _sizeOfAtom[a] == 0 )
+				{
+					isItemBoundValid = false;
+					continue;
+				}
+				double share = _weights[a] / _sizeOfAtom[a];
+				long[] items = _itemsOfAtom[a];
+				for(int w = 0; w < _numberOfWords; ++w)
+				{
+					long word = items[w];
+					while( word != 0 )
+					{
+						int item = (w << 6) + Long.numberOfTrailingZeros(word);
+						if( share > _bestItemValue[item] )
+							_bestItemValue[item] = share;
+						word &= word - 1;
+					}
+				}
+			}
+
+			double bidderBound = 0.;
+			for(double v : _bestBidderValue)
+				bidderBound += v;
+
+			if( !isItemBoundValid )
+				return bidderBound;
+
+			double itemBound = 0.;
+			for(double v : _bestItemValue)
+				itemBound += v;
+
+			return Math.min(bidderBound, itemBound);
+		}
+
+		/**
+		 * The method reorders internal arrays of atoms according to the specified order.
+		 * @param order a permutation of atoms
+		 */
+		private void sortAtoms(Integer[] order)
+		{
+			int[] bidderOfAtom = new int[order.length];
+			int[] idxOfAtom = new int[order.length];
+			double[] weights = new double[order.length];
+			long[][] itemsOfAtom = new long[order.length][];
+			int[] sizeOfAtom = new int[order.length];
+
+			for(int k = 0; k < order.length; ++k)
+			{
+				bidderOfAtom[k] = _bidderOfAtom[order[k]];
+				idxOfAtom[k] = _idxOfAtom[order[k]];
+				weights[k] = _weights[order[k]];
+				itemsOfAtom[k] = _itemsOfAtom[order[k]];
+				sizeOfAtom[k] = _sizeOfAtom[order[k]];
+			}
+			_bidderOfAtom = bidderOfAtom;
+			_idxOfAtom = idxOfAtom;
+			_weights = weights;
+			_itemsOfAtom = itemsOfAtom;
+			_sizeOfAtom = sizeOfAtom;
+		}
+
+		private int _numberOfWords;									//The number of 64-bit words per bitset of goods
+		private int[] _bidderOfAtom;								//An index of the bidder of every atom
+		private int[] _idxOfAtom;									//An index of every atom within the bid of its bidder
+		private double[] _weights;									//Weights of atoms
+		private long[][] _itemsOfAtom;								//Bitsets of goods of atoms
+		private int[] _sizeOfAtom;									//The number of goods in every atom
+
+		private long[] _usedItems;									//Goods allocated in the current partial allocation
+		private boolean[] _usedBidders;								//Bidders allocated in the current partial allocation
+		private int[] _currentAtoms;								//Atoms of the current partial allocation
+		private int _numberOfSelected;								//The number of atoms in the current partial allocation
+		private int[] _bestAtoms;									//Atoms of the incumbent
+		private int _numberOfBestSelected;							//The number of atoms in the incumbent
+		private double _bestValue;									//The value of the incumbent
+		private double[] _bestBidderValue;							//Scratch array for the bidders' upper bound
+		private double[] _bestItemValue;							//Scratch array for the goods' upper bound
+		private long _numberOfNodes;								//The number of explored nodes
+	}
+
+	private static final double _TOL = 1e-9;					//Tolerance level
+}
@@ -0,0 +1,206 @@
+package ch.uzh.ifi.Mechanisms;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The class implements the equilibrium price search which exploits monotonicity of the excess demand. First, the root
+ * of the excess demand is bracketed starting from the initial price with geometrically growing steps. Then the bracket
+ * is shrunk by Brent's method, i.e., by inverse quadratic interpolation / secant steps safeguarded by bisection.
+ * The search stops once the absolute excess demand is below the tolerance level or the bracket is narrower than the
+ * price tolerance (the excess demand of the data market may have jumps, so that it never vanishes exactly).
+ * @author Dmitry Moor
+ *
+ */
+public class BrentPriceSearchStrategy implements IPriceSearchStrategy
+{
+
+	private static final Logger _logger = LogManager.getLogger(BrentPriceSearchStrategy.class);
+
+	/**
+	 * Constructor.
+	 */
+	public BrentPriceSearchStrategy()
+	{
+		this(1e-7, 1e-9, 1., 100);
+	}
+
+	/**
+	 * Constructor.
+	 * @param tolerance the tolerance level for the excess demand
+	 * @param priceTolerance the width of the bracket at which the search stops
+	 * @param initialStep the initial step used to bracket the equilibrium price
+	 * @param maxIter the maximal number of evaluations of the excess demand
+	 */
+	public BrentPriceSearchStrategy(double tolerance, double priceTolerance, double initialStep, int maxIter)
+	{
+		if( initialStep <= 0 ) throw new RuntimeException("The initial step should be positive: " + initialStep);
+		_tolerance = tolerance;
+		_priceTolerance = priceTolerance;
+		_initialStep = initialStep;
+		_maxIter = maxIter;
+		_numberOfIterations = 0;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ch.uzh.ifi.Mechanisms.IPriceSearchStrategy#searchPrice(ch.uzh.ifi.Mechanisms.IExcessDemandFunction, double)
+	 */
+	@Override
+	public double searchPrice(IExcessDemandFunction excessDemand, double startPrice) throws Exception
+	{
+		_numberOfIterations = 0;
+
+		// Bracket the equilibrium price: fa and fb should have different signs
+		double a = Math.max(0., startPrice);
+		double fa = evaluate(excessDemand, a);
+		if( Math.abs(fa) < _tolerance )
+			return a;
+
+		double step = _initialStep;
+		double b = a;
+		double fb = fa;
+		while( Math.signum(fb) == Math.signum(fa) )
+		{
+			if( Math.abs(fb) < _tolerance )
+				return b;
+			if( fb < 0 && b == 0. )									//The excess demand is negative at any price
+				return 0.;
+			if( _numberOfIterations >= _maxIter )
+			{
+				_logger.warn("Reached MAX_ITER while bracketing the price.");
+				return b;
+			}
+
+			a = b;
+			fa = fb;
+			b = fb > 0 ? a + step : Math.max(0., a - step);
+			fb = evaluate(excessDemand, b);
+			step *= 2;
+		}
+
+		double price = refine(excessDemand, a, fa, b, fb);
+		_logger.debug("Found price: " + price + "; iterations=" + _numberOfIterations);
+		return price;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ch.uzh.ifi.Mechanisms.IPriceSearchStrategy#getNumberOfIterations()
+	 */
+	@Override
+	public int getNumberOfIterations()
+	{
+		return _numberOfIterations;
+	}
+
+	/**
+	 * The method shrinks the bracket of the equilibrium price using Brent's method.
+	 * @param excessDemand the excess demand for money
+	 * @param a one end of the bracket
+	 * @param fa the excess demand at a
+	 * @param b the other end of the bracket
+	 * @param fb the excess demand at b
+	 * @return the equilibrium price
+	 * @throws Exception if the excess demand cannot be computed
+	 */
+	private double refine(IExcessDemandFunction excessDemand, double a, double fa, double b, double fb) throws Exception
+	{
+		double c = b;
+		double fc = fb;
+		double d = b - a;
+		double e = d;
+
+		while( true )
+		{
+			if( Math.signum(fb) == Math.signum(fc) )						//c should be on the other side of the root than b
+			{
+				c = a;
+				fc = fa;
+				d = b - a;
+				e = d;
+			}
+			if( Math.abs(fc) < Math.abs(fb) )								//b should be the best estimate
+			{
+				a = b;
+				b = c;
+				c = a;
+				fa = fb;
+				fb = fc;
+				fc = fa;
+			}
+
+			double tol = 2. * Math.ulp(b) + 0.5 * _priceTolerance;
+			double middle = 0.5 * (c - b);
+			if( Math.abs(middle) <= tol || Math.abs(fb) < _tolerance || fb == 0. )
+				return b;
+			if( _numberOfIterations >= _maxIter )
+			{
+				_logger.warn("Reached MAX_ITER.");
+				return b;
+			}
+
+			if( Math.abs(e) >= tol && Math.abs(fa) > Math.abs(fb) )
+			{
+				// Try the secant step (if a == c) or the inverse quadratic interpolation
+				double p;
+				double q;
+				double s = fb / fa;
+				if( a == c )
+				{
+					p = 2. * middle * s;
+					q = 1. - s;
+				}
+				else
+				{
+					double r = fb / fc;
+					q = fa / fc;
+					p = s * (2. * middle * q * (q - r) - (b - a) * (r - 1.));
+					q = (q - 1.) * (r - 1.) * (s - 1.);
+				}
+				if( p > 0 ) q = -q;
+				else p = -p;
+
+				if( 2. * p < Math.min(3. * middle * q - Math.abs(tol * q), Math.abs(e * q)) )
+				{
+					e = d;
+					d = p / q;
+				}
+				else														//Interpolation failed, use bisection
+				{
+					d = middle;
+					e = d;
+				}
+			}
+			else															//Bounds decrease too slowly, use bisection
+			{
+				d = middle;
+				e = d;
+			}
+
+			a = b;
+			fa = fb;
+			b += Math.abs(d) > tol ? d : Math.copySign(tol, middle);
+			fb = evaluate(excessDemand, b);
+		}
+	}
+
+	/**
+	 * The method evaluates the excess demand and counts evaluations.
+	 * @param excessDemand the excess demand for money
+	 * @param price price per row
+	 * @return the excess demand at the given price
+	 * @throws Exception if the excess demand cannot be computed
+	 */
+	private double evaluate(IExcessDemandFunction excessDemand, double price) throws Exception
+	{
+		_numberOfIterations += 1;
+		return excessDemand.computeExcessDemand(price);
+	}
+
+	private double _tolerance;										//The tolerance level for the excess demand
+	private double _priceTolerance;									//The width of the bracket at which the search stops
+	private double _initialStep;										//The initial step used to bracket the price
+	private int _maxIter;											//The maximal number of evaluations of the excess demand
+	private int _numberOfIterations;								//The number of evaluations of the last search
+}
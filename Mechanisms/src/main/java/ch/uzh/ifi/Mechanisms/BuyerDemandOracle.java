@@ -0,0 +1,168 @@
+package ch.uzh.ifi.Mechanisms;
+
+import java.util.List;
+
+import ch.uzh.ifi.MechanismDesignPrimitives.ParametrizedQuasiLinearAgent;
+
+/**
+ * The class provides a stateless view of a buyer in the data market. The consumption problem of the buyer is solved for
+ * an explicitly specified price and a deterministic allocation of DBs rather than for the allocation most recently set
+ * to the buyer. Results are returned as primitive arrays.
+ *
+ * Value functions of buyers are linear up to a threshold (see IBuyerValueFunction.java), i.e., a value function of a
+ * deterministic allocation of DBs is described by the marginal value of a row and the threshold. These parameters are
+ * either precomputed for all allocations once by the constructor from the underlying agent or provided by a value
+ * function of the buyer (e.g., one generated lazily by BuyersGenerator.java for markets with more than 30 DBs). The
+ * agent is never accessed afterwards, so that several (price, allocation) pairs may be evaluated concurrently without
+ * locks.
+ *
+ * The oracle assumes that the value of rows is linear up to the threshold and constant afterwards (e.g., value functions
+ * of the agent are LinearThresholdValueFunction's). Then the optimal demand of the buyer is the threshold number of
+ * rows limited by the budget if the marginal value of a row exceeds the price and no rows otherwise. For other value
+ * functions results of the oracle differ from those of ParametrizedQuasiLinearAgent.solveConsumptionProblem(price).
+ * @author Dmitry Moor
+ *
+ */
+public class BuyerDemandOracle
+{
+
+	public static final int MONEY = 0;								//The index of the demand for money in results
+	public static final int ROWS  = 1;								//The index of the demand for rows in results
+	public static final int VALUE = 2;								//The index of the value (utility less endowment) in results
+	public static final int RESULT_SIZE = 3;						//The size of results
+
+	/**
+	 * Constructor. The value function of the buyer for every deterministic allocation of DBs is recovered from the
+	 * consumption problem of the agent at the zero price: the buyer demands the threshold number of rows and the
+	 * marginal value of a row is the value of the threshold divided by the threshold. Value functions of the agent should
+	 * be linear up to a threshold (see the class description).
+	 * @param buyer the buyer
+	 * @param numberOfDBs the number of DBs in the market (at most 30)
+	 */
+	public BuyerDemandOracle(ParametrizedQuasiLinearAgent buyer, int numberOfDBs)
+	{
+		if( numberOfDBs >= Integer.SIZE - 1 ) throw new RuntimeException("Too many DBs for a table of values: " + numberOfDBs);
+
+		_buyer = buyer;
+		_endowment = buyer.getEndowment();
+
+		int numberOfDeterministicAllocations = 1 << numberOfDBs;
+		double[] marginalValues = new double[numberOfDeterministicAllocations];
+		double[] thresholds = new double[numberOfDeterministicAllocations];
+		synchronized(_buyer)
+		{
+			_buyer.setNumberOfGoods(numberOfDBs);
+			for(int allocMask = 0; allocMask < numberOfDeterministicAllocations; ++allocMask)
+			{
+				_buyer.updateAllocProbabilityDistribution(allocMask, numberOfDBs);
+				List<Double> optBundle = _buyer.solveConsumptionProblem(0.);
+				double rows = optBundle.get(1);
+				double value = _buyer.computeUtility(optBundle) - optBundle.get(0);
+				thresholds[allocMask] = rows;
+				marginalValues[allocMask] = rows > 0 ? value / rows : 0.;
+			}
+		}
+		_valueFunction = new ValueTable(marginalValues, thresholds);
+	}
+
+	/**
+	 * Constructor.
+	 * @param endowment endowment of the buyer with money
+	 * @param valueFunction the value function of the buyer
+	 */
+	public BuyerDemandOracle(double endowment, IBuyerValueFunction valueFunction)
+	{
+		_buyer = null;
+		_endowment = endowment;
+		_valueFunction = valueFunction;
+	}
+
+	/**
+	 * The method solves the consumption problem of the buyer.
+	 * @param price price per row
+	 * @param allocMask binary encoding of the deterministic allocation of DBs
+	 * @return the demand for money, the demand for rows and the value of the buyer (see MONEY, ROWS and VALUE)
+	 */
+	public double[] solveConsumptionProblem(double price, long allocMask)
+	{
+		double[] res = new double[RESULT_SIZE];
+		addConsumption(price, allocMask, res);
+		return res;
+	}
+
+	/**
+	 * The method solves the consumption problem of the buyer and adds the results to the given accumulator. The buyer
+	 * demands the threshold number of rows (as many as she can afford) if the marginal value of a row exceeds the price
+	 * and nothing otherwise.
+	 * @param price price per row
+	 * @param allocMask binary encoding of the deterministic allocation of DBs
+	 * @param res an accumulator of the demand for money, the demand for rows and the value (see MONEY, ROWS and VALUE)
+	 */
+	public void addConsumption(double price, long allocMask, double[] res)
+	{
+		double marginalValue = _valueFunction.getMarginalValue(allocMask);
+		double rows = 0.;
+		if( marginalValue > price )
+		{
+			double threshold = _valueFunction.getThreshold(allocMask);
+			rows = price > 0 ? Math.min(threshold, _endowment / price) : threshold;
+		}
+
+		res[MONEY] += _endowment - price * rows;
+		res[ROWS]  += rows;
+		res[VALUE] += (marginalValue - price) * rows;
+	}
+
+	/**
+	 * The method returns the underlying agent.
+	 * @return the buyer (null if the oracle was created from a value function)
+	 */
+	public ParametrizedQuasiLinearAgent getBuyer()
+	{
+		return _buyer;
+	}
+
+	/**
+	 * @return endowment of the buyer with money
+	 */
+	public double getEndowment()
+	{
+		return _endowment;
+	}
+
+	/**
+	 * The value function stored as tables indexed by deterministic allocations of DBs.
+	 */
+	private static class ValueTable implements IBuyerValueFunction
+	{
+		/**
+		 * Constructor.
+		 * @param marginalValues marginal values of a row indexed by deterministic allocations of DBs
+		 * @param thresholds thresholds indexed by deterministic allocations of DBs
+		 */
+		ValueTable(double[] marginalValues, double[] thresholds)
+		{
+			_marginalValues = marginalValues;
+			_thresholds = thresholds;
+		}
+
+		@Override
+		public double getMarginalValue(long allocation)
+		{
+			return _marginalValues[(int)allocation];
+		}
+
+		@Override
+		public double getThreshold(long allocation)
+		{
+			return _thresholds[(int)allocation];
+		}
+
+		private double[] _marginalValues;							//Marginal values of a row indexed by deterministic allocations of DBs
+		private double[] _thresholds;								//Thresholds (max valuable rows) indexed by deterministic allocations of DBs
+	}
+
+	private ParametrizedQuasiLinearAgent _buyer;					//The underlying agent (accessed only by the constructor)
+	private double _endowment;										//Endowment of the buyer with money
+	private IBuyerValueFunction _valueFunction;						//Marginal values and thresholds of the buyer
+}
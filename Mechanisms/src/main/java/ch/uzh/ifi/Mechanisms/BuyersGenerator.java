@@ -3,11 +3,10 @@ package ch.uzh.ifi.Mechanisms;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
-import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 import ch.uzh.ifi.MechanismDesignPrimitives.IParametrizedValueFunction;
@@ -37,83 +36,126 @@ public class BuyersGenerator
 	}
 	
 	/**
-	 * The method generates a new buyer. 
+	 * The method generates a new buyer. The buyer has a value function for every deterministic allocation of DBs, so
+	 * that the number of DBs should not exceed 30 (see generateValueFunction() for larger markets).
 	 * @param id agent id
 	 * @return a newly generated buyer
 	 */
 	public ParametrizedQuasiLinearAgent generateBuyer(int id)
 	{
-		int nDeterministicAllocations = (int)Math.pow(2, _numberOfDBs); // Number of different deterministic allocations of DBs
-		int allocations[] = new int[nDeterministicAllocations];			// Possible deterministic allocations of DBs
-		//LinearThresholdValueFunction[] valueFunctions = new LinearThresholdValueFunction[nDeterministicAllocations];
-		Map<Integer, LinearThresholdValueFunction> valueFunctions = new HashMap<Integer, LinearThresholdValueFunction>();
+		if( _numberOfDBs >= Integer.SIZE - 1 ) throw new RuntimeException("Too many DBs to generate all value functions: " + _numberOfDBs);
 		
+		int nDeterministicAllocations = 1 << _numberOfDBs;				// Number of different deterministic allocations of DBs
+		IBuyerValueFunction valueFunction = generateValueFunction(id);
+		
+		List<LinearThresholdValueFunction> valueFunctionsList = new CopyOnWriteArrayList<LinearThresholdValueFunction>();
 		for(int i = 0; i < nDeterministicAllocations; ++i)				// Binary encodings of different allocations, e.g., ... 
 		{																// ... for 2 databases db1 and db2 possible deterministic ...
-			allocations[i] = i;											// ...  allocations are 00, 01, 10, 11.
-			
-			List<Double> alloc = convertToArray(i);
-			
-			int nAllocated = (int)alloc.stream().mapToDouble( v -> v ).sum();			// Number of allocated DBs
-			int magicNumber1 = 1013;
-			int magicNumber2 = 11;
-			Random gen = new Random(_seed * 100000 + id * magicNumber1 + /*nAllocated*/ i * magicNumber2 );
-			
-			int threshold = 0;
-			double marginalValue = 0.;
-			if(i > 0)
-			{
-				int idxPrev = (int)Math.pow(2, nAllocated-1) - 1;
-				List<Integer> subsetKeys = getSubsets(allocations[i]);
-				
-				double maxMarginalValue = subsetKeys.stream().map( k -> valueFunctions.get(k).getMarginalValue()).mapToDouble(v -> v).max().orElse(0.);
-				double maxThreshold = maxMarginalValue != 0 ? subsetKeys.stream().map( k -> valueFunctions.get(k).getMarginalValue() * valueFunctions.get(k).getThreshold()).mapToDouble( v -> v ).max().orElse(0.) / maxMarginalValue : 0.;
-				
-				marginalValue = _valFactor * gen.nextDouble() + maxMarginalValue;
-				threshold = (int) Math.floor(maxThreshold + _thresholdFactor * gen.nextDouble());
-			}
-			
-			LinearThresholdValueFunction v = new LinearThresholdValueFunction(marginalValue, threshold, alloc);
-			valueFunctions.put(allocations[i], v);
+			List<Double> alloc = convertToArray(i);						// ...  allocations are 00, 01, 10, 11.
+			int threshold = (int)valueFunction.getThreshold(i);
+			valueFunctionsList.add(new LinearThresholdValueFunction(valueFunction.getMarginalValue(i), threshold, alloc));
 		}
 		
-		List<LinearThresholdValueFunction> valueFunctionsList = new CopyOnWriteArrayList<LinearThresholdValueFunction>();
-		for(int i = 0; i < nDeterministicAllocations; ++i)
-			valueFunctionsList.add(valueFunctions.get(i));
-		
 		// Parameterized value functions for the buyer
 		ParametrizedQuasiLinearAgent buyer = new ParametrizedQuasiLinearAgent(id, _endowment, valueFunctionsList);
 		buyer.setNumberOfGoods(_numberOfDBs);
 		return buyer;
 	}
 	
+	/**
+	 * The method generates the value function of a new buyer. Parameters of the value function for a deterministic
+	 * allocation of DBs are generated on the first request and memoized. They depend on parameters for all sub-allocations,
+	 * so that the first request costs exponentially in the number of allocated DBs rather than in the number of DBs in
+	 * the domain. The value function is the same as the one of the buyer produced by generateBuyer() with the same id.
+	 * @param id agent id
+	 * @return the value function of a newly generated buyer
+	 */
+	public IBuyerValueFunction generateValueFunction(int id)
+	{
+		if( _numberOfDBs > Long.SIZE ) throw new RuntimeException("Too many DBs: " + _numberOfDBs);
+		return new GeneratedValueFunction(id);
+	}
 	
 	/**
-	 * The method returns binary encodings of the given allocation subsets of size N-1, 
-	 * where N is the number of allocated DBs in the given binary allocation.
-	 * @param binaryAllocation binary representation of the allocation
-	 * @return a list of binary sub-allocations
+	 * The value function of a generated buyer. Parameters are generated lazily and may be requested concurrently.
 	 */
-	private List<Integer> getSubsets(int binaryAllocation)
+	private class GeneratedValueFunction implements IBuyerValueFunction
 	{
-		List<Integer> subsetsKeys = new LinkedList<Integer>();
-		List<Double> alloc = convertToArray(binaryAllocation);
+		/**
+		 * Constructor.
+		 * @param id agent id
+		 */
+		GeneratedValueFunction(int id)
+		{
+			_id = id;
+			_parameters = new ConcurrentHashMap<Long, double[]>();
+		}
 		
-		for(int k = 0; k < _numberOfDBs; ++k)
+		@Override
+		public double getMarginalValue(long allocation)
 		{
-			List<Double> subsetK = new ArrayList<Double>();
-			for( Double v : alloc)
-				subsetK.add(v);
+			return getParameters(allocation)[_MARGINAL_VALUE];
+		}
+		
+		@Override
+		public double getThreshold(long allocation)
+		{
+			return getParameters(allocation)[_THRESHOLD];
+		}
+		
+		/**
+		 * The method returns memoized parameters of the value function or generates them. Parameters are deterministic,
+		 * so that concurrent generation of the same parameters is harmless.
+		 * @param allocation binary encoding of the deterministic allocation of DBs
+		 * @return the marginal value and the threshold
+		 */
+		private double[] getParameters(long allocation)
+		{
+			double[] parameters = _parameters.get(allocation);
+			if( parameters == null )
+			{
+				parameters = generateParameters(allocation);
+				_parameters.putIfAbsent(allocation, parameters);
+			}
+			return parameters;
+		}
+		
+		/**
+		 * The method generates parameters of the value function. The marginal value and the threshold grow with the
+		 * allocation: they are random increments of the maximal ones over sub-allocations with one DB less.
+		 * @param allocation binary encoding of the deterministic allocation of DBs
+		 * @return the marginal value and the threshold
+		 */
+		private double[] generateParameters(long allocation)
+		{
+			double[] parameters = new double[2];
+			if( allocation == 0 )
+				return parameters;
 			
-			subsetK.set(k, 0.);
+			int magicNumber1 = 1013;
+			int magicNumber2 = 11;
+			long seed = (long)_seed * 100000 + (long)_id * magicNumber1 + allocation * magicNumber2;
+			Random gen = new Random( (allocation >>> 31) == 0 ? (int)seed : seed );		// Int seeds keep buyers of up to 30 DBs unchanged
 			
-			int binarySubset = convertToBinary(subsetK);
+			double maxMarginalValue = 0.;
+			double maxValueOfThreshold = 0.;
+			for(long dbs = allocation; dbs != 0; dbs &= dbs - 1)
+			{
+				double[] subsetParameters = getParameters(allocation & ~Long.lowestOneBit(dbs));
+				maxMarginalValue = Math.max(maxMarginalValue, subsetParameters[_MARGINAL_VALUE]);
+				maxValueOfThreshold = Math.max(maxValueOfThreshold, subsetParameters[_MARGINAL_VALUE] * subsetParameters[_THRESHOLD]);
+			}
+			double maxThreshold = maxMarginalValue != 0 ? maxValueOfThreshold / maxMarginalValue : 0.;
 			
-			if( binarySubset != binaryAllocation )
-				subsetsKeys.add( binarySubset );
+			parameters[_MARGINAL_VALUE] = _valFactor * gen.nextDouble() + maxMarginalValue;
+			parameters[_THRESHOLD] = Math.floor(maxThreshold + _thresholdFactor * gen.nextDouble());
+			return parameters;
 		}
 		
-		return subsetsKeys;
+		private static final int _MARGINAL_VALUE = 0;			// The index of the marginal value in parameters
+		private static final int _THRESHOLD = 1;				// The index of the threshold in parameters
+		private int _id;										// Agent id
+		private Map<Long, double[]> _parameters;				// Memoized parameters indexed by allocations of DBs
 	}
 	
 	
@@ -134,15 +176,6 @@ public class BuyersGenerator
 	}
 	
 	
-	private int convertToBinary(List<Double> alloc)
-	{
-		int binaryAllocation = 0;
-		for(int i = 0; i < alloc.size(); ++i)
-			binaryAllocation += (int) (alloc.get(i) * Math.pow(2, _numberOfDBs - i - 1));
-		
-		return binaryAllocation;
-	}
-	
 	private int _numberOfDBs;					// Number of DBs
 	private double _endowment;					// Endowment of the buyer
 	private double _valFactor = 2.;
@@ -40,6 +40,8 @@ public class CAXOR implements Auction
 		_numberOfItems = numberOfItems;
 		_allocation = new Allocation();
 		_paymentRule = "VCG";
+		_numberOfThreads = 1;
+		_marginalEconomiesSolver = null;
 		
 		resetTypes(bids);
 	}
@@ -60,6 +62,8 @@ public class CAXOR implements Auction
 		_allocation = new Allocation();
 		_paymentRule = "VCG";
 		_costs = costs;
+		_numberOfThreads = 1;
+		_marginalEconomiesSolver = null;
 		
 		resetTypes(bids);
 	}
@@ -143,6 +147,112 @@ public class CAXOR implements Auction
 		_cplexSolver = solver;
 	}
 	
+	/**
+	 * The method sets up a pool of solver contexts. If the pool is set, the auction checks out a context from the pool
+	 * for the duration of solveIt() (unless a context is already checked out by acquireSolverContext()) and uses its CPLEX
+	 * solver exclusively, so that several auctions can be solved on different threads.
+	 * @param pool a pool of solver contexts
+	 */
+	public void setSolverContextPool(SolverContextPool pool)
+	{
+		_solverContextPool = pool;
+	}
+	
+	/**
+	 * The method checks out a solver context from the pool. The auction uses the solver of the context exclusively until
+	 * releaseSolverContext() is called, so that computations started after solveIt() (e.g., of other payment rules) use
+	 * the same solver. The method has no effect if no pool is set up or if a context is already checked out.
+	 * @throws InterruptedException if the calling thread is interrupted while waiting for a context
+	 * @throws IloException if the solver of the context cannot be instantiated
+	 */
+	public void acquireSolverContext() throws InterruptedException, IloException
+	{
+		if( _solverContextPool == null || _solverContext != null )
+			return;
+		
+		SolverContext context = _solverContextPool.acquire();
+		try
+		{
+			_externalSolver = _cplexSolver;
+			_cplexSolver = context.getSolver();
+			_solverContext = context;
+		}
+		catch(IloException e)
+		{
+			_cplexSolver = _externalSolver;
+			_solverContextPool.release(context);
+			throw e;
+		}
+	}
+	
+	/**
+	 * The method returns the checked out solver context to the pool. The solver set by setSolver() (if any) is used again.
+	 */
+	public void releaseSolverContext()
+	{
+		if( _solverContext == null )
+			return;
+		
+		_cplexSolver = _externalSolver;
+		_externalSolver = null;
+		_solverContextPool.release(_solverContext);
+		_solverContext = null;
+	}
+	
+	/**
+	 * The method makes sure that a solver context is checked out if a pool is set up. A context checked out here is kept
+	 * until releaseSolverContext() is called.
+	 */
+	private void ensureSolverContext()
+	{
+		try
+		{
+			acquireSolverContext();
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while waiting for a solver context.", e);
+		}
+		catch(IloException e)
+		{
+			throw new RuntimeException("Cannot instantiate the solver of a solver context.", e);
+		}
+	}
+	
+	/**
+	 * The method sets up the number of threads used to solve WDPs of marginal economies of VCG payments (also VCG lower
+	 * bounds of core payments). Every additional thread uses its own single-threaded CPLEX instance.
+	 * @param numberOfThreads the number of threads
+	 */
+	public void setNumberOfThreads(int numberOfThreads)
+	{
+		if( numberOfThreads < 1 ) throw new RuntimeException("The number of threads should be positive: " + numberOfThreads);
+		_numberOfThreads = numberOfThreads;
+	}
+	
+	/**
+	 * The method returns the solver of marginal economies shared by payment rules of the auction: the one of the checked
+	 * out solver context (kept by the context across auctions) or the one opened by solveIt().
+	 * @return the solver of marginal economies or null if payment rules should use their own solvers
+	 */
+	private ParallelMarginalEconomiesSolver getMarginalEconomiesSolver()
+	{
+		if( _solverContext != null )
+			return _solverContext.getMarginalEconomiesSolver(_numberOfThreads);
+		return _marginalEconomiesSolver;
+	}
+	
+	/**
+	 * The method sets up a solver for WDP which is used instead of CPLEX (e.g., a pure-Java solver). The solver is
+	 * also used to solve the WDPs of VCG sub-auctions.
+	 * @param solver WDP solver
+	 */
+	public void setWDPSolver(IWinnerDeterminationSolver solver)
+	{
+		_wdpSolver = solver;
+	}
+	
 	/**
 	 * (non-Javadoc)
 	 * @see ch.uzh.ifi.Mechanisms.Auction#resetTypes(java.util.List)
@@ -153,7 +263,8 @@ public class CAXOR implements Auction
 		_bids = agentsTypes;
 		_payments = new ArrayList<Double>();
 		convertAllBidsToBinaryFormat();	
-		_cplexSolver = null;
+		if( _solverContext == null )
+			_cplexSolver = null;
 	}
 	
 	/**
@@ -182,6 +293,33 @@ public class CAXOR implements Auction
 	 */
 	@Override
 	public void solveIt() throws Exception
+	{
+		boolean isCheckedOut = (_solverContext == null);
+		acquireSolverContext();
+		boolean isOwnSolver = (_solverContext == null);
+		if( isOwnSolver )
+			_marginalEconomiesSolver = new ParallelMarginalEconomiesSolver(_numberOfThreads);
+		try
+		{
+			solve();
+		}
+		finally
+		{
+			if( isOwnSolver )
+			{
+				_marginalEconomiesSolver.close();
+				_marginalEconomiesSolver = null;
+			}
+			if( isCheckedOut )
+				releaseSolverContext();
+		}
+	}
+	
+	/**
+	 * The method solves the WDP and computes payments.
+	 * @throws Exception if the payment rule is unknown or payments cannot be computed
+	 */
+	private void solve() throws Exception
 	{
 		if( _paymentRule.equals("VCG_LLG") || _paymentRule.equals("CORE_LLG") || _paymentRule.equals("CORE_SH_LLG") )
 			computeWinnerDeterminationLLG();
@@ -222,116 +360,37 @@ public class CAXOR implements Auction
 	}
 	
 	/*
-	 * The method solves WDP for LLG domain without using CPLEX.
+	 * The method solves WDP for LLG domain without using CPLEX (see LLGKernel.java).
 	 */
 	public void computeWinnerDeterminationLLG()
 	{
 		_allocation = new Allocation();
+		double[] values = new double[LLGKernel.NUMBER_OF_BIDDERS];
+		double[] costs  = new double[LLGKernel.NUMBER_OF_BIDDERS];
+		int bidders = LLGKernel.readBids(_bids, _costs, values, costs);
+		int allocation = LLGKernel.computeAllocation(bidders, values[0] - costs[0], values[1] - costs[1], values[2] - costs[2]);
+		if( allocation == 0 )
+			return;
+		
 		List<Integer> allocatedBidders  = new LinkedList<Integer>();
 		List<Integer> allocatedBundles  = new LinkedList<Integer>();
 		List<Double> buyersValues  		= new LinkedList<Double>();
-
 		double sellerCost = 0.;
-		
-		if( _bids.size() == 3 )
+		for(int i = 0; i < _bids.size(); ++i)
 		{
-			AtomicBid localBundle1 = _bids.get(0).getAtom(0);
-			AtomicBid localBundle2 = _bids.get(1).getAtom(0);
-			AtomicBid globalBundle = _bids.get(2).getAtom(0);
-
-			double values[] = {localBundle1.getValue(), localBundle2.getValue(), globalBundle.getValue()};
-			double costs[]  = {localBundle1.computeCost(_costs), localBundle2.computeCost(_costs), globalBundle.computeCost(_costs)};
-
-			double swLocal1 = values[0] - costs[0];
-			double swLocal2 = values[1] - costs[1];
-			double swGlobal = values[2] - costs[2];
-			_logger.debug("3 bidders. " + "sw1 = " + swLocal1 + " sw2 = " + swLocal2 + " sw3 = " + swGlobal);
-
-			if( swLocal1 >= 0 && swLocal2 >= 0 && swLocal1 + swLocal2 >= swGlobal )	//Allocate to local bidders
-			{
-				_logger.debug("Allocate to local bidders.");
-				sellerCost += addAllocatedAgent(allocatedBidders, allocatedBundles, buyersValues, localBundle1, values[0], costs[0],  0);
-				sellerCost += addAllocatedAgent(allocatedBidders, allocatedBundles, buyersValues, localBundle2, values[1], costs[1],  0);
-			}
-			else if( swLocal1 >= 0 && swLocal2 < 0 && swLocal1 >= swGlobal )
-			{
-				_logger.debug("Allocate to a single local bidder.");
-				sellerCost += addAllocatedAgent(allocatedBidders, allocatedBundles, buyersValues, localBundle1, values[0], costs[0], 0);
-			}
-			else if( swLocal2 >= 0 && swLocal1 < 0 && swLocal2 >= swGlobal )
-			{
-				_logger.debug("Allocate to a single local bidder.");
-				sellerCost += addAllocatedAgent(allocatedBidders, allocatedBundles, buyersValues, localBundle2, values[1], costs[1], 0);
-			}
-			else if( swGlobal >= 0 )
-			{
-				_logger.debug("Allocate to a global bidder.");
-				sellerCost += addAllocatedAgent(allocatedBidders, allocatedBundles, buyersValues, globalBundle, values[2], costs[2], 0);
-			}
+			int k = LLGKernel.getBidderIdx(_bids, i);
+			if( LLGKernel.isAllocated(allocation, k) )
+				sellerCost += addAllocatedAgent(allocatedBidders, allocatedBundles, buyersValues, _bids.get(i).getAtom(0), values[k], costs[k], 0);
 		}
-		else if (_bids.size() == 2)									//Reduced LLG is used when computing, for example, VCG
+		
+		try
 		{
-			_logger.debug("2 bidders.");
-			if( _bids.get(1).getAgentId() == 3)						//If one of bidders is a global bidder
-			{
-				AtomicBid globalBundle = _bids.get(1).getAtom(0);
-				AtomicBid localBundle  = _bids.get(0).getAtom(0);
-				
-				double values[] = {localBundle.getValue(), globalBundle.getValue()};
-				double costs[] = {localBundle.computeCost(_costs), globalBundle.computeCost(_costs)};
-				
-				double sw1 = values[0] - costs[0];
-				double sw2 = values[1] - costs[1];
-				_logger.debug("2 bidders (local+global). " + "sw1 = " + sw1 + " sw2 = " + sw2);
-
-				AtomicBid allocatedBundle = null;
-				int allocatedIdx = 0;
-				if( sw1 >= 0 && sw1 >= sw2 )
-				{
-					allocatedBundle = localBundle;
-					allocatedIdx = 0;
-				}
-				else if( sw2 >= 0 && sw2 >= sw1 )
-				{
-					allocatedBundle = globalBundle;
-					allocatedIdx = 1;
-				}
-				
-				if( allocatedBundle != null )
-					sellerCost += addAllocatedAgent(allocatedBidders, allocatedBundles, buyersValues, allocatedBundle, values[allocatedIdx], costs[allocatedIdx], 0);
-			}
-			else											//Only local bidders
-			{
-				AtomicBid[] bundles = { _bids.get(0).getAtom(0), _bids.get(1).getAtom(0) };
-				double values[] = {bundles[0].getValue(), bundles[1].getValue()};
-				double costs[]  = {bundles[0].computeCost(_costs), bundles[1].computeCost(_costs)};
-				double[] sw = {values[0] - costs[0], values[1] - costs[1]};
-				
-				for(int i = 0; i < 2; ++i)
-					if( sw[i] >= 0 )
-						sellerCost += addAllocatedAgent(allocatedBidders, allocatedBundles, buyersValues, bundles[i], values[i], costs[i], 0);
-			}
+			_allocation.addAllocatedAgent(0, allocatedBidders, allocatedBundles, sellerCost, buyersValues);
 		}
-		else
+		catch (Exception e) 
 		{
-			AtomicBid bundle = _bids.get(0).getAtom(0);
-			double value = bundle.getValue();
-			double cost = bundle.computeCost(_costs);
-			double sw = value - cost;
-			
-			if(sw >= 0)
-				sellerCost += addAllocatedAgent(allocatedBidders, allocatedBundles, buyersValues, bundle, value, cost, 0);
+			e.printStackTrace();
 		}
-		
-		if(allocatedBundles.size() > 0)
-			try
-			{
-				_allocation.addAllocatedAgent(0, allocatedBidders, allocatedBundles, sellerCost, buyersValues);
-			}
-			catch (Exception e) 
-			{
-				e.printStackTrace();
-			}
 	}
 	
 	/**
@@ -339,6 +398,13 @@ public class CAXOR implements Auction
 	 */
 	public void computeWinnerDetermination() throws IloException //throws Exception
 	{
+		if( _wdpSolver != null )
+		{
+			computeWinnerDetermination(_wdpSolver);
+			return;
+		}
+		
+		ensureSolverContext();
 		if( _cplexSolver == null)
 			_cplexSolver = new IloCplex();
 		else
@@ -381,16 +447,12 @@ public class CAXOR implements Auction
 		{
 			IloNumExpr constraint = _cplexSolver.constant(0);
 			
-			for(int j = 0; j < _numberOfAgents; ++j)
+			int[] bidders = _binaryBids.getBiddersOfItem(i);				//Only atoms containing the i-th item ( itemId = i+1)
+			int[] atoms = _binaryBids.getAtomsOfItem(i);
+			for(int k = 0; k < bidders.length; ++k)
 			{
-				int[][] binaryBid = _binaryBids.get(j);
-				List<IloNumVar> varI = (List<IloNumVar>)(variables.get(j));
-				for( int q = 0; q < varI.size(); ++q )
-					if( binaryBid[q][i] > 0)
-					{
-						IloNumExpr term = _cplexSolver.prod(binaryBid[q][i], varI.get(q));
-						constraint = _cplexSolver.sum(constraint, term);
-					}
+				IloNumExpr term = _cplexSolver.prod(1., variables.get(bidders[k]).get(atoms[k]));
+				constraint = _cplexSolver.sum(constraint, term);
 			}
 			lp.addRow( _cplexSolver.ge(1.0, constraint, "Item_"+i) );
 		}
@@ -444,6 +506,49 @@ public class CAXOR implements Auction
 			}
 	}
 	
+	/**
+	 * The method solves the WDP using the specified solver.
+	 * @param solver WDP solver
+	 */
+	private void computeWinnerDetermination(IWinnerDeterminationSolver solver)
+	{
+		double[][] weights = new double[_numberOfAgents][];
+		for(int i = 0; i < _numberOfAgents; ++i)
+		{
+			Type bid = _bids.get(i);
+			weights[i] = new double[bid.getNumberOfAtoms()];
+			for(int j = 0; j < bid.getNumberOfAtoms(); ++j)
+				weights[i][j] = bid.getAtom(j).getValue() - bid.getAtom(j).computeCost(_costs);
+		}
+		
+		int[] allocatedAtoms = solver.solve(weights, _binaryBids);
+		
+		_allocation = new Allocation();
+		List<Integer> allocatedBidders = new LinkedList<Integer>();
+		List<Integer> allocatedBundles = new LinkedList<Integer>();
+		List<Double> buyersValues      = new LinkedList<Double>();
+		double sellerCost = 0.;
+		
+		for(int i = 0; i < _numberOfAgents; ++i)
+			if( allocatedAtoms[i] >= 0 )
+			{
+				AtomicBid atom = _bids.get(i).getAtom( allocatedAtoms[i] );
+				sellerCost += addAllocatedAgent(allocatedBidders, allocatedBundles, buyersValues, atom, atom.getValue(), atom.computeCost(_costs), allocatedAtoms[i]);
+			}
+		
+		if(allocatedBundles.size() > 0)
+			try 
+			{
+				_logger.debug("Allocated bidders: " + allocatedBidders);
+				_logger.debug("Allocated bundles: " + allocatedBundles);
+				_allocation.addAllocatedAgent(0, allocatedBidders, allocatedBundles, sellerCost, buyersValues);
+			}
+			catch (Exception e)
+			{
+				e.printStackTrace();
+			}
+	}
+	
 	/**
 	 * The method computes bidder optimal core payments.
 	 * @return a list of payments of allocated agents.
@@ -456,7 +561,10 @@ public class CAXOR implements Auction
 			units.add(1);
 				
 		CorePayments paymentRule = new CorePayments( _allocation, _bids, units, _numberOfItems, _binaryBids, _costs);
+		ensureSolverContext();
 		paymentRule.setSolver(_cplexSolver);
+		paymentRule.setNumberOfThreads(_numberOfThreads);
+		paymentRule.setMarginalEconomiesSolver(getMarginalEconomiesSolver());
 		try 
 		{
 			_payments = paymentRule.computePayments();
@@ -494,7 +602,13 @@ public class CAXOR implements Auction
 		for(int i = 0; i < _numberOfItems; ++i)
 			units.add(1);
 		
-		IPaymentRule paymentRule = new VCGPayments(_allocation, _bids, units, _numberOfItems, _costs);
+		VCGPayments paymentRule = new VCGPayments(_allocation, _bids, units, _numberOfItems, _costs);
+		ensureSolverContext();
+		paymentRule.setSolver(_cplexSolver);
+		if( _wdpSolver != null )
+			paymentRule.setWDPSolver(_wdpSolver);
+		paymentRule.setNumberOfThreads(_numberOfThreads);
+		paymentRule.setMarginalEconomiesSolver(getMarginalEconomiesSolver());
 		try 
 		{
 			_payments = paymentRule.computePayments();
@@ -582,40 +696,11 @@ public class CAXOR implements Auction
 	}
 	
 	/**
-	 * The method converts bids of all agents into a binary matrix form.
+	 * The method converts bids of all agents into the binary (bitset) format.
 	 */
 	private void convertAllBidsToBinaryFormat()
 	{
-		_binaryBids = new LinkedList<int[][]>();						//The list contains bids of all agents in a binary format
-		for(int i = 0; i < _bids.size(); ++i)
-		{
-			Type bid = _bids.get(i);									//The bid of the i-th bidder
-			int[][] binaryBid = new int[bid.getNumberOfAtoms()][_numberOfItems];	//The binary representation of a bid is used to build constraints
-	
-			convertBidToBinaryForm(binaryBid, bid.getNumberOfAtoms(), _numberOfItems, bid);
-			_binaryBids.add(binaryBid);
-		}
-	}
-	
-	/**
-	 * The method converts an input bid into a binary format. In the binary format the bid is represented as a matrix A [M x K],
-	 * where M is the number of atomic bids in the XOR bid and k is the number of items in the CA. A[i][j] = 1 if a package i 
-	 * contains an item j and 0 otherwise. 
-	 * @param binary bid - the result will be stored in this matrix
-	 * @param numberOfRows - the number of rows of the binaryBid (is equal to the number of atomic bids in the bid)
-	 * @param bid - an XOR bid
-	 */
-	private void convertBidToBinaryForm(int binaryBid[][], int numberOfRows, int numberOfColumns, Type bid )
-	{
-		for(int i = 0; i < numberOfRows; ++i)
-		{
-			List<Integer> itemsSet = bid.getAtom(i).getInterestingSet();
-			List<Integer> items = new LinkedList<Integer>();
-			for(Integer item : itemsSet)
-				items.add(item);
-			for(int j = 0; j < items.size(); ++j)
-				binaryBid[i][(int)(items.get(j))-1 ]  = 1;
-		}
+		_binaryBids = new BinaryBids(_bids, _numberOfItems);				//Bids of all agents in the binary format
 	}
 	
 	/**
@@ -713,13 +798,19 @@ public class CAXOR implements Auction
 	private int _numberOfItems;										//The number of different items to be sold
 	private List<Double> _costs;									//Seller's costs of items
 	private List<Type> _bids;										//Bids submitted by agents
-	private List<int[][]> _binaryBids;								//Bids converted into a binary matrix format
+	private BinaryBids _binaryBids;									//Bids converted into a binary (bitset) format
 
 	private List<Double> _payments;
 	private Allocation _allocation;
 	private JointProbabilityMass _jpmf;
 	
 	private IloCplex _cplexSolver;
+	private SolverContextPool _solverContextPool;					//A pool of solver contexts (the solver set by setSolver() is used if null)
+	private SolverContext _solverContext;							//The checked out solver context (null if none)
+	private IloCplex _externalSolver;								//The solver set by setSolver(), used again once the context is released
+	private IWinnerDeterminationSolver _wdpSolver;					//A non-CPLEX solver for WDP (CPLEX is used if null)
+	private int _numberOfThreads;									//The number of threads used to solve WDPs of marginal economies
+	private ParallelMarginalEconomiesSolver _marginalEconomiesSolver;	//The solver of marginal economies opened by solveIt() (null if none)
 	
 	private double _vcgToValueRatio;								//Used for benchmarking
 	private double _revenueRatio;									//Used for benchmarking
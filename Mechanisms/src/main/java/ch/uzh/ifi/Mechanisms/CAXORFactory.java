@@ -32,6 +32,7 @@ public class CAXORFactory implements IMechanismFactory
 		_numberOfItems = numberOfItems;
 		_costsRanges = costsLimits;
 		_cplexSolver = solver;
+		_numberOfThreads = 1;
 	}
 	
 	/**
@@ -44,6 +45,26 @@ public class CAXORFactory implements IMechanismFactory
 		_cplexSolver = solver;
 	}
 
+	/**
+	 * (non-Javadoc)
+	 * @see ch.uzh.ifi.Mechanisms.IMechanismFactory#setSolverContextPool(ch.uzh.ifi.Mechanisms.SolverContextPool)
+	 */
+	@Override
+	public void setSolverContextPool(SolverContextPool pool)
+	{
+		_solverContextPool = pool;
+	}
+
+	/**
+	 * The method sets up the number of threads used by produced auctions to solve WDPs of marginal economies of VCG-like
+	 * payment rules (see CAXOR.setNumberOfThreads()).
+	 * @param numberOfThreads the number of threads
+	 */
+	public void setNumberOfThreads(int numberOfThreads)
+	{
+		_numberOfThreads = numberOfThreads;
+	}
+
 	/**
 	 * (non-Javadoc)
 	 * @see ch.uzh.ifi.Mechanisms.IMechanismFactory#produceMechanism(java.util.List)
@@ -73,7 +94,11 @@ public class CAXORFactory implements IMechanismFactory
 		
 		CAXOR ca = new CAXOR(bids.size(), _numberOfItems, bids, costs);
 		ca.setPaymentRule(_paymentRule);
-		ca.setSolver(_cplexSolver);
+		if( _solverContextPool != null )
+			ca.setSolverContextPool(_solverContextPool);
+		else
+			ca.setSolver(_cplexSolver);
+		ca.setNumberOfThreads(_numberOfThreads);
 		//ca.setSeed(seed);
 		return ca;
 	}
@@ -103,4 +128,6 @@ public class CAXORFactory implements IMechanismFactory
 	private String _paymentRule;					//A payment rule used in the auction produced by this factory
 	private List<Double> _costsRanges;				//Range for costs
 	private IloCplex _cplexSolver;
+	private SolverContextPool _solverContextPool;	//A pool of solver contexts used by produced auctions (can be null)
+	private int _numberOfThreads;					//The number of threads used by produced auctions to solve marginal economies
 }
@@ -0,0 +1,687 @@
+package ch.uzh.ifi.Mechanisms;
+
+import ilog.concert.IloException;
+import ilog.concert.IloLPMatrix;
+import ilog.concert.IloLinearNumExpr;
+import ilog.concert.IloNumExpr;
+import ilog.concert.IloNumVar;
+import ilog.concert.IloNumVarType;
+import ilog.concert.IloObjective;
+import ilog.concert.IloRange;
+import ilog.cplex.IloCplex;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import ch.uzh.ifi.MechanismDesignPrimitives.Allocation;
+import ch.uzh.ifi.MechanismDesignPrimitives.Type;
+
+/**
+ * The class implements the constraint generation technique proposed by Day et al. for computing core-selecting payments.
+ * Lower and upper bounds of payments and coefficients of the separation problem (SEP) are obtained from a provider
+ * (see ICoreConstraintProvider.java), so that the same engine is used by all core-selecting payment rules.
+ * The payments LP/QP is kept in one solver and only new core constraints are added to it at every iteration.
+ * The SEP is built once in another solver and only its objective coefficients are updated between iterations.
+ */
+public class CoreConstraintGenerationEngine
+{
+
+	private static final Logger _logger = LogManager.getLogger(CoreConstraintGenerationEngine.class);
+
+	/**
+	 * Constructor
+	 * @param allocation allocation of the auction
+	 * @param numberOfBidders number of bidders in the auction
+	 * @param numberOfItems number of goods in the auction
+	 * @param bids bids of bidders
+	 * @param binaryBids binary form of bids of agents
+	 * @param provider a provider of bounds and SEP coefficients
+	 */
+	public CoreConstraintGenerationEngine(Allocation allocation, int numberOfBidders, int numberOfItems, List<Type> bids,
+			                              BinaryBids binaryBids, ICoreConstraintProvider provider)
+	{
+		_allocation = allocation;
+		_numberOfBidders = numberOfBidders;
+		_numberOfItems = numberOfItems;
+		_bids = bids;
+		_binaryBids = binaryBids;
+		_provider = provider;
+		_cplexSolver = null;
+		_sepSolver = null;
+		_isExternalSolver = false;
+		_isExternalSEPSolver = false;
+		_emptyCoreTolerance = 0.;
+	}
+
+	/**
+	 * The method sets up the solver for the payments LP/QP. The solver is also used by the provider
+	 * to compute lower bounds.
+	 * @param solver CPLEX solver
+	 */
+	public void setSolver(IloCplex solver)
+	{
+		_cplexSolver = solver;
+		_isExternalSolver = true;
+	}
+
+	/**
+	 * The method sets up the solver for the separation problem. The solver must not be shared with the payments LP/QP.
+	 * @param solver CPLEX solver
+	 */
+	public void setSEPSolver(IloCplex solver)
+	{
+		_sepSolver = solver;
+		_isExternalSEPSolver = true;
+	}
+
+	/**
+	 * The method sets up the tolerance of the check of lower bounds against upper bounds, i.e., the core is reported
+	 * empty if a lower bound exceeds the corresponding upper bound by more than the tolerance. By default, the check is
+	 * strict (as in EC-CORE, ECC-CORE, ECR-CORE and Exp-CORE) while CORE tolerates numerical errors of VCG payments.
+	 * @param tolerance the tolerance
+	 */
+	public void setEmptyCoreTolerance(double tolerance)
+	{
+		_emptyCoreTolerance = tolerance;
+	}
+
+	/**
+	 * The method computes core-selecting payments of winners.
+	 * @return a list of payments of winners
+	 * @throws PaymentException if the core is empty or if the lower bounds are in the core
+	 * @throws Exception if lower bounds cannot be computed
+	 */
+	public List<Double> computePayments() throws PaymentException, Exception
+	{
+		_logger.debug("-> computePayments()");
+		long tStart = System.nanoTime();
+		resetCounters();
+
+		if( _cplexSolver == null )
+			_cplexSolver = new IloCplex();
+		if( _sepSolver == null )
+			_sepSolver = new IloCplex();
+		_cplexSolver.setOut(null);
+		_sepSolver.setOut(null);
+
+		try
+		{
+			List<Double> lowerBounds = _provider.computeLowerBounds();
+			_payments = lowerBounds;
+			_logger.debug("Lower bounds: " + lowerBounds.toString());
+			_cplexSolver.clearModel();
+
+			init(lowerBounds);
+			runConstraintGeneration(lowerBounds);
+		}
+		finally
+		{
+			release();
+			_totalTime = System.nanoTime() - tStart;
+			_logger.debug("Iterations: " + _numberOfIterations + "; LP time: " + _lpTime + "ns; QP time: " + _qpTime + "ns; SEP time: " + _sepTime + "ns");
+		}
+
+		if( _numberOfIterations == 0 )
+		{
+			_logger.debug("VCG is in the core => throwing an exception");
+			throw new PaymentException("VCG is in the Core", 0, _payments);
+		}
+
+		_logger.debug("<- computePayments()");
+		return _payments;
+	}
+
+	/**
+	 * The method initializes data structures used in the main loop of the constraint generation.
+	 * @param lowerBounds lower bounds of payments of winners
+	 * @throws PaymentException if a lower bound is higher than the corresponding upper bound
+	 */
+	private void init(List<Double> lowerBounds) throws PaymentException
+	{
+		int numberOfWinners = _allocation.getBiddersInvolved(0).size();
+		_lowerBounds = new double[numberOfWinners];
+		_upperBounds = new double[numberOfWinners];
+		_currentPayments = new double[numberOfWinners];
+		_isInCoalition = new boolean[numberOfWinners];
+
+		for(int i = 0; i < numberOfWinners; ++i)
+		{
+			_lowerBounds[i] = lowerBounds.get(i);
+			_upperBounds[i] = _provider.computeUpperBound(i);
+			_currentPayments[i] = _lowerBounds[i];
+
+			if( _lowerBounds[i] > _upperBounds[i] + _emptyCoreTolerance )
+			{
+				_logger.warn("Empty Core. The lower bound " + _lowerBounds[i] + " is higher than the upper bound " + _upperBounds[i] + ". Lower bounds:" + lowerBounds.toString());
+				_logger.warn("Bids: " + _bids.toString());
+				throw new PaymentException("Empty Core", 0);
+			}
+		}
+
+		_winnerIdxOfBidder = new int[_numberOfBidders];
+		for(int i = 0; i < _numberOfBidders; ++i)
+			_winnerIdxOfBidder[i] = _allocation.getBiddersInvolved(0).indexOf( _bids.get(i).getAgentId() );
+	}
+
+	/**
+	 * The method implements the main loop of the constraint generation.
+	 * @param lowerBounds lower bounds of payments of winners
+	 * @throws PaymentException if the core is empty
+	 * @throws IloException if CPLEX fails
+	 */
+	private void runConstraintGeneration(List<Double> lowerBounds) throws PaymentException, IloException
+	{
+		int numberOfWinners = _lowerBounds.length;
+		boolean isGammaS = _provider.isGammaSFormulation();
+
+		double z = computeSEP(_currentPayments);
+		double totalPayment = computeTotalPayment(_currentPayments);
+		_logger.debug("z="+z + ". Total payment=" + totalPayment);
+
+		IloLPMatrix lp = _cplexSolver.addLPMatrix();
+		IloNumVar[] pi = new IloNumVar[numberOfWinners];
+		IloLinearNumExpr objectiveLP = _cplexSolver.linearNumExpr(1e-12);
+		IloNumExpr objectiveQP = _cplexSolver.constant(1e-12);
+
+		//Create optimization variables and formulate the objective function
+		for(int i = 0; i < numberOfWinners; ++i)
+		{
+			pi[i] = _cplexSolver.numVar(Math.min(_lowerBounds[i], _upperBounds[i]), _upperBounds[i], IloNumVarType.Float, "pi_" + _allocation.getBiddersInvolved(0).get(i));
+			objectiveLP.addTerm(1., pi[i]);
+
+			IloNumExpr term = _cplexSolver.sum(-1*_lowerBounds[i], pi[i]);
+			objectiveQP = _cplexSolver.sum(objectiveQP, _cplexSolver.prod(term, term));
+		}
+
+		IloObjective objective = _cplexSolver.addMinimize(objectiveLP);
+
+		//The equality constraint of the QP is kept in the model and is relaxed while the LP is solved
+		IloRange muConstraint = _cplexSolver.range(-Double.MAX_VALUE, objectiveLP, Double.MAX_VALUE, "mu");
+		lp.addRow(muConstraint);
+
+		while( isGammaS ? z > _TOL : z > totalPayment + _TOL )
+		{
+			long tIteration = System.nanoTime();
+			_logger.debug("z="+z+" totalPayment="+totalPayment );
+
+			//Create a new core constraint
+			IloLinearNumExpr constraint = _cplexSolver.linearNumExpr();
+			double paymentsInCoalition = 0.;
+			double paymentsOutOfCoalition = 0.;
+			for(int i = 0; i < numberOfWinners; ++i)
+				if( _isInCoalition[i] )
+					paymentsInCoalition += _currentPayments[i];
+				else
+				{
+					constraint.addTerm(1., pi[i]);
+					paymentsOutOfCoalition += _currentPayments[i];
+				}
+
+			double rhs = isGammaS ? z + paymentsOutOfCoalition : z - paymentsInCoalition + _totalCost;
+			lp.addRow( _cplexSolver.le(rhs, constraint, "c"+_numberOfIterations));
+			_numberOfIterations += 1;
+
+			//---------------------------------------------
+			//Linear Programming Problem:
+			//---------------------------------------------
+			long t1 = System.nanoTime();
+			try
+			{
+				_cplexSolver.solve();
+			}
+			catch (IloException e1)
+			{
+				e1.printStackTrace();
+			}
+
+			double mu = -1.;
+			try
+			{
+				mu = _cplexSolver.getObjValue();
+			}
+			catch (IloException e1)
+			{
+				if(e1.getMessage().contains("CPLEX Error  1217: No solution exists.") )
+				{
+					_logger.debug("Empty Core. z="+z+" totalPayment="+totalPayment + "; blocking coalition: " + _blockingCoalition.toString());
+					_logger.debug("Bids: " + _bids.toString());
+					_logger.debug("Lower bounds: " + lowerBounds.toString());
+					throw new PaymentException("Empty Core", 1);
+				}
+				else
+				{
+					_logger.warn("Bids: " + _bids.toString());
+					_logger.warn("Lower bounds: " + lowerBounds.toString());
+					_logger.warn("Blocking coalition: " + _blockingCoalition.toString() + " with z="+z);
+					_logger.warn("Total payment: " + totalPayment);
+					e1.printStackTrace();
+				}
+			}
+			_lpTime += System.nanoTime() - t1;
+
+			//---------------------------------------------
+			//Quadratic Programming Problem:
+			//---------------------------------------------
+			t1 = System.nanoTime();
+			muConstraint.setBounds(mu-1e-4, mu+1e-4);
+			objective.setExpr(objectiveQP);
+
+			_cplexSolver.solve();
+			_distanceToLowerBounds = _cplexSolver.getObjValue();
+
+			_payments = new ArrayList<Double>(numberOfWinners);
+			for(int i = 0; i < numberOfWinners; ++i)
+				try
+				{
+					_currentPayments[i] = _cplexSolver.getValue(pi[i]);		//Linear payments
+					_payments.add( _currentPayments[i] );
+				}
+				catch (IloException e)
+				{
+					_logger.warn("Bids: " + _bids.toString());
+					_logger.warn("Lower bounds: " + lowerBounds.toString());
+					_logger.warn("Blocking coalition: " + _blockingCoalition.toString() + " with z="+z);
+					_logger.warn("Total payment: " + totalPayment);
+					e.printStackTrace();
+				}
+			_logger.debug("New payments: " + _payments.toString());
+
+			muConstraint.setBounds(-Double.MAX_VALUE, Double.MAX_VALUE);	//Relax the equality constraint of the QP problem
+			objective.setExpr(objectiveLP);
+			_qpTime += System.nanoTime() - t1;
+
+			z = computeSEP(_currentPayments);
+			totalPayment = computeTotalPayment(_currentPayments);
+			_iterationTimes.add( System.nanoTime() - tIteration );
+		}
+	}
+
+	/**
+	 * The method solves the separation problem. The SEP is built at the first call. Subsequent calls only update
+	 * objective coefficients which depend on payments. If none of the coefficients changed, the previous solution is reused.
+	 * @param paymentsT payments of winners
+	 * @return the coalitional value of the most blocking coalition
+	 * @throws IloException if CPLEX fails
+	 */
+	private double computeSEP(double[] paymentsT) throws IloException
+	{
+		long t1 = System.nanoTime();
+		if( !_isSEPModelBuilt )
+			buildSEP();
+
+		boolean isChanged = updateSEPObjective(paymentsT);
+		if( isChanged || !_isSEPSolved )
+		{
+			try
+			{
+				_sepSolver.solve();
+			}
+			catch (IloException e)
+			{
+				_logger.error(_bids.toString());
+				e.printStackTrace();
+			}
+
+			_blockingCoalition = new ArrayList<Integer>();
+			for(int j = 0; j < _isInCoalition.length; ++j)
+				_isInCoalition[j] = false;
+
+			for(int i = 0; i < _numberOfBidders; ++i)
+				for(int j = 0; j < _sepVariables[i].length; ++j)
+					if(Math.abs(_sepSolver.getValue(_sepVariables[i][j]) - 1.0) < 1e-6)
+					{
+						_blockingCoalition.add( _bids.get(i).getAgentId() );
+						if( _winnerIdxOfBidder[i] >= 0 )
+							_isInCoalition[ _winnerIdxOfBidder[i] ] = true;
+					}
+			_sepObjValue = _sepSolver.getObjValue();
+			_isSEPSolved = true;
+			_numberOfSEPSolves += 1;
+		}
+		_logger.debug("Blocking coalition: " + _blockingCoalition.toString() + ". Coalitional value is " + _sepObjValue );
+		_sepTime += System.nanoTime() - t1;
+		return _sepObjValue;
+	}
+
+	/**
+	 * The method builds the SEP model. Objective coefficients which depend on payments are set by updateSEPObjective(...).
+	 * @throws IloException if the model cannot be built
+	 */
+	private void buildSEP() throws IloException
+	{
+		_logger.debug("-> buildSEP()");
+		_sepSolver.clearModel();
+		boolean isGammaS = _provider.isGammaSFormulation();
+		int numberOfWinners = _lowerBounds.length;
+
+		_sepVariables = new IloNumVar[_numberOfBidders][];					//i-th row contains the variables corresponding to the i-th agent
+		_sepGammaVariables = new IloNumVar[numberOfWinners];				//Variables for winners of WDP willing to join a coalition
+		_sepGammaCoefficients = new double[numberOfWinners];
+		_winnersValues = new double[numberOfWinners];
+		_winnersCosts = new double[numberOfWinners];
+
+		//Create optimization variables and formulate an objective function
+		IloLinearNumExpr objective = _sepSolver.linearNumExpr();
+		IloLPMatrix lp = _sepSolver.addLPMatrix();
+
+		for(int i = 0; i < _numberOfBidders; ++i)							//For every bidder ...
+		{
+			int numberOfAtoms = _bids.get(i).getNumberOfAtoms();
+			_sepVariables[i] = new IloNumVar[numberOfAtoms];				//Create a new variable per atomic bid
+			for(int j = 0; j < numberOfAtoms; ++j )							//For every atomic bid ...
+			{
+				_sepVariables[i][j] = _sepSolver.numVar(0, 1, IloNumVarType.Int, "x" + i + "_" + j);
+				objective.addTerm(_provider.computeSEPCoefficient(i, j), _sepVariables[i][j]);
+			}
+		}
+
+		_totalCost = 0.;
+		for(int j = 0; j < numberOfWinners; ++j)
+		{
+			_winnersValues[j] = _provider.computeWinnersSEPValue(j);
+			_winnersCosts[j] = _provider.computeWinnersSEPCost(j);
+			_totalCost += _winnersCosts[j];
+
+			_sepGammaVariables[j] = _sepSolver.numVar(0, 1, IloNumVarType.Int, "Gamma_" + j);
+			_sepGammaCoefficients[j] = Double.NaN;
+			objective.addTerm(0., _sepGammaVariables[j]);
+		}
+
+		if( isGammaS )
+		{
+			_sepGammaS = _sepSolver.numVar(0, 1, IloNumVarType.Int, "Gamma_S");
+			_sepGammaSCoefficient = Double.NaN;
+			objective.addTerm(0., _sepGammaS);
+		}
+		else
+			objective.setConstant(_totalCost);								//The cost of the seller if no winner joins the coalition
+
+		_sepObjective = _sepSolver.addMaximize(objective);
+
+		//Create optimization constraints for ITEMS:
+		for(int i = 0; i < _numberOfItems; ++i)
+		{
+			IloLinearNumExpr constraint = _sepSolver.linearNumExpr();
+			int[] bidders = _binaryBids.getBiddersOfItem(i);
+			int[] atoms = _binaryBids.getAtomsOfItem(i);
+			for(int k = 0; k < bidders.length; ++k)
+				constraint.addTerm(1., _sepVariables[bidders[k]][atoms[k]]);
+
+			if( isGammaS )
+			{
+				IloNumVar y = _sepSolver.numVar(0, 1, IloNumVarType.Int, "y_"+i);
+				constraint.addTerm(-1., y);
+				lp.addRow( _sepSolver.eq(0, constraint,  "Item_"+i) );
+			}
+			else
+				lp.addRow( _sepSolver.range(0, constraint, 1.0, "Item_"+i) );
+		}
+
+		//Create optimization constraints for XOR:
+		for(int i = 0; i < _numberOfBidders; ++i)
+		{
+			IloLinearNumExpr constraint = _sepSolver.linearNumExpr();
+			for(IloNumVar x : _sepVariables[i])
+				constraint.addTerm(1., x);
+
+			int itsIdx = _winnerIdxOfBidder[i];
+			if( itsIdx >= 0 )
+			{
+				constraint.addTerm(-1., _sepGammaVariables[itsIdx]);
+
+				if( isGammaS )
+				{
+					//Constraint for Gamma_S:   GammaI <= GammaS
+					IloLinearNumExpr constraintGamma = _sepSolver.linearNumExpr();
+					constraintGamma.addTerm(1., _sepGammaVariables[itsIdx]);
+					constraintGamma.addTerm(-1., _sepGammaS);
+					IloNumVar y = _sepSolver.numVar(0, Double.MAX_VALUE, IloNumVarType.Int, "y_GammaS"+i);
+					constraintGamma.addTerm(1., y);
+					lp.addRow( _sepSolver.eq(0., constraintGamma, "GammaS_"+i) );
+				}
+			}
+			else if( isGammaS )
+			{
+				//Constraint for Gamma_S:   x_{i1} + x_{i2} + ... <= GammaS
+				IloLinearNumExpr constraintGamma = _sepSolver.linearNumExpr();
+				for(IloNumVar x : _sepVariables[i])
+					constraintGamma.addTerm(1., x);
+				constraintGamma.addTerm(-1., _sepGammaS);
+				lp.addRow( _sepSolver.ge(0., constraintGamma, "GammaS_"+i) );
+			}
+
+			IloRange range1 = _sepSolver.ge(itsIdx >= 0 ? 0. : 1., constraint, "Bidder"+i+"_1");
+			try
+			{
+				lp.addRow(range1);
+			}
+			catch (IloException e)
+			{
+				_logger.error("Cannot add the following constraint: ");
+				_logger.error("" + range1.toString());
+				_logger.error("LP matrix: ");
+				_logger.error(lp.toString());
+				_logger.error("Bids: " + _bids.toString());
+				throw e;
+			}
+		}
+
+		_isSEPModelBuilt = true;
+		_isSEPSolved = false;
+		_logger.debug("SEP: " + _sepSolver.toString());
+		_logger.debug("<- buildSEP()");
+	}
+
+	/**
+	 * The method updates objective coefficients of the SEP which depend on payments of winners.
+	 * @param paymentsT payments of winners
+	 * @return true if at least one coefficient has changed
+	 * @throws IloException if the coefficients cannot be updated
+	 */
+	private boolean updateSEPObjective(double[] paymentsT) throws IloException
+	{
+		boolean isChanged = false;
+		boolean isGammaS = _provider.isGammaSFormulation();
+		for(int j = 0; j < _sepGammaVariables.length; ++j)
+		{
+			double coef = isGammaS ? -1*(_winnersValues[j] - paymentsT[j]) : -1*(_winnersValues[j] + _winnersCosts[j]);
+			if( coef != _sepGammaCoefficients[j] )
+			{
+				_sepSolver.setLinearCoef(_sepObjective, coef, _sepGammaVariables[j]);
+				_sepGammaCoefficients[j] = coef;
+				isChanged = true;
+			}
+		}
+
+		if( isGammaS )
+		{
+			double coef = -1 * ( computeTotalPayment(paymentsT) - _totalCost );
+			if( coef != _sepGammaSCoefficient )
+			{
+				_sepSolver.setLinearCoef(_sepObjective, coef, _sepGammaS);
+				_sepGammaSCoefficient = coef;
+				isChanged = true;
+			}
+		}
+		return isChanged;
+	}
+
+	/**
+	 * The method releases the models. Solvers instantiated by the engine are terminated.
+	 */
+	private void release()
+	{
+		try
+		{
+			if( _cplexSolver != null )
+				_cplexSolver.clearModel();
+			if( _sepSolver != null )
+				_sepSolver.clearModel();
+		}
+		catch (IloException e)
+		{
+			e.printStackTrace();
+		}
+
+		if( _cplexSolver != null && !_isExternalSolver )
+		{
+			_cplexSolver.end();
+			_cplexSolver = null;
+		}
+		if( _sepSolver != null && !_isExternalSEPSolver )
+		{
+			_sepSolver.end();
+			_sepSolver = null;
+		}
+		_isSEPModelBuilt = false;
+		_isSEPSolved = false;
+	}
+
+	/**
+	 * The method resets timing counters.
+	 */
+	private void resetCounters()
+	{
+		_numberOfIterations = 0;
+		_numberOfSEPSolves = 0;
+		_lpTime = 0;
+		_qpTime = 0;
+		_sepTime = 0;
+		_totalTime = 0;
+		_iterationTimes = new ArrayList<Long>();
+		_distanceToLowerBounds = 0.;
+	}
+
+	/**
+	 * The method computes total payment.
+	 * @param payments payments of winners
+	 * @return the sum of payments
+	 */
+	private double computeTotalPayment(double[] payments)
+	{
+		double total = 0.;
+		for(double p : payments)
+			total += p;
+		return total;
+	}
+
+	/**
+	 * The method returns the squared Euclidean distance between the lower bounds and the computed payments.
+	 * @return the optimal value of the QP at the last iteration
+	 */
+	public double getDistanceToLowerBounds()
+	{
+		return _distanceToLowerBounds;
+	}
+
+	/**
+	 * The method returns the number of core constraints added to the LP.
+	 * @return the number of iterations of the constraint generation
+	 */
+	public int getNumberOfIterations()
+	{
+		return _numberOfIterations;
+	}
+
+	/**
+	 * The method returns the number of times the SEP was actually solved by CPLEX.
+	 * @return the number of SEP solves
+	 */
+	public int getNumberOfSEPSolves()
+	{
+		return _numberOfSEPSolves;
+	}
+
+	/**
+	 * The method returns the total time spent solving LPs.
+	 * @return time in nanoseconds
+	 */
+	public long getLPTime()
+	{
+		return _lpTime;
+	}
+
+	/**
+	 * The method returns the total time spent solving QPs.
+	 * @return time in nanoseconds
+	 */
+	public long getQPTime()
+	{
+		return _qpTime;
+	}
+
+	/**
+	 * The method returns the total time spent building and solving the SEP.
+	 * @return time in nanoseconds
+	 */
+	public long getSEPTime()
+	{
+		return _sepTime;
+	}
+
+	/**
+	 * The method returns the total time of the last payments computation (including lower bounds).
+	 * @return time in nanoseconds
+	 */
+	public long getTotalTime()
+	{
+		return _totalTime;
+	}
+
+	/**
+	 * The method returns durations of individual iterations of the constraint generation.
+	 * @return a list of durations in nanoseconds
+	 */
+	public List<Long> getIterationTimes()
+	{
+		return _iterationTimes;
+	}
+
+	private Allocation _allocation;										//Allocation of the auction
+	private int _numberOfBidders;										//The number of bidders in the auction
+	private int _numberOfItems;											//The number of goods in the auction
+	private List<Type> _bids;											//Bids of bidders
+	private BinaryBids _binaryBids;										//Bids converted into a binary (bitset) format
+	private ICoreConstraintProvider _provider;							//A provider of bounds and SEP coefficients
+	private List<Double> _payments;										//A list of payments to be computed
+
+	private IloCplex _cplexSolver;										//CPLEX solver for the payments LP/QP
+	private IloCplex _sepSolver;										//CPLEX solver for the SEP
+	private boolean _isExternalSolver;									//True if the LP/QP solver was provided by the caller
+	private boolean _isExternalSEPSolver;								//True if the SEP solver was provided by the caller
+	private double _emptyCoreTolerance;									//Tolerance of the check of lower bounds against upper bounds
+
+	private double[] _lowerBounds;										//Lower bounds of payments of winners
+	private double[] _upperBounds;										//Upper bounds of payments of winners
+	private double[] _currentPayments;									//Payments of winners at the current iteration
+	private boolean[] _isInCoalition;									//Winners within the current blocking coalition
+	private int[] _winnerIdxOfBidder;									//An index of a bidder in the allocation or -1 if the bidder is not allocated
+	private List<Integer> _blockingCoalition;							//IDs of agents within the current blocking coalition
+
+	private boolean _isSEPModelBuilt;									//True if the SEP model is built for the current allocation
+	private boolean _isSEPSolved;										//True if the SEP was solved at least once
+	private double _sepObjValue;										//The optimal value of the last solved SEP
+	private IloObjective _sepObjective;									//Objective of the SEP
+	private IloNumVar[][] _sepVariables;								//SEP variables per atom of every bidder
+	private IloNumVar[] _sepGammaVariables;								//SEP gamma-variables of winners
+	private IloNumVar _sepGammaS;										//SEP Gamma_S variable
+	private double[] _sepGammaCoefficients;								//Current objective coefficients of gamma-variables
+	private double _sepGammaSCoefficient;								//Current objective coefficient of Gamma_S
+	private double[] _winnersValues;									//SEP values of winners
+	private double[] _winnersCosts;										//SEP costs of bundles allocated to winners
+	private double _totalCost;											//Total cost of allocated bundles
+
+	private int _numberOfIterations;									//The number of core constraints added
+	private int _numberOfSEPSolves;										//The number of SEP solves
+	private long _lpTime;												//Time spent on LPs (ns)
+	private long _qpTime;												//Time spent on QPs (ns)
+	private long _sepTime;												//Time spent on the SEP (ns)
+	private long _totalTime;											//Total time of the last computation (ns)
+	private List<Long> _iterationTimes;									//Durations of iterations (ns)
+	private double _distanceToLowerBounds;								//The optimal value of the last QP
+
+	private final double _TOL = 1e-4;									//Tolerance level
+}
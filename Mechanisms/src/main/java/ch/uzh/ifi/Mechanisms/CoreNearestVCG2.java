@@ -1,7 +1,6 @@
 package ch.uzh.ifi.Mechanisms;
 
 import ch.uzh.ifi.MechanismDesignPrimitives.Allocation;
-import ch.uzh.ifi.MechanismDesignPrimitives.AtomicBid;
 import ch.uzh.ifi.MechanismDesignPrimitives.Type;
 
 import java.util.LinkedList;
@@ -42,32 +41,24 @@ public class CoreNearestVCG2 implements IPaymentRule
 			return _payments;
 		}
 		
-		List<Type> bids = new LinkedList<Type>();
-		for(int j = 0; j < _numberOfAgents; ++j)
-			if( !_allocation.getBiddersInvolved(0).contains(  _bids.get(j).getAgentId() ) )	//unallocated bidders
-				bids.add(_bids.get(j));
-
-		double allocatedCosts = 0.;
-		for(int i = 0; i < _allocation.getBiddersInvolved(0).size(); ++i)
-		{
-			int bidderId = _allocation.getBiddersInvolved(0).get(i);
-			int itsAllocatedBundle = _allocation.getAllocatedBundlesOfTrade(0).get(i);
-			AtomicBid bundle = _bids.get(bidderId-1).getAtom(itsAllocatedBundle);
-			allocatedCosts += bundle.computeCost(_costs);
-		}
+		//The core constraint of the LLG domain: p_1 + p_2 >= c_1 + c_2 + W(unallocated bidders)
+		double[] values = new double[LLGKernel.NUMBER_OF_BIDDERS];
+		double[] costs  = new double[LLGKernel.NUMBER_OF_BIDDERS];
+		double[] availabilities = {1., 1., 1.};
+		int bidders = LLGKernel.readBids(_bids, _costs, values, costs);
+		int allocation = LLGKernel.getAllocation(_allocation, _bids);
 		
-		CAXOR ca = new CAXOR( _numberOfAgents - _allocation.getBiddersInvolved(0).size(), _numberOfItems, bids, _costs);
-		ca.setPaymentRule("VCG_LLG");
-		ca.computeWinnerDeterminationLLG();
-		double Wi = 0.;
-		if( ca.getAllocation().getNumberOfAllocatedAuctioneers() > 0) 
-			Wi = ca.getAllocation().getAllocatedWelfare();
+		double allocatedCosts = 0.;
+		for(int k = 0; k < LLGKernel.NUMBER_OF_BIDDERS; ++k)
+			if( LLGKernel.isAllocated(allocation, k) )
+				allocatedCosts += costs[k];
+		double Wi = LLGKernel.computeWelfare(bidders & ~allocation, values, costs, availabilities);
 		
-		double coeff = ((allocatedCosts + Wi) - vcg.get(1) - vcg.get(0))/2;
+		double[] payments = new double[2];
+		LLGKernel.projectOnCore(vcg.get(0), vcg.get(1), allocatedCosts + Wi, 0., 0., false, payments);
 		_payments = new LinkedList<Double>();
-
 		for(int i = 0; i < _allocation.getBiddersInvolved(0).size(); ++i)
-			_payments.add( vcg.get( i ) + coeff);
+			_payments.add( payments[i] );
 
 		return _payments;
 	}
@@ -4,14 +4,8 @@ import ch.uzh.ifi.MechanismDesignPrimitives.Allocation;
 import ch.uzh.ifi.MechanismDesignPrimitives.Type;
 import ch.uzh.ifi.MechanismDesignPrimitives.AtomicBid;
 import ilog.concert.IloException;
-import ilog.concert.IloLPMatrix;
-import ilog.concert.IloNumExpr;
-import ilog.concert.IloNumVar;
-import ilog.concert.IloNumVarType;
-import ilog.concert.IloRange;
 import ilog.cplex.IloCplex;
 
-import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -34,7 +28,7 @@ import edu.harvard.econcs.jopt.solver.mip.Variable;
  * The bids should be specified using the XOR bidding language.
  * @author Dmitry Moor
  */
-public class CorePayments implements IPaymentRule
+public class CorePayments implements IPaymentRule, ICoreConstraintProvider
 {
 	
 	private static final Logger _logger = LogManager.getLogger(CorePayments.class);
@@ -45,10 +39,10 @@ public class CorePayments implements IPaymentRule
 	 * @param allBids list of all bids of the CA
 	 * @param quantitiesOfItems a list of units of items (for multiunit auction)
 	 * @param numberOfItems the number of items in the CA
-	 * @param binaryBids (see CAXOR.java for explanation of the data structure)
+	 * @param binaryBids bids of bidders in the binary format (see BinaryBids.java)
 	 * @param costs costs per item
 	 */
-	public CorePayments(Allocation allocation, List<Type> allBids, List<Integer> quantitiesOfItems, int numberOfItems, List<int[][]> binaryBids, List<Double> costs)
+	public CorePayments(Allocation allocation, List<Type> allBids, List<Integer> quantitiesOfItems, int numberOfItems, BinaryBids binaryBids, List<Double> costs)
 	{
 		if( numberOfItems != quantitiesOfItems.size() ) throw new RuntimeException("The number of items should correspond to the size of the list.");
 		
@@ -60,6 +54,10 @@ public class CorePayments implements IPaymentRule
 		_binaryBids = binaryBids;
 		_costs = costs;
 		_cplexSolver = null;
+		_sepSolver = null;
+		_isExternalSEPSolver = false;
+		_numberOfThreads = 1;
+		_marginalEconomiesSolver = null;
 	}
 
 	/**
@@ -71,6 +69,36 @@ public class CorePayments implements IPaymentRule
 		_cplexSolver = solver;
 	}
 	
+	/**
+	 * The method sets up the number of threads used to solve WDPs of marginal economies of VCG payments (lower bounds).
+	 * @param numberOfThreads the number of threads
+	 */
+	public void setNumberOfThreads(int numberOfThreads)
+	{
+		_numberOfThreads = numberOfThreads;
+	}
+	
+	/**
+	 * The method sets up a solver of marginal economies of VCG payments shared with other payment rules (see VCGPayments.java).
+	 * @param solver a solver of marginal economies
+	 */
+	public void setMarginalEconomiesSolver(ParallelMarginalEconomiesSolver solver)
+	{
+		_marginalEconomiesSolver = solver;
+	}
+	
+	/**
+	 * The method sets up the solver to be used for the separation problem. The SEP model is built once
+	 * and is kept in this solver between iterations of the constraint generation, i.e., the solver must 
+	 * not be shared with the payments LP/QP (see CoreConstraintGenerationEngine.java).
+	 * @param solver CPLEX solver for the separation problem
+	 */
+	public void setSEPSolver(IloCplex solver)
+	{
+		_sepSolver = solver;
+		_isExternalSEPSolver = true;
+	}
+	
 	/**
 	 * (non-Javadoc)
 	 * @see ch.uzh.ifi.Mechanisms.IPaymentRule#computePayments()
@@ -100,395 +128,119 @@ public class CorePayments implements IPaymentRule
 			throw new Exception("No agents were allocated, return an empty list.");
 		}
 		
-		_logger.debug("Compute VCG payments: " + _bids.toString());
-		VCGPayments vcgRule = new VCGPayments(_allocation, _bids, _unitsOfItems, _numberOfItems, _costs);
-		vcgRule.setSolver(_cplexSolver);
-		List<Double> vcg = vcgRule.computePayments();
-		_payments = vcg;
-		_logger.debug("VCG payments: " + _payments.toString());
-		
-		List<Integer> blockingCoalition = new ArrayList<Integer>();
-		double z = computeSEP(vcg, blockingCoalition);
-		double totalPayment = computeTotalPayments(vcg);
-		_logger.debug("z="+z + ". Blocking coalition:" + blockingCoalition.toString() + ". Total payment=" + totalPayment);
-		
-		IloLPMatrix lp = _cplexSolver.addLPMatrix();
-		IloNumVar[] pi = new IloNumVar[_allocation.getBiddersInvolved(0).size() ];
-		IloNumExpr objectiveLP = _cplexSolver.constant(1e-12);
-		IloNumExpr objectiveQP = _cplexSolver.constant(1e-12);
+		CoreConstraintGenerationEngine engine = new CoreConstraintGenerationEngine(_allocation, _numberOfAgents, _numberOfItems, _bids, _binaryBids, this);
+		engine.setSolver(_cplexSolver);
+		engine.setEmptyCoreTolerance(TOL);
+		if( _isExternalSEPSolver )
+			engine.setSEPSolver(_sepSolver);
 		
-		//Create optimization variables and formulate the objective function
-		for(int i = 0; i < _allocation.getBiddersInvolved(0).size(); ++i)
+		try
 		{
-			int allocatedBidderId = _allocation.getBiddersInvolved(0).get(i);
-			int allocatedBidderIdx = allocatedBidderId - 1;
-			int itsAllocatedAtom = _allocation.getAllocatedBundlesOfTrade(0).get(i);
-			double itsValue = _bids.get(allocatedBidderIdx).getAtom(itsAllocatedAtom ).getValue();
-					
-			if( vcg.get(i) > itsValue +	TOL )
-			{
-				_logger.error("Empty Core");
-				throw new RuntimeException("THE LOWER BOUND " + vcg.get(i)+" SHOULD NOT BE HIGHER THAN THE UPPER BOUND: " + _bids.get(allocatedBidderIdx).getAtom( itsAllocatedAtom ).getValue() + ". VCG:" + vcg.toString());
-			}
-			
-			IloNumVar x = _cplexSolver.numVar(vcg.get(i), itsValue, IloNumVarType.Float, "pi_" + _allocation.getBiddersInvolved(0).get(i));
-			pi[i] = x;
-			objectiveLP = _cplexSolver.sum(objectiveLP, pi[i]);
-			
-			IloNumExpr term = _cplexSolver.sum(-1*vcg.get(i), pi[i]);
-			term = _cplexSolver.prod(term, term);
-			objectiveQP = _cplexSolver.sum(objectiveQP, term);
+			_payments = engine.computePayments();
 		}
-		_logger.debug("Create LP objective: " + objectiveLP.toString());
-		_logger.debug("Create QP objective: " + objectiveQP.toString());
-		
-		_cplexSolver.add(_cplexSolver.minimize(objectiveLP));
-		
-		int constraintIdBPO = 0;
-		double distanceVCGtoCore = 0.;
-		
-		while( z > /*totalPayment +*/ TOL )
-		{	
-			_logger.debug("z="+z+" totalPayment="+totalPayment );
-			
-			//Create optimization constraints
-			IloNumExpr constraint = _cplexSolver.constant(0);
-			double subTotalPayment = 0.;
-
-			for(int i = 0; i < _allocation.getBiddersInvolved(0).size(); ++i)
-			{
-				int allocatedAgentId = _allocation.getBiddersInvolved(0).get(i);
-				if( ! blockingCoalition.contains( allocatedAgentId ) )
-				{
-					constraint = _cplexSolver.sum(constraint, pi[i]);
-					subTotalPayment += _payments.get(i);
-				}
-			}
-			
-			lp.addRow( _cplexSolver.le(z+subTotalPayment, constraint, "c"+constraintIdBPO));
-			constraintIdBPO += 1;
-
-			//---------------------------------------------
-			//Linear Programming Problem:
-			//---------------------------------------------
-			try 
-			{
-				_cplexSolver.solve();
-			}
-			catch (IloException e1)
-			{
-				e1.printStackTrace();
-			}
-			
-			double mu = -1.;
-			try 
-			{
-				mu = _cplexSolver.getObjValue();
-			} 
-			catch (IloException e1) 
-			{
-				if(e1.getMessage().contains("CPLEX Error  1217: No solution exists.") )
-				{
-					//if(!(blockingCoalition.containsAll(_allocation.getBiddersInvolved(0)) && _allocation.getBiddersInvolved(0).containsAll(blockingCoalition)) )
-					{
-						_logger.error("z="+z+" totalPayment="+totalPayment + "; blocking coalition: " + blockingCoalition.toString());
-						_logger.error("LP: " + _cplexSolver.toString());
-						_logger.error("Bids: " + _bids.toString());
-						_logger.error("Costs" + _costs.toString());
-						for(int j = 0; j < _allocation.getBiddersInvolved(0).size(); ++j)
-							_logger.error("Bidder id=" + _allocation.getBiddersInvolved(0).get(j) + " got its " + _allocation.getAllocatedBundlesOfTrade(0).get(j));
-						_logger.error("VCG: " + vcg.toString());
-						_logger.error("Blocking coalition: " + blockingCoalition.toString() + " with z="+z);
-						_logger.error("Total payment: " + totalPayment);
-					}
-					throw new PaymentException("Empty Core", 1);
-				}
-				else
-				{
-					_logger.warn("Bids: " + _bids.toString());
-					_logger.warn("Costs" + _costs.toString());
-					for(int j = 0; j < _allocation.getBiddersInvolved(0).size(); ++j)
-						_logger.warn("Bidder id=" + _allocation.getBiddersInvolved(0).get(j) + " got its " + _allocation.getAllocatedBundlesOfTrade(0).get(j));
-					_logger.warn("VCG: " + vcg.toString());
-					_logger.warn("Blocking coalition: " + blockingCoalition.toString() + " with z="+z);
-					_logger.warn("Total payment: " + totalPayment);
-					e1.printStackTrace();
-				}
-			}
-			
-			//---------------------------------------------
-			//Quadratic Programming Problem:
-			//---------------------------------------------
-			IloNumExpr equalityConstraint = _cplexSolver.constant(0);
-			equalityConstraint = objectiveLP;
-			IloRange equalityConstraintLeft = _cplexSolver.range(mu-1e-4, equalityConstraint, mu+1e-4, "mu");
-			lp.addRow(equalityConstraintLeft);
-			_cplexSolver.remove( _cplexSolver.getObjective());
-			_cplexSolver.add( _cplexSolver.minimize(objectiveQP));
-			
-			_cplexSolver.solve();
-			_payments = new ArrayList<Double>();
-			distanceVCGtoCore = _cplexSolver.getObjValue();
-			
-			for(int i = 0; i < _allocation.getBiddersInvolved(0).size(); ++i)
-				try 
-				{
-					_payments.add( _cplexSolver.getValue(pi[i]) );			//Linear payments
-				}
-				catch (IloException e) 
-				{
-					_logger.warn("Bids: " + _bids.toString());
-					_logger.warn("Costs" + _costs.toString());
-					_logger.warn("VCG: " + vcg.toString());
-					_logger.warn("Blocking coalition: " + blockingCoalition.toString() + " with z="+z);
-					_logger.warn("Total payment: " + totalPayment);
-					e.printStackTrace();
-				}
-			_logger.debug("New payments: " + _payments.toString());
-
-			blockingCoalition = new ArrayList<Integer>();
-			z = computeSEP( _payments, blockingCoalition);
-			totalPayment = computeTotalPayments(_payments);
-			
-			_cplexSolver.add(lp);
-			lp.removeRow( lp.getNrows() - 1);					//Remove the equality constraint for the QP problem
-			_cplexSolver.remove( _cplexSolver.getObjective());
-			_cplexSolver.add( _cplexSolver.minimize(objectiveLP));
-			
-			if( constraintIdBPO > 10)
+		catch(PaymentException e)
+		{
+			if( e.getMessage().equals("VCG is in the Core") )
 			{
-				_logger.debug("New payments: " + _payments.toString());
-				_logger.debug("z: " + z + " iter = " + constraintIdBPO);
+				_logger.info("VCG is in the core => throwing an exception");
+				_payments = e.getPayments();
 			}
+			throw e;
 		}
 		
-		lp.clear();
-		_cplexSolver.clearModel();
-		//_cplexSolver.endModel();
-		//_cplexSolver.end();
-		
-		if(constraintIdBPO == 0)
-		{
-			_logger.info("VCG is in the core => throwing an exception");
-			throw new PaymentException("VCG is in the Core", 0, _payments);
-		}
-		else
+		double distVCGtoValue = 0.;
+		for(int i = 0; i < _allocation.getBiddersInvolved(0).size(); ++i)
 		{
-			double distVCGtoValue = 0.;
-			for(int i = 0; i < _allocation.getBiddersInvolved(0).size(); ++i)
-			{
-				int allocatedBidderId = _allocation.getBiddersInvolved(0).get(i);
-				int allocatedBidderIdx = allocatedBidderId - 1;
-				int itsAllocatedAtom = _allocation.getAllocatedBundlesOfTrade(0).get(i);
-				double itsValue = _bids.get(allocatedBidderIdx).getAtom(itsAllocatedAtom ).getValue();
-				
-				distVCGtoValue +=  (itsValue - vcg.get(i))*(itsValue - vcg.get(i)) ;
-			}
-			_logger.info("VCG is not in the core -> distanceVCGtoCore/distVCGtoValue=" + Math.sqrt(distanceVCGtoCore)/ Math.sqrt(distVCGtoValue) );
-			//System.out.println("VCG is not in the core -> distanceVCGtoCore/distVCGtoValue=" + Math.sqrt(distanceVCGtoCore)/ Math.sqrt(distVCGtoValue) );
-			_vcgToValueRatio = Math.sqrt(distanceVCGtoCore)/ Math.sqrt(distVCGtoValue);
-			_revenueRatio = vcg.stream().reduce( (p1,p2) -> p1+p2 ).get() / _payments.stream().reduce( (p1,p2) -> p1+p2 ).get();
-			//System.out.println(Math.sqrt(distanceVCGtoCore)/ Math.sqrt(distVCGtoValue) );
+			double itsValue = computeUpperBound(i);
+			distVCGtoValue +=  (itsValue - _vcg.get(i))*(itsValue - _vcg.get(i)) ;
 		}
+		double distanceVCGtoCore = engine.getDistanceToLowerBounds();
+		_logger.info("VCG is not in the core -> distanceVCGtoCore/distVCGtoValue=" + Math.sqrt(distanceVCGtoCore)/ Math.sqrt(distVCGtoValue) );
+		_vcgToValueRatio = Math.sqrt(distanceVCGtoCore)/ Math.sqrt(distVCGtoValue);
+		_revenueRatio = _vcg.stream().reduce( (p1,p2) -> p1+p2 ).get() / _payments.stream().reduce( (p1,p2) -> p1+p2 ).get();
+		
 		_logger.debug("<- computePayments()");
 		return _payments;
 	}
 	
+	/**
+	 * (non-Javadoc)
+	 * @see ch.uzh.ifi.Mechanisms.ICoreConstraintProvider#computeLowerBounds()
+	 */
+	@Override
+	public List<Double> computeLowerBounds() throws Exception
+	{
+		_logger.debug("Compute VCG payments: " + _bids.toString());
+		VCGPayments vcgRule = new VCGPayments(_allocation, _bids, _unitsOfItems, _numberOfItems, _costs);
+		vcgRule.setSolver(_cplexSolver);
+		vcgRule.setNumberOfThreads(_numberOfThreads);
+		vcgRule.setMarginalEconomiesSolver(_marginalEconomiesSolver);
+		_vcg = vcgRule.computePayments();
+		_logger.debug("VCG payments: " + _vcg.toString());
+		return _vcg;
+	}
 	
 	/**
-	 * The method solves the separation problem
-	 * @param paymentsT - winners payments
-	 * @param blockingCoalition - a reference for the blocking coalition to be stored (IDs of agents within the coalition)
-	 * @throws IloException 
+	 * (non-Javadoc)
+	 * @see ch.uzh.ifi.Mechanisms.ICoreConstraintProvider#computeUpperBound(int)
 	 */
-	public double computeSEP(List<Double> paymentsT, List<Integer> blockingCoalition) throws IloException
+	@Override
+	public double computeUpperBound(int winnerIdx)
 	{
-		_logger.debug("-> computeSEP(paymentsT="+paymentsT.toString()+", blockingCoalition="+ blockingCoalition.toString()+")");
-		_cplexSolver.clearModel();
-		
-		List<List<IloNumVar> > variables = new ArrayList<List<IloNumVar>>();// i-th element of the list contains the list of variables 
-																			// corresponding to the i-th agent
-		List<IloNumVar> gammaVariables = new ArrayList<IloNumVar>();		//variables taking into account winners of the previous iteration
-		
-		//Create the optimization variables and formulate the objective function:
-		IloNumExpr objective = _cplexSolver.constant(0.);
-		IloLPMatrix lp = _cplexSolver.addLPMatrix();
-		
-		for(int i = 0; i < _bids.size(); ++i)								//For every bidder ...
-		{
-			Type bid = _bids.get(i);
-			List<IloNumVar> varI = new ArrayList<IloNumVar>();				//Create a new variable per atomic bid
-			for(int j = 0; j < bid.getNumberOfAtoms(); ++j )				//For every atomic bid ...
-			{
-				AtomicBid bundle = bid.getAtom(j);
-				double value = bundle.getValue();
-				double cost = bundle.computeCost(_costs);
-				
-				IloNumVar x = _cplexSolver.numVar(0, 1, IloNumVarType.Int, "x" + i + "_" + j);
-				varI.add(x);
-				IloNumExpr term = _cplexSolver.prod( value - cost, x);
-				objective = _cplexSolver.sum(objective, term);
-				_logger.debug("SEP: Adding term " + term.toString() + " to the objective.");
-			}
-			variables.add(varI);
-		}
-		
-		double totalCost = 0.;
-		double totalPayment = computeTotalPayments(paymentsT);
-		for(int j = 0; j < _allocation.getBiddersInvolved(0).size(); ++j)
-		{
-			int bidderId = _allocation.getBiddersInvolved(0).get(j);
-			Type t = _bids.get(bidderId-1); 
-			int allocatedBundleIdx = _allocation.getAllocatedBundlesOfTrade(0).get(j);
-			AtomicBid bundle = t.getAtom(allocatedBundleIdx);
-			double value = bundle.getValue();
-			double cost  = bundle.computeCost(_costs);
-
-			IloNumVar gamma = _cplexSolver.numVar(0, 1, IloNumVarType.Int, "Gamma_" + j);
-			gammaVariables.add(gamma);
-			
-			IloNumExpr term1 = _cplexSolver.prod(-1*(value-paymentsT.get(j)), gamma);
-			objective = _cplexSolver.sum(objective, term1);
-			
-			totalCost += cost;
-			//IloNumExpr term2 = _cplexSolver.prod(-1., gamma);
-			//term2 = _cplexSolver.sum(1, term2);
-			//term2 = _cplexSolver.prod(cost - paymentsT.get(j), term2);
-			//objective = _cplexSolver.sum(objective, term2);
-			_logger.debug("SEP: Adding terms " + term1.toString() + " to the objective");
-		}
-		IloNumVar gammaS = _cplexSolver.numVar(0, 1, IloNumVarType.Int, "Gamma_S");
-		gammaVariables.add(gammaS);
-		IloNumExpr termS = _cplexSolver.prod(-1 * ( totalPayment - totalCost ), gammaS);
-		objective = _cplexSolver.sum(objective, termS);
-		_logger.debug("SEP: Adding terms " + termS.toString() + " to the objective");
-		
-		_cplexSolver.add(_cplexSolver.maximize(objective));
-		
-		//Create optimization constraints for ITEMS:
-		for(int i = 0; i < _numberOfItems; ++i)
-		{
-			IloNumExpr constraint = _cplexSolver.constant(0);
-
-			for(int j = 0; j < _numberOfAgents; ++j)
-			{
-				int[][] binaryBid = _binaryBids.get(j);
-				List<IloNumVar> varI = (List<IloNumVar>)(variables.get(j));
-				for( int q = 0; q < varI.size(); ++q )
-					if( binaryBid[q][i] > 0 )
-					{
-						try 
-						{
-							int slotsUsed = 1;//(/*(MultiUnitAtom)*/_bids.get(j).getAtom(q)).getNumberOfUnitsByItemId(itemId);
-							IloNumExpr term = _cplexSolver.prod( slotsUsed*binaryBid[q][i], varI.get(q));
-							constraint = _cplexSolver.sum(constraint, term);
-						} 
-						catch (Exception e) 
-						{
-							System.out.println("ITEMS constr. Item idx=" + i + ", ItemId=" + (i+1) + 
-							           ", for agent " + j + "'s atom " + q + ": " + _bids.get(j).getAtom(q).toString());
-							e.printStackTrace();
-						}
-					}
-			}
-			IloNumVar y = _cplexSolver.numVar(0, 1, IloNumVarType.Int, "y_"+i);
-			IloNumExpr termY = _cplexSolver.prod( -1., y );
-			constraint = _cplexSolver.sum(constraint, termY);
-			IloRange range = _cplexSolver.eq(0, constraint,  "Item_"+i);
-			//IloRange range = _cplexSolver.range(0, constraint, 1.0, "Item_"+i);
-			lp.addRow(range);
-		}
-		
-		//Create optimization constraints for XOR:
-		for(int i = 0; i < _numberOfAgents; ++i)
-		{
-			IloNumExpr constraint = _cplexSolver.constant(0);
-			IloNumExpr constraintGamma = _cplexSolver.constant(0);
-			double upperBound = 0.;
-			
-			boolean isWinner = false;
-			int itsIdx = 0;
-			if( _allocation.getBiddersInvolved(0).contains( _bids.get(i).getAgentId() ) )
-			{
-				isWinner = true;
-				itsIdx = _allocation.getBiddersInvolved(0).indexOf( _bids.get(i).getAgentId() );	
-			}
-			if(isWinner)
-			{
-				upperBound = 0.;
-				IloNumExpr term = _cplexSolver.prod(-1, gammaVariables.get(itsIdx));
-				constraint = _cplexSolver.sum(constraint, term);
-				
-				//Constraint for Gamma_S:   GammaI <= GammaS
-				IloNumExpr termGammaI = _cplexSolver.prod(1, gammaVariables.get(itsIdx));
-				IloNumExpr termGammaS = _cplexSolver.prod(-1, gammaS);
-				constraintGamma = _cplexSolver.sum(constraintGamma, termGammaI);
-				constraintGamma = _cplexSolver.sum(constraintGamma, termGammaS);
-				IloNumVar y = _cplexSolver.numVar(0, Double.MAX_VALUE, IloNumVarType.Int, "y_GammaS"+i);
-				IloNumExpr termY = _cplexSolver.prod( 1, y );
-				constraintGamma = _cplexSolver.sum(constraintGamma, termY);
-				IloRange range = _cplexSolver.eq(0., constraintGamma, "GammaS_"+i);
-				
-				//IloRange range = _cplexSolver.ge(0., constraintGamma, "GammaS_"+i);
-				lp.addRow(range);
-			}
-			else
-				upperBound = 1.;
-			List<IloNumVar> varI = (List<IloNumVar>)(variables.get(i));
-			for(int q = 0; q < varI.size(); ++q)
-				constraint = _cplexSolver.sum(constraint, varI.get(q));
-
-			IloRange range1 = _cplexSolver.ge(upperBound, constraint, "Bidder"+i+"_1");
-			
-			if( ! isWinner )
-			{
-				//Constraint for Gamma_S:   x_{i1} + x_{i2} + ... <= GammaS
-				IloNumExpr termGammaS = _cplexSolver.prod(-1, gammaS);
-				constraintGamma = _cplexSolver.sum(constraintGamma, constraint);
-				constraintGamma = _cplexSolver.sum(constraintGamma, termGammaS);
-				IloRange range = _cplexSolver.ge(0., constraintGamma, "GammaS_"+i);
-				lp.addRow(range);
-			}
-			
-			try 
-			{
-				lp.addRow(range1);
-			}
-			catch (IloException e)
-			{
-				_logger.error("Cannot add the following constraint: ");
-				_logger.error("" + range1.toString());
-				_logger.error("LP matrix: ");
-				_logger.error(lp.toString());
-				_logger.error("Bids: " + _bids.toString());
-				throw e;
-			}
-		}
-		
-		_logger.debug("SEP: " + _cplexSolver.toString());
-		
-		//Launch CPLEX to solve the problem:
-		try 
-		{
-			_cplexSolver.solve();
-		} 
-		catch (IloException e) 
-		{
-			_logger.error(_bids.toString());
-			e.printStackTrace();
-		}
-		
-		for(int i = 0; i < _numberOfAgents; ++i)
-			for(int j = 0; j < _bids.get(i).getNumberOfAtoms(); ++j)
-				if(Math.abs(_cplexSolver.getValue(variables.get(i).get(j)) - 1.0) < 1e-6)
-					blockingCoalition.add( _bids.get(i).getAgentId() );
-
-		_logger.debug("Blocking coalition: " + blockingCoalition.toString() + ". Coalitional value is " + _cplexSolver.getObjValue() );
-		double obj = _cplexSolver.getObjValue();
-		_cplexSolver.clearModel();
-		
-		_logger.debug("<- computeSEP(...)");
-		return obj;
+		return getAllocatedBundle(winnerIdx).getValue();
+	}
+	
+	/**
+	 * (non-Javadoc)
+	 * @see ch.uzh.ifi.Mechanisms.ICoreConstraintProvider#computeSEPCoefficient(int, int)
+	 */
+	@Override
+	public double computeSEPCoefficient(int bidderIdx, int atomIdx)
+	{
+		AtomicBid bundle = _bids.get(bidderIdx).getAtom(atomIdx);
+		return bundle.getValue() - bundle.computeCost(_costs);
+	}
+	
+	/**
+	 * (non-Javadoc)
+	 * @see ch.uzh.ifi.Mechanisms.ICoreConstraintProvider#computeWinnersSEPValue(int)
+	 */
+	@Override
+	public double computeWinnersSEPValue(int winnerIdx)
+	{
+		return getAllocatedBundle(winnerIdx).getValue();
+	}
+	
+	/**
+	 * (non-Javadoc)
+	 * @see ch.uzh.ifi.Mechanisms.ICoreConstraintProvider#computeWinnersSEPCost(int)
+	 */
+	@Override
+	public double computeWinnersSEPCost(int winnerIdx)
+	{
+		return getAllocatedBundle(winnerIdx).computeCost(_costs);
+	}
+	
+	/**
+	 * (non-Javadoc)
+	 * @see ch.uzh.ifi.Mechanisms.ICoreConstraintProvider#isGammaSFormulation()
+	 */
+	@Override
+	public boolean isGammaSFormulation()
+	{
+		return true;
+	}
+	
+	/**
+	 * The method returns the bundle allocated to the winner.
+	 * @param winnerIdx an index of the winner in the allocation
+	 * @return the allocated atomic bid of the winner
+	 */
+	private AtomicBid getAllocatedBundle(int winnerIdx)
+	{
+		int allocatedBidderId = _allocation.getBiddersInvolved(0).get(winnerIdx);
+		int itsAllocatedAtom = _allocation.getAllocatedBundlesOfTrade(0).get(winnerIdx);
+		return _bids.get(allocatedBidderId - 1).getAtom(itsAllocatedAtom);
 	}
 
 	/**
@@ -525,19 +277,6 @@ public class CorePayments implements IPaymentRule
 		return _revenueRatio;
 	}
 	
-	/**
-	 * The method computes total payment made by all bidders
-	 * @param payments of bidders
-	 * @return a total payment
-	 */
-	private double computeTotalPayments(List<Double> payments)
-	{
-		double total = 0.;
-		for(Double p : payments)
-			total += p;
-		return total;
-	}
-	
 	private Allocation _allocation;								//Allocation of the auction
 	private List<Double> _payments;								//A list of payments to be computed
 	private List<Type> _bids;									//Bids of bidders
@@ -546,11 +285,17 @@ public class CorePayments implements IPaymentRule
 
 	private int _numberOfItems;									//Number of goods in the auction
 	private int _numberOfAgents;								//number of bidders
-	private List<int[][]> _binaryBids;							//Bids converted into a binary matrix format
+	private BinaryBids _binaryBids;								//Bids converted into a binary (bitset) format
 	
 	private final double TOL = 1e-4;							//Tolerance level
 	private IloCplex _cplexSolver;								//CPLEX solver
 	
 	private double _vcgToValueRatio;
 	private double _revenueRatio;
+	
+	private IloCplex _sepSolver;								//CPLEX solver for the separation problem
+	private boolean _isExternalSEPSolver;						//true if the SEP solver was provided by the caller
+	private List<Double> _vcg;									//VCG payments (lower bounds for core payments)
+	private int _numberOfThreads;								//The number of threads used to solve WDPs of marginal economies
+	private ParallelMarginalEconomiesSolver _marginalEconomiesSolver;	//A solver of marginal economies shared by payment rules (null if not shared)
 }
@@ -0,0 +1,311 @@
+package ch.uzh.ifi.Mechanisms;
+
+import java.util.Arrays;
+
+/**
+ * The class implements a bounded cache of the market demand and of the value of buyers indexed by the price per row and
+ * the deterministic allocation of DBs. Entries are stored in primitive arrays using open addressing with linear probing
+ * and are evicted in the least recently used order once the capacity is reached.
+ *
+ * By default only the exact price is reused. If a positive price tolerance is set, prices are grouped into buckets of the
+ * width of the tolerance: a request is answered from the entry of its bucket, or by a linear interpolation between the
+ * entry of its bucket and the entry of the adjacent bucket on the other side of the requested price. This allows to
+ * reuse results when the tatonement revisits nearby prices at the cost of an approximation error.
+ *
+ * The cache is not thread-safe.
+ * @author Dmitry Moor
+ *
+ */
+public class DemandCache
+{
+
+	/**
+	 * Constructor.
+	 * @param capacity the maximal number of entries
+	 */
+	public DemandCache(int capacity)
+	{
+		if( capacity < 1 ) throw new RuntimeException("The capacity of the cache should be positive: " + capacity);
+		_capacity = capacity;
+
+		int tableSize = Integer.highestOneBit(2 * capacity - 1) << 1;						//Keep the load factor below 1/2
+		_mask = tableSize - 1;
+		_keys = new long[tableSize];
+		_allocations = new long[tableSize];
+		_prices = new double[tableSize];
+		_results = new double[tableSize * BuyerDemandOracle.RESULT_SIZE];
+		_isOccupied = new boolean[tableSize];
+		_prev = new int[tableSize];
+		_next = new int[tableSize];
+		_priceTolerance = 0.;
+		clear();
+		resetCounters();
+	}
+
+	/**
+	 * The method sets the tolerance within which results computed for other prices are reused. The cache is cleared.
+	 * @param tolerance the price tolerance (0 if only exact prices should be reused)
+	 */
+	public void setPriceTolerance(double tolerance)
+	{
+		if( tolerance < 0 ) throw new RuntimeException("The price tolerance should be non-negative: " + tolerance);
+		_priceTolerance = tolerance;
+		clear();
+	}
+
+	/**
+	 * The method looks up the results for the given price and allocation of DBs.
+	 * @param price price per row
+	 * @param allocation binary encoding of the deterministic allocation of DBs
+	 * @param res an array to be filled with the demand for money, the demand for rows and the value of buyers (indexed as in
+	 * BuyerDemandOracle.java)
+	 * @return true if the results were found, false otherwise
+	 */
+	public boolean get(double price, long allocation, double[] res)
+	{
+		long key = computeKey(price);
+		int slot = find(key, allocation);
+		if( slot < 0 )
+		{
+			_misses += 1;
+			return false;
+		}
+
+		_hits += 1;
+		moveToFront(slot);
+		System.arraycopy(_results, slot * BuyerDemandOracle.RESULT_SIZE, res, 0, BuyerDemandOracle.RESULT_SIZE);
+		if( _priceTolerance == 0. || _prices[slot] == price )
+			return true;
+
+		// Interpolate between the entry of the bucket and the adjacent entry on the other side of the price (if any)
+		int adjacentSlot = find(price > _prices[slot] ? key + 1 : key - 1, allocation);
+		if( adjacentSlot >= 0 )
+		{
+			double w = (price - _prices[slot]) / (_prices[adjacentSlot] - _prices[slot]);
+			for(int i = 0; i < BuyerDemandOracle.RESULT_SIZE; ++i)
+				res[i] += w * (_results[adjacentSlot * BuyerDemandOracle.RESULT_SIZE + i] - res[i]);
+		}
+		return true;
+	}
+
+	/**
+	 * The method stores the results for the given price and allocation of DBs. The least recently used entry is evicted
+	 * if the cache is full.
+	 * @param price price per row
+	 * @param allocation binary encoding of the deterministic allocation of DBs
+	 * @param res the demand for money, the demand for rows and the value of buyers (indexed as in BuyerDemandOracle.java)
+	 */
+	public void put(double price, long allocation, double[] res)
+	{
+		long key = computeKey(price);
+		int slot = find(key, allocation);
+		if( slot < 0 )
+		{
+			if( _size == _capacity )
+			{
+				remove(_tail);
+				_evictions += 1;
+			}
+
+			slot = home(key, allocation);
+			while( _isOccupied[slot] )
+				slot = (slot + 1) & _mask;
+
+			_isOccupied[slot] = true;
+			_keys[slot] = key;
+			_allocations[slot] = allocation;
+			_prev[slot] = -1;
+			_next[slot] = -1;
+			linkFirst(slot);
+			_size += 1;
+		}
+		else
+			moveToFront(slot);
+
+		_prices[slot] = price;
+		System.arraycopy(res, 0, _results, slot * BuyerDemandOracle.RESULT_SIZE, BuyerDemandOracle.RESULT_SIZE);
+	}
+
+	/**
+	 * The method removes all entries. Counters are not affected.
+	 */
+	public void clear()
+	{
+		Arrays.fill(_isOccupied, false);
+		_head = -1;
+		_tail = -1;
+		_size = 0;
+	}
+
+	/**
+	 * The method resets the counters of hits, misses and evictions.
+	 */
+	public void resetCounters()
+	{
+		_hits = 0;
+		_misses = 0;
+		_evictions = 0;
+	}
+
+	/**
+	 * @return the number of entries in the cache
+	 */
+	public int size()
+	{
+		return _size;
+	}
+
+	/**
+	 * @return the number of lookups answered by the cache
+	 */
+	public long getHits()
+	{
+		return _hits;
+	}
+
+	/**
+	 * @return the number of lookups not answered by the cache
+	 */
+	public long getMisses()
+	{
+		return _misses;
+	}
+
+	/**
+	 * @return the number of entries evicted from the cache
+	 */
+	public long getEvictions()
+	{
+		return _evictions;
+	}
+
+	/**
+	 * The method computes the key of the price: either the exact price or the index of its bucket.
+	 * @param price price per row
+	 * @return the key
+	 */
+	private long computeKey(double price)
+	{
+		if( _priceTolerance == 0. )
+			return Double.doubleToLongBits(price + 0.);									//+0. normalizes -0.
+		return (long)Math.floor(price / _priceTolerance);
+	}
+
+	/**
+	 * The method returns the first slot probed for the key.
+	 * @param key the key of the price
+	 * @param allocation binary encoding of the allocation of DBs
+	 * @return the slot
+	 */
+	private int home(long key, long allocation)
+	{
+		long h = (key ^ (key >>> 32)) * 0x9E3779B97F4A7C15L + allocation;
+		h ^= h >>> 29;
+		h *= 0xBF58476D1CE4E5B9L;
+		h ^= h >>> 32;
+		return (int)h & _mask;
+	}
+
+	/**
+	 * The method finds the slot of an entry.
+	 * @param key the key of the price
+	 * @param allocation binary encoding of the allocation of DBs
+	 * @return the slot of the entry or -1 if there is no such entry
+	 */
+	private int find(long key, long allocation)
+	{
+		for(int slot = home(key, allocation); _isOccupied[slot]; slot = (slot + 1) & _mask)
+			if( _keys[slot] == key && _allocations[slot] == allocation )
+				return slot;
+		return -1;
+	}
+
+	/**
+	 * The method removes the entry of the slot. Subsequent entries of the probe sequence are shifted back, so that no
+	 * tombstones are needed.
+	 * @param slot the slot of the entry
+	 */
+	private void remove(int slot)
+	{
+		unlink(slot);
+		_isOccupied[slot] = false;
+		_size -= 1;
+
+		int free = slot;
+		for(int j = (free + 1) & _mask; _isOccupied[j]; j = (j + 1) & _mask)
+		{
+			int h = home(_keys[j], _allocations[j]);
+			boolean isReachable = free <= j ? (free < h && h <= j) : (free < h || h <= j);	//The entry may stay where it is
+			if( isReachable )
+				continue;
+
+			move(j, free);
+			free = j;
+		}
+	}
+
+	/**
+	 * The method moves an entry to a free slot preserving its position in the LRU list.
+	 * @param from the slot of the entry
+	 * @param to a free slot
+	 */
+	private void move(int from, int to)
+	{
+		_keys[to] = _keys[from];
+		_allocations[to] = _allocations[from];
+		_prices[to] = _prices[from];
+		System.arraycopy(_results, from * BuyerDemandOracle.RESULT_SIZE, _results, to * BuyerDemandOracle.RESULT_SIZE, BuyerDemandOracle.RESULT_SIZE);
+		_isOccupied[to] = true;
+		_isOccupied[from] = false;
+
+		_prev[to] = _prev[from];
+		_next[to] = _next[from];
+		if( _prev[to] >= 0 ) _next[_prev[to]] = to;
+		else _head = to;
+		if( _next[to] >= 0 ) _prev[_next[to]] = to;
+		else _tail = to;
+	}
+
+	private void moveToFront(int slot)
+	{
+		if( slot == _head ) return;
+		unlink(slot);
+		linkFirst(slot);
+	}
+
+	private void linkFirst(int slot)
+	{
+		_prev[slot] = -1;
+		_next[slot] = _head;
+		if( _head >= 0 ) _prev[_head] = slot;
+		_head = slot;
+		if( _tail < 0 ) _tail = slot;
+	}
+
+	private void unlink(int slot)
+	{
+		if( _prev[slot] >= 0 ) _next[_prev[slot]] = _next[slot];
+		else _head = _next[slot];
+		if( _next[slot] >= 0 ) _prev[_next[slot]] = _prev[slot];
+		else _tail = _prev[slot];
+		_prev[slot] = -1;
+		_next[slot] = -1;
+	}
+
+	private int _capacity;											//The maximal number of entries
+	private int _mask;												//The size of the table less 1 (the size is a power of 2)
+	private long[] _keys;											//Keys of prices (exact prices or indexes of buckets)
+	private long[] _allocations;									//Binary encodings of allocations of DBs
+	private double[] _prices;										//Prices at which results were computed
+	private double[] _results;										//Results of entries, RESULT_SIZE values per slot
+	private boolean[] _isOccupied;									//Occupied slots
+	private int[] _prev;											//The previous (more recently used) entry in the LRU list
+	private int[] _next;											//The next (less recently used) entry in the LRU list
+	private int _head;												//The most recently used entry (-1 if empty)
+	private int _tail;												//The least recently used entry (-1 if empty)
+	private int _size;												//The number of entries
+	private double _priceTolerance;									//Tolerance within which other prices are reused
+	private long _hits;												//The number of hits
+	private long _misses;											//The number of misses
+	private long _evictions;										//The number of evictions
+}
@@ -233,9 +233,9 @@ public class DoubleSidedMarket implements Auction
 	 * @param pr - payment rule to be used
 	 * @return a vector of prices for bidders
 	 */
-	public List<Double> computePayments(PaymentRule pr) throws Exception
+	public List<Double> computePayments(IPaymentRule pr) throws Exception
 	{	
-		PaymentRule paymentRule = pr;
+		IPaymentRule paymentRule = pr;
 		try
 		{
 			_payments = paymentRule.computePayments();
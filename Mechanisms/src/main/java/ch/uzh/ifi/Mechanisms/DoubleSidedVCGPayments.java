@@ -6,7 +6,7 @@ import ch.uzh.ifi.MechanismDesignPrimitives.Type;
 import java.util.LinkedList;
 import java.util.List;
 
-public class DoubleSidedVCGPayments implements PaymentRule
+public class DoubleSidedVCGPayments implements IPaymentRule
 {
 
 	/*
@@ -12,7 +12,7 @@ import ch.uzh.ifi.MechanismDesignPrimitives.Type;
 import ch.uzh.ifi.MechanismDesignPrimitives.Allocation;
 import ch.uzh.ifi.MechanismDesignPrimitives.AtomicBid;
 
-public class ECCCoreLLGPayments implements PaymentRule
+public class ECCCoreLLGPayments implements IPaymentRule
 {
 	
 	private static final Logger _logger = LogManager.getLogger(ECCCoreLLGPayments.class);
@@ -35,6 +35,21 @@ public class ECCCoreLLGPayments implements PaymentRule
 		_bids  = bids;
 		_costs = costs;
 		_jpmf = jpmf;
+		_availabilities = new MarginalAvailabilityCache(jpmf);
+	}
+	
+	/*
+	 * Constructor.
+	 * @param allocation - an allocation of the auction
+	 * @param numberOfBuyers - the number of buyers participating in the auction
+	 * @param bids - bids of agents
+	 * @param costs - costs of goods
+	 * @param availabilities - memoized marginal availabilities of bundles (shared with the WDP of the auction)
+	 */
+	public ECCCoreLLGPayments(AllocationEC allocation, int numberOfBuyers, int numberOfItems, List<Type> bids, List<Double> costs, MarginalAvailabilityCache availabilities)
+	{
+		this(allocation, numberOfBuyers, numberOfItems, bids, costs, availabilities.getJPMF());
+		_availabilities = availabilities;
 	}
 	
 	/*
@@ -48,79 +63,54 @@ public class ECCCoreLLGPayments implements PaymentRule
 		List<Double> payments = new LinkedList<Double>();
 		
 		//1. Compute EC-VCG Core constraints
-		PaymentRule eccvcgPaymentRule = new ECCVCGPayments(_allocation, _numberOfBuyers, _numberOfItems, _bids, _costs, _jpmf, null);
+		IPaymentRule eccvcgPaymentRule = new ECCVCGPayments(_allocation, _numberOfBuyers, _numberOfItems, _bids, _costs, _availabilities, null);
 		List<Double> eccvcgPayments = eccvcgPaymentRule.computePayments();
 		_logger.debug("ECC-VCG payments: " + eccvcgPayments.toString());
 		
 		if(_allocation.getBiddersInvolved(0).size() == 1)
 			return eccvcgPayments;
 		
-		//2. Compute reduced WDP with only a global bidder
+		//2. The blocking coalition consists of the global bidder only
 		List<Integer> allocatedAgentsIds = _allocation.getBiddersInvolved(0);
-		List<Type> bids = new LinkedList<Type>();
-		for(int j = 0; j < _numberOfBuyers; ++j)
-			if( ! allocatedAgentsIds.contains( _bids.get(j).getAgentId() ) )
-				bids.add(_bids.get(j));
-		
 		List<Integer> allocatedAvailabilitiesPerGood = new LinkedList<Integer>();
 		List<Double> realizationsOfAvailabilitiesPerGood = new LinkedList<Double>();
-		for(int j = 0; j < _allocation.getBiddersInvolved(0).size(); ++j)
+		for(int j = 0; j < allocatedAgentsIds.size(); ++j)
 		{
-			int bidderId = _allocation.getBiddersInvolved(0).get(j);				
-			int itsAllocatedAtom = _allocation.getAllocatedBundlesOfTrade(0).get(j);
-			AtomicBid allocatedBundle = _bids.get( bidderId-1 ).getAtom( itsAllocatedAtom );
-			
-			for(int k = 0; k < allocatedBundle.getInterestingSet().size(); ++k)
+			AtomicBid allocatedBundle = _bids.get( allocatedAgentsIds.get(j)-1 ).getAtom( _allocation.getAllocatedBundlesOfTrade(0).get(j) );
+			for(int goodId : allocatedBundle.getInterestingSet())
 			{
-				int goodId = allocatedBundle.getInterestingSet().get(k);
 				allocatedAvailabilitiesPerGood.add( goodId );
 				realizationsOfAvailabilitiesPerGood.add(_allocation.getRealizedRVsPerGood(0).get(goodId-1));
 			}
 		}
 		
-		ProbabilisticCAXOR auction = new ProbabilisticCAXOR( _numberOfBuyers - allocatedAgentsIds.size(), _numberOfItems, bids, _costs, _jpmf);
-		auction.computeWinnerDeterminationLLG(allocatedAvailabilitiesPerGood, realizationsOfAvailabilitiesPerGood);
-		
-		//3. Compute the last core constraint p_1 + p_2 >= A
-		AllocationEC allocation = (AllocationEC)auction.getAllocation(); 
-		double A = allocation.getExpectedWelfare();
+		//3. Compute the last core constraint p_1 + p_2 >= A and project ECC-VCG payments onto it
+		double[] values = new double[LLGKernel.NUMBER_OF_BIDDERS];
+		double[] costs  = new double[LLGKernel.NUMBER_OF_BIDDERS];
+		double[] conditionalAvailabilities = new double[LLGKernel.NUMBER_OF_BIDDERS];
+		double[] realizedAvailabilities = new double[LLGKernel.NUMBER_OF_BIDDERS];
+		int bidders = LLGKernel.readBids(_bids, _costs, values, costs);
+		LLGKernel.readAvailabilities(_bids, _availabilities, allocatedAvailabilitiesPerGood, realizationsOfAvailabilitiesPerGood, conditionalAvailabilities);
+		LLGKernel.readRealizedAvailabilities(_allocation, _bids, realizedAvailabilities);
+		int allocation = LLGKernel.getAllocation(_allocation, _bids);
+		double A = LLGKernel.computeWelfare(bidders & ~allocation, values, costs, conditionalAvailabilities);
 		
-		double totalRealizedValue = 0.;
 		double[] realizedValues = new double[2];
 		for(int i = 0; i < allocatedAgentsIds.size(); ++i)
 		{
-			int allocatedAgentId = _allocation.getBiddersInvolved(0).get(i);
-			int allocatedAtomIdx = _allocation.getAllocatedBundlesOfTrade(0).get(i);
-			AtomicBid allocatedAtom = _bids.get(allocatedAgentId - 1).getAtom(allocatedAtomIdx);
-			A += allocatedAtom.computeCost(_costs) * _allocation.getRealizedRV(0, i);
-			
-			double realizedValue = allocatedAtom.getValue() * _allocation.getRealizedRV(0, i);
-			if( eccvcgPayments.get(i) > realizedValue )
-				throw new PaymentException("Empty Core", 0 );
-
-			totalRealizedValue += realizedValue;
-			realizedValues[i] = realizedValue;
+			int k = LLGKernel.getBidderIdxOfAgent(_bids, allocatedAgentsIds.get(i));
+			A += costs[k] * realizedAvailabilities[k];
+			realizedValues[i] = values[k] * realizedAvailabilities[k];
 		}
 		_logger.debug("p1 + p2 >= " + A);
+
+		if( LLGKernel.isCoreEmpty(eccvcgPayments.get(0), eccvcgPayments.get(1), A, realizedValues[0], realizedValues[1]) )
+			throw new PaymentException("Empty Core", 0);
 		
-		if( totalRealizedValue < A ) throw new PaymentException("Empty Core", 0);
-		
-		double d = (A - eccvcgPayments.get(0) - eccvcgPayments.get(1))*Math.cos(Math.PI / 4);
-		payments.add( eccvcgPayments.get(0) + d*Math.cos(Math.PI / 4) );
-		payments.add( eccvcgPayments.get(1) + d*Math.cos(Math.PI / 4) );
-		
-		if( eccvcgPayments.get(0) + realizedValues[1] < A )
-			if( payments.get(1) > realizedValues[1] )
-			{
-				payments.set(1, realizedValues[1]);
-				payments.set(0, A - payments.get(1));
-			}
-		if( eccvcgPayments.get(1) + realizedValues[0] < A )
-			if( payments.get(0) > realizedValues[0] )
-			{
-				payments.set(0, realizedValues[0]);
-				payments.set(1, A - payments.get(0));
-			}
+		double[] corePayments = new double[2];
+		LLGKernel.projectOnCore(eccvcgPayments.get(0), eccvcgPayments.get(1), A, realizedValues[0], realizedValues[1], true, corePayments);
+		payments.add( corePayments[0] );
+		payments.add( corePayments[1] );
 		_logger.debug("Core payments: " + payments.toString());
 		_logger.debug("<- computePayments()");
 		return payments;
@@ -143,4 +133,5 @@ public class ECCCoreLLGPayments implements PaymentRule
 	private List<Double> _costs;						//A list of costs of the goods
 	private AllocationEC _allocation;						//Resulting allocation of the auction 
 	private JointProbabilityMass _jpmf;					//Joint probability mass function for availabilities of goods	
+	private MarginalAvailabilityCache _availabilities;		//Memoized marginal availabilities of bundles
 }
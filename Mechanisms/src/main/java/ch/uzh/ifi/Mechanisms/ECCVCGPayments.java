@@ -13,7 +13,7 @@ import ch.uzh.ifi.MechanismDesignPrimitives.JointProbabilityMass;
 import ch.uzh.ifi.MechanismDesignPrimitives.Type;
 import ch.uzh.ifi.MechanismDesignPrimitives.AtomicBid;
 
-public class ECCVCGPayments implements PaymentRule
+public class ECCVCGPayments implements IPaymentRule
 {
 
 	private static final Logger _logger = LogManager.getLogger(ECCVCGPayments.class);
@@ -36,9 +36,26 @@ public class ECCVCGPayments implements PaymentRule
 		_bids  = bids;
 		_costs = costs;
 		_jpmf = jpmf;
+		_availabilities = new MarginalAvailabilityCache(jpmf);
 		_cplexSolver = cplexSolver;
 	}
 	
+	/**
+	 * Constructor
+	 * @param allocation allocation of the auction
+	 * @param numberOfBidders number of bidders
+	 * @param numberOfItems number of goods
+	 * @param bids bids of bidders
+	 * @param costs (additive) costs per good 
+	 * @param availabilities memoized marginal availabilities of bundles (shared with the WDP of the auction)
+	 * @param cplexSolver CPLEX Solver to be used by WDP
+	 */
+	public ECCVCGPayments(AllocationEC allocation, int numberOfBidders, int numberOfItems, List<Type> bids, List<Double> costs, MarginalAvailabilityCache availabilities, IloCplex cplexSolver)
+	{
+		this(allocation, numberOfBidders, numberOfItems, bids, costs, availabilities.getJPMF(), cplexSolver);
+		_availabilities = availabilities;
+	}
+	
 	/**
 	 * (non-Javadoc)
 	 * @see ch.uzh.ifi.Mechanisms.PaymentRule#computePayments()
@@ -50,6 +67,24 @@ public class ECCVCGPayments implements PaymentRule
 		int numberOfAllocatedBidders = _allocation.getBiddersInvolved(0).size();
 		List<Double> payments = new ArrayList<Double>();
 		
+		if( isLLG() )												//Closed form without sub-auctions (see LLGKernel.java)
+		{
+			double[] values = new double[LLGKernel.NUMBER_OF_BIDDERS];
+			double[] costs  = new double[LLGKernel.NUMBER_OF_BIDDERS];
+			double[] conditionalAvailabilities = new double[LLGKernel.NUMBER_OF_BIDDERS];
+			double[] realizedAvailabilities = new double[LLGKernel.NUMBER_OF_BIDDERS];
+			double[] vcgPayments = new double[LLGKernel.NUMBER_OF_BIDDERS];
+			int bidders = LLGKernel.readBids(_bids, _costs, values, costs);
+			LLGKernel.readAvailabilities(_bids, _availabilities, _allocation.getGoodIdsWithKnownAvailabilities(_bids, true),
+			                             _allocation.getRealizationsOfAvailabilitiesPerGood(_bids, true), conditionalAvailabilities);
+			LLGKernel.readRealizedAvailabilities(_allocation, _bids, realizedAvailabilities);
+			LLGKernel.computeVCGPayments(bidders, LLGKernel.getAllocation(_allocation, _bids), values, costs, conditionalAvailabilities,
+			                             realizedAvailabilities, realizedAvailabilities, vcgPayments);
+			payments = LLGKernel.getPaymentsOfAllocatedBidders(_allocation, _bids, vcgPayments);
+			_logger.debug("<- computePayments()");
+			return payments;
+		}
+		
 		for(int i = 0; i < numberOfAllocatedBidders; ++i)
 		{
 			//1. Compute the SW without agent i
@@ -61,12 +96,9 @@ public class ECCVCGPayments implements PaymentRule
 				if( _bids.get(j).getAgentId() != allocatedAgentId )
 					bids.add(_bids.get(j));
 			
-			ProbabilisticCAXOR auction = new ProbabilisticCAXOR( _numberOfBuyers - 1, _numberOfItems, bids, _costs, _jpmf);
+			ProbabilisticCAXOR auction = new ProbabilisticCAXOR( _numberOfBuyers - 1, _numberOfItems, bids, _costs, _availabilities);
 			auction.setSolver(_cplexSolver);
-			if( isLLG() ) 
-				auction.setPaymentRule("EC-VCG_LLG");				//Faster allocation without using CPLEX.
-			else
-				auction.setPaymentRule("EC-VCG");
+			auction.setPaymentRule("EC-VCG");
 			
 			List<Integer> allocatedAvailabilitiesPerGood = _allocation.getGoodIdsWithKnownAvailabilities(_bids, true);
 			List<Double> realizationsOfAvailabilitiesPerGood = _allocation.getRealizationsOfAvailabilitiesPerGood(_bids, true);
@@ -142,5 +174,6 @@ public class ECCVCGPayments implements PaymentRule
 	private List<Double> _costs;						//A list of costs of the goods
 	private AllocationEC _allocation;					//Resulting allocation of the auction 
 	private JointProbabilityMass _jpmf;					//Joint probability mass function
+	private MarginalAvailabilityCache _availabilities;		//Memoized marginal availabilities of bundles
 	private IloCplex _cplexSolver;						//CPLEX Solver
 }
@@ -7,12 +7,11 @@ import ch.uzh.ifi.MechanismDesignPrimitives.AllocationEC;
 import ch.uzh.ifi.MechanismDesignPrimitives.JointProbabilityMass;
 import ch.uzh.ifi.MechanismDesignPrimitives.Allocation;
 import ch.uzh.ifi.MechanismDesignPrimitives.Type;
-import ch.uzh.ifi.MechanismDesignPrimitives.AtomicBid;
 
 /**
  * The class implements minimum-revenue execution-contingent Core-selecting payment rule for a simple LLG domain.
  **/
-public class ECCoreLLGPayments implements PaymentRule
+public class ECCoreLLGPayments implements IPaymentRule
 {
 	/*
 	 * Constructor.
@@ -30,6 +29,21 @@ public class ECCoreLLGPayments implements PaymentRule
 		_bids  = bids;
 		_costs = costs;
 		_jpmf = jpmf;
+		_availabilities = new MarginalAvailabilityCache(jpmf);
+	}
+	
+	/*
+	 * Constructor.
+	 * @param allocation - an allocation of the auction
+	 * @param numberOfBuyers - the number of buyers participating in the auction
+	 * @param bids - bids of agents
+	 * @param costs - costs of goods
+	 * @param availabilities - memoized marginal availabilities of bundles (shared with the WDP of the auction)
+	 */
+	public ECCoreLLGPayments(AllocationEC allocation, int numberOfBuyers, int numberOfItems, List<Type> bids, List<Double> costs, MarginalAvailabilityCache availabilities)
+	{
+		this(allocation, numberOfBuyers, numberOfItems, bids, costs, availabilities.getJPMF());
+		_availabilities = availabilities;
 	}
 	
 	/*
@@ -42,7 +56,7 @@ public class ECCoreLLGPayments implements PaymentRule
 		List<Double> payments = new LinkedList<Double>();
 		
 		//1. Compute EC-VCG Core constraints
-		PaymentRule ecvcgPaymentRule = new ECVCGPayments(_allocation, _numberOfBuyers, _numberOfItems, _bids, _costs, _jpmf, null);
+		IPaymentRule ecvcgPaymentRule = new ECVCGPayments(_allocation, _numberOfBuyers, _numberOfItems, _bids, _costs, _availabilities, null);
 		List<Double> ecvcgPayments = ecvcgPaymentRule.computePayments();
 		//_logger.setLevel(_logLevel);
 		//_logger.debug("EC-VCG payments: " + ecvcgPayments.toString());
@@ -50,57 +64,35 @@ public class ECCoreLLGPayments implements PaymentRule
 		if(_allocation.getBiddersInvolved(0).size() == 1)
 			return ecvcgPayments;
 		
-		//2. Compute reduced WDP with only a global bidder
+		//2. The blocking coalition consists of the global bidder only
 		List<Integer> allocatedAgentsIds = _allocation.getBiddersInvolved(0);
-		List<Type> bids = new LinkedList<Type>();
-		for(int j = 0; j < _numberOfBuyers; ++j)
-			if( ! allocatedAgentsIds.contains( _bids.get(j).getAgentId() ) )
-				bids.add(_bids.get(j));
-		
-		ProbabilisticCAXOR auction = new ProbabilisticCAXOR( _numberOfBuyers - allocatedAgentsIds.size(), _numberOfItems, bids, _costs, _jpmf);
-		auction.computeWinnerDeterminationLLG(null, null);
 		
-		//3. Compute the last core constraint p_1 + p_2 >= A
-		AllocationEC allocation = (AllocationEC)auction.getAllocation(); 
-		double A = allocation.getExpectedWelfare();
+		//3. Compute the last core constraint p_1 + p_2 >= A and project EC-VCG payments onto it
+		double[] values = new double[LLGKernel.NUMBER_OF_BIDDERS];
+		double[] costs  = new double[LLGKernel.NUMBER_OF_BIDDERS];
+		double[] expectedAvailabilities = new double[LLGKernel.NUMBER_OF_BIDDERS];
+		double[] realizedAvailabilities = new double[LLGKernel.NUMBER_OF_BIDDERS];
+		int bidders = LLGKernel.readBids(_bids, _costs, values, costs);
+		LLGKernel.readAvailabilities(_bids, _availabilities, null, null, expectedAvailabilities);
+		LLGKernel.readRealizedAvailabilities(_allocation, _bids, realizedAvailabilities);
+		int allocation = LLGKernel.getAllocation(_allocation, _bids);
+		double A = LLGKernel.computeWelfare(bidders & ~allocation, values, costs, expectedAvailabilities);
 		
-		double totalExpectedValue = 0.;
 		double[] expectedValues = new double[2];
 		for(int i = 0; i < allocatedAgentsIds.size(); ++i)
 		{
-			int allocatedAgentId = _allocation.getBiddersInvolved(0).get(i);
-			int allocatedAtomIdx = _allocation.getAllocatedBundlesOfTrade(0).get(i);
-			AtomicBid allocatedAtom = _bids.get(allocatedAgentId - 1).getAtom(allocatedAtomIdx);
-			A += allocatedAtom.computeCost(_costs)*_allocation.getRealizedRV(0, i);
-			
-			double expectedValue = allocatedAtom.getValue() * auction.computeExpectedMarginalAvailability(allocatedAtom, null, null);
-			if( ecvcgPayments.get(i) > expectedValue )
-				throw new PaymentException("Empty Core", 0 );
-
-			totalExpectedValue += expectedValue;
-			expectedValues[i] = expectedValue;
+			int k = LLGKernel.getBidderIdxOfAgent(_bids, allocatedAgentsIds.get(i));
+			A += costs[k] * realizedAvailabilities[k];
+			expectedValues[i] = values[k] * expectedAvailabilities[k];
 		}
-		//_logger.setLevel(_logLevel);
-		//_logger.debug("p1 + p2 >= " + A);
-		
-		if( totalExpectedValue < A ) throw new PaymentException("Empty Core", 0);
 		
-		double d = (A - ecvcgPayments.get(0) - ecvcgPayments.get(1))*Math.cos(Math.PI / 4);
-		payments.add( ecvcgPayments.get(0) + d*Math.cos(Math.PI / 4) );
-		payments.add( ecvcgPayments.get(1) + d*Math.cos(Math.PI / 4) );
+		if( LLGKernel.isCoreEmpty(ecvcgPayments.get(0), ecvcgPayments.get(1), A, expectedValues[0], expectedValues[1]) )
+			throw new PaymentException("Empty Core", 0);
 		
-		if( ecvcgPayments.get(0) + expectedValues[1] < A )
-			if( payments.get(1) > expectedValues[1] )
-			{
-				payments.set(1, expectedValues[1]);
-				payments.set(0, A - payments.get(1));
-			}
-		if( ecvcgPayments.get(1) + expectedValues[0] < A )
-			if( payments.get(0) > expectedValues[0] )
-			{
-				payments.set(0, expectedValues[0]);
-				payments.set(1, A - payments.get(0));
-			}
+		double[] corePayments = new double[2];
+		LLGKernel.projectOnCore(ecvcgPayments.get(0), ecvcgPayments.get(1), A, expectedValues[0], expectedValues[1], true, corePayments);
+		payments.add( corePayments[0] );
+		payments.add( corePayments[1] );
 		//_logger.debug("Core payments: " + payments.toString());
 		return payments;
 	}
@@ -121,5 +113,6 @@ public class ECCoreLLGPayments implements PaymentRule
 	private List<Double> _costs;						//A list of costs of the goods
 	private AllocationEC _allocation;						//Resulting allocation of the auction 
 	private JointProbabilityMass _jpmf;					//Joint probability mass function for availabilities of goods
+	private MarginalAvailabilityCache _availabilities;		//Memoized marginal availabilities of bundles
 	
 }
@@ -11,7 +11,7 @@ import ch.uzh.ifi.MechanismDesignPrimitives.Allocation;
 import ch.uzh.ifi.MechanismDesignPrimitives.AtomicBid;
 import ch.uzh.ifi.MechanismDesignPrimitives.Type;
 
-public class ECRVCGPayments implements PaymentRule
+public class ECRVCGPayments implements IPaymentRule
 {
 
 	/*
@@ -27,9 +27,22 @@ public class ECRVCGPayments implements PaymentRule
 		_bids  = bids;
 		_costs = costs;
 		_jpmf = jpmf;
+		_availabilities = new MarginalAvailabilityCache(jpmf);
 		_cplexSolver = cplexSolver;
 	}
 	
+	/*
+	 * Constructor.
+	 * @param allocation - an allocation of the auction
+	 * @param numberOfBuyers - the number of buyers participating in the auction
+	 * @param availabilities - memoized marginal availabilities of bundles (shared with the WDP of the auction)
+	 */
+	public ECRVCGPayments(AllocationEC allocation, int numberOfBuyers, int numberOfItems, List<Type> bids, List<Double> costs, MarginalAvailabilityCache availabilities, IloCplex cplexSolver)
+	{
+		this(allocation, numberOfBuyers, numberOfItems, bids, costs, availabilities.getJPMF(), cplexSolver);
+		_availabilities = availabilities;
+	}
+	
 	/*
 	 * (non-Javadoc)
 	 * @see Mechanisms.PaymentRule#computePayments()
@@ -40,6 +53,29 @@ public class ECRVCGPayments implements PaymentRule
 		int numberOfAllocatedBidders = _allocation.getBiddersInvolved(0).size();
 		List<Double> payments = new LinkedList<Double>();
 		
+		if( isLLG() )												//Closed form without sub-auctions (see LLGKernel.java)
+		{
+			List<Integer> allocatedAvailabilitiesPerGood = new LinkedList<Integer>();
+			List<Double> realizationsOfAvailabilitiesPerGood = new LinkedList<Double>();
+			for(int j = 0; j < numberOfAllocatedBidders; ++j)
+				for(int k = 0; k < _numberOfItems; ++k)
+				{
+					allocatedAvailabilitiesPerGood.add( k+1 );
+					realizationsOfAvailabilitiesPerGood.add(_allocation.getRealizedRVsPerGood(0).get(k));
+				}
+			double[] values = new double[LLGKernel.NUMBER_OF_BIDDERS];
+			double[] costs  = new double[LLGKernel.NUMBER_OF_BIDDERS];
+			double[] conditionalAvailabilities = new double[LLGKernel.NUMBER_OF_BIDDERS];
+			double[] realizedAvailabilities = new double[LLGKernel.NUMBER_OF_BIDDERS];
+			double[] vcgPayments = new double[LLGKernel.NUMBER_OF_BIDDERS];
+			int bidders = LLGKernel.readBids(_bids, _costs, values, costs);
+			LLGKernel.readAvailabilities(_bids, _availabilities, allocatedAvailabilitiesPerGood, realizationsOfAvailabilitiesPerGood, conditionalAvailabilities);
+			LLGKernel.readRealizedAvailabilities(_allocation, _bids, realizedAvailabilities);
+			LLGKernel.computeVCGPayments(bidders, LLGKernel.getAllocation(_allocation, _bids), values, costs, conditionalAvailabilities,
+			                             realizedAvailabilities, realizedAvailabilities, vcgPayments);
+			return LLGKernel.getPaymentsOfAllocatedBidders(_allocation, _bids, vcgPayments);
+		}
+		
 		for(int i = 0; i < numberOfAllocatedBidders; ++i)
 		{
 			//1. Compute the SW without agent i
@@ -50,12 +86,9 @@ public class ECRVCGPayments implements PaymentRule
 				if( _bids.get(j).getAgentId() != allocatedAgentId )
 					bids.add(_bids.get(j));
 			
-			ProbabilisticCAXOR auction = new ProbabilisticCAXOR( _numberOfBuyers - 1, _numberOfItems, bids, _costs, _jpmf);
+			ProbabilisticCAXOR auction = new ProbabilisticCAXOR( _numberOfBuyers - 1, _numberOfItems, bids, _costs, _availabilities);
 			auction.setSolver(_cplexSolver);
-			if( isLLG() ) 
-				auction.setPaymentRule("EC-VCG_LLG");				//Faster allocation without using CPLEX.
-			else
-				auction.setPaymentRule("EC-VCG");
+			auction.setPaymentRule("EC-VCG");
 			
 			List<Integer> allocatedAvailabilitiesPerGood = new LinkedList<Integer>();
 			List<Double> realizationsOfAvailabilitiesPerGood = new LinkedList<Double>();
@@ -133,5 +166,6 @@ public class ECRVCGPayments implements PaymentRule
 	private List<Double> _costs;						//A list of costs of the goods
 	private AllocationEC _allocation;						//Resulting allocation of the auction 
 	private JointProbabilityMass _jpmf;					//Joint probability mass function
+	private MarginalAvailabilityCache _availabilities;		//Memoized marginal availabilities of bundles
 	private IloCplex _cplexSolver;
 }
@@ -14,7 +14,7 @@ import ch.uzh.ifi.MechanismDesignPrimitives.Type;
 /**
  * The class implements execution-contingent VCG payment rule.
  **/
-public class ECVCGPayments implements PaymentRule
+public class ECVCGPayments implements IPaymentRule
 {
 	/*
 	 * Constructor.
@@ -29,7 +29,53 @@ public class ECVCGPayments implements PaymentRule
 		_bids  = bids;
 		_costs = costs;
 		_jpmf = jpmf;
+		_availabilities = new MarginalAvailabilityCache(jpmf);
 		_cplexSolver = cplexSolver;
+		_numberOfThreads = 1;
+		_marginalEconomiesSolver = null;
+		_reducedWelfares = null;
+	}
+	
+	/*
+	 * Constructor.
+	 * @param allocation - an allocation of the auction
+	 * @param numberOfBuyers - the number of buyers participating in the auction
+	 * @param availabilities - memoized marginal availabilities of bundles (shared with the WDP of the auction)
+	 */
+	public ECVCGPayments(AllocationEC allocation, int numberOfBuyers, int numberOfItems, List<Type> bids, List<Double> costs, MarginalAvailabilityCache availabilities, IloCplex cplexSolver)
+	{
+		this(allocation, numberOfBuyers, numberOfItems, bids, costs, availabilities.getJPMF(), cplexSolver);
+		_availabilities = availabilities;
+	}
+	
+	/**
+	 * The method sets up the number of threads used to solve WDPs of marginal economies. If more than one thread is used,
+	 * every worker uses its own CPLEX instance.
+	 * @param numberOfThreads the number of threads
+	 */
+	public void setNumberOfThreads(int numberOfThreads)
+	{
+		_numberOfThreads = numberOfThreads;
+	}
+	
+	/**
+	 * The method sets up a solver of marginal economies shared with other payment rules (see VCGPayments.java). It is
+	 * used if expected SWs of marginal economies are computed by the payment rule.
+	 * @param solver a solver of marginal economies
+	 */
+	public void setMarginalEconomiesSolver(ParallelMarginalEconomiesSolver solver)
+	{
+		_marginalEconomiesSolver = solver;
+	}
+	
+	/**
+	 * The method sets up expected SWs of marginal economies of the allocation shared with other payment rules. By default,
+	 * they are computed by the payment rule.
+	 * @param reducedWelfares expected SWs of marginal economies
+	 */
+	public void setReducedWelfares(ExpectedReducedWelfares reducedWelfares)
+	{
+		_reducedWelfares = reducedWelfares;
 	}
 	
 	/*
@@ -42,42 +88,32 @@ public class ECVCGPayments implements PaymentRule
 		int numberOfAllocatedBidders = _allocation.getBiddersInvolved(0).size();
 		List<Double> payments = new LinkedList<Double>();
 		
+		//1. Compute the SW without every allocated agent
+		ExpectedReducedWelfares reducedWelfares = _reducedWelfares;
+		if( reducedWelfares == null )
+		{
+			reducedWelfares = new ExpectedReducedWelfares(_allocation, _numberOfBuyers, _numberOfItems, _bids, _costs, _availabilities, _cplexSolver);
+			reducedWelfares.setNumberOfThreads(_numberOfThreads);
+			reducedWelfares.setMarginalEconomiesSolver(_marginalEconomiesSolver);
+		}
+		double[] expectedReducedSW = reducedWelfares.getReducedWelfares();
+		
 		for(int i = 0; i < numberOfAllocatedBidders; ++i)
 		{
-			//1. Compute the SW without agent i
 			int allocatedAgentId = _allocation.getBiddersInvolved(0).get(i);
 			
-			List<Type> bids = new LinkedList<Type>();
-			for(int j = 0; j < _numberOfBuyers; ++j)
-				if( _bids.get(j).getAgentId() != allocatedAgentId )
-					bids.add(_bids.get(j));
-			
-			ProbabilisticCAXOR auction = new ProbabilisticCAXOR( _numberOfBuyers - 1, _numberOfItems, bids, _costs, _jpmf);
-			auction.setSolver(_cplexSolver);
-			if( isLLG() ) 
-				auction.setPaymentRule("EC-VCG_LLG");				//Faster allocation without using CPLEX.
-			else
-				auction.setPaymentRule("EC-VCG");
-			auction.computeWinnerDetermination();
-			
-			AllocationEC allocation = (AllocationEC)auction.getAllocation();
-			double expectedReducedSW = allocation.getExpectedWelfare();
-			//_logger.setLevel(_logLevel);
-			//_logger.debug("P" + i + ": WDP: allocate to " + auction.getAllocation().getBiddersInvolved(0).toString() + ". E[sw]=" + expectedReducedSW);
-			
 			//2. Compute the SW with agent i not taking its value into account
 			double expectedDecreasedSW = _allocation.getExpectedWelfare();
 			int allocatedAtomIdx = _allocation.getAllocatedBundlesOfTrade(0).get(i);
 			AtomicBid allocatedAtom = _bids.get(allocatedAgentId - 1).getAtom(allocatedAtomIdx);
+			double expectedMarginalAvailability = _availabilities.getMarginalProbability(allocatedAtom.getInterestingSet(), null, null);
 			
-			expectedDecreasedSW -= allocatedAtom.getValue() * auction.computeExpectedMarginalAvailability(allocatedAtom, null, null);
+			expectedDecreasedSW -= allocatedAtom.getValue() * expectedMarginalAvailability;
 			
 			for(int g : allocatedAtom.getInterestingSet() )
-				expectedDecreasedSW +=   _costs.get( g - 1)*( auction.computeExpectedMarginalAvailability(allocatedAtom, null, null) - _allocation.getRealizedRV(0, i) );
+				expectedDecreasedSW +=   _costs.get( g - 1)*( expectedMarginalAvailability - _allocation.getRealizedRV(0, i) );
 			
-			//_logger.debug("P" + i + ": Realization: " + _allocation.getRealizedRV(0, i));
-			//_logger.debug("P" + i + ": VCG payment = " + expectedReducedSW + " - " + expectedDecreasedSW + " = " + (expectedReducedSW - expectedDecreasedSW));
-			payments.add(expectedReducedSW - expectedDecreasedSW);
+			payments.add(expectedReducedSW[i] - expectedDecreasedSW);
 		}
 		return payments; 
 	}
@@ -92,19 +128,6 @@ public class ECVCGPayments implements PaymentRule
 		return true;
 	}
 	
-	/*
-	 * The method checks whether this is an LLG setup.
-	 * @returns true if the bids come from the LLG domain
-	 */
-	private boolean isLLG()
-	{
-		if( (_numberOfBuyers == 3) && (_bids.size() == 3) && (_numberOfItems == 2))
-			if( _bids.get(0).getNumberOfAtoms() == 1 && _bids.get(1).getNumberOfAtoms() == 1 && _bids.get(2).getNumberOfAtoms() == 1 )
-				if(_bids.get(0).getInterestingSet(0).size() == 1 && _bids.get(1).getInterestingSet(0).size() == 1 && _bids.get(0).getInterestingSet(0).get(0) != _bids.get(1).getInterestingSet(0).get(0))
-					if(_bids.get(2).getInterestingSet(0).size() == 2)
-						return true;
-		return false;
-	}
 	
 
 	private int _numberOfBuyers;						//The number of bidders in the auction
@@ -113,5 +136,9 @@ public class ECVCGPayments implements PaymentRule
 	private List<Double> _costs;						//A list of costs of the goods
 	private AllocationEC _allocation;						//Resulting allocation of the auction 
 	private JointProbabilityMass _jpmf;					//Joint probability mass function
+	private MarginalAvailabilityCache _availabilities;		//Memoized marginal availabilities of bundles
 	private IloCplex _cplexSolver;
+	private int _numberOfThreads;						//The number of threads used to solve WDPs of marginal economies
+	private ParallelMarginalEconomiesSolver _marginalEconomiesSolver;	//A solver of marginal economies shared by payment rules (null if not shared)
+	private ExpectedReducedWelfares _reducedWelfares;	//Expected SWs of marginal economies shared by payment rules (null if not shared)
 }
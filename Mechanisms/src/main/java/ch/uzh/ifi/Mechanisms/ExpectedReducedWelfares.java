@@ -0,0 +1,167 @@
+package ch.uzh.ifi.Mechanisms;
+
+import ilog.cplex.IloCplex;
+
+import java.util.List;
+
+import ch.uzh.ifi.MechanismDesignPrimitives.AllocationEC;
+import ch.uzh.ifi.MechanismDesignPrimitives.Type;
+
+/**
+ * The class computes the expected SW of every marginal economy of an allocation, i.e., of the auction without one of
+ * the allocated bidders, as used by EC-VCG and Exp-VCG payment rules. Objective coefficients are expected surpluses of
+ * atoms (see MarginalAvailabilityCache.getExpectedSurpluses()). All marginal economies share the WDP model warm-started
+ * from the main allocation and may be solved concurrently; for the LLG domain the closed form is used (see LLGKernel.java).
+ * Welfares are computed on the first request only, so that several payment rules evaluated for the same allocation
+ * may share them.
+ * @author Dmitry Moor
+ *
+ */
+public class ExpectedReducedWelfares
+{
+
+	/**
+	 * Constructor.
+	 * @param allocation an allocation of the auction
+	 * @param numberOfBuyers the number of bidders in the auction
+	 * @param numberOfItems the number of goods in the auction
+	 * @param bids bids of bidders
+	 * @param costs (additive) costs per good
+	 * @param availabilities memoized marginal availabilities of bundles
+	 * @param cplexSolver CPLEX solver used to solve WDPs of marginal economies sequentially
+	 */
+	public ExpectedReducedWelfares(AllocationEC allocation, int numberOfBuyers, int numberOfItems, List<Type> bids, List<Double> costs, MarginalAvailabilityCache availabilities, IloCplex cplexSolver)
+	{
+		_allocation = allocation;
+		_numberOfBuyers = numberOfBuyers;
+		_numberOfItems = numberOfItems;
+		_bids = bids;
+		_costs = costs;
+		_availabilities = availabilities;
+		_cplexSolver = cplexSolver;
+		_numberOfThreads = 1;
+		_marginalEconomiesSolver = null;
+		_reducedWelfares = null;
+	}
+
+	/**
+	 * The method sets up the number of threads used to solve WDPs of marginal economies. If more than one thread is used,
+	 * every worker uses its own CPLEX instance.
+	 * @param numberOfThreads the number of threads
+	 */
+	public void setNumberOfThreads(int numberOfThreads)
+	{
+		_numberOfThreads = numberOfThreads;
+	}
+
+	/**
+	 * The method sets up a solver of marginal economies shared with other computations (see VCGPayments.java). The
+	 * shared solver is not closed and its number of threads is used instead of the one set by setNumberOfThreads(...).
+	 * @param solver a solver of marginal economies
+	 */
+	public void setMarginalEconomiesSolver(ParallelMarginalEconomiesSolver solver)
+	{
+		_marginalEconomiesSolver = solver;
+	}
+
+	/**
+	 * The method returns the expected SW of every marginal economy.
+	 * @return an array which i-th element is the expected SW of the marginal economy without the i-th allocated bidder
+	 * @throws Exception if a WDP cannot be solved
+	 */
+	public synchronized double[] getReducedWelfares() throws Exception
+	{
+		if( _reducedWelfares == null )
+			_reducedWelfares = isLLG() ? computeReducedWelfaresLLG() : computeReducedWelfares();
+		return _reducedWelfares;
+	}
+
+	/**
+	 * The method computes the expected SW of every marginal economy by solving their WDPs.
+	 * @return the expected SW of the marginal economy without the i-th allocated bidder
+	 * @throws Exception if a WDP cannot be solved
+	 */
+	private double[] computeReducedWelfares() throws Exception
+	{
+		double[][] weights = _availabilities.getExpectedSurpluses(_bids, _costs, null, null);
+
+		boolean isSharedSolver = (_marginalEconomiesSolver != null);
+		ParallelMarginalEconomiesSolver solver = isSharedSolver ? _marginalEconomiesSolver : new ParallelMarginalEconomiesSolver(_numberOfThreads);
+		solver.setProblem(weights, new BinaryBids(_bids, _numberOfItems));
+		solver.setSolver(_cplexSolver);
+		solver.setWDPSolver(null);
+
+		int[] excludedBidders = new int[ _allocation.getBiddersInvolved(0).size() ];
+		for(int i = 0; i < excludedBidders.length; ++i)
+			excludedBidders[i] = getBidderIdx( _allocation.getBiddersInvolved(0).get(i) );
+
+		try
+		{
+			return solver.solveWithout(excludedBidders, MarginalEconomiesEngine.getAllocatedAtoms(_allocation, _bids));
+		}
+		finally
+		{
+			if( !isSharedSolver )
+				solver.close();
+		}
+	}
+
+	/**
+	 * The method computes the expected SW of every marginal economy for the LLG domain using the closed form (see LLGKernel.java).
+	 * @return the expected SW of the marginal economy without the i-th allocated bidder
+	 */
+	private double[] computeReducedWelfaresLLG()
+	{
+		double[] values = new double[LLGKernel.NUMBER_OF_BIDDERS];
+		double[] costs  = new double[LLGKernel.NUMBER_OF_BIDDERS];
+		double[] expectedAvailabilities = new double[LLGKernel.NUMBER_OF_BIDDERS];
+		int bidders = LLGKernel.readBids(_bids, _costs, values, costs);
+		LLGKernel.readAvailabilities(_bids, _availabilities, null, null, expectedAvailabilities);
+
+		double[] expectedReducedSW = new double[ _allocation.getBiddersInvolved(0).size() ];
+		for(int i = 0; i < expectedReducedSW.length; ++i)
+		{
+			int excludedBidder = 1 << getBidderIdx( _allocation.getBiddersInvolved(0).get(i) );
+			expectedReducedSW[i] = LLGKernel.computeWelfare(bidders & ~excludedBidder, values, costs, expectedAvailabilities);
+		}
+		return expectedReducedSW;
+	}
+
+	/**
+	 * The method returns the index of a bidder in the list of bids.
+	 * @param agentId an id of the bidder
+	 * @return the index of the bidder
+	 */
+	private int getBidderIdx(int agentId)
+	{
+		for(int j = 0; j < _numberOfBuyers; ++j)
+			if( _bids.get(j).getAgentId() == agentId )
+				return j;
+		throw new RuntimeException("No bid of the agent " + agentId);
+	}
+
+	/**
+	 * The method checks whether this is an LLG setup.
+	 * @return true if the bids come from the LLG domain
+	 */
+	private boolean isLLG()
+	{
+		if( (_numberOfBuyers == 3) && (_bids.size() == 3) && (_numberOfItems == 2))
+			if( _bids.get(0).getNumberOfAtoms() == 1 && _bids.get(1).getNumberOfAtoms() == 1 && _bids.get(2).getNumberOfAtoms() == 1 )
+				if(_bids.get(0).getInterestingSet(0).size() == 1 && _bids.get(1).getInterestingSet(0).size() == 1 && _bids.get(0).getInterestingSet(0).get(0) != _bids.get(1).getInterestingSet(0).get(0))
+					if(_bids.get(2).getInterestingSet(0).size() == 2)
+						return true;
+		return false;
+	}
+
+	private int _numberOfBuyers;									//The number of bidders in the auction
+	private int _numberOfItems;										//The number of goods in the auction
+	private List<Type> _bids;										//Bids of bidders
+	private List<Double> _costs;									//Costs of the goods
+	private AllocationEC _allocation;								//The allocation of the auction
+	private MarginalAvailabilityCache _availabilities;				//Memoized marginal availabilities of bundles
+	private IloCplex _cplexSolver;									//CPLEX solver
+	private int _numberOfThreads;									//The number of threads used to solve WDPs of marginal economies
+	private ParallelMarginalEconomiesSolver _marginalEconomiesSolver;		//A shared solver of marginal economies (null if not shared)
+	private double[] _reducedWelfares;								//Expected SW of marginal economies (null until computed)
+}
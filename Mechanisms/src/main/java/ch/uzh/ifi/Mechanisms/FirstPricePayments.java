@@ -7,7 +7,7 @@ import ch.uzh.ifi.MechanismDesignPrimitives.ComplexSemanticWebType;
 import java.util.LinkedList;
 import java.util.List;
 
-public class FirstPricePayments implements PaymentRule
+public class FirstPricePayments implements IPaymentRule
 {
 
 	/*
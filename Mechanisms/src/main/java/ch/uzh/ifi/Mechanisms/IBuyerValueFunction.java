@@ -0,0 +1,26 @@
+package ch.uzh.ifi.Mechanisms;
+
+/**
+ * The interface of the value function of a buyer in the data market as a function of the deterministic allocation of
+ * DBs. For every allocation the value of rows is linear up to a threshold (see LinearThresholdValueFunction), i.e., it
+ * is described by the marginal value of a row and the threshold. The allocation is encoded by a long, i.e., the k-th bit
+ * stands for the DB with dbId = k+1 and at most 64 DBs can be encoded. Methods may be called concurrently.
+ * @author Dmitry Moor
+ *
+ */
+public interface IBuyerValueFunction
+{
+	/**
+	 * The method returns the marginal value of a row.
+	 * @param allocation binary encoding of the deterministic allocation of DBs
+	 * @return the marginal value of a row given the allocation
+	 */
+	public double getMarginalValue(long allocation);
+
+	/**
+	 * The method returns the threshold, i.e., the max number of rows with a positive marginal value.
+	 * @param allocation binary encoding of the deterministic allocation of DBs
+	 * @return the threshold given the allocation
+	 */
+	public double getThreshold(long allocation);
+}
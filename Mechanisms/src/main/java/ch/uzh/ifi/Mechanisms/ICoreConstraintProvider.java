@@ -0,0 +1,55 @@
+package ch.uzh.ifi.Mechanisms;
+
+import java.util.List;
+
+/**
+ * The interface of a provider of bounds and SEP coefficients for the core constraint generation engine
+ * (see CoreConstraintGenerationEngine.java). Different core-selecting payment rules (CORE, EC-CORE, ECC-CORE,
+ * ECR-CORE, Exp-CORE) differ only in how these quantities are computed.
+ * Winners are indexed in the order of the allocation, i.e., winnerIdx corresponds to allocation.getBiddersInvolved(0).get(winnerIdx).
+ */
+public interface ICoreConstraintProvider
+{
+	/**
+	 * The method computes lower bounds for core payments of winners (VCG, EC-VCG, ECC-VCG, ECR-VCG or Exp-VCG payments).
+	 * @return a list of lower bounds, one per winner
+	 * @throws Exception if the lower bounds cannot be computed
+	 */
+	public List<Double> computeLowerBounds() throws Exception;
+
+	/**
+	 * The method computes an upper bound for the core payment of a winner (value, expected or realized value).
+	 * @param winnerIdx an index of the winner in the allocation
+	 * @return the upper bound for the payment of the winner
+	 */
+	public double computeUpperBound(int winnerIdx);
+
+	/**
+	 * The method computes the SEP objective coefficient of an atom of a bidder.
+	 * @param bidderIdx an index of the bidder in the list of bids
+	 * @param atomIdx an index of the atom in the bid of the bidder
+	 * @return the objective coefficient of the atom
+	 */
+	public double computeSEPCoefficient(int bidderIdx, int atomIdx);
+
+	/**
+	 * The method computes the value of a winner used by the SEP for the coalition excluding the winner.
+	 * @param winnerIdx an index of the winner in the allocation
+	 * @return the value of the winner for its allocated bundle
+	 */
+	public double computeWinnersSEPValue(int winnerIdx);
+
+	/**
+	 * The method computes the cost of the bundle allocated to a winner used by the SEP.
+	 * @param winnerIdx an index of the winner in the allocation
+	 * @return the cost of the bundle allocated to the winner
+	 */
+	public double computeWinnersSEPCost(int winnerIdx);
+
+	/**
+	 * The method returns true if the SEP should be formulated using the Gamma_S variable (the seller joins a coalition)
+	 * and false if the formulation of EC-CORE without the Gamma_S variable should be used.
+	 * @return true if the Gamma_S formulation is used
+	 */
+	public boolean isGammaSFormulation();
+}
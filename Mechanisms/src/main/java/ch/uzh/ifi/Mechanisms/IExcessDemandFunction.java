@@ -0,0 +1,18 @@
+package ch.uzh.ifi.Mechanisms;
+
+/**
+ * The interface of the excess demand for money in the data market as a function of the price per row. The excess demand
+ * is assumed to be non-increasing in the price: a positive excess demand requires a higher price and vice versa.
+ * @author Dmitry Moor
+ *
+ */
+public interface IExcessDemandFunction
+{
+	/**
+	 * The method computes the excess demand for money.
+	 * @param price price per row
+	 * @return the excess demand for money at the given price
+	 * @throws Exception if the excess demand cannot be computed
+	 */
+	public double computeExcessDemand(double price) throws Exception;
+}
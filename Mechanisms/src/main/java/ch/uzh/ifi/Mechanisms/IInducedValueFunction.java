@@ -0,0 +1,19 @@
+package ch.uzh.ifi.Mechanisms;
+
+/**
+ * The interface of the total induced value of DBs in the data market as a function of the deterministic allocation of
+ * DBs. The allocation is encoded by a long, i.e., the k-th bit stands for the DB with dbId = k+1 and at most 64 DBs can
+ * be encoded.
+ * @author Dmitry Moor
+ *
+ */
+public interface IInducedValueFunction
+{
+	/**
+	 * The method computes the total induced value of all DBs.
+	 * @param allocation binary encoding of the deterministic allocation of DBs
+	 * @return the total induced value of DBs given the allocation
+	 * @throws Exception if the induced value cannot be computed
+	 */
+	public double computeTotalInducedValue(long allocation) throws Exception;
+}
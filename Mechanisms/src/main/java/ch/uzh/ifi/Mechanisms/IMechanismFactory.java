@@ -16,6 +16,16 @@ public interface IMechanismFactory
 	 */
 	void setSolver(IloCplex solver);
 	
+	/*
+	 * The method sets up a pool of solver contexts. Mechanisms produced by the factory acquire a CPLEX solver from the pool
+	 * instead of sharing the solver set by setSolver(...) and, hence, can be solved concurrently.
+	 * @param pool - a pool of solver contexts
+	 */
+	default void setSolverContextPool(SolverContextPool pool)
+	{
+		throw new RuntimeException("The factory does not support solver context pools: " + getMehcanismName());
+	}
+	
 	/*
 	 * The interface triggers production of an auction mechanism.
 	 * @param types - a list of types of bidders
@@ -0,0 +1,25 @@
+package ch.uzh.ifi.Mechanisms;
+
+/**
+ * The interface of a strategy searching for the equilibrium price of the data market, i.e., for a non-negative price at
+ * which the excess demand for money vanishes (or for the price 0 if the excess demand is negative at any price).
+ * @author Dmitry Moor
+ *
+ */
+public interface IPriceSearchStrategy
+{
+	/**
+	 * The method searches for the equilibrium price.
+	 * @param excessDemand the excess demand for money
+	 * @param startPrice the price to start the search with
+	 * @return the equilibrium price
+	 * @throws Exception if the excess demand cannot be computed
+	 */
+	public double searchPrice(IExcessDemandFunction excessDemand, double startPrice) throws Exception;
+
+	/**
+	 * The method returns the number of evaluations of the excess demand performed by the last search.
+	 * @return the number of iterations
+	 */
+	public int getNumberOfIterations();
+}
@@ -0,0 +1,17 @@
+package ch.uzh.ifi.Mechanisms;
+
+/**
+ * An interface for solvers of the winner determination problem (WDP) of a combinatorial auction with the XOR bidding language:
+ * max sum_i sum_j w_ij * x_ij  s.t. every good is allocated at most once, every bidder gets at most one atom, x_ij in {0, 1}.
+ * Implementations shared by several workers (see ParallelMarginalEconomiesSolver.java) must be thread-safe.
+ */
+public interface IWinnerDeterminationSolver
+{
+	/**
+	 * The method solves the WDP.
+	 * @param weights weights[i][j] is the objective coefficient of the j-th atom of the i-th bidder
+	 * @param binaryBids bids of bidders in the binary format (see BinaryBids.java)
+	 * @return an array which i-th element is the index of the atom allocated to the i-th bidder or -1 if the bidder is not allocated
+	 */
+	public int[] solve(double[][] weights, BinaryBids binaryBids);
+}
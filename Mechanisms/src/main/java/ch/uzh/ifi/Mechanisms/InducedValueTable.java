@@ -0,0 +1,148 @@
+package ch.uzh.ifi.Mechanisms;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The class stores induced values of DBs for all deterministic allocations of DBs in a flat array. The value of the k-th
+ * DB (0-based) given the deterministic allocation j (binary encoding, the k-th bit stands for the k-th DB) is stored at
+ * the index (k << numberOfDBs) | j, i.e., values of a DB for all allocations are contiguous.
+ * @author Dmitry Moor
+ *
+ */
+public class InducedValueTable
+{
+
+	/**
+	 * Constructor. All values are 0.
+	 * @param numberOfDBs the number of DBs
+	 */
+	public InducedValueTable(int numberOfDBs)
+	{
+		if( numberOfDBs < 0 || numberOfDBs > _MAX_NUMBER_OF_DBS ) throw new RuntimeException("Wrong number of DBs: " + numberOfDBs);
+		_numberOfDBs = numberOfDBs;
+		_values = new double[numberOfDBs << numberOfDBs];
+	}
+
+	/**
+	 * The method creates a table from lists of induced values (the k-th list contains values of the k-th DB for all
+	 * deterministic allocations of DBs).
+	 * @param inducedValues induced values of DBs
+	 * @return the table
+	 */
+	public static InducedValueTable fromLists(List< List<Double> > inducedValues)
+	{
+		int numberOfDBs = inducedValues.size();
+		InducedValueTable table = new InducedValueTable(numberOfDBs);
+		for(int k = 0; k < numberOfDBs; ++k)
+		{
+			List<Double> inducedValuesK = inducedValues.get(k);
+			if( inducedValuesK.size() < table.getNumberOfAllocations() ) throw new RuntimeException("Not all induced values available: " + inducedValuesK.size() + "/" + numberOfDBs);
+			if( inducedValuesK.size() > table.getNumberOfAllocations() ) throw new RuntimeException("Too many induced values specified.");
+
+			int offset = k << numberOfDBs;
+			for(int j = 0; j < inducedValuesK.size(); ++j)
+				table._values[offset | j] = inducedValuesK.get(j);
+		}
+		return table;
+	}
+
+	/**
+	 * The method converts the table into lists of induced values (the k-th list contains values of the k-th DB for all
+	 * deterministic allocations of DBs).
+	 * @return induced values of DBs
+	 */
+	public List< List<Double> > toLists()
+	{
+		List< List<Double> > inducedValues = new ArrayList< List<Double> >(_numberOfDBs);
+		for(int k = 0; k < _numberOfDBs; ++k)
+		{
+			List<Double> inducedValuesK = new ArrayList<Double>(getNumberOfAllocations());
+			int offset = k << _numberOfDBs;
+			for(int j = 0; j < getNumberOfAllocations(); ++j)
+				inducedValuesK.add(_values[offset | j]);
+			inducedValues.add(inducedValuesK);
+		}
+		return inducedValues;
+	}
+
+	/**
+	 * The method returns the induced value of a DB.
+	 * @param dbIdx the index of the DB (dbId - 1)
+	 * @param allocation binary encoding of the deterministic allocation of DBs
+	 * @return the induced value
+	 */
+	public double get(int dbIdx, int allocation)
+	{
+		return _values[(dbIdx << _numberOfDBs) | allocation];
+	}
+
+	/**
+	 * The method sets the induced value of a DB.
+	 * @param dbIdx the index of the DB (dbId - 1)
+	 * @param allocation binary encoding of the deterministic allocation of DBs
+	 * @param value the induced value
+	 */
+	public void set(int dbIdx, int allocation, double value)
+	{
+		_values[(dbIdx << _numberOfDBs) | allocation] = value;
+	}
+
+	/**
+	 * The method computes the total induced value of all DBs.
+	 * @param allocation binary encoding of the deterministic allocation of DBs
+	 * @return the total induced value
+	 */
+	public double getTotalValue(int allocation)
+	{
+		double totalValue = 0.;
+		for(int offset = allocation; offset < _values.length; offset += 1 << _numberOfDBs)
+			totalValue += _values[offset];
+		return totalValue;
+	}
+
+	/**
+	 * The method projects the table on allocations in which the given DB is not allocated and removes the DB. DBs with
+	 * larger indexes are shifted down by one, i.e., the bit of the removed DB is squeezed out of binary encodings.
+	 * @param dbIdx the index of the DB to be removed (dbId - 1)
+	 * @return the projected table
+	 */
+	public InducedValueTable removeDB(int dbIdx)
+	{
+		InducedValueTable table = new InducedValueTable(_numberOfDBs - 1);
+		int lowBits = (1 << dbIdx) - 1;
+		int numberOfAllocations = table.getNumberOfAllocations();
+		for(int k = 0, kReduced = 0; k < _numberOfDBs; ++k)
+		{
+			if( k == dbIdx )
+				continue;
+
+			int offset = k << _numberOfDBs;
+			int offsetReduced = kReduced << table._numberOfDBs;
+			for(int j = 0; j < numberOfAllocations; ++j)
+				table._values[offsetReduced | j] = _values[offset | ((j & ~lowBits) << 1) | (j & lowBits)];	//Insert 0 at the bit dbIdx
+			kReduced += 1;
+		}
+		return table;
+	}
+
+	/**
+	 * @return the number of DBs
+	 */
+	public int getNumberOfDBs()
+	{
+		return _numberOfDBs;
+	}
+
+	/**
+	 * @return the number of deterministic allocations of DBs
+	 */
+	public int getNumberOfAllocations()
+	{
+		return 1 << _numberOfDBs;
+	}
+
+	private static final int _MAX_NUMBER_OF_DBS = 26;				//The max number of DBs (the table has numberOfDBs*2^numberOfDBs entries)
+	private int _numberOfDBs;										//The number of DBs
+	private double[] _values;										//Induced values of DBs, values of a DB are contiguous
+}
@@ -0,0 +1,328 @@
+package ch.uzh.ifi.Mechanisms;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ch.uzh.ifi.MechanismDesignPrimitives.Allocation;
+import ch.uzh.ifi.MechanismDesignPrimitives.AllocationEC;
+import ch.uzh.ifi.MechanismDesignPrimitives.AtomicBid;
+import ch.uzh.ifi.MechanismDesignPrimitives.Type;
+
+/**
+ * The class implements the closed-form solution of the LLG domain (two local bidders interested in one good each and
+ * a global bidder interested in both goods) on primitive arrays. Bidders are indexed 0 (first local), 1 (second local)
+ * and 2 (global); an allocation or a set of participating bidders is a bit mask (see LOCAL1, LOCAL2, GLOBAL). Arrays of
+ * values, costs and availabilities have one entry per bidder; payments are written into a caller-provided array. Public
+ * methods do not allocate memory, so that they can be called from tight loops (e.g., by a BNE solver). Allocation rules
+ * and payment rules for the LLG domain are thin wrappers around the kernel: package-private helpers read bids, the
+ * allocation and (conditional) availabilities of bundles from the joint probability mass function into kernel arrays.
+ * @author Dmitry Moor
+ */
+public final class LLGKernel
+{
+	public static final int NUMBER_OF_BIDDERS = 3;				//The number of bidders in the LLG domain
+	public static final int LOCAL1 = 1;							//The bit of the first local bidder
+	public static final int LOCAL2 = 2;							//The bit of the second local bidder
+	public static final int GLOBAL = 4;							//The bit of the global bidder
+	public static final int ALL_BIDDERS = LOCAL1 | LOCAL2 | GLOBAL;	//All bidders of the domain
+
+	private LLGKernel()
+	{
+	}
+
+	/**
+	 * The method solves the WDP of the LLG domain given (expected) surpluses of bidders. Bidders which do not participate
+	 * are never allocated. Ties are resolved in favor of local bidders.
+	 * @param bidders a bit mask of participating bidders
+	 * @param sw1 the surplus of the first local bidder
+	 * @param sw2 the surplus of the second local bidder
+	 * @param swG the surplus of the global bidder
+	 * @return a bit mask of allocated bidders
+	 */
+	public static int computeAllocation(int bidders, double sw1, double sw2, double swG)
+	{
+		if( (bidders & LOCAL1) == 0 )	sw1 = Double.NEGATIVE_INFINITY;
+		if( (bidders & LOCAL2) == 0 )	sw2 = Double.NEGATIVE_INFINITY;
+		if( (bidders & GLOBAL) == 0 )	swG = Double.NEGATIVE_INFINITY;
+
+		if( sw1 >= 0 && sw2 >= 0 && sw1 + sw2 >= swG )				//Allocate to local bidders
+			return LOCAL1 | LOCAL2;
+		else if( sw1 >= 0 && sw2 < 0 && sw1 >= swG )				//Allocate to a single local bidder
+			return LOCAL1;
+		else if( sw2 >= 0 && sw1 < 0 && sw2 >= swG )
+			return LOCAL2;
+		else if( swG >= 0 )											//Allocate to the global bidder
+			return GLOBAL;
+		return 0;
+	}
+
+	/**
+	 * The method solves the WDP of the LLG domain.
+	 * @param bidders a bit mask of participating bidders
+	 * @param values values of bidders for their bundles
+	 * @param costs costs of bundles of bidders
+	 * @param availabilities (expected) availabilities of bundles of bidders
+	 * @return a bit mask of allocated bidders
+	 */
+	public static int computeAllocation(int bidders, double[] values, double[] costs, double[] availabilities)
+	{
+		return computeAllocation(bidders, computeSurplus(0, values, costs, availabilities),
+				                          computeSurplus(1, values, costs, availabilities),
+				                          computeSurplus(2, values, costs, availabilities));
+	}
+
+	/**
+	 * The method computes the (expected) social welfare of the optimal allocation among the participating bidders.
+	 * @param bidders a bit mask of participating bidders
+	 * @param values values of bidders for their bundles
+	 * @param costs costs of bundles of bidders
+	 * @param availabilities (expected) availabilities of bundles of bidders
+	 * @return the welfare of the optimal allocation
+	 */
+	public static double computeWelfare(int bidders, double[] values, double[] costs, double[] availabilities)
+	{
+		int allocation = computeAllocation(bidders, values, costs, availabilities);
+		double welfare = 0.;
+		for(int k = 0; k < NUMBER_OF_BIDDERS; ++k)
+			if( isAllocated(allocation, k) )
+				welfare += computeSurplus(k, values, costs, availabilities);
+		return welfare;
+	}
+
+	/**
+	 * The method computes VCG payments of allocated bidders of a deterministic LLG auction.
+	 * @param bidders a bit mask of participating bidders
+	 * @param allocation a bit mask of allocated bidders
+	 * @param values values of bidders for their bundles
+	 * @param costs costs of bundles of bidders
+	 * @param payments an array to be filled with payments of bidders (0 for unallocated bidders)
+	 */
+	public static void computeVCGPayments(int bidders, int allocation, double[] values, double[] costs, double[] payments)
+	{
+		computeVCGPayments(bidders, allocation, values, costs, ONES, ONES, ONES, payments);
+	}
+
+	/**
+	 * The method computes VCG-like payments of allocated bidders of the LLG domain. The payment of an allocated bidder i is
+	 *   p_i = W_{-i} - sum_{j != i} (v_j - c_j) * a_j + c_i * b_i,
+	 * where W_{-i} is the welfare of the auction without the bidder given reduced availabilities, a_j are availabilities
+	 * of other allocated bidders and b_i is the availability at which the seller's cost of the bidder is charged.
+	 * VCG uses unit availabilities; Exp-VCG uses expected availabilities everywhere; EC-VCG uses expected availabilities for
+	 * W_{-i} and a_j and the realized availability for b_i; ECC-VCG and ECR-VCG use conditional availabilities for W_{-i}
+	 * and realized availabilities for a_j and b_i.
+	 * @param bidders a bit mask of participating bidders
+	 * @param allocation a bit mask of allocated bidders
+	 * @param values values of bidders for their bundles
+	 * @param costs costs of bundles of bidders
+	 * @param reducedAvailabilities availabilities of bundles used to compute the welfare of marginal economies
+	 * @param decreasedAvailabilities availabilities of bundles of other allocated bidders
+	 * @param costAvailabilities availabilities at which costs of bundles of allocated bidders are charged
+	 * @param payments an array to be filled with payments of bidders (0 for unallocated bidders)
+	 */
+	public static void computeVCGPayments(int bidders, int allocation, double[] values, double[] costs, double[] reducedAvailabilities,
+			                              double[] decreasedAvailabilities, double[] costAvailabilities, double[] payments)
+	{
+		for(int i = 0; i < NUMBER_OF_BIDDERS; ++i)
+		{
+			if( !isAllocated(allocation, i) )
+			{
+				payments[i] = 0.;
+				continue;
+			}
+
+			double reducedSW = computeWelfare(bidders & ~(1 << i), values, costs, reducedAvailabilities);
+			double decreasedSW = 0.;
+			for(int j = 0; j < NUMBER_OF_BIDDERS; ++j)
+				if( isAllocated(allocation, j) )
+				{
+					if( j != i )
+						decreasedSW += (values[j] - costs[j]) * decreasedAvailabilities[j];
+					else
+						decreasedSW += (-1 * costs[j]) * costAvailabilities[j];
+				}
+			payments[i] = reducedSW - decreasedSW;
+		}
+	}
+
+	/**
+	 * The method checks if the core of the LLG auction with two allocated local bidders is empty, i.e., if a VCG payment
+	 * exceeds the value of a bidder or if the values of both bidders cannot cover the blocking coalition constraint.
+	 * @param vcg1 the VCG payment of the first local bidder
+	 * @param vcg2 the VCG payment of the second local bidder
+	 * @param blockingRevenue the right hand side of the core constraint p_1 + p_2 >= A
+	 * @param value1 the (realized or expected) value of the first local bidder
+	 * @param value2 the (realized or expected) value of the second local bidder
+	 * @return true if the core is empty
+	 */
+	public static boolean isCoreEmpty(double vcg1, double vcg2, double blockingRevenue, double value1, double value2)
+	{
+		return vcg1 > value1 || vcg2 > value2 || value1 + value2 < blockingRevenue;
+	}
+
+	/**
+	 * The method projects VCG payments of two allocated local bidders onto the core constraint p_1 + p_2 >= A. If the
+	 * projection is bounded, payments are moved along the constraint so that no payment exceeds the value of the bidder.
+	 * @param vcg1 the VCG payment of the first local bidder
+	 * @param vcg2 the VCG payment of the second local bidder
+	 * @param blockingRevenue the right hand side of the core constraint p_1 + p_2 >= A
+	 * @param value1 the (realized or expected) value of the first local bidder
+	 * @param value2 the (realized or expected) value of the second local bidder
+	 * @param isBounded true if payments should not exceed values of bidders
+	 * @param payments an array to be filled with core payments of the two local bidders
+	 */
+	public static void projectOnCore(double vcg1, double vcg2, double blockingRevenue, double value1, double value2, boolean isBounded, double[] payments)
+	{
+		double d = (blockingRevenue - vcg1 - vcg2) * COS_PI_4;
+		payments[0] = vcg1 + d * COS_PI_4;
+		payments[1] = vcg2 + d * COS_PI_4;
+
+		if( isBounded )
+		{
+			if( vcg1 + value2 < blockingRevenue && payments[1] > value2 )
+			{
+				payments[1] = value2;
+				payments[0] = blockingRevenue - payments[1];
+			}
+			if( vcg2 + value1 < blockingRevenue && payments[0] > value1 )
+			{
+				payments[0] = value1;
+				payments[1] = blockingRevenue - payments[0];
+			}
+		}
+	}
+
+	/**
+	 * The method checks if a bidder is allocated.
+	 * @param allocation a bit mask of allocated bidders
+	 * @param bidderIdx an index of the bidder (0, 1 or 2)
+	 * @return true if the bidder is allocated
+	 */
+	public static boolean isAllocated(int allocation, int bidderIdx)
+	{
+		return (allocation & (1 << bidderIdx)) != 0;
+	}
+
+	/**
+	 * The method computes the (expected) surplus of a bidder.
+	 * @param bidderIdx an index of the bidder
+	 * @param values values of bidders for their bundles
+	 * @param costs costs of bundles of bidders
+	 * @param availabilities (expected) availabilities of bundles of bidders
+	 * @return (v - c) * a
+	 */
+	private static double computeSurplus(int bidderIdx, double[] values, double[] costs, double[] availabilities)
+	{
+		return (values[bidderIdx] - costs[bidderIdx]) * availabilities[bidderIdx];
+	}
+
+	/**
+	 * The method returns the index of a bidder of the (possibly reduced) LLG auction in kernel arrays. In a reduced auction
+	 * with two bidders, the second bidder is the global one if its id is 3; otherwise both bidders are local.
+	 * @param bids bids of the (possibly reduced) LLG auction
+	 * @param i an index of the bid in the list
+	 * @return the index of the bidder in kernel arrays
+	 */
+	static int getBidderIdx(List<Type> bids, int i)
+	{
+		if( bids.size() == 2 && i == 1 && bids.get(1).getAgentId() == 3 )
+			return 2;
+		return i;
+	}
+
+	/**
+	 * The method fills kernel arrays with values and costs of bundles of the (possibly reduced) LLG auction.
+	 * @param bids bids of the auction (one atom per bidder)
+	 * @param costs per-good costs
+	 * @param values an array to be filled with values of bidders
+	 * @param bundleCosts an array to be filled with costs of bundles of bidders
+	 * @return a bit mask of participating bidders
+	 */
+	static int readBids(List<Type> bids, List<Double> costs, double[] values, double[] bundleCosts)
+	{
+		int bidders = 0;
+		for(int i = 0; i < bids.size(); ++i)
+		{
+			int k = getBidderIdx(bids, i);
+			AtomicBid atom = bids.get(i).getAtom(0);
+			values[k] = atom.getValue();
+			bundleCosts[k] = atom.computeCost(costs);
+			bidders |= 1 << k;
+		}
+		return bidders;
+	}
+
+	/**
+	 * The method fills a kernel array with expected availabilities of bundles of the (possibly reduced) LLG auction.
+	 * @param bids bids of the auction (one atom per bidder)
+	 * @param availabilities memoized marginal availabilities of the joint probability mass function
+	 * @param goods ids of goods with known availabilities (null if none)
+	 * @param realizations realized availabilities of these goods (null if none)
+	 * @param expectedAvailabilities an array to be filled with expected availabilities of bundles
+	 */
+	static void readAvailabilities(List<Type> bids, MarginalAvailabilityCache availabilities, List<Integer> goods, List<Double> realizations, double[] expectedAvailabilities)
+	{
+		for(int i = 0; i < bids.size(); ++i)
+			expectedAvailabilities[ getBidderIdx(bids, i) ] = availabilities.getMarginalProbability(bids.get(i).getInterestingSet(0), goods, realizations);
+	}
+
+	/**
+	 * The method returns the index of a bidder in kernel arrays given the id of the bidder.
+	 * @param bids bids of the auction
+	 * @param agentId an id of the bidder
+	 * @return the index of the bidder in kernel arrays
+	 */
+	static int getBidderIdxOfAgent(List<Type> bids, int agentId)
+	{
+		for(int i = 0; i < bids.size(); ++i)
+			if( bids.get(i).getAgentId() == agentId )
+				return getBidderIdx(bids, i);
+		throw new RuntimeException("No bid of the agent " + agentId);
+	}
+
+	/**
+	 * The method converts an allocation of the LLG auction into a bit mask.
+	 * @param allocation an allocation of the auction
+	 * @param bids bids of the auction
+	 * @return a bit mask of allocated bidders
+	 */
+	static int getAllocation(Allocation allocation, List<Type> bids)
+	{
+		int res = 0;
+		if( allocation.getNumberOfAllocatedAuctioneers() == 0 )
+			return res;
+
+		for(int agentId : allocation.getBiddersInvolved(0))
+			res |= 1 << getBidderIdxOfAgent(bids, agentId);
+		return res;
+	}
+
+	/**
+	 * The method fills a kernel array with realized availabilities of bundles of allocated bidders.
+	 * @param allocation an allocation of the auction
+	 * @param bids bids of the auction
+	 * @param realizedAvailabilities an array to be filled with realized availabilities (unallocated bidders are not touched)
+	 */
+	static void readRealizedAvailabilities(AllocationEC allocation, List<Type> bids, double[] realizedAvailabilities)
+	{
+		for(int j = 0; j < allocation.getBiddersInvolved(0).size(); ++j)
+			realizedAvailabilities[ getBidderIdxOfAgent(bids, allocation.getBiddersInvolved(0).get(j)) ] = allocation.getRealizedRV(0, j);
+	}
+
+	/**
+	 * The method lists payments of allocated bidders in the order of the allocation.
+	 * @param allocation an allocation of the auction
+	 * @param bids bids of the auction
+	 * @param payments payments of bidders indexed as kernel arrays
+	 * @return payments of allocated bidders
+	 */
+	static List<Double> getPaymentsOfAllocatedBidders(Allocation allocation, List<Type> bids, double[] payments)
+	{
+		List<Double> res = new ArrayList<Double>();
+		for(int agentId : allocation.getBiddersInvolved(0))
+			res.add( payments[ getBidderIdxOfAgent(bids, agentId) ] );
+		return res;
+	}
+
+	private static final double COS_PI_4 = Math.cos(Math.PI / 4);				//Projection onto the core constraint
+	private static final double[] ONES = {1., 1., 1.};							//Availabilities of a deterministic auction
+}
@@ -0,0 +1,394 @@
+package ch.uzh.ifi.Mechanisms;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ch.uzh.ifi.MechanismDesignPrimitives.AtomicBid;
+import ch.uzh.ifi.MechanismDesignPrimitives.JointProbabilityMass;
+import ch.uzh.ifi.MechanismDesignPrimitives.Type;
+
+/**
+ * The class memoizes expected marginal availabilities of bundles computed by the joint probability mass function. Every
+ * call of the JPMF scans all its samples, while the WDP and payment rules of an auction (including reduced auctions of
+ * payment rules) query the same bundles with the same conditioning many times. Availabilities are indexed by the bundle,
+ * the goods with known availabilities and their realized availabilities; neither the order of goods within the bundle
+ * nor the order of conditioning goods matters.
+ *
+ * A cache is created by every auction, so that the WDP and all payment sub-problems of the auction share it. A cache may
+ * also be shared by several auctions with the same JPMF (see ProbabilisticCAXOR.java). The cache cannot observe updates
+ * of the JPMF, i.e., clear() must be called once samples of the JPMF are regenerated (e.g., by jpmf.update()).
+ *
+ * The cache is bounded: once the capacity is reached, all entries are dropped. Availabilities conditioned on realizations
+ * of an auction are rarely reused by other auctions since realizations are continuous, so that a shared cache would
+ * otherwise grow with every auction.
+ *
+ * Misses are answered by the JPMF or, if specified, by an index of samples of the JPMF (see AvailabilitySampleIndex.java).
+ * If no sample of the index is consistent with the realizations, the miss is answered by the JPMF.
+ * Realizations of availabilities are drawn from the JPMF through the cache as well. The random numbers generator of the
+ * JPMF is shared by all its users, i.e., realizations drawn by concurrent auctions depend on the order of their calls.
+ * If a seed is set (see setSeed()), realizations are drawn from the index using the cache's own generator instead, so
+ * that an auction with its own cache draws the same realizations regardless of other auctions.
+ *
+ * The cache is thread-safe. Calls of the JPMF are synchronized on the JPMF, so that auctions with different caches may
+ * share one JPMF.
+ * @author Dmitry Moor
+ *
+ */
+public class MarginalAvailabilityCache
+{
+
+	/**
+	 * Constructor.
+	 * @param jpmf joint probability mass function for availabilities of goods
+	 */
+	public MarginalAvailabilityCache(JointProbabilityMass jpmf)
+	{
+		_jpmf = jpmf;
+		_index = null;
+		_generator = null;
+		_availabilities = new ConcurrentHashMap<Key, Double>();
+		_capacity = _DEFAULT_CAPACITY;
+		_hits = new AtomicLong(0);
+		_misses = new AtomicLong(0);
+		_flushes = new AtomicLong(0);
+	}
+
+	/**
+	 * Constructor. Misses are answered by the index instead of the JPMF.
+	 * @param jpmf joint probability mass function for availabilities of goods
+	 * @param index column-major index of samples of the JPMF
+	 */
+	public MarginalAvailabilityCache(JointProbabilityMass jpmf, AvailabilitySampleIndex index)
+	{
+		this(jpmf);
+		_index = index;
+	}
+
+	/**
+	 * The method returns the expected marginal availability of a bundle (see JointProbabilityMass.getMarginalProbability()).
+	 * @param bundle ids of goods of the bundle
+	 * @param goods ids of goods with known availabilities (null if none)
+	 * @param realizations realized availabilities of these goods (null if none)
+	 * @return the expected marginal availability of the bundle
+	 */
+	public double getMarginalProbability(List<Integer> bundle, List<Integer> goods, List<Double> realizations)
+	{
+		Key key = new Key(bundle, goods, realizations);
+		Double availability = _availabilities.get(key);
+		if( availability != null )
+		{
+			_hits.incrementAndGet();
+			return availability;
+		}
+
+		_misses.incrementAndGet();
+		AvailabilitySampleIndex index = _index != null ? _index.condition(goods, realizations) : null;
+		if( index != null )
+			availability = index.getMarginalProbability(bundle, null, null);
+		else
+			availability = computeWithJPMF(bundle, goods, realizations);
+		store(key, availability);
+		return availability;
+	}
+
+	/**
+	 * The method returns expected marginal availabilities of several bundles given the same realizations. If the index
+	 * is used, samples are conditioned once and all misses are answered in one pass over conditioned samples.
+	 * @param bundles bundles (lists of ids of goods)
+	 * @param goods ids of goods with known availabilities (null if none)
+	 * @param realizations realized availabilities of these goods (null if none)
+	 * @return expected marginal availabilities of bundles
+	 */
+	public double[] getMarginalProbabilities(List<List<Integer>> bundles, List<Integer> goods, List<Double> realizations)
+	{
+		double[] availabilities = new double[bundles.size()];
+		if( _index == null )
+		{
+			for(int i = 0; i < bundles.size(); ++i)
+				availabilities[i] = getMarginalProbability(bundles.get(i), goods, realizations);
+			return availabilities;
+		}
+
+		List<Key> missedKeys = new ArrayList<Key>();
+		List<List<Integer>> missedBundles = new ArrayList<List<Integer>>();
+		List<Integer> missedIdxs = new ArrayList<Integer>();
+		for(int i = 0; i < bundles.size(); ++i)
+		{
+			Key key = new Key(bundles.get(i), goods, realizations);
+			Double availability = _availabilities.get(key);
+			if( availability != null )
+			{
+				_hits.incrementAndGet();
+				availabilities[i] = availability;
+			}
+			else
+			{
+				missedKeys.add(key);
+				missedBundles.add(bundles.get(i));
+				missedIdxs.add(i);
+			}
+		}
+
+		if( missedBundles.size() > 0 )
+		{
+			_misses.addAndGet(missedBundles.size());
+			AvailabilitySampleIndex index = _index.condition(goods, realizations);
+			double[] missedAvailabilities;
+			if( index != null )
+				missedAvailabilities = index.getMarginalProbabilities(missedBundles, null, null);
+			else
+			{
+				missedAvailabilities = new double[missedBundles.size()];
+				for(int i = 0; i < missedBundles.size(); ++i)
+					missedAvailabilities[i] = computeWithJPMF(missedBundles.get(i), goods, realizations);
+			}
+			for(int i = 0; i < missedBundles.size(); ++i)
+			{
+				store(missedKeys.get(i), missedAvailabilities[i]);
+				availabilities[missedIdxs.get(i)] = missedAvailabilities[i];
+			}
+		}
+		return availabilities;
+	}
+
+	/**
+	 * The method computes expected surpluses of all atoms of bids, i.e., (value - cost) * expected marginal availability
+	 * of the bundle of an atom. Expected marginal availabilities of all bundles are requested in one batch (see
+	 * getMarginalProbabilities()). Expected surpluses are used as SEP coefficients of core payment rules and as weights of
+	 * WDPs of marginal economies.
+	 * @param bids bids of bidders
+	 * @param costs (additive) costs per good
+	 * @param goods ids of goods with known availabilities (null if none)
+	 * @param realizations realized availabilities of these goods (null if none)
+	 * @return an array which [i][j] element is the expected surplus of the j-th atom of the i-th bidder
+	 */
+	public double[][] getExpectedSurpluses(List<Type> bids, List<Double> costs, List<Integer> goods, List<Double> realizations)
+	{
+		List<List<Integer>> bundles = new ArrayList<List<Integer>>();
+		for(Type bid : bids)
+			for(int j = 0; j < bid.getNumberOfAtoms(); ++j)
+				bundles.add(bid.getAtom(j).getInterestingSet());
+		
+		double[] expectedMarginalAvailabilities = getMarginalProbabilities(bundles, goods, realizations);
+		
+		double[][] expectedSurpluses = new double[bids.size()][];
+		int bundleIdx = 0;
+		for(int i = 0; i < bids.size(); ++i)
+		{
+			expectedSurpluses[i] = new double[bids.get(i).getNumberOfAtoms()];
+			for(int j = 0; j < expectedSurpluses[i].length; ++j)
+			{
+				AtomicBid atom = bids.get(i).getAtom(j);
+				expectedSurpluses[i][j] = (atom.getValue() - atom.computeCost(costs)) * expectedMarginalAvailabilities[bundleIdx++];
+			}
+		}
+		return expectedSurpluses;
+	}
+
+	/**
+	 * The method sets the seed of the generator used to draw realizations of availabilities from the index instead of the
+	 * JPMF. Realizations are then reproducible given the seed and the index.
+	 * @param seed the seed
+	 */
+	public void setSeed(long seed)
+	{
+		if( _index == null ) throw new RuntimeException("Realizations can be drawn using a seed only from an index of samples.");
+		_generator = new Random(seed);
+	}
+
+	/**
+	 * The method draws a realization of availabilities of all goods from the JPMF (see JointProbabilityMass.getSample())
+	 * or, if a seed is set, from the index.
+	 * @return availabilities of goods (the k-th element is the availability of the good with id = k+1)
+	 */
+	public double[] getSample()
+	{
+		if( _generator != null )
+			synchronized(_generator)
+			{
+				return _index.getSample(_generator);
+			}
+
+		synchronized(_jpmf)
+		{
+			return _jpmf.getSample();
+		}
+	}
+
+	/**
+	 * @return the joint probability mass function
+	 */
+	public JointProbabilityMass getJPMF()
+	{
+		return _jpmf;
+	}
+
+	/**
+	 * @return the index of samples used to answer misses (null if the JPMF is used)
+	 */
+	public AvailabilitySampleIndex getIndex()
+	{
+		return _index;
+	}
+
+	/**
+	 * The method removes all cached availabilities, e.g., after the JPMF was updated. Counters are not affected. Note that
+	 * the index is not rebuilt, i.e., a new cache should be created if the index is used.
+	 */
+	public void clear()
+	{
+		_availabilities.clear();
+	}
+
+	/**
+	 * The method sets the max number of cached availabilities.
+	 * @param capacity the capacity of the cache
+	 */
+	public void setCapacity(int capacity)
+	{
+		if( capacity < 1 ) throw new RuntimeException("The capacity of the cache should be positive: " + capacity);
+		_capacity = capacity;
+	}
+	
+	/**
+	 * @return the number of cached availabilities
+	 */
+	public int size()
+	{
+		return _availabilities.size();
+	}
+
+	/**
+	 * @return the number of queries answered by the cache
+	 */
+	public long getHits()
+	{
+		return _hits.get();
+	}
+
+	/**
+	 * @return the number of queries answered by the JPMF
+	 */
+	public long getMisses()
+	{
+		return _misses.get();
+	}
+
+	/**
+	 * @return the number of times the cache was full and all entries were dropped
+	 */
+	public long getFlushes()
+	{
+		return _flushes.get();
+	}
+
+	/**
+	 * The method computes the expected marginal availability of a bundle using the JPMF.
+	 * @param bundle ids of goods of the bundle
+	 * @param goods ids of goods with known availabilities (null if none)
+	 * @param realizations realized availabilities of these goods (null if none)
+	 * @return the expected marginal availability of the bundle
+	 */
+	private double computeWithJPMF(List<Integer> bundle, List<Integer> goods, List<Double> realizations)
+	{
+		if( _jpmf == null ) throw new RuntimeException("No samples of the index are consistent with realizations " + realizations + " of goods " + goods + " and no JPMF is specified.");
+		synchronized(_jpmf)
+		{
+			return _jpmf.getMarginalProbability(bundle, goods, realizations);
+		}
+	}
+
+	/**
+	 * The method caches an availability. All entries are dropped first if the cache is full.
+	 * @param key the key of the availability
+	 * @param availability the expected marginal availability
+	 */
+	private void store(Key key, double availability)
+	{
+		if( _availabilities.size() >= _capacity )
+		{
+			_availabilities.clear();
+			_flushes.incrementAndGet();
+		}
+		_availabilities.put(key, availability);
+	}
+
+	/**
+	 * The key of a cached availability: the bundle as a bitset and conditioning goods sorted by their ids together with
+	 * their realized availabilities.
+	 */
+	private static class Key
+	{
+		/**
+		 * Constructor.
+		 * @param bundle ids of goods of the bundle
+		 * @param goods ids of goods with known availabilities (null if none)
+		 * @param realizations realized availabilities of these goods (null if none)
+		 */
+		Key(List<Integer> bundle, List<Integer> goods, List<Double> realizations)
+		{
+			BitSet bundleBits = new BitSet();
+			for(int good : bundle)
+				bundleBits.set(good);
+			_bundle = bundleBits.toLongArray();
+
+			int numberOfGoods = goods == null ? 0 : goods.size();
+			int numberOfRealizations = realizations == null ? 0 : realizations.size();
+			if( numberOfGoods != numberOfRealizations ) throw new RuntimeException("Realizations of all goods should be specified: " + numberOfGoods + " goods, " + numberOfRealizations + " realizations.");
+
+			_goods = new int[numberOfGoods];
+			_realizations = new long[numberOfGoods];
+			for(int i = 0; i < numberOfGoods; ++i)								//Insertion sort by ids of goods
+			{
+				int good = goods.get(i);
+				long realization = Double.doubleToLongBits(realizations.get(i));
+				int j = i;
+				for( ; j > 0 && _goods[j-1] > good; --j)
+				{
+					_goods[j] = _goods[j-1];
+					_realizations[j] = _realizations[j-1];
+				}
+				_goods[j] = good;
+				_realizations[j] = realization;
+			}
+
+			_hash = 31 * (31 * Arrays.hashCode(_bundle) + Arrays.hashCode(_goods)) + Arrays.hashCode(_realizations);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return _hash;
+		}
+
+		@Override
+		public boolean equals(Object obj)
+		{
+			if( this == obj ) return true;
+			if( !(obj instanceof Key) ) return false;
+			Key other = (Key)obj;
+			return _hash == other._hash && Arrays.equals(_bundle, other._bundle) && Arrays.equals(_goods, other._goods) && Arrays.equals(_realizations, other._realizations);
+		}
+
+		private long[] _bundle;										//Goods of the bundle as a bitset
+		private int[] _goods;										//Sorted ids of goods with known availabilities
+		private long[] _realizations;								//Realized availabilities of these goods (bits of doubles)
+		private int _hash;											//Hash code of the key
+	}
+
+	private JointProbabilityMass _jpmf;								//Joint probability mass function
+	private AvailabilitySampleIndex _index;							//Index of samples used instead of the JPMF (or null)
+	private Random _generator;										//Generator used to draw realizations from the index (or null)
+	private Map<Key, Double> _availabilities;						//Cached expected marginal availabilities of bundles
+	private int _capacity;											//Max number of cached availabilities
+	private static final int _DEFAULT_CAPACITY = 1 << 16;			//Default max number of cached availabilities
+	private AtomicLong _hits;										//Number of queries answered by the cache
+	private AtomicLong _misses;										//Number of queries answered by the JPMF
+	private AtomicLong _flushes;									//Number of times the full cache was cleared
+}
@@ -0,0 +1,323 @@
+package ch.uzh.ifi.Mechanisms;
+
+import ilog.concert.IloException;
+import ilog.concert.IloLPMatrix;
+import ilog.concert.IloLinearNumExpr;
+import ilog.concert.IloNumVar;
+import ilog.concert.IloNumVarType;
+import ilog.concert.IloRange;
+import ilog.cplex.IloCplex;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import ch.uzh.ifi.MechanismDesignPrimitives.Allocation;
+import ch.uzh.ifi.MechanismDesignPrimitives.Type;
+
+/**
+ * The class solves the WDPs of marginal economies used by VCG-like payment rules, i.e., the WDPs of auctions where one
+ * of the bidders is excluded. Instead of building a new auction per excluded bidder, the engine builds one WDP model for
+ * all bidders and excludes a bidder by fixing the upper bound of its XOR constraint to 0. The allocation of the main
+ * auction with the excluded bidder's atom dropped is feasible for every marginal economy and is used as a MIP start.
+ * The engine may be reused for WDPs of other auctions (see setProblem()); a solver instantiated by the engine is kept
+ * until release() is called.
+ */
+public class MarginalEconomiesEngine
+{
+
+	private static final Logger _logger = LogManager.getLogger(MarginalEconomiesEngine.class);
+
+	/**
+	 * Constructor.
+	 * @param weights weights[i][j] is the objective coefficient of the j-th atom of the i-th bidder
+	 * @param binaryBids bids of bidders in the binary format
+	 */
+	public MarginalEconomiesEngine(double[][] weights, BinaryBids binaryBids)
+	{
+		_cplexSolver = null;
+		_isExternalSolver = false;
+		_wdpSolver = null;
+		_numberOfSolverThreads = 0;
+		_numberOfSolves = 0;
+		setProblem(weights, binaryBids);
+	}
+
+	/**
+	 * The method sets up the auction whose marginal economies are to be solved. The WDP model is rebuilt on the next
+	 * solve in the same solver.
+	 * @param weights weights[i][j] is the objective coefficient of the j-th atom of the i-th bidder
+	 * @param binaryBids bids of bidders in the binary format
+	 */
+	public void setProblem(double[][] weights, BinaryBids binaryBids)
+	{
+		_weights = weights;
+		_binaryBids = binaryBids;
+		_numberOfBidders = weights.length;
+		_isModelBuilt = false;
+	}
+
+	/**
+	 * The method sets up the CPLEX solver to be used. The model of the solver is cleared when the WDP model is built.
+	 * @param solver CPLEX solver
+	 */
+	public void setSolver(IloCplex solver)
+	{
+		_cplexSolver = solver;
+		_isExternalSolver = (solver != null);
+	}
+
+	/**
+	 * The method sets up the number of threads of a CPLEX solver instantiated by the engine, e.g., 1 if several engines
+	 * are used concurrently. The solver provided by setSolver(...) is not affected.
+	 * @param numberOfThreads the number of threads (0 for the default of CPLEX)
+	 */
+	public void setNumberOfSolverThreads(int numberOfThreads)
+	{
+		_numberOfSolverThreads = numberOfThreads;
+	}
+
+	/**
+	 * The method sets up a solver for WDPs which is used instead of CPLEX.
+	 * @param solver WDP solver
+	 */
+	public void setWDPSolver(IWinnerDeterminationSolver solver)
+	{
+		_wdpSolver = solver;
+	}
+
+	/**
+	 * The method solves the WDP of the marginal economy without the specified bidder.
+	 * @param excludedBidderIdx an index of the bidder to be excluded
+	 * @param incumbent an allocation of the main auction, i.e., an array which i-th element is the index of the atom
+	 *        allocated to the i-th bidder or -1 (can be null)
+	 * @return the optimal objective value of the marginal economy
+	 * @throws IloException if CPLEX fails
+	 */
+	public double solveWithout(int excludedBidderIdx, int[] incumbent) throws IloException
+	{
+		_logger.debug("-> solveWithout(excludedBidderIdx=" + excludedBidderIdx + ")");
+		_numberOfSolves += 1;
+		int[] allocatedAtoms = _wdpSolver != null ? solveWithoutPureJava(excludedBidderIdx) : solveWithoutCplex(excludedBidderIdx, incumbent);
+
+		double objectiveValue = 0.;
+		for(int i = 0; i < _numberOfBidders; ++i)
+			if( allocatedAtoms[i] >= 0 )
+				objectiveValue += _weights[i][ allocatedAtoms[i] ];
+
+		_logger.debug("<- solveWithout(...): " + objectiveValue);
+		return objectiveValue;
+	}
+
+	/**
+	 * The method converts an allocation of the main auction into an array of allocated atoms which can be used as an incumbent.
+	 * @param allocation an allocation of the main auction
+	 * @param bids bids of all bidders of the main auction
+	 * @return an array which i-th element is the index of the atom allocated to the i-th bidder or -1
+	 */
+	public static int[] getAllocatedAtoms(Allocation allocation, List<Type> bids)
+	{
+		int[] allocatedAtoms = new int[bids.size()];
+		Arrays.fill(allocatedAtoms, -1);
+		if( allocation.getNumberOfAllocatedAuctioneers() == 0 )
+			return allocatedAtoms;
+
+		for(int k = 0; k < allocation.getBiddersInvolved(0).size(); ++k)
+			for(int i = 0; i < bids.size(); ++i)
+				if( bids.get(i).getAgentId() == allocation.getBiddersInvolved(0).get(k) )
+					allocatedAtoms[i] = allocation.getAllocatedBundlesOfTrade(0).get(k);
+		return allocatedAtoms;
+	}
+
+	/**
+	 * The method releases the model. The solver is terminated if it was instantiated by the engine.
+	 */
+	public void release()
+	{
+		if( _cplexSolver != null )
+		{
+			try
+			{
+				_cplexSolver.clearModel();
+			}
+			catch (IloException e)
+			{
+				e.printStackTrace();
+			}
+			if( !_isExternalSolver )
+			{
+				_cplexSolver.end();
+				_cplexSolver = null;
+			}
+		}
+		_isModelBuilt = false;
+	}
+
+	/**
+	 * The method returns the number of marginal economies solved so far.
+	 * @return the number of solved WDPs
+	 */
+	public int getNumberOfSolves()
+	{
+		return _numberOfSolves;
+	}
+
+	/**
+	 * The method solves the WDP of a marginal economy using the non-CPLEX solver.
+	 * @param excludedBidderIdx an index of the bidder to be excluded
+	 * @return allocated atoms
+	 */
+	private int[] solveWithoutPureJava(int excludedBidderIdx)
+	{
+		double[][] weights = _weights.clone();
+		weights[excludedBidderIdx] = new double[ _weights[excludedBidderIdx].length ];	//Atoms with zero weights are never allocated
+		int[] allocatedAtoms = _wdpSolver.solve(weights, _binaryBids);
+		allocatedAtoms[excludedBidderIdx] = -1;
+		return allocatedAtoms;
+	}
+
+	/**
+	 * The method solves the WDP of a marginal economy using CPLEX.
+	 * @param excludedBidderIdx an index of the bidder to be excluded
+	 * @param incumbent an allocation of the main auction (can be null)
+	 * @return allocated atoms
+	 * @throws IloException if CPLEX fails
+	 */
+	private int[] solveWithoutCplex(int excludedBidderIdx, int[] incumbent) throws IloException
+	{
+		if( !_isModelBuilt )
+			buildModel();
+
+		_xorConstraints[excludedBidderIdx].setBounds(0., 0.);
+		if( incumbent != null )
+			addMIPStart(excludedBidderIdx, incumbent);
+
+		//The solver may be shared with other models of the caller, so its root algorithm is restored after the solve
+		int rootAlgorithm = _cplexSolver.getParam(IloCplex.Param.RootAlgorithm);
+		try
+		{
+			_cplexSolver.setParam(IloCplex.Param.RootAlgorithm, _ROOT_ALGORITHM);
+			_cplexSolver.solve();
+		}
+		finally
+		{
+			_cplexSolver.setParam(IloCplex.Param.RootAlgorithm, rootAlgorithm);
+			_xorConstraints[excludedBidderIdx].setBounds(0., 1.);
+			if( _cplexSolver.getNumMIPStarts() > 0 )
+				_cplexSolver.deleteMIPStarts(0, _cplexSolver.getNumMIPStarts());
+		}
+
+		int[] allocatedAtoms = new int[_numberOfBidders];
+		for(int i = 0; i < _numberOfBidders; ++i)
+		{
+			allocatedAtoms[i] = -1;
+			for(int j = 0; j < _variables[i].length; ++j)
+				if( Math.abs( _cplexSolver.getValue(_variables[i][j]) - 1.0 ) < 1e-6 )
+				{
+					allocatedAtoms[i] = j;
+					break;
+				}
+		}
+		return allocatedAtoms;
+	}
+
+	/**
+	 * The method adds the allocation of the main auction without the excluded bidder as a MIP start.
+	 * @param excludedBidderIdx an index of the bidder to be excluded
+	 * @param incumbent an allocation of the main auction
+	 * @throws IloException if CPLEX fails
+	 */
+	private void addMIPStart(int excludedBidderIdx, int[] incumbent) throws IloException
+	{
+		int numberOfVariables = 0;
+		for(int i = 0; i < _numberOfBidders; ++i)
+			numberOfVariables += _variables[i].length;
+
+		IloNumVar[] variables = new IloNumVar[numberOfVariables];
+		double[] values = new double[numberOfVariables];
+		int k = 0;
+		for(int i = 0; i < _numberOfBidders; ++i)
+			for(int j = 0; j < _variables[i].length; ++j)
+			{
+				variables[k] = _variables[i][j];
+				values[k] = (i != excludedBidderIdx && incumbent[i] == j) ? 1. : 0.;
+				k += 1;
+			}
+		_cplexSolver.addMIPStart(variables, values);
+	}
+
+	/**
+	 * The method builds the WDP model for all bidders.
+	 * @throws IloException if the model cannot be built
+	 */
+	private void buildModel() throws IloException
+	{
+		_logger.debug("-> buildModel()");
+		if( _cplexSolver == null )
+		{
+			_cplexSolver = new IloCplex();
+			if( _numberOfSolverThreads > 0 )
+				_cplexSolver.setParam(IloCplex.Param.Threads, _numberOfSolverThreads);
+		}
+		else
+			_cplexSolver.clearModel();
+		_cplexSolver.setOut(null);
+
+		IloLinearNumExpr objective = _cplexSolver.linearNumExpr();
+		IloLPMatrix lp = _cplexSolver.addLPMatrix();
+
+		_variables = new IloNumVar[_numberOfBidders][];
+		for(int i = 0; i < _numberOfBidders; ++i)
+		{
+			_variables[i] = new IloNumVar[ _weights[i].length ];
+			for(int j = 0; j < _weights[i].length; ++j)
+			{
+				_variables[i][j] = _cplexSolver.numVar(0, 1, IloNumVarType.Int, "x" + i + "_" + j);
+				objective.addTerm(_weights[i][j], _variables[i][j]);
+			}
+		}
+		_cplexSolver.addMaximize(objective);
+
+		//Create optimization constraints for ITEMS:
+		for(int i = 0; i < _binaryBids.getNumberOfItems(); ++i)
+		{
+			IloLinearNumExpr constraint = _cplexSolver.linearNumExpr();
+			int[] bidders = _binaryBids.getBiddersOfItem(i);
+			int[] atoms = _binaryBids.getAtomsOfItem(i);
+			for(int k = 0; k < bidders.length; ++k)
+				constraint.addTerm(1., _variables[bidders[k]][atoms[k]]);
+			lp.addRow( _cplexSolver.ge(1.0, constraint, "Item_"+i) );
+		}
+
+		//Create optimization constraints for XOR:
+		_xorConstraints = new IloRange[_numberOfBidders];
+		for(int i = 0; i < _numberOfBidders; ++i)
+		{
+			IloLinearNumExpr constraint = _cplexSolver.linearNumExpr();
+			for(IloNumVar x : _variables[i])
+				constraint.addTerm(1., x);
+			_xorConstraints[i] = _cplexSolver.range(0., constraint, 1., "Bidder"+i);
+			lp.addRow( _xorConstraints[i] );
+		}
+
+		_isModelBuilt = true;
+		_logger.debug("<- buildModel()");
+	}
+
+	private static final int _ROOT_ALGORITHM = 2;				//The dual simplex is used for LP relaxations of marginal economies
+
+	private double[][] _weights;								//Objective coefficients of atoms
+	private BinaryBids _binaryBids;								//Bids converted into a binary (bitset) format
+	private int _numberOfBidders;								//The number of bidders in the main auction
+
+	private IloCplex _cplexSolver;								//CPLEX solver
+	private boolean _isExternalSolver;							//True if the CPLEX solver was provided by the caller
+	private int _numberOfSolverThreads;							//The number of threads of a solver instantiated by the engine (0 for default)
+	private IWinnerDeterminationSolver _wdpSolver;				//A non-CPLEX solver for WDPs (CPLEX is used if null)
+	private boolean _isModelBuilt;								//True if the WDP model is built
+	private IloNumVar[][] _variables;							//_variables[i][j] corresponds to the j-th atom of the i-th bidder
+	private IloRange[] _xorConstraints;							//XOR constraints of bidders
+	private int _numberOfSolves;								//The number of solved marginal economies
+}
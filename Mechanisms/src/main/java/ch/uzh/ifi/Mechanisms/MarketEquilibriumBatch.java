@@ -0,0 +1,347 @@
+package ch.uzh.ifi.Mechanisms;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import ch.uzh.ifi.MechanismDesignPrimitives.Allocation;
+import ch.uzh.ifi.MechanismDesignPrimitives.ParametrizedQuasiLinearAgent;
+import ch.uzh.ifi.MechanismDesignPrimitives.SellerType;
+
+/**
+ * The class computes equilibria of a batch of independent samples of the data market (e.g., samples of a benchmark)
+ * concurrently. Every sample is produced by a generator and gets its own market platform, i.e., its own CPLEX solver and
+ * its own buyers. Available threads are split between samples and the evaluation of the demand within a sample: samples
+ * are solved in parallel first and the remaining threads are given to market platforms. Results are delivered in the
+ * order of samples. Since every sample is produced from its index, results do not depend on the number of threads.
+ * @author Dmitry Moor
+ *
+ */
+public class MarketEquilibriumBatch
+{
+
+	private static final Logger _logger = LogManager.getLogger(MarketEquilibriumBatch.class);
+
+	/**
+	 * The interface of a generator of market samples. The generator is called concurrently by several workers and must
+	 * produce new buyers for every sample.
+	 */
+	public interface ISampleGenerator
+	{
+		/**
+		 * The method produces a sample of the market.
+		 * @param sampleIdx the index of the sample
+		 * @return the sample
+		 * @throws Exception if the sample cannot be produced
+		 */
+		public MarketSample generateSample(int sampleIdx) throws Exception;
+	}
+
+	/**
+	 * The class contains sellers and buyers of a sample of the market.
+	 */
+	public static class MarketSample
+	{
+		/**
+		 * Constructor.
+		 * @param sellers sellers of DBs
+		 * @param buyers buyers of rows
+		 * @param startPrice the price to start the equilibrium search with
+		 */
+		public MarketSample(List<SellerType> sellers, List<ParametrizedQuasiLinearAgent> buyers, double startPrice)
+		{
+			_sellers = sellers;
+			_buyers = buyers;
+			_demandOracles = null;
+			_startPrice = startPrice;
+		}
+
+		/**
+		 * The method creates a sample with buyers given by their demand oracles (see MarketPlatform.fromDemandOracles()).
+		 * @param sellers sellers of DBs
+		 * @param buyers demand oracles of buyers of rows
+		 * @param startPrice the price to start the equilibrium search with
+		 * @return the sample
+		 */
+		public static MarketSample fromDemandOracles(List<SellerType> sellers, List<BuyerDemandOracle> buyers, double startPrice)
+		{
+			MarketSample sample = new MarketSample(sellers, null, startPrice);
+			sample._demandOracles = buyers;
+			return sample;
+		}
+
+		private List<SellerType> _sellers;							//Sellers of DBs
+		private List<ParametrizedQuasiLinearAgent> _buyers;			//Buyers of rows (null if demand oracles are given)
+		private List<BuyerDemandOracle> _demandOracles;				//Demand oracles of buyers of rows (null if agents are given)
+		private double _startPrice;									//The price to start the equilibrium search with
+	}
+
+	/**
+	 * The class contains the equilibrium of one sample of the batch.
+	 */
+	public static class EquilibriumResult
+	{
+		/**
+		 * Constructor.
+		 * @param index the index of the sample
+		 */
+		public EquilibriumResult(int index)
+		{
+			_index = index;
+			_price = 0.;
+			_welfare = 0.;
+			_surplus = 0.;
+			_profits = null;
+			_payments = null;
+			_allocation = null;
+			_allocatedDBs = 0;
+			_numberOfIterations = 0;
+			_error = null;
+		}
+
+		/**
+		 * @return the index of the sample
+		 */
+		public int getIndex()
+		{
+			return _index;
+		}
+
+		/**
+		 * @return the equilibrium price
+		 */
+		public double getPrice()
+		{
+			return _price;
+		}
+
+		/**
+		 * @return the social welfare in the equilibrium, i.e., the total value of buyers less costs of allocated sellers
+		 */
+		public double getWelfare()
+		{
+			return _welfare;
+		}
+
+		/**
+		 * @return the total surplus of buyers in the equilibrium
+		 */
+		public double getSurplus()
+		{
+			return _surplus;
+		}
+
+		/**
+		 * @return profits of sellers indexed by agentId-1 (0 for not allocated sellers)
+		 */
+		public double[] getProfits()
+		{
+			return _profits;
+		}
+
+		/**
+		 * @return payments to allocated sellers in the order of the allocation
+		 */
+		public double[] getPayments()
+		{
+			return _payments;
+		}
+
+		/**
+		 * @return the allocation of the BORA auction in the equilibrium
+		 */
+		public Allocation getAllocation()
+		{
+			return _allocation;
+		}
+
+		/**
+		 * @return the binary encoding of the deterministic allocation of DBs in the equilibrium
+		 */
+		public long getAllocatedDBs()
+		{
+			return _allocatedDBs;
+		}
+
+		/**
+		 * The method checks if the equilibrium is trivial, i.e., if no DB is allocated.
+		 * @return true if the equilibrium is trivial
+		 */
+		public boolean isTrivial()
+		{
+			return _allocatedDBs == 0;
+		}
+
+		/**
+		 * @return the number of iterations of the price search
+		 */
+		public int getNumberOfIterations()
+		{
+			return _numberOfIterations;
+		}
+
+		/**
+		 * @return an exception thrown while the sample was solved or null if the sample was solved
+		 */
+		public Exception getError()
+		{
+			return _error;
+		}
+
+		private int _index;										//The index of the sample
+		private double _price;									//The equilibrium price
+		private double _welfare;								//The social welfare
+		private double _surplus;								//The total surplus of buyers
+		private double[] _profits;								//Profits of sellers
+		private double[] _payments;								//Payments to allocated sellers
+		private Allocation _allocation;							//The allocation of the BORA auction
+		private long _allocatedDBs;								//Binary encoding of the allocation of DBs
+		private int _numberOfIterations;						//The number of iterations of the price search
+		private Exception _error;								//An exception thrown while solving the sample (null if none)
+	}
+
+	/**
+	 * Constructor.
+	 * @param generator a generator of market samples
+	 * @param numberOfThreads the total number of threads
+	 */
+	public MarketEquilibriumBatch(ISampleGenerator generator, int numberOfThreads)
+	{
+		if( numberOfThreads < 1 ) throw new RuntimeException("The number of threads should be positive: " + numberOfThreads);
+		_generator = generator;
+		_numberOfThreads = numberOfThreads;
+		_configurator = null;
+	}
+
+	/**
+	 * The method sets a configurator of market platforms, e.g., to set the tolerance level, the step or the price search
+	 * strategy. The configurator is called concurrently for different samples. The number of threads of a platform is set
+	 * by the batch.
+	 * @param configurator a configurator of market platforms
+	 */
+	public void setConfigurator(Consumer<MarketPlatform> configurator)
+	{
+		_configurator = configurator;
+	}
+
+	/**
+	 * The method computes equilibria of all samples and passes results to the consumer in the order of samples.
+	 * At most a fixed number of samples is solved in advance of the consumer.
+	 * @param numberOfSamples the number of samples
+	 * @param consumer a consumer of results
+	 * @throws InterruptedException if the calling thread is interrupted while waiting for results
+	 */
+	public void run(int numberOfSamples, Consumer<EquilibriumResult> consumer) throws InterruptedException
+	{
+		_logger.debug("-> run(numberOfSamples=" + numberOfSamples + ")");
+		int numberOfWorkers = Math.max(1, Math.min(_numberOfThreads, numberOfSamples));
+		int threadsPerSample = Math.max(1, _numberOfThreads / numberOfWorkers);
+		int maxNumberOfPendingSamples = 2 * numberOfWorkers;
+		_logger.debug("Workers: " + numberOfWorkers + "; threads per sample: " + threadsPerSample);
+
+		OrderedTaskExecutor<EquilibriumResult> executor = new OrderedTaskExecutor<EquilibriumResult>(numberOfWorkers, maxNumberOfPendingSamples);
+		try
+		{
+			for(int s = 0; s < numberOfSamples; ++s)
+			{
+				final EquilibriumResult result = new EquilibriumResult(s);
+				executor.submit( () -> solve(result, threadsPerSample) );
+
+				if( executor.isFull() )
+					consumer.accept( executor.take() );
+			}
+
+			while( !executor.isEmpty() )
+				consumer.accept( executor.take() );
+		}
+		finally
+		{
+			executor.close();
+		}
+		_logger.debug("<- run(...)");
+	}
+
+	/**
+	 * The method computes equilibria of all samples.
+	 * @param numberOfSamples the number of samples
+	 * @return results in the order of samples
+	 * @throws InterruptedException if the calling thread is interrupted while waiting for results
+	 */
+	public List<EquilibriumResult> run(int numberOfSamples) throws InterruptedException
+	{
+		List<EquilibriumResult> results = new ArrayList<EquilibriumResult>(numberOfSamples);
+		run(numberOfSamples, results::add);
+		return results;
+	}
+
+	/**
+	 * The method computes the equilibrium of a sample and measures the welfare, the surplus of buyers and profits of
+	 * sellers in the equilibrium.
+	 * @param result a result to be filled
+	 * @param numberOfThreads the number of threads of the market platform
+	 * @return the result
+	 */
+	private EquilibriumResult solve(EquilibriumResult result, int numberOfThreads)
+	{
+		MarketPlatform mp = null;
+		try
+		{
+			MarketSample sample = _generator.generateSample(result.getIndex());
+			mp = sample._demandOracles != null ? MarketPlatform.fromDemandOracles(sample._demandOracles, sample._sellers) : new MarketPlatform(sample._buyers, sample._sellers);
+			if( _configurator != null )
+				_configurator.accept(mp);
+			mp.setNumberOfThreads(numberOfThreads);
+
+			// Compute the equilibrium price and the allocation of the BORA auction at this price
+			result._price = mp.searchPrice(sample._startPrice);
+			result._numberOfIterations = mp.getNumberOfIterations();
+			Auction auction = mp.solveBORA(result._price);
+			result._allocation = auction.getAllocation();
+			result._payments = auction.getPayments();
+
+			// Profits of sellers
+			double totalCost = 0.;
+			result._profits = new double[sample._sellers.size()];
+			for(int i = 0; i < result._allocation.getBiddersInvolved(0).size(); ++i)
+			{
+				int sellerId = result._allocation.getBiddersInvolved(0).get(i);
+				SellerType seller = sample._sellers.get(sellerId - 1);
+				double cost = seller.getAtom(0).getValue();
+				totalCost += cost;
+				result._profits[sellerId - 1] = result._payments[i] - cost;
+				result._allocatedDBs |= 1L << (seller.getInterestingSet(0).get(0) - 1);
+			}
+
+			// The surplus of buyers and the welfare
+			double totalValue = 0.;
+			for(BuyerDemandOracle buyer : mp.getDemandOracles())
+			{
+				double[] res = buyer.solveConsumptionProblem(result._price, result._allocatedDBs);
+				result._surplus += res[BuyerDemandOracle.VALUE];
+				totalValue += res[BuyerDemandOracle.VALUE] + buyer.getEndowment() - res[BuyerDemandOracle.MONEY];
+			}
+			result._welfare = totalValue - totalCost;
+		}
+		catch(Exception e)
+		{
+			_logger.error("Sample " + result.getIndex() + " failed: " + e.toString());
+			result._error = e;
+		}
+		finally
+		{
+			if( mp != null )
+			{
+				mp.shutdown();
+				mp.endSolver();
+			}
+		}
+		return result;
+	}
+
+	private ISampleGenerator _generator;							//A generator of market samples
+	private int _numberOfThreads;									//The total number of threads
+	private Consumer<MarketPlatform> _configurator;				//A configurator of market platforms (null if none)
+}
@@ -1,5 +1,6 @@
 package ch.uzh.ifi.Mechanisms;
 
+import ilog.concert.IloException;
 import ilog.cplex.IloCplex;
 
 import java.io.BufferedReader;
@@ -7,11 +8,11 @@ import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -42,10 +43,42 @@ public class MarketPlatform
 	 */
 	public MarketPlatform(List<ParametrizedQuasiLinearAgent> buyers, List<SellerType> sellers) throws Exception
 	{
-		_buyers  = buyers;
+		this(sellers);
+		_buyers = buyers;
+		_demandOracles = new ArrayList<BuyerDemandOracle>(_buyers.size());
+		for(ParametrizedQuasiLinearAgent buyer : _buyers)
+			_demandOracles.add(new BuyerDemandOracle(buyer, _numberOfDBs));
+	}
+	
+	/**
+	 * The method creates a market platform for buyers given by their demand oracles rather than by agents, e.g., for
+	 * buyers with value functions generated lazily by BuyersGenerator.generateValueFunction(). Such buyers allow markets
+	 * with up to 64 DBs in the sparse mode (see setSparseMode()).
+	 * @param buyers demand oracles of buyers
+	 * @param sellers list of sellers
+	 * @return the market platform
+	 * @throws Exception 
+	 */
+	public static MarketPlatform fromDemandOracles(List<BuyerDemandOracle> buyers, List<SellerType> sellers) throws Exception
+	{
+		MarketPlatform mp = new MarketPlatform(sellers);
+		mp._demandOracles = buyers;
+		return mp;
+	}
+	
+	/**
+	 * Constructor. Buyers should be set by the caller.
+	 * @param sellers list of sellers
+	 * @throws Exception 
+	 */
+	private MarketPlatform(List<SellerType> sellers) throws Exception
+	{
+		_buyers = null;
 		_sellers = sellers;
 		_numberOfThreads = 1;
-		_cplexSolver = new IloCplex();
+		_workers = null;
+		_isSparse = false;
+		_cplexSolver = null;
 		
 		ProbabilisticAllocation probAllocation = new ProbabilisticAllocation();		//Allocation of DBs
 		List<Integer> bidders = new LinkedList<Integer>();
@@ -65,59 +98,94 @@ public class MarketPlatform
 	
 		// Initialization
 		_numberOfDBs = probAllocation.getNumberOfGoods();
+		if( _numberOfDBs > Long.SIZE ) throw new RuntimeException("Allocations of at most " + Long.SIZE + " DBs can be encoded: " + _numberOfDBs);
 		
-		_marketDemandMoney = new HashMap<Integer, Double>();
-		_marketDemandRows = new HashMap<Integer, Double>();
-		_aggregateValue = new HashMap<Integer, Double>();
-		
+		_cache = new DemandCache(_DEFAULT_CACHE_CAPACITY);
 	}
 	
+	/**
+	 * The method removes all cached market demands and values of buyers. Counters of the cache are not affected.
+	 */
 	public void resetCache()
 	{
-		_marketDemandMoney = new HashMap<Integer, Double>();
-		_marketDemandRows = new HashMap<Integer, Double>();
-		_aggregateValue = new HashMap<Integer, Double>();	
+		_cache.clear();
+	}
+	
+	/**
+	 * The method replaces the cache of market demands and values of buyers.
+	 * @param capacity the maximal number of (price, allocation) pairs to be cached
+	 * @param priceTolerance the tolerance within which results for other prices are reused (0 if only exact prices should be
+	 * reused; see DemandCache.java)
+	 */
+	public void setCache(int capacity, double priceTolerance)
+	{
+		_cache = new DemandCache(capacity);
+		_cache.setPriceTolerance(priceTolerance);
 	}
 	
 	/**
-	 * The method performs an iterative posted price search procedure.
+	 * The method returns the cache of market demands and values of buyers, e.g., to read its hit/miss counters.
+	 * @return the cache
+	 */
+	public DemandCache getCache()
+	{
+		return _cache;
+	}
+	
+	/**
+	 * The method performs an iterative posted price search procedure with the fixed step (see setStep()).
 	 * @return the posted price
 	 * @throws Exception 
 	 */
 	public double tatonementPriceSearch(double startPrice) throws Exception
 	{	
-		// Initialization
-		double price = startPrice;
-		double diff = 0.;
-		
-		// Iterative price/allocation update procedure
-		for(int i = 0; i < _MAX_ITER; ++i)
-		{			
-			// List of outcomes in surplus optimal reverse auctions for different DBs
-			Allocation allocation = new Allocation();
-			
-			// Compute the excess demand for money
-			double excessDemandMoney = computeExcessDemand(allocation, price); 
-			price = Math.max(0., price + excessDemandMoney * _STEP  );
-			
-			diff = Math.pow(excessDemandMoney, 2);
-						
-			//System.out.println("New price: " + price + " z="+ excessDemandMoney + " " + (Math.signum(excessDemandMoney)>0?"Increased":"Decreased"));
-			//BufferedReader bufferRead = new BufferedReader(new InputStreamReader(System.in));
-			//String s = bufferRead.readLine();
-			
-			if ( Math.sqrt(diff /*/ (_sellers.size() + 1)*/) < _TOL)
-			{
-				//System.out.println("New allocation probabilities: " + Arrays.toString(_allocationProbabilities.toArray()));
-				break;
-			}
-			if(i == _MAX_ITER - 1) System.out.println("Reached MAX_ITER.");
-		}
-		
-		_logger.debug("Found price: " + price + "; diff="+ diff);
+		return searchPrice(new TatonementStrategy(_STEP, _TOL, _MAX_ITER), startPrice);
+	}
+	
+	/**
+	 * The method searches for the equilibrium price using the strategy of the platform (see setPriceSearchStrategy()).
+	 * @param startPrice the price to start the search with
+	 * @return the equilibrium price
+	 * @throws Exception 
+	 */
+	public double searchPrice(double startPrice) throws Exception
+	{
+		return _priceSearchStrategy != null ? searchPrice(_priceSearchStrategy, startPrice) : tatonementPriceSearch(startPrice);
+	}
+	
+	/**
+	 * The method searches for the equilibrium price using the given strategy.
+	 * @param strategy the price search strategy
+	 * @param startPrice the price to start the search with
+	 * @return the equilibrium price
+	 * @throws Exception 
+	 */
+	private double searchPrice(IPriceSearchStrategy strategy, double startPrice) throws Exception
+	{
+		// List of outcomes in surplus optimal reverse auctions for different DBs
+		double price = strategy.searchPrice( p -> computeExcessDemand(new Allocation(), p), startPrice);
+		_numberOfIterations = strategy.getNumberOfIterations();
 		return price;
 	}
 	
+	/**
+	 * The method sets the strategy used by searchPrice(). If no strategy is set, the tatonement with the fixed step is used.
+	 * @param strategy the price search strategy (e.g., BrentPriceSearchStrategy or AdaptiveStepPriceSearchStrategy)
+	 */
+	public void setPriceSearchStrategy(IPriceSearchStrategy strategy)
+	{
+		_priceSearchStrategy = strategy;
+	}
+	
+	/**
+	 * The method returns the number of evaluations of the excess demand performed by the last price search.
+	 * @return the number of iterations
+	 */
+	public int getNumberOfIterations()
+	{
+		return _numberOfIterations;
+	}
+	
 	/**
 	 * The method computes the excess demand for money.
 	 * @param allocations will store the allocation decision of the BORA auction
@@ -129,18 +197,9 @@ public class MarketPlatform
 	{
 		_logger.debug("computeExcessDemand(allocation, " + " price=" + price + ")");
 		double excessDemand = 0.;
-		_marketDemandMoney = new HashMap<Integer, Double>();
-		_marketDemandRows = new HashMap<Integer, Double>();
-		_aggregateValue = new HashMap<Integer, Double>();
-		
-		// First, compute the induced values DBs for different deterministic allocations of DBs given the current posted price
-		List< List<Double> > inducedValues = computeValuesOfDBs(price);
 		
-		//Now, solve the BORA auction with the induced values of DBs and compute the total payment to be accrued to sellers
-		_logger.debug("Instantiate BORA...");
-		SurplusOptimalReverseAuction auction = new SurplusOptimalReverseAuction(_sellers, inducedValues);
-		auction.setSolver(_cplexSolver);
-		auction.solveIt();
+		// Solve the BORA auction with the induced values of DBs and compute the total payment to be accrued to sellers
+		Auction auction = solveBORA(price);
 		
 		allocation = auction.getAllocation();
 		double totalPayment = 0.;
@@ -148,10 +207,10 @@ public class MarketPlatform
 			totalPayment += auction.getPayments()[i];
 		
 		//Compute the binary representation of the optimal det. allocation of DBs of the BORA auction
-		int detAllocDBs = 0;
+		long detAllocDBs = 0;
 		for(int i = 0; i < allocation.getBiddersInvolved(0).size(); ++i)
 		{
-			int dbBit = 1 << (allocation.getAllocatedBundlesOfTrade(0).get(i) - 1);
+			long dbBit = 1L << (allocation.getAllocatedBundlesOfTrade(0).get(i) - 1);
 			detAllocDBs = detAllocDBs | dbBit;
 		}
 		_logger.debug("Solution to BORA: " + allocation.getNumberOfAllocatedAuctioneers() + ", " + allocation.getBiddersInvolved(0).size() + "; detAlloc=" + detAllocDBs);
@@ -165,6 +224,37 @@ public class MarketPlatform
 		return excessDemand;
 	}
 	
+	/**
+	 * The method solves the BORA auction with induced values of DBs given the current posted price. By default induced
+	 * values of DBs are computed for all deterministic allocations of DBs (see computeInducedValueTable()). In the sparse
+	 * mode only allocations visited by the local search of the sparse BORA auction are evaluated (see
+	 * SparseSurplusOptimalReverseAuction.java).
+	 * @param price current posted price
+	 * @return the solved auction
+	 * @throws Exception 
+	 */
+	public Auction solveBORA(double price) throws Exception
+	{
+		_logger.debug("Instantiate BORA...");
+		if( _isSparse )
+		{
+			SparseSurplusOptimalReverseAuction auction = new SparseSurplusOptimalReverseAuction(_sellers, alloc -> computeTotalInducedValue(price, alloc));
+			auction.solveIt();
+			_logger.debug("Evaluated allocations of DBs: " + auction.getNumberOfEvaluatedAllocations());
+			return auction;
+		}
+		
+		// First, compute the induced values DBs for different deterministic allocations of DBs given the current posted price
+		InducedValueTable inducedValues = computeInducedValueTable(price);
+		SurplusOptimalReverseAuction auction = new SurplusOptimalReverseAuction(_sellers, inducedValues);
+		auction.setSolver(_cplexSolver);
+		auction.setNumberOfThreads(_numberOfThreads);
+		auction.setWorkers(_workers);
+		auction.solveIt();
+		_cplexSolver = auction.getSolver();								//Instantiated by the auction only if the MIP was solved
+		return auction;
+	}
+	
 	/**
 	 * The method computes the market demand for both goods at the given price level and given allocation of DBs.
 	 * @param price the price of the good 1 (good 0 is money with p0 = 1 - normalized)
@@ -173,57 +263,14 @@ public class MarketPlatform
 	 * probabilistic allocation of sellers
 	 * @return the market demand for all goods
 	 */
-	public List<Double> computeMarketDemand(double price, int detAllocDBs)
+	public List<Double> computeMarketDemand(double price, long detAllocDBs)
 	{
 		_logger.debug("computeMarketDemand("+price + ", " + detAllocDBs + ")");
 		
-		// Use cached values for runtime optimization (must be handled in unit tests manually)
-		if(_marketDemandMoney.containsKey(detAllocDBs))
-		{
-			_logger.debug("cashed");
-			return Arrays.asList(_marketDemandMoney.get(detAllocDBs), _marketDemandRows.get(detAllocDBs));
-		}
-		
-		double[] marketDemandMoney = new double[_numberOfThreads];
-		double[] marketDemandRows  = new double[_numberOfThreads];
-		
-		// First, update the probability distribution and expected values/thresholds according to the new probabilistic allocation
-		for(int i = 0; i < _buyers.size(); ++i)
-		{
-			_buyers.get(i).setNumberOfGoods(_numberOfDBs);
-			_buyers.get(i).updateAllocProbabilityDistribution(detAllocDBs, _numberOfDBs);
-		}
-		
-		// Compute the total market demand
-		try
-		{
-			List<Thread> threads = new LinkedList<Thread>();
-			for(int i = 0; i < _numberOfThreads; ++i)
-			{
-				Thread thread = new Thread(new DemandWorker("Thread", i, price, marketDemandMoney, marketDemandRows) );
-				threads.add(thread);
-			}
-			
-			for(int i = 0; i < _numberOfThreads; ++i)
-				threads.get(i).start();
-			
-			for(int i = 0; i < _numberOfThreads; ++i)
-				threads.get(i).join(0);
-		}
-		catch(InterruptedException e)
-		{
-		    e.printStackTrace();
-		}
-		
-		double totalMarketDemandMoney = 0.;
-		double totalMarketDemandRows = 0.;
-		for(int i = 0; i < _numberOfThreads; ++i)
-		{
-			totalMarketDemandMoney += marketDemandMoney[i];
-			totalMarketDemandRows += marketDemandRows[i];
-		}
-		_marketDemandMoney.put(detAllocDBs, totalMarketDemandMoney);
-		_marketDemandRows.put(detAllocDBs, totalMarketDemandRows);
+		// Compute the total market demand (or use the cached one)
+		double[] marketDemand = evaluateBuyers(price, detAllocDBs);
+		double totalMarketDemandMoney = marketDemand[BuyerDemandOracle.MONEY];
+		double totalMarketDemandRows = marketDemand[BuyerDemandOracle.ROWS];
 
 		_logger.debug("Market demand: " + totalMarketDemandMoney + " " + totalMarketDemandRows);
 		return Arrays.asList(totalMarketDemandMoney, totalMarketDemandRows);
@@ -235,48 +282,12 @@ public class MarketPlatform
 	 * @param allocation the probabilistic allocation of sellers/DBs
 	 * @return the aggregate value
 	 */
-	public double computeAggregateValue(double price, double totalQuantityDemanded, int detAlloc)
+	public double computeAggregateValue(double price, double totalQuantityDemanded, long detAlloc)
 	{
 		_logger.debug("computeAggregateValue( "+price+", "+totalQuantityDemanded +", " + detAlloc+ ")");
-		if(_aggregateValue.containsKey(detAlloc))
-		{
-			_logger.debug("cashed");
-			return _aggregateValue.get(detAlloc);
-		}
-		double value = 0.;
-		
-		_buyers.get(0).setNumberOfThreads(_numberOfThreads);
-		for(int i = 0; i < _buyers.size(); ++i)
-			_buyers.get(i).updateAllocProbabilityDistribution(detAlloc, _numberOfDBs);		
-		
-		_vals = new double[_numberOfThreads];
-		
-		try
-		{
-			List<Thread> threads = new LinkedList<Thread>();
-			for(int i = 0; i < _numberOfThreads; ++i)
-			{
-				Thread thread = new Thread(new ValueWorker("Thread", i, price) );
-				threads.add(thread);
-			}
-			
-			for(int i = 0; i < _numberOfThreads; ++i)
-				threads.get(i).start();
-			
-			for(int i = 0; i < _numberOfThreads; ++i)
-				threads.get(i).join(0);
-		}
-		catch(InterruptedException e)
-		{
-		    e.printStackTrace();
-		}
-
-		for(int i = 0; i < _numberOfThreads; ++i)
-			value = value + _vals[i];
+		double value = evaluateBuyers(price, detAlloc)[BuyerDemandOracle.VALUE];
 		value += price * totalQuantityDemanded;
 		_logger.debug("Computed Aggregate value is  " + value);
-		
-		_aggregateValue.put(detAlloc, value);
 		return value;
 	}
 	
@@ -293,7 +304,18 @@ public class MarketPlatform
 	 */
 	public List< List<Double> > computeValuesOfDBs(double price) throws Exception
 	{
-		_logger.debug("computeValueOfDB(" + price +")");
+		return computeInducedValueTable(price).toLists();
+	}
+	
+	/**
+	 * The method computes induced values of all DBs for all deterministic allocations of DBs given the current market price.
+	 * @param price current market price per row of a query answer
+	 * @return the table of induced values of DBs
+	 * @throws Exception 
+	 */
+	public InducedValueTable computeInducedValueTable(double price) throws Exception
+	{
+		_logger.debug("computeInducedValueTable(" + price +")");
 		
 		//double marketDemandForRows = computeMarketDemand(price, alloc).get(1);
 // For plotting the demand curve		
@@ -307,57 +329,98 @@ public class MarketPlatform
 //		BufferedReader bufferRead = new BufferedReader(new InputStreamReader(System.in));
 //		String s = bufferRead.readLine();
 
-		List< List<Double> > inducedValues = new ArrayList<List<Double> >();
-		for(int k = 0; k < _numberOfDBs; ++k)
-		{
-			List<Double> inducedValuesK = new ArrayList<Double>();
-			inducedValues.add(inducedValuesK);
-		}
-
-		int numberOfDeterministicAllocations = (int)Math.pow(2, _numberOfDBs);
+		// First, compute the market demand and the aggregate value for every deterministic allocation of DBs exactly once
+		if( _numberOfDBs >= Integer.SIZE - 1 ) throw new RuntimeException("Too many DBs for the table of induced values, use the sparse mode: " + _numberOfDBs);
+		int numberOfDeterministicAllocations = 1 << _numberOfDBs;
+		double[] marketDemandRows = new double[numberOfDeterministicAllocations];
+		double[] aggregateValues  = new double[numberOfDeterministicAllocations];
+		computeDemandAndValueTables(price, marketDemandRows, aggregateValues);
+		
+		// Then derive externalities and induced values of DBs from the tables
+		InducedValueTable inducedValues = new InducedValueTable(_numberOfDBs);
+		double[] externalitiesOfDBs = new double[_numberOfDBs];
 		for(int j = 0; j < numberOfDeterministicAllocations; ++j)
 		{
 			// Here, j represent the binary encoding of a deterministic allocation of DBs
-			double marketDemandForRows = computeMarketDemand(price, j).get(1);
-
-			// Compute externalities of DBs
-			List<Double> externalitiesOfDBs = new LinkedList<Double>();
+			double totalExternality = 0.;
 			for(int k = 0; k < _numberOfDBs; ++k)
 			{
-				int dbIdK = k + 1;
-				
-				double probAllocation = 0.;
 				int bit = 1 << k;
-				if( (j & bit) > 0)
-				{
-					probAllocation = 1;
-					externalitiesOfDBs.add( computeExternalityOfDB(dbIdK, price, marketDemandForRows, j) * probAllocation );
-				}
-				else
-				{
-					externalitiesOfDBs.add( 0. );
-				}
+				externalitiesOfDBs[k] = (j & bit) > 0 ? computeExternality(k + 1, aggregateValues[j], aggregateValues[j & ~bit]) : 0.;
+				totalExternality += externalitiesOfDBs[k];
 			}
 			
 			// Compute values of DBs
 			for(int k = 0; k < _numberOfDBs; ++k)
 			{
-				int dbId = k + 1;
-				_logger.debug("Compute induced values for DB_" + dbId + " for different det. allocations...");
-				
 				double valueOfDB = 0.;
-				if( externalitiesOfDBs.get(dbId-1) > 0)
-					valueOfDB = externalitiesOfDBs.get(dbId-1) / externalitiesOfDBs.stream().reduce(0., (i, q) -> i+q) * computeAggregateValue(price, marketDemandForRows, j);
+				if( externalitiesOfDBs[k] > 0)
+					valueOfDB = externalitiesOfDBs[k] / totalExternality * aggregateValues[j];
 				
-				inducedValues.get(k).add(valueOfDB);
-				_logger.debug("V_" + dbId + " for det. allocation " + j + " is " + valueOfDB + "="+ externalitiesOfDBs.get(dbId-1) + "/...");
+				inducedValues.set(k, j, valueOfDB);
 			}
-			
 		}
 
 		return inducedValues;
 	}
 	
+	/**
+	 * The method computes the total induced value of DBs for a single deterministic allocation of DBs. Since induced values of
+	 * DBs are shares of the aggregate value proportional to positive externalities of DBs, the total induced value is the
+	 * aggregate value if at least one allocated DB has a positive externality and 0 otherwise (see computeInducedValueTable()).
+	 * @param price current market price per row of a query answer
+	 * @param allocation binary encoding of the deterministic allocation of DBs
+	 * @return the total induced value of DBs
+	 */
+	private double computeTotalInducedValue(double price, long allocation)
+	{
+		double[] res = evaluateBuyers(price, allocation);
+		double aggregateValue = res[BuyerDemandOracle.VALUE] + price * res[BuyerDemandOracle.ROWS];
+		for(long dbs = allocation; dbs != 0; dbs &= dbs - 1)
+		{
+			long bit = Long.lowestOneBit(dbs);
+			double[] resReduced = evaluateBuyers(price, allocation & ~bit);
+			double aggregateValueReduced = resReduced[BuyerDemandOracle.VALUE] + price * resReduced[BuyerDemandOracle.ROWS];
+			if( computeExternality(Long.numberOfTrailingZeros(bit) + 1, aggregateValue, aggregateValueReduced) > 0 )
+				return aggregateValue;
+		}
+		return 0.;
+	}
+	
+	/**
+	 * The method fills tables of the market demand for rows and of the aggregate value indexed by deterministic allocations
+	 * of DBs. Every allocation is evaluated once: a single pass over buyers yields both the demand and the value. Since the
+	 * demand of buyers is evaluated statelessly (see BuyerDemandOracle.java), all allocations which are not cached yet are
+	 * submitted to the pool at once and are evaluated concurrently. Cached results are reused and new results are cached
+	 * (see DemandCache.java).
+	 * @param price current market price per row of a query answer
+	 * @param marketDemandRows a table to be filled with the market demand for rows for every allocation
+	 * @param aggregateValues a table to be filled with the aggregate value for every allocation
+	 */
+	private void computeDemandAndValueTables(double price, double[] marketDemandRows, double[] aggregateValues)
+	{
+		double[][] results = new double[marketDemandRows.length][BuyerDemandOracle.RESULT_SIZE];
+		BuyersTask[] tasks = new BuyersTask[marketDemandRows.length];
+		for(int j = 0; j < marketDemandRows.length; ++j)
+			if( !_cache.get(price, j, results[j]) )
+			{
+				tasks[j] = new BuyersTask(price, j, 0, _demandOracles.size(), getChunkSize());
+				if( _workers != null )
+					_workers.execute(tasks[j]);
+			}
+		
+		for(int j = 0; j < marketDemandRows.length; ++j)
+		{
+			if( tasks[j] != null )
+			{
+				results[j] = _workers != null ? tasks[j].join() : tasks[j].invoke();
+				_cache.put(price, j, results[j]);
+			}
+			marketDemandRows[j] = results[j][BuyerDemandOracle.ROWS];
+			aggregateValues[j] = results[j][BuyerDemandOracle.VALUE] + price * results[j][BuyerDemandOracle.ROWS];
+		}
+	}
+	
 	/**
 	 * The method computes the positive externality that the DB imposes
 	 * on buyers given current market prices and allocation of other DBs.
@@ -368,13 +431,13 @@ public class MarketPlatform
 	 * @return the positive externality of the specified DB.
 	 * @throws Exception 
 	 */
-	public double computeExternalityOfDB(int dbId, double price, double marketDemandForRows, int alloc) throws Exception
+	public double computeExternalityOfDB(int dbId, double price, double marketDemandForRows, long alloc) throws Exception
 	{
 		_logger.debug("computeExternalityOfDB(dbId="+dbId + ", p="+price + ", marketDemandForRows=" + marketDemandForRows +", alloc="+alloc+")");
 		
-		int detAllocDBs = alloc;
-		int detAllocReducedDBs = detAllocDBs;
-		int bit = 1 << (dbId-1);
+		long detAllocDBs = alloc;
+		long detAllocReducedDBs = detAllocDBs;
+		long bit = 1L << (dbId-1);
 		detAllocReducedDBs = detAllocReducedDBs & ( ~bit );
 		
 		// Compute market demand for rows if dbId is not allocated
@@ -384,6 +447,19 @@ public class MarketPlatform
 		double aggregateValue = computeAggregateValue(price, marketDemandForRows, detAllocDBs);
 		double aggregateValueReduced = computeAggregateValue(price, marketDemandForRowsReduced, detAllocReducedDBs);
 		
+		return computeExternality(dbId, aggregateValue, aggregateValueReduced);
+	}
+	
+	/**
+	 * The method computes the positive externality of a DB as the difference between aggregate values with and without the DB.
+	 * Small negative externalities (numerical errors) are truncated to 0.
+	 * @param dbId id of the database
+	 * @param aggregateValue the aggregate value if the DB is allocated
+	 * @param aggregateValueReduced the aggregate value if the DB is not allocated
+	 * @return the positive externality of the specified DB
+	 */
+	private double computeExternality(int dbId, double aggregateValue, double aggregateValueReduced)
+	{
 		double externality = aggregateValue - aggregateValueReduced;
 		
 		_logger.debug("Computed externality for dbID=" + dbId + " is " + externality + " = " + aggregateValue + " - " + aggregateValueReduced);
@@ -413,125 +489,194 @@ public class MarketPlatform
 	}
 	
 	/**
-	 * 
-	 * @author Dmitry Moor
+	 * The method switches the sparse mode on or off. In the sparse mode the BORA auction is solved by the local search over
+	 * allocations of DBs reachable from the set of sellers instead of the enumeration of all 2^n allocations of DBs, so that
+	 * neither the demand of buyers nor induced values of DBs are computed for all allocations (see solveBORA()).
+	 * @param isSparse true if the sparse mode should be used
 	 */
-	private class ValueWorker implements Runnable
+	public void setSparseMode(boolean isSparse)
 	{
-		private Thread _thread;										// A thread object
-		private String _threadName;									// The thread's name
-		private int _threadId;										// A thread id
-		private double _price;
-		private int _idxLow;
-		private int _idxHigh;
-		
-		public ValueWorker(String name, int threadId, double price)
+		_isSparse = isSparse;
+	}
+	
+	/**
+	 * @return the number of DBs in the market
+	 */
+	public int getNumberOfDBs()
+	{
+		return _numberOfDBs;
+	}
+	
+	/**
+	 * The method evaluates all buyers either on the calling thread (single-threaded mode) or on the persistent pool of workers.
+	 * Cached results are reused and new results are cached.
+	 * @param price price per row
+	 * @param allocation binary encoding of the deterministic allocation of DBs
+	 * @return aggregated results of buyers (indexed as in BuyerDemandOracle.java)
+	 */
+	private double[] evaluateBuyers(double price, long allocation)
+	{
+		double[] res = new double[BuyerDemandOracle.RESULT_SIZE];
+		if( _cache.get(price, allocation, res) )
 		{
-			_threadName = name + threadId;
-			_threadId = threadId;
-			_price = price;
-			
-			_idxLow = _threadId * _buyers.size() / _numberOfThreads;
-			_idxHigh = (_threadId + 1) * _buyers.size() / _numberOfThreads - 1;
-		}
-		
-		@Override
-		public void run() 
-		{				
-			double value = 0.;
-			
-			for( int i = _idxLow; i <= _idxHigh; ++i )
-			{
-				List<Double> optBundle = _buyers.get(i).solveConsumptionProblem(_price);
-				value += _buyers.get(i).computeUtility(optBundle) - _buyers.get(i).getEndowment();
-			}
-			//_logger.debug("Thread id=" +_threadId + ". idx=["+_idxLow+", "+_idxHigh +"]. Val="+value);
-			_vals[_threadId] = value;
+			_logger.debug("cashed");
+			return res;
 		}
 		
-		public void start()
-		{
-			if(_thread == null)
-			{
-				_thread = new Thread(this, _threadName);
-				_thread.start();
-			}
-		}
+		BuyersTask task = new BuyersTask(price, allocation, 0, _demandOracles.size(), getChunkSize());
+		res = _workers == null ? task.invoke() : _workers.invoke(task);
+		_cache.put(price, allocation, res);
+		return res;
 	}
 	
 	/**
-	 * 
+	 * The method returns the number of buyers evaluated by a single task of the pool. Several chunks per worker are
+	 * produced, so that idle workers can steal chunks of busy ones.
+	 * @return the maximal number of buyers in a chunk
+	 */
+	private int getChunkSize()
+	{
+		if( _workers == null )
+			return Math.max(1, _demandOracles.size());
+		return Math.max(1, _demandOracles.size() / (_numberOfThreads * _CHUNKS_PER_THREAD));
+	}
+	
+	/**
+	 * The task evaluates buyers within a range of indexes for the given price and deterministic allocation of DBs and returns
+	 * the aggregated demand for money, demand for rows and value (indexed as in BuyerDemandOracle.java). Large ranges are
+	 * split in halves and forked, so that the pool balances the load by work stealing. Partial results are always added in
+	 * the order of buyers, so that results do not depend on scheduling.
 	 * @author Dmitry Moor
 	 */
-	private class DemandWorker implements Runnable
+	private class BuyersTask extends RecursiveTask<double[]>
 	{
-		private Thread _thread;										// A thread object
-		private String _threadName;									// The thread's name
-		private int _threadId;										// A thread id
-		private double _price;										// Price per row
-		private double[] _marketDemandMoney;						// Shared array
-		private double[] _marketDemandRows;							// Shared array
-		private int _idxLow;										// Lower index of the buyer for the thread
-		private int _idxHigh;										// Upper index of the buyer for the thread
-		
-		public DemandWorker(String name, int threadId, double price, double[] marketDemandMoney, double[] marketDemandRows)
+		private static final long serialVersionUID = 1L;
+		
+		/**
+		 * Constructor.
+		 * @param price price per row
+		 * @param allocation binary encoding of the deterministic allocation of DBs
+		 * @param idxLow the index of the first buyer of the range
+		 * @param idxHigh the index following the last buyer of the range
+		 * @param chunkSize the maximal number of buyers evaluated without splitting the range
+		 */
+		BuyersTask(double price, long allocation, int idxLow, int idxHigh, int chunkSize)
 		{
-			_threadName = name + threadId;
-			_threadId = threadId;
-			_marketDemandMoney = marketDemandMoney;
-			_marketDemandRows = marketDemandRows;
 			_price = price;
-			
-			_idxLow = _threadId * _buyers.size() / _numberOfThreads;
-			_idxHigh = (_threadId + 1) * _buyers.size() / _numberOfThreads - 1;
+			_allocation = allocation;
+			_idxLow = idxLow;
+			_idxHigh = idxHigh;
+			_chunkSize = chunkSize;
 		}
 		
 		@Override
-		public void run() 
-		{   
-			double moneyDemand = 0.;
-			double rowsDemand = 0.;
-			for( int i = _idxLow; i <= _idxHigh; ++i )
-			{
-				List<Double> optBundle = _buyers.get(i).solveConsumptionProblem(_price);				
-				moneyDemand += optBundle.get(0);
-				rowsDemand += optBundle.get(1);
-			}
-			_marketDemandMoney[_threadId] = moneyDemand;
-			_marketDemandRows[_threadId] = rowsDemand;
-		}
-		
-		public void start()
+		protected double[] compute()
 		{
-			if(_thread == null)
+			if( _idxHigh - _idxLow <= _chunkSize )
 			{
-				_thread = new Thread(this, _threadName);
-				_thread.start();
+				double[] res = new double[BuyerDemandOracle.RESULT_SIZE];
+				for(int i = _idxLow; i < _idxHigh; ++i)
+					_demandOracles.get(i).addConsumption(_price, _allocation, res);
+				return res;
 			}
+			
+			int idxMiddle = (_idxLow + _idxHigh) >>> 1;
+			BuyersTask left  = new BuyersTask(_price, _allocation, _idxLow, idxMiddle, _chunkSize);
+			BuyersTask right = new BuyersTask(_price, _allocation, idxMiddle, _idxHigh, _chunkSize);
+			right.fork();
+			double[] res = left.compute();
+			double[] resRight = right.join();
+			for(int i = 0; i < BuyerDemandOracle.RESULT_SIZE; ++i)
+				res[i] += resRight[i];
+			return res;
 		}
+		
+		private double _price;										// Price per row
+		private long _allocation;									// Binary encoding of the deterministic allocation of DBs
+		private int _idxLow;										// Lower index of the buyer for the task
+		private int _idxHigh;										// Upper index (exclusive) of the buyer for the task
+		private int _chunkSize;										// Max number of buyers evaluated without splitting
 	}
 	
+	/**
+	 * The method sets the number of threads used to evaluate buyers. If more than one thread is used, buyers are evaluated
+	 * by a persistent pool of workers which lives until the number of threads is changed or the platform is shut down.
+	 * @param nThreads the number of threads
+	 */
 	public void setNumberOfThreads(int nThreads)
 	{
+		if( nThreads < 1 ) throw new RuntimeException("The number of threads should be positive: " + nThreads);
+		if( _workers != null && nThreads != _numberOfThreads )
+			shutdown();
+		
 		_numberOfThreads = nThreads;
+		if( _workers == null && _numberOfThreads > 1 )
+			_workers = new ForkJoinPool(_numberOfThreads);
 	}
 	
-	public IloCplex getSolver()
+	/**
+	 * The method terminates the pool of workers (if any). Subsequent evaluations run on the calling thread until the
+	 * number of threads is set again. The CPLEX solver of the platform is not affected (see getSolver()).
+	 */
+	public void shutdown()
 	{
+		if( _workers != null )
+		{
+			_workers.shutdown();
+			_workers = null;
+		}
+		_numberOfThreads = 1;
+	}
+	
+	/**
+	 * The method returns stateless views of buyers, e.g., to evaluate surpluses of buyers at the equilibrium.
+	 * @return demand oracles of buyers (in the order of buyers)
+	 */
+	public List<BuyerDemandOracle> getDemandOracles()
+	{
+		return _demandOracles;
+	}
+	
+	/**
+	 * The method returns the CPLEX solver of the platform. The solver is instantiated on the first request unless an
+	 * auction of the platform instantiated it before (BORA enumerates allocations of DBs and needs CPLEX only for the MIP).
+	 * @return CPLEX solver
+	 * @throws IloException if the solver cannot be instantiated
+	 */
+	public IloCplex getSolver() throws IloException
+	{
+		if( _cplexSolver == null )
+			_cplexSolver = new IloCplex();
 		return _cplexSolver;
 	}
 	
-	private List<ParametrizedQuasiLinearAgent> _buyers;				// Buyers
+	/**
+	 * The method terminates the CPLEX solver of the platform (if it was instantiated).
+	 */
+	public void endSolver()
+	{
+		if( _cplexSolver != null )
+		{
+			_cplexSolver.end();
+			_cplexSolver = null;
+		}
+	}
+	
+	private List<ParametrizedQuasiLinearAgent> _buyers;				// Buyers (null if the platform was created from demand oracles)
+	private List<BuyerDemandOracle> _demandOracles;					// Stateless views of buyers used to evaluate their demand
 	private List<SellerType> _sellers;								// Sellers
 	private int _numberOfDBs;										// Number of databases
 	private int _MAX_ITER = 10000;									// Max number of gradient descent iterations
 	private double _STEP = 0.01;									// Step of the gradient descent
 	private double _TOL = 1e-7;										// Tolerance of the gradient descent
+	private IPriceSearchStrategy _priceSearchStrategy;				// Strategy of the price search (null for the fixed step tatonement)
+	private int _numberOfIterations;								// Number of iterations of the last price search
 	private int _numberOfThreads;									// Number of threads
-	private double[] _vals;
-	private Map<Integer, Double> _marketDemandMoney;				// CACHE
-	private Map<Integer, Double> _marketDemandRows;					// CACHE
-	private Map<Integer, Double> _aggregateValue;					// CACHE
+	private ForkJoinPool _workers;									// Persistent workers evaluating buyers (null if single-threaded)
+	private static final int _CHUNKS_PER_THREAD = 8;				// Number of chunks of buyers per worker (for work stealing)
+	private boolean _isSparse;										// True if the BORA auction is solved by the local search over allocations
+	private DemandCache _cache;										// Market demands and values of buyers indexed by (price, allocation)
+	private static final int _DEFAULT_CACHE_CAPACITY = 1 << 12;		// Default max number of cached (price, allocation) pairs
 	
-	private IloCplex _cplexSolver;
+	private IloCplex _cplexSolver;									// CPLEX solver (null until requested)
 }
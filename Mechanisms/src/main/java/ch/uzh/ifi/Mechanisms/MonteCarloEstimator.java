@@ -0,0 +1,304 @@
+package ch.uzh.ifi.Mechanisms;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The class estimates expected metrics of a probabilistic mechanism (e.g., the efficiency or the number of IR violations)
+ * by playing sample games of ProbabilisticCAXOR. Games are played concurrently by several workers, each with its own
+ * CPLEX solver obtained from a pool of solver contexts (see SolverContextPool.java), while metrics of games are
+ * aggregated online in the order of games. The estimation stops once confidence intervals of all metrics are narrower
+ * than the requested widths or once the max number of games is played.
+ *
+ * Results do not depend on the number of threads only if every game derives all its random choices from its index.
+ * In particular, realizations of availabilities should not be drawn from a JPMF shared by concurrent games, e.g., every
+ * auction should use its own cache of marginal availabilities with an index of samples and a seed derived from the index
+ * of the game (see MarginalAvailabilityCache.setSeed()).
+ * @author Dmitry Moor
+ *
+ */
+public class MonteCarloEstimator
+{
+
+	private static final Logger _logger = LogManager.getLogger(MonteCarloEstimator.class);
+
+	/**
+	 * The interface of a sample game. Methods are called concurrently by several workers. For reproducible results all
+	 * random choices of a game should be derived from its index.
+	 */
+	public interface IGame
+	{
+		/**
+		 * The method produces the auction of a game. The pool of solver contexts of the auction is set by the estimator.
+		 * @param gameIdx the index of the game
+		 * @return the auction
+		 * @throws Exception if the auction cannot be produced
+		 */
+		public ProbabilisticCAXOR generateAuction(int gameIdx) throws Exception;
+
+		/**
+		 * The method measures metrics of a solved auction.
+		 * @param gameIdx the index of the game
+		 * @param auction the solved auction
+		 * @param paymentException an exception thrown by the payment rule (e.g., "Empty Core") or null if none
+		 * @return values of metrics
+		 * @throws Exception if metrics cannot be measured
+		 */
+		public double[] evaluate(int gameIdx, ProbabilisticCAXOR auction, PaymentException paymentException) throws Exception;
+	}
+
+	/**
+	 * The class contains estimates of metrics.
+	 */
+	public static class EstimationResult
+	{
+		/**
+		 * Constructor.
+		 * @param numberOfMetrics the number of metrics
+		 */
+		public EstimationResult(int numberOfMetrics)
+		{
+			_statistics = new RunningStatistics[numberOfMetrics];
+			for(int k = 0; k < numberOfMetrics; ++k)
+				_statistics[k] = new RunningStatistics();
+			_numberOfGames = 0;
+			_numberOfFailedGames = 0;
+			_isConverged = false;
+		}
+
+		/**
+		 * @param metricIdx the index of the metric
+		 * @return running statistics of the metric
+		 */
+		public RunningStatistics getStatistics(int metricIdx)
+		{
+			return _statistics[metricIdx];
+		}
+
+		/**
+		 * @return the number of played games (including failed ones)
+		 */
+		public int getNumberOfGames()
+		{
+			return _numberOfGames;
+		}
+
+		/**
+		 * @return the number of games which failed and are not included in statistics
+		 */
+		public int getNumberOfFailedGames()
+		{
+			return _numberOfFailedGames;
+		}
+
+		/**
+		 * @return true if the requested widths of confidence intervals were reached and false if the estimation stopped
+		 * after the max number of games
+		 */
+		public boolean isConverged()
+		{
+			return _isConverged;
+		}
+
+		private RunningStatistics[] _statistics;				//Running statistics of metrics
+		private int _numberOfGames;								//The number of played games
+		private int _numberOfFailedGames;						//The number of failed games
+		private boolean _isConverged;							//True if the requested widths were reached
+	}
+
+	/**
+	 * Constructor.
+	 * @param game a sample game
+	 * @param numberOfMetrics the number of metrics measured in every game
+	 * @param numberOfThreads the number of workers
+	 */
+	public MonteCarloEstimator(IGame game, int numberOfMetrics, int numberOfThreads)
+	{
+		if( numberOfMetrics < 1 ) throw new RuntimeException("The number of metrics should be positive: " + numberOfMetrics);
+		if( numberOfThreads < 1 ) throw new RuntimeException("The number of threads should be positive: " + numberOfThreads);
+		_game = game;
+		_numberOfMetrics = numberOfMetrics;
+		_numberOfThreads = numberOfThreads;
+		_targetWidths = null;
+		_criticalValue = 1.96;
+		_minNumberOfGames = 30;
+		_solverContextPool = null;
+	}
+
+	/**
+	 * The method sets widths of confidence intervals of metrics to be reached. By default (and if no metric has a positive
+	 * width), the estimation doesn't stop before the max number of games is played.
+	 * @param targetWidths widths of confidence intervals of metrics (0 if a metric has no requirement)
+	 */
+	public void setTargetWidths(double[] targetWidths)
+	{
+		if( targetWidths != null && targetWidths.length != _numberOfMetrics ) throw new RuntimeException("Widths of all metrics should be specified: " + targetWidths.length + " vs " + _numberOfMetrics);
+		_targetWidths = targetWidths;
+	}
+
+	/**
+	 * The method sets the critical value of the standard normal distribution used for confidence intervals.
+	 * @param criticalValue the critical value (1.96 for 95% confidence by default)
+	 */
+	public void setCriticalValue(double criticalValue)
+	{
+		_criticalValue = criticalValue;
+	}
+
+	/**
+	 * The method sets the min number of games played before the estimation may stop. Confidence intervals computed using
+	 * few games are not reliable.
+	 * @param minNumberOfGames the min number of games (30 by default)
+	 */
+	public void setMinNumberOfGames(int minNumberOfGames)
+	{
+		_minNumberOfGames = minNumberOfGames;
+	}
+
+	/**
+	 * The method sets the pool of solver contexts used by auctions of games, e.g., to keep CPLEX solvers across several
+	 * estimations. The pool is not closed by the estimator. By default, every run uses its own pool with one context per worker.
+	 * @param pool a pool of solver contexts (null if every run should use its own pool)
+	 */
+	public void setSolverContextPool(SolverContextPool pool)
+	{
+		_solverContextPool = pool;
+	}
+
+	/**
+	 * The method plays games until confidence intervals of all metrics are narrow enough.
+	 * At most a fixed number of games is played in advance of the aggregation; they are cancelled once the estimation stops.
+	 * @param maxNumberOfGames the max number of games
+	 * @return estimates of metrics
+	 * @throws InterruptedException if the calling thread is interrupted while waiting for games
+	 */
+	public EstimationResult run(int maxNumberOfGames) throws InterruptedException
+	{
+		_logger.debug("-> run(maxNumberOfGames=" + maxNumberOfGames + ")");
+		int numberOfWorkers = Math.max(1, Math.min(_numberOfThreads, maxNumberOfGames));
+		int maxNumberOfPendingGames = 2 * numberOfWorkers;
+
+		boolean isOwnPool = (_solverContextPool == null);
+		SolverContextPool solverContextPool = isOwnPool ? new SolverContextPool(numberOfWorkers) : _solverContextPool;
+		OrderedTaskExecutor<double[]> executor = new OrderedTaskExecutor<double[]>(numberOfWorkers, maxNumberOfPendingGames);
+		EstimationResult result = new EstimationResult(_numberOfMetrics);
+		try
+		{
+			int nextGameIdx = 0;
+			while( !result._isConverged && result._numberOfGames < maxNumberOfGames )
+			{
+				while( nextGameIdx < maxNumberOfGames && !executor.isFull() )
+				{
+					final int gameIdx = nextGameIdx++;
+					executor.submit( () -> play(gameIdx, solverContextPool) );
+				}
+
+				aggregate(result, executor.take());
+				result._isConverged = isConverged(result);
+			}
+		}
+		finally
+		{
+			executor.close();
+			if( isOwnPool )
+				solverContextPool.close();
+		}
+		_logger.debug("<- run(...) games: " + result._numberOfGames + "; failed: " + result._numberOfFailedGames + "; converged: " + result._isConverged);
+		return result;
+	}
+
+	/**
+	 * The method plays a game. The auction of the game uses the solver of a context checked out from the pool until its
+	 * metrics are measured.
+	 * @param gameIdx the index of the game
+	 * @param solverContextPool a pool of solver contexts
+	 * @return metrics of the game or null if the game failed
+	 * @throws InterruptedException if the worker is interrupted while waiting for a solver context
+	 */
+	private double[] play(int gameIdx, SolverContextPool solverContextPool) throws InterruptedException
+	{
+		ProbabilisticCAXOR auction = null;
+		try
+		{
+			auction = _game.generateAuction(gameIdx);
+			auction.setSolverContextPool(solverContextPool);
+			auction.acquireSolverContext();
+
+			PaymentException paymentException = null;
+			try
+			{
+				auction.solveIt();
+			}
+			catch(PaymentException e)
+			{
+				paymentException = e;
+			}
+
+			double[] metrics = _game.evaluate(gameIdx, auction, paymentException);
+			if( metrics.length != _numberOfMetrics ) throw new RuntimeException("Wrong number of metrics: " + metrics.length + " vs " + _numberOfMetrics);
+			return metrics;
+		}
+		catch(InterruptedException e)
+		{
+			throw e;												//The game was cancelled
+		}
+		catch(Exception e)
+		{
+			_logger.error("Game " + gameIdx + " failed: " + e.toString());
+			return null;
+		}
+		finally
+		{
+			if( auction != null )
+				auction.releaseSolverContext();
+		}
+	}
+
+	/**
+	 * The method adds metrics of a game to running statistics.
+	 * @param result estimates of metrics
+	 * @param metrics metrics of the game (null if the game failed)
+	 */
+	void aggregate(EstimationResult result, double[] metrics)
+	{
+		result._numberOfGames += 1;
+		if( metrics == null )
+		{
+			result._numberOfFailedGames += 1;
+			return;
+		}
+
+		for(int k = 0; k < _numberOfMetrics; ++k)
+			result._statistics[k].add(metrics[k]);
+	}
+
+	/**
+	 * The method checks if confidence intervals of all metrics are narrower than requested. At least one metric should
+	 * have a requirement.
+	 * @param result current estimates of metrics
+	 * @return true if the estimation may stop
+	 */
+	boolean isConverged(EstimationResult result)
+	{
+		if( _targetWidths == null || result._statistics[0].getNumberOfObservations() < _minNumberOfGames )
+			return false;
+
+		boolean hasRequirements = false;
+		for(int k = 0; k < _numberOfMetrics; ++k)
+			if( _targetWidths[k] > 0 )
+			{
+				if( result._statistics[k].getConfidenceIntervalWidth(_criticalValue) > _targetWidths[k] )
+					return false;
+				hasRequirements = true;
+			}
+		return hasRequirements;
+	}
+
+	private IGame _game;											//A sample game
+	private int _numberOfMetrics;									//The number of metrics measured in every game
+	private int _numberOfThreads;									//The number of workers
+	private double[] _targetWidths;									//Widths of confidence intervals to be reached (null if none)
+	private double _criticalValue;									//The critical value of the standard normal distribution
+	private int _minNumberOfGames;									//The min number of games before the estimation may stop
+	private SolverContextPool _solverContextPool;					//A pool of solver contexts shared by runs (null if every run uses its own pool)
+}
@@ -4,6 +4,7 @@ import ch.uzh.ifi.MechanismDesignPrimitives.Allocation;
 import ch.uzh.ifi.MechanismDesignPrimitives.Type;
 import ch.uzh.ifi.MechanismDesignPrimitives.MultiUnitAtom;
 
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -181,13 +182,13 @@ public class MultiUnitCAXOR implements Auction
 	 */
 	public void computeWinnerDetermination()
 	{
-		List<List<Variable> > variables = new LinkedList<List<Variable> >();// i-th element of the list contains the list of variables 
+		List<List<Variable> > variables = new ArrayList<List<Variable> >();// i-th element of the list contains the list of variables 
 																			// corresponding to the i-th agent
 		//Create the optimization variables and formulate the objective function:
 		for(int i = 0; i < _bids.size(); ++i)								//For every bidder ...
 		{
 			Type bid = _bids.get(i);
-			List<Variable> varI = new LinkedList<Variable>();				//Create a new variable per atomic bid
+			List<Variable> varI = new ArrayList<Variable>();				//Create a new variable per atomic bid
 			for(int j = 0; j < bid.getNumberOfAtoms(); ++j )				//For every atomic bid ...
 			{
 				Variable x = new Variable("x" + i + "_" + j, VarType.INT, 0, 1);
@@ -203,15 +204,12 @@ public class MultiUnitCAXOR implements Auction
 		for(int i = 0; i < _numberOfItems; ++i)
 		{
 			Constraint c = new Constraint(CompareType.LEQ, _unitsOfItems.get(i));
-			for(int j = 0; j < _numberOfAgents; ++j)
+			int[] bidders = _binaryBids.getBiddersOfItem(i);				//Only atoms containing the i-th item ( itemId = i+1)
+			int[] atoms = _binaryBids.getAtomsOfItem(i);
+			for(int k = 0; k < bidders.length; ++k)
 			{
-				int[][] binaryBid = _binaryBids.get(j);
-				for( int q = 0; q < variables.get(j).size(); ++q )			//Find an atom which contains the i-th item ( itemId = i+1)
-					if( binaryBid[q][i] > 0)
-					{
-						int slotsUsed = _bids.get(j).getAtom(q).getNumberOfUnitsByItemId(i+1);
-						c.addTerm( slotsUsed * binaryBid[q][i], variables.get(j).get(q));
-					}
+				int slotsUsed = _bids.get(bidders[k]).getAtom(atoms[k]).getNumberOfUnitsByItemId(i+1);
+				c.addTerm( slotsUsed, variables.get(bidders[k]).get(atoms[k]));
 			}
 			_mip.add(c);
 		}
@@ -313,41 +311,12 @@ public class MultiUnitCAXOR implements Auction
 		return _payments;
 	}
 	
-	/*
-	 * The method converts bids of all agents into a binary matrix form.
+	/**
+	 * The method converts bids of all agents into the binary (bitset) format.
 	 */
 	private void convertAllBidsToBinaryFormat()
 	{
-		_binaryBids = new LinkedList<int[][]>();						//The list contains bids of all agents in a binary format
-		for(int i = 0; i < _bids.size(); ++i)
-		{
-			Type bid = _bids.get(i);									//The bid of the i-th bidder
-			int[][] binaryBid = new int[bid.getNumberOfAtoms()][_numberOfItems];	//The binary representation of a bid is used to build constraints
-	
-			convertBidToBinaryForm(binaryBid, bid.getNumberOfAtoms(), _numberOfItems, bid);
-			_binaryBids.add(binaryBid);
-		}
-	}
-	
-	/*
-	 * The method converts an input bid into a binary format. In the binary format the bid is represented as a matrix A [M x K],
-	 * where M is the number of atomic bids in the XOR bid and k is the number of items in the CA. A[i][j] = 1 if a package i 
-	 * contains an item j and 0 otherwise. 
-	 * @param binary bid - the result will be stored in this matrix
-	 * @param numberOfRows - the number of rows of the binaryBid (is equal to the number of atomic bids in the bid)
-	 * @param bid - an XOR bid
-	 */
-	private void convertBidToBinaryForm(int binaryBid[][], int numberOfRows, int numberOfColumns, Type bid )
-	{
-		for(int i = 0; i < numberOfRows; ++i)
-		{
-			List<Integer> itemsSet = bid.getAtom(i).getInterestingSet();
-			List<Integer> items = new LinkedList<Integer>();
-			for(Integer item : itemsSet)
-				items.add(item);
-			for(int j = 0; j < items.size(); ++j)
-				binaryBid[i][(int)(items.get(j))-1 ]  = 1;
-		}
+		_binaryBids = new BinaryBids(_bids, _numberOfItems);				//Bids of all agents in the binary format
 	}
 	
 	/*
@@ -387,7 +356,7 @@ public class MultiUnitCAXOR implements Auction
 	private int _numberOfItems;										//The number of different items to be sold
 	private List<Type> _bids;										//Bids submitted by agents
 	List<Integer> _unitsOfItems;									//A list of numbers of units of each kind of item
-	private List<int[][]> _binaryBids;								//Bids converted into a binary matrix format
+	private BinaryBids _binaryBids;									//Bids converted into a binary (bitset) format
 	
 	private Allocation _allocation;
 	private List<Double> _payments;
@@ -0,0 +1,97 @@
+package ch.uzh.ifi.Mechanisms;
+
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The class executes independent tasks (e.g., auctions or samples of a batch) on a fixed number of workers and returns
+ * their results in the order of submission. The number of tasks submitted but not yet taken is bounded by the caller
+ * using isFull(), so that long streams of tasks can be processed. Tasks should handle their own failures; an exception
+ * thrown by a task is treated as an unexpected failure of a worker. The executor is used by one (calling) thread.
+ * @author Dmitry Moor
+ *
+ * @param <T> the type of results of tasks
+ */
+public class OrderedTaskExecutor<T>
+{
+
+	/**
+	 * Constructor.
+	 * @param numberOfWorkers the number of workers
+	 * @param maxNumberOfPendingTasks the max number of tasks submitted but not yet taken
+	 */
+	public OrderedTaskExecutor(int numberOfWorkers, int maxNumberOfPendingTasks)
+	{
+		if( numberOfWorkers < 1 ) throw new RuntimeException("The number of workers should be positive: " + numberOfWorkers);
+		if( maxNumberOfPendingTasks < 1 ) throw new RuntimeException("The max number of pending tasks should be positive: " + maxNumberOfPendingTasks);
+		_executor = Executors.newFixedThreadPool(numberOfWorkers);
+		_pendingTasks = new LinkedList<Future<T>>();
+		_maxNumberOfPendingTasks = maxNumberOfPendingTasks;
+	}
+
+	/**
+	 * The method submits a task to workers.
+	 * @param task the task
+	 */
+	public void submit(Callable<T> task)
+	{
+		_pendingTasks.add( _executor.submit(task) );
+	}
+
+	/**
+	 * The method waits for the result of the earliest submitted task which was not taken yet.
+	 * @return the result of the task
+	 * @throws InterruptedException if the calling thread is interrupted while waiting
+	 */
+	public T take() throws InterruptedException
+	{
+		if( _pendingTasks.isEmpty() ) throw new RuntimeException("No pending tasks.");
+		try
+		{
+			return _pendingTasks.poll().get();
+		}
+		catch (ExecutionException e)
+		{
+			throw new RuntimeException("Unexpected failure of a worker: " + e.getCause().toString(), e.getCause());
+		}
+	}
+
+	/**
+	 * @return true if the max number of tasks is pending, i.e., a result should be taken before the next submission
+	 */
+	public boolean isFull()
+	{
+		return _pendingTasks.size() >= _maxNumberOfPendingTasks;
+	}
+
+	/**
+	 * @return true if there are no pending tasks
+	 */
+	public boolean isEmpty()
+	{
+		return _pendingTasks.isEmpty();
+	}
+
+	/**
+	 * The method cancels pending tasks, shuts down workers and waits until running tasks terminate, so that resources
+	 * used by tasks (e.g., CPLEX solvers) can be released afterwards.
+	 * @throws InterruptedException if the calling thread is interrupted while waiting
+	 */
+	public void close() throws InterruptedException
+	{
+		for(Future<T> task : _pendingTasks)
+			task.cancel(true);
+		_pendingTasks.clear();
+		_executor.shutdownNow();
+		_executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+	}
+
+	private ExecutorService _executor;								//Workers
+	private LinkedList<Future<T>> _pendingTasks;					//Tasks submitted but not yet taken in the order of submission
+	private int _maxNumberOfPendingTasks;							//The max number of tasks submitted but not yet taken
+}
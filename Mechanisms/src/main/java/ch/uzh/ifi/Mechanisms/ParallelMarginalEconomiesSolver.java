@@ -0,0 +1,220 @@
+package ch.uzh.ifi.Mechanisms;
+
+import ilog.cplex.IloCplex;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The class solves WDPs of several marginal economies concurrently. It keeps a bounded pool of marginal economies
+ * engines (see MarginalEconomiesEngine.java), one per worker. Every engine owns its CPLEX instance or uses a thread-safe
+ * non-CPLEX WDP solver. Marginal economies are solved on a ForkJoinPool and the results are returned in the order of requests.
+ * If only one thread is used, marginal economies are solved sequentially on the calling thread by one engine which uses
+ * the CPLEX solver provided by setSolver(...). CPLEX instances of workers use one thread each, so that the number of
+ * threads of the solver is bounded by the number of workers.
+ * The workers and the engines (with their CPLEX instances) are instantiated on the first call and are reused by
+ * subsequent calls until close() is called, also for other auctions (see setProblem(...)). The solver may be kept for
+ * a long time (e.g., by a solver context, see SolverContext.java) and is used by one auction at a time.
+ */
+public class ParallelMarginalEconomiesSolver
+{
+
+	private static final Logger _logger = LogManager.getLogger(ParallelMarginalEconomiesSolver.class);
+
+	/**
+	 * Constructor. The auction is to be set up by setProblem(...).
+	 * @param numberOfThreads the maximal number of workers (and engines)
+	 */
+	public ParallelMarginalEconomiesSolver(int numberOfThreads)
+	{
+		if( numberOfThreads < 1 ) throw new RuntimeException("The number of threads should be positive: " + numberOfThreads);
+		_weights = null;
+		_binaryBids = null;
+		_numberOfThreads = numberOfThreads;
+		_cplexSolver = null;
+		_wdpSolver = null;
+		_sequentialEngine = null;
+		_pool = null;
+		_freeEngines = new ArrayBlockingQueue<MarginalEconomiesEngine>(numberOfThreads);
+		_allEngines = new ArrayList<MarginalEconomiesEngine>(numberOfThreads);
+		_isClosed = false;
+	}
+
+	/**
+	 * Constructor.
+	 * @param weights weights[i][j] is the objective coefficient of the j-th atom of the i-th bidder
+	 * @param binaryBids bids of bidders in the binary format
+	 * @param numberOfThreads the maximal number of workers (and engines)
+	 */
+	public ParallelMarginalEconomiesSolver(double[][] weights, BinaryBids binaryBids, int numberOfThreads)
+	{
+		this(numberOfThreads);
+		setProblem(weights, binaryBids);
+	}
+
+	/**
+	 * The method sets up the auction whose marginal economies are to be solved. Engines keep their CPLEX instances and
+	 * rebuild their WDP models on the next solve.
+	 * @param weights weights[i][j] is the objective coefficient of the j-th atom of the i-th bidder
+	 * @param binaryBids bids of bidders in the binary format
+	 */
+	public void setProblem(double[][] weights, BinaryBids binaryBids)
+	{
+		_weights = weights;
+		_binaryBids = binaryBids;
+		if( _sequentialEngine != null )
+			_sequentialEngine.setProblem(weights, binaryBids);
+		for(MarginalEconomiesEngine engine : _allEngines)
+			engine.setProblem(weights, binaryBids);
+	}
+
+	/**
+	 * The method sets up the CPLEX solver to be used if marginal economies are solved sequentially. If the solver differs
+	 * from the one used so far, the sequential engine is released and instantiated anew on the next solve.
+	 * @param solver CPLEX solver
+	 */
+	public void setSolver(IloCplex solver)
+	{
+		if( solver != _cplexSolver && _sequentialEngine != null )
+		{
+			_sequentialEngine.release();
+			_sequentialEngine = null;
+		}
+		_cplexSolver = solver;
+	}
+
+	/**
+	 * The method sets up a non-CPLEX solver for WDPs. The solver is shared by all workers and must be thread-safe.
+	 * @param solver WDP solver
+	 */
+	public void setWDPSolver(IWinnerDeterminationSolver solver)
+	{
+		_wdpSolver = solver;
+		if( _sequentialEngine != null )
+			_sequentialEngine.setWDPSolver(solver);
+		for(MarginalEconomiesEngine engine : _allEngines)
+			engine.setWDPSolver(solver);
+	}
+
+	/**
+	 * The method returns the maximal number of workers.
+	 * @return the number of threads
+	 */
+	public int getNumberOfThreads()
+	{
+		return _numberOfThreads;
+	}
+
+	/**
+	 * The method solves WDPs of marginal economies concurrently.
+	 * @param excludedBidders indices of bidders to be excluded, one per marginal economy
+	 * @param incumbent an allocation of the main auction used as a MIP start (can be null)
+	 * @return optimal objective values of marginal economies in the order of excludedBidders
+	 * @throws Exception if a WDP cannot be solved
+	 */
+	public double[] solveWithout(int[] excludedBidders, final int[] incumbent) throws Exception
+	{
+		_logger.debug("-> solveWithout(" + excludedBidders.length + " marginal economies)");
+		if( _isClosed ) throw new RuntimeException("The marginal economies solver is closed.");
+		if( _weights == null ) throw new RuntimeException("No auction is set up for the marginal economies solver.");
+
+		int numberOfWorkers = Math.min(_numberOfThreads, excludedBidders.length);
+		double[] objectiveValues = new double[excludedBidders.length];
+		if( numberOfWorkers == 0 )
+			return objectiveValues;
+
+		if( numberOfWorkers == 1 )
+		{
+			if( _sequentialEngine == null )
+			{
+				_sequentialEngine = new MarginalEconomiesEngine(_weights, _binaryBids);
+				_sequentialEngine.setSolver(_cplexSolver);
+				_sequentialEngine.setWDPSolver(_wdpSolver);
+			}
+			for(int k = 0; k < excludedBidders.length; ++k)
+				objectiveValues[k] = _sequentialEngine.solveWithout(excludedBidders[k], incumbent);
+			return objectiveValues;
+		}
+
+		if( _pool == null )
+			_pool = new ForkJoinPool(_numberOfThreads);
+		while( _allEngines.size() < numberOfWorkers )
+		{
+			MarginalEconomiesEngine engine = new MarginalEconomiesEngine(_weights, _binaryBids);
+			engine.setWDPSolver(_wdpSolver);
+			engine.setNumberOfSolverThreads(1);
+			_allEngines.add(engine);
+			_freeEngines.add(engine);
+		}
+
+		List<Callable<Double>> tasks = new ArrayList<Callable<Double>>();
+		for(final int bidderIdx : excludedBidders)
+			tasks.add( new Callable<Double>() {
+				@Override
+				public Double call() throws Exception
+				{
+					MarginalEconomiesEngine engine = _freeEngines.take();
+					try
+					{
+						return engine.solveWithout(bidderIdx, incumbent);
+					}
+					finally
+					{
+						_freeEngines.put(engine);
+					}
+				}
+			});
+
+		try
+		{
+			List<Future<Double>> results = _pool.invokeAll(tasks);
+			for(int k = 0; k < results.size(); ++k)
+				objectiveValues[k] = results.get(k).get();
+		}
+		catch (ExecutionException e)
+		{
+			if( e.getCause() instanceof Exception )
+				throw (Exception)e.getCause();
+			throw e;
+		}
+		_logger.debug("<- solveWithout(...)");
+		return objectiveValues;
+	}
+
+	/**
+	 * The method terminates the workers and releases the engines. CPLEX instances owned by the engines are terminated.
+	 */
+	public void close()
+	{
+		if( _isClosed )
+			return;
+
+		_isClosed = true;
+		if( _pool != null )
+			_pool.shutdown();
+		for(MarginalEconomiesEngine engine : _allEngines)
+			engine.release();
+		if( _sequentialEngine != null )
+			_sequentialEngine.release();
+	}
+
+	private double[][] _weights;								//Objective coefficients of atoms
+	private BinaryBids _binaryBids;								//Bids converted into a binary (bitset) format
+	private int _numberOfThreads;								//The maximal number of workers
+	private IloCplex _cplexSolver;								//CPLEX solver used if marginal economies are solved sequentially
+	private IWinnerDeterminationSolver _wdpSolver;				//A thread-safe non-CPLEX solver for WDPs (CPLEX is used if null)
+	private MarginalEconomiesEngine _sequentialEngine;			//The engine used if marginal economies are solved sequentially
+	private ForkJoinPool _pool;									//Workers (null until the first concurrent solve)
+	private BlockingQueue<MarginalEconomiesEngine> _freeEngines;	//Engines which are not in use
+	private List<MarginalEconomiesEngine> _allEngines;			//All engines of workers
+	private boolean _isClosed;									//True if the solver was closed
+}
@@ -8,7 +8,10 @@ import ilog.concert.IloNumVarType;
 import ilog.cplex.IloCplex;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -50,10 +53,32 @@ public class ProbabilisticCAXOR implements Auction
 		_paymentRule = "EC-VCG";
 		_costs = costs;
 		_jpmf = jpmf;
+		_availabilities = new MarginalAvailabilityCache(jpmf);
 		_cplexSolver = null;
+		_vcgPayments = null;
+		_reducedWelfares = null;
+		_paymentExceptions = null;
+		_numberOfThreads = 1;
+		_marginalEconomiesSolver = null;
 		resetTypes(bids);
 	}
 	
+	/**
+	 * Constructor. The auction uses (and extends) the given cache of marginal availabilities of bundles. This is used by
+	 * reduced auctions of payment rules and may be used by several auctions with the same JPMF. The cache must be cleared
+	 * by the caller once the JPMF is updated.
+	 * @param numberOfBuyers the number of buyers in the auction
+	 * @param numberOfItems the number of items to be auctioned
+	 * @param bids bids of agents
+	 * @param costs a list of costs per good
+	 * @param availabilities memoized marginal availabilities of bundles
+	 */
+	public ProbabilisticCAXOR(int numberOfBuyers, int numberOfItems, List<Type> bids, List<Double> costs, MarginalAvailabilityCache availabilities)
+	{
+		this(numberOfBuyers, numberOfItems, bids, costs, availabilities.getJPMF());
+		_availabilities = availabilities;
+	}
+	
 	/**
 	 * The method sets up the CPLEX solver to be used for solving the WDP.
 	 * @param solver CPLEX solver
@@ -63,6 +88,111 @@ public class ProbabilisticCAXOR implements Auction
 		_cplexSolver = solver;
 	}
 	
+	/**
+	 * The method sets up a pool of solver contexts. If the pool is set, the auction checks out a context from the pool
+	 * for the duration of solveIt() (unless a context is already checked out by acquireSolverContext()) and uses its CPLEX
+	 * solver exclusively, so that several auctions can be solved on different threads.
+	 * @param pool a pool of solver contexts
+	 */
+	public void setSolverContextPool(SolverContextPool pool)
+	{
+		_solverContextPool = pool;
+	}
+	
+	/**
+	 * The method checks out a solver context from the pool. The auction uses the solver of the context exclusively until
+	 * releaseSolverContext() is called, so that computations started after solveIt() (e.g., of other payment rules) use
+	 * the same solver. The method has no effect if no pool is set up or if a context is already checked out.
+	 * @throws InterruptedException if the calling thread is interrupted while waiting for a context
+	 * @throws IloException if the solver of the context cannot be instantiated
+	 */
+	public void acquireSolverContext() throws InterruptedException, IloException
+	{
+		if( _solverContextPool == null || _solverContext != null )
+			return;
+		
+		SolverContext context = _solverContextPool.acquire();
+		try
+		{
+			_externalSolver = _cplexSolver;
+			_cplexSolver = context.getSolver();
+			_solverContext = context;
+		}
+		catch(IloException e)
+		{
+			_cplexSolver = _externalSolver;
+			_solverContextPool.release(context);
+			throw e;
+		}
+	}
+	
+	/**
+	 * The method returns the checked out solver context to the pool. The solver set by setSolver() (if any) is used again.
+	 */
+	public void releaseSolverContext()
+	{
+		if( _solverContext == null )
+			return;
+		
+		_cplexSolver = _externalSolver;
+		_externalSolver = null;
+		_solverContextPool.release(_solverContext);
+		_solverContext = null;
+	}
+	
+	/**
+	 * The method makes sure that a solver context is checked out if a pool is set up. A context checked out here is kept
+	 * until releaseSolverContext() is called.
+	 */
+	private void ensureSolverContext()
+	{
+		try
+		{
+			acquireSolverContext();
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while waiting for a solver context.", e);
+		}
+		catch(IloException e)
+		{
+			throw new RuntimeException("Cannot instantiate the solver of a solver context.", e);
+		}
+	}
+	
+	/**
+	 * The method sets up the number of threads used to solve WDPs of marginal economies of EC-VCG and Exp-VCG payments
+	 * (also lower bounds of EC-CORE and Exp-CORE payments). Every additional thread uses its own single-threaded CPLEX instance.
+	 * @param numberOfThreads the number of threads
+	 */
+	public void setNumberOfThreads(int numberOfThreads)
+	{
+		if( numberOfThreads < 1 ) throw new RuntimeException("The number of threads should be positive: " + numberOfThreads);
+		_numberOfThreads = numberOfThreads;
+	}
+	
+	/**
+	 * The method returns the solver of marginal economies shared by payment rules of the auction: the one of the checked
+	 * out solver context (kept by the context across auctions) or the one opened by solveIt().
+	 * @return the solver of marginal economies or null if payment rules should use their own solvers
+	 */
+	private ParallelMarginalEconomiesSolver getMarginalEconomiesSolver()
+	{
+		if( _solverContext != null )
+			return _solverContext.getMarginalEconomiesSolver(_numberOfThreads);
+		return _marginalEconomiesSolver;
+	}
+	
+	/**
+	 * The method sets up a solver for the general WDP which is used instead of CPLEX.
+	 * @param solver WDP solver
+	 */
+	public void setWDPSolver(IWinnerDeterminationSolver solver)
+	{
+		_wdpSolver = solver;
+	}
+	
 	/**
 	 * (non-Javadoc)
 	 * @see java.lang.Object#toString()
@@ -90,40 +220,162 @@ public class ProbabilisticCAXOR implements Auction
 	 */
 	@Override
 	public void solveIt() throws Exception 
+	{
+		boolean isCheckedOut = (_solverContext == null);
+		acquireSolverContext();
+		boolean isOwnSolver = (_solverContext == null);
+		if( isOwnSolver )
+			_marginalEconomiesSolver = new ParallelMarginalEconomiesSolver(_numberOfThreads);
+		try
+		{
+			solve();
+		}
+		finally
+		{
+			if( isOwnSolver )
+			{
+				_marginalEconomiesSolver.close();
+				_marginalEconomiesSolver = null;
+			}
+			if( isCheckedOut )
+				releaseSolverContext();
+		}
+	}
+	
+	/**
+	 * The method solves the WDP and computes payments.
+	 * @throws Exception if the payment rule is unknown or payments cannot be computed
+	 */
+	private void solve() throws Exception
 	{
 		computeWinnerDetermination();
+		computePaymentsOfRule();
+	}
+	
+	/**
+	 * The method solves the WDP once and computes payments of several payment rules for the same allocation. The
+	 * allocation, the realization of availabilities, marginal availabilities of bundles and VCG payments (including VCG
+	 * lower bounds of Core payments) are shared by all rules. Payments of the last rule remain available by getPayments().
+	 * @param paymentRules payment rules to be evaluated (either all for the LLG domain or all for the general domain)
+	 * @return payments of allocated bidders for every payment rule (in the order of rules)
+	 * @throws Exception if payment rules use different WDPs, if a payment rule is unknown or payments cannot be computed
+	 */
+	public Map<String, List<Double>> solveIt(List<String> paymentRules) throws Exception
+	{
+		boolean isCheckedOut = (_solverContext == null);
+		acquireSolverContext();
+		boolean isOwnSolver = (_solverContext == null);
+		if( isOwnSolver )
+			_marginalEconomiesSolver = new ParallelMarginalEconomiesSolver(_numberOfThreads);
+		try
+		{
+			return solve(paymentRules);
+		}
+		finally
+		{
+			if( isOwnSolver )
+			{
+				_marginalEconomiesSolver.close();
+				_marginalEconomiesSolver = null;
+			}
+			if( isCheckedOut )
+				releaseSolverContext();
+		}
+	}
+	
+	/**
+	 * The method solves the WDP once and computes payments of several payment rules.
+	 * @param paymentRules payment rules to be evaluated
+	 * @return payments of allocated bidders for every payment rule
+	 * @throws Exception if payment rules use different WDPs, if a payment rule is unknown or payments cannot be computed
+	 */
+	private Map<String, List<Double>> solve(List<String> paymentRules) throws Exception
+	{
+		if( paymentRules.size() == 0 ) throw new Exception("No payment rules specified.");
+		for(String paymentRule : paymentRules)
+			if( isLLGPaymentRule(paymentRule) != isLLGPaymentRule(paymentRules.get(0)) ) throw new Exception("Payment rules use different WDPs: " + paymentRules);
+		
+		String paymentRule = _paymentRule;
+		Map<String, List<Double>> payments = new LinkedHashMap<String, List<Double>>();
+		_paymentExceptions = new HashMap<String, PaymentException>();
+		_vcgPayments = new HashMap<String, List<Double>>();
+		try
+		{
+			_paymentRule = paymentRules.get(0);
+			computeWinnerDetermination();
+			_reducedWelfares = new ExpectedReducedWelfares(_allocation, _numberOfBuyers, _numberOfItems, _bids, _costs, _availabilities, _cplexSolver);
+			_reducedWelfares.setNumberOfThreads(_numberOfThreads);
+			_reducedWelfares.setMarginalEconomiesSolver(getMarginalEconomiesSolver());
+			for(String rule : paymentRules)
+			{
+				_paymentRule = rule;
+				_payments = new ArrayList<Double>();
+				try
+				{
+					computePaymentsOfRule();
+				}
+				catch(PaymentException e)
+				{
+					_paymentExceptions.put(rule, e);
+				}
+				payments.put(rule, _payments);
+			}
+		}
+		finally
+		{
+			_paymentRule = paymentRule;
+			_vcgPayments = null;
+			_reducedWelfares = null;
+		}
+		return payments;
+	}
+	
+	/**
+	 * @return payment exceptions (e.g., "Empty Core") thrown by payment rules during the last multi-rule evaluation
+	 */
+	public Map<String, PaymentException> getPaymentExceptions()
+	{
+		return _paymentExceptions;
+	}
+	
+	/**
+	 * The method computes payments of the current payment rule for the current allocation.
+	 * @throws Exception if the payment rule is unknown or payments cannot be computed
+	 */
+	private void computePaymentsOfRule() throws Exception
+	{
 		if( _allocation.getNumberOfAllocatedAuctioneers() > 0 )
 			switch( _paymentRule )
 			{
-				case "ECR-VCG_LLG"  :	computePayments(new ECRVCGPayments(_allocation, _numberOfBuyers, _numberOfItems, _bids, _costs, _jpmf, _cplexSolver));
+				case "ECR-VCG_LLG"  :	computePayments(shareVCGPayments("ECR-VCG", new ECRVCGPayments(_allocation, _numberOfBuyers, _numberOfItems, _bids, _costs, _availabilities, _cplexSolver)));
 										break;
-				case "ECC-VCG_LLG"  :	computePayments(new ECCVCGPayments(_allocation, _numberOfBuyers, _numberOfItems, _bids, _costs, _jpmf, _cplexSolver));
+				case "ECC-VCG_LLG"  :	computePayments(shareVCGPayments("ECC-VCG", new ECCVCGPayments(_allocation, _numberOfBuyers, _numberOfItems, _bids, _costs, _availabilities, _cplexSolver)));
 										break;
-				case "EC-VCG_LLG"  	:	computePayments(new ECVCGPayments(_allocation, _numberOfBuyers, _numberOfItems, _bids, _costs, _jpmf, _cplexSolver));
+				case "EC-VCG_LLG"  	:	computePayments(shareVCGPayments("EC-VCG", shareReducedWelfares(new ECVCGPayments(_allocation, _numberOfBuyers, _numberOfItems, _bids, _costs, _availabilities, _cplexSolver))));
 										break;					
-				case "EC-VCG"     	:	computePayments(new ECVCGPayments(_allocation, _numberOfBuyers, _numberOfItems, _bids, _costs, _jpmf, _cplexSolver));
+				case "EC-VCG"     	:	computePayments(shareVCGPayments("EC-VCG", shareReducedWelfares(new ECVCGPayments(_allocation, _numberOfBuyers, _numberOfItems, _bids, _costs, _availabilities, _cplexSolver))));
 										break;
-				case "ECR-CORE_LLG"	:	computePayments(new ECRCoreLLGPayments(_allocation, _numberOfBuyers, _numberOfItems, _bids, _costs, _jpmf));
+				case "ECR-CORE_LLG"	:	computePayments(new ECRCoreLLGPayments(_allocation, _numberOfBuyers, _numberOfItems, _bids, _costs, _availabilities));
 										break;
-				case "ECC-CORE_LLG"	:	computePayments(new ECCCoreLLGPayments(_allocation, _numberOfBuyers, _numberOfItems, _bids, _costs, _jpmf));
+				case "ECC-CORE_LLG"	:	computePayments(new ECCCoreLLGPayments(_allocation, _numberOfBuyers, _numberOfItems, _bids, _costs, _availabilities));
 										break;
-				case "EC-CORE_LLG"	:	computePayments(new ECCoreLLGPayments(_allocation, _numberOfBuyers, _numberOfItems, _bids, _costs, _jpmf));
+				case "EC-CORE_LLG"	:	computePayments(new ECCoreLLGPayments(_allocation, _numberOfBuyers, _numberOfItems, _bids, _costs, _availabilities));
 										break;
-				case "EC-CORE"	  	: 	computePayments(new ECCorePayments(_allocation, _numberOfBuyers, _numberOfItems, _bids, _costs, _binaryBids, _jpmf, _cplexSolver));
+				case "EC-CORE"	  	: 	computePayments(shareLowerBounds(new ECCorePayments(_allocation, _numberOfBuyers, _numberOfItems, _bids, _costs, _binaryBids, _availabilities, _cplexSolver)));
 										break;
-				case "ECC-CORE"	  	: 	computePayments(new ECCCorePayments(_allocation, _numberOfBuyers, _numberOfItems, _bids, _costs, _binaryBids, _jpmf, _cplexSolver));
+				case "ECC-CORE"	  	: 	computePayments(shareLowerBounds(new ECCCorePayments(_allocation, _numberOfBuyers, _numberOfItems, _bids, _costs, _binaryBids, _availabilities, _cplexSolver)));
 										break;
-				case "ECR-CORE"	  	: 	computePayments(new ECRCorePayments(_allocation, _numberOfBuyers, _numberOfItems, _bids, _costs, _binaryBids, _jpmf, _cplexSolver));
+				case "ECR-CORE"	  	: 	computePayments(shareLowerBounds(new ECRCorePayments(_allocation, _numberOfBuyers, _numberOfItems, _bids, _costs, _binaryBids, _availabilities, _cplexSolver)));
 										break;
-				case "Exp-VCG"	  	: 	computePayments(new ExpVCGPayments(_allocation, _numberOfBuyers, _numberOfItems, _bids, _costs, _jpmf, _cplexSolver));
+				case "Exp-VCG"	  	: 	computePayments(shareVCGPayments("Exp-VCG", shareReducedWelfares(new ExpVCGPayments(_allocation, _numberOfBuyers, _numberOfItems, _bids, _costs, _availabilities, _cplexSolver))));
 										break;
-				case "Exp-VCG_LLG"	: 	computePayments(new ExpVCGPayments(_allocation, _numberOfBuyers, _numberOfItems, _bids, _costs, _jpmf, _cplexSolver));
+				case "Exp-VCG_LLG"	: 	computePayments(shareVCGPayments("Exp-VCG", shareReducedWelfares(new ExpVCGPayments(_allocation, _numberOfBuyers, _numberOfItems, _bids, _costs, _availabilities, _cplexSolver))));
 										break;
-				case "Exp-CORE_LLG"	:	computePayments(new ExpCoreLLGPayments(_allocation, _numberOfBuyers, _numberOfItems, _bids, _costs, _jpmf));
+				case "Exp-CORE_LLG"	:	computePayments(new ExpCoreLLGPayments(_allocation, _numberOfBuyers, _numberOfItems, _bids, _costs, _availabilities));
 										break;
-				case "Exp-CORE"		:	computePayments(new ExpCorePayments(_allocation, _numberOfBuyers, _numberOfItems, _bids, _costs, _binaryBids, _jpmf, _cplexSolver));
+				case "Exp-CORE"		:	computePayments(shareLowerBounds(new ExpCorePayments(_allocation, _numberOfBuyers, _numberOfItems, _bids, _costs, _binaryBids, _availabilities, _cplexSolver)));
 										break;
-				case "expostIR_ECR"	:	computePayments(new ECRCoreLLGPayments(_allocation, _numberOfBuyers, _numberOfItems, _bids, _costs, _jpmf));
+				case "expostIR_ECR"	:	computePayments(new ECRCoreLLGPayments(_allocation, _numberOfBuyers, _numberOfItems, _bids, _costs, _availabilities));
 										break;
 				default			  	:	throw new Exception("No such payment rule exists: " + _paymentRule);
 			}
@@ -149,10 +401,7 @@ public class ProbabilisticCAXOR implements Auction
 			throw new RuntimeException("Currently unsupported");
 			//computeWinnerDeterminationStrawMan(allocatedAvailabilities, realizedAvailabilities);
 		}
-		else if( _paymentRule.equals("EC-VCG_LLG")  || _paymentRule.equals("EC-CORE_LLG") || 
-			     _paymentRule.equals("Exp-VCG_LLG") || _paymentRule.equals("Exp-CORE_LLG")||
-			     _paymentRule.equals("ECC-VCG_LLG") || _paymentRule.equals("ECC-CORE_LLG")|| 
-			     _paymentRule.equals("ECR-VCG_LLG") || _paymentRule.equals("ECR-CORE_LLG") )		//TODO: Should also work for EC-VCG for LLG
+		else if( isLLGPaymentRule(_paymentRule) )		//TODO: Should also work for EC-VCG for LLG
 		{
 			computeWinnerDeterminationLLG(allocatedAvailabilities, realizedAvailabilities);
 		}
@@ -172,6 +421,19 @@ public class ProbabilisticCAXOR implements Auction
 		_logger.debug("<- computeWinnerDetermination(...)");
 	}
 
+	/**
+	 * The method checks if the payment rule is designed for the LLG domain, i.e., if the WDP for the LLG domain is used.
+	 * @param paymentRule the payment rule
+	 * @return true if the payment rule is designed for the LLG domain
+	 */
+	private boolean isLLGPaymentRule(String paymentRule)
+	{
+		return paymentRule.equals("EC-VCG_LLG")  || paymentRule.equals("EC-CORE_LLG") || 
+			   paymentRule.equals("Exp-VCG_LLG") || paymentRule.equals("Exp-CORE_LLG")||
+			   paymentRule.equals("ECC-VCG_LLG") || paymentRule.equals("ECC-CORE_LLG")|| 
+			   paymentRule.equals("ECR-VCG_LLG") || paymentRule.equals("ECR-CORE_LLG");
+	}
+	
 	/**
 	 * The method solved the WDP for the LLG domain.
 	 * @param allocatedGoods
@@ -180,7 +442,7 @@ public class ProbabilisticCAXOR implements Auction
 	public void computeWinnerDeterminationLLG(List<Integer> allocatedGoods, List<Double> realizedAvailabilities)
 	{
 		_logger.debug("-> computeWinnerDeterminationLLG(allocatedGoods="+(allocatedGoods != null ? allocatedGoods.toString():"")+", " +( realizedAvailabilities!= null ? realizedAvailabilities.toString():"") +")");
-		IAllocationRule allocationRule = new AllocationRuleNonDiscriminatingBiddersLLG(_bids, _costs, _jpmf);
+		IAllocationRule allocationRule = new AllocationRuleNonDiscriminatingBiddersLLG(_bids, _costs, _availabilities);
 		try 
 		{
 			allocationRule.computeAllocation(allocatedGoods, realizedAvailabilities);
@@ -202,13 +464,125 @@ public class ProbabilisticCAXOR implements Auction
 	public void computeWinnerDeterminationGeneral(List<Integer> allocatedGoods, List<Double> realizedAvailabilities) throws IloException 
 	{
 		_logger.debug("-> computeWinnerDeterminationGeneral(allocatedGoods="+ (allocatedGoods!=null?allocatedGoods.toString():"") + ", realizedAvailabilities="+ (realizedAvailabilities!=null?realizedAvailabilities.toString():"") + ")");
-		IAllocationRule allocationRule = new AllocationRuleNonDiscriminatingBidders(_bids, _costs, _jpmf, _numberOfItems, _binaryBids);
+		AllocationRuleNonDiscriminatingBidders allocationRule = new AllocationRuleNonDiscriminatingBidders(_bids, _costs, _availabilities, _numberOfItems, _binaryBids);
+		ensureSolverContext();
 		allocationRule.setSolver(_cplexSolver);
+		if( _wdpSolver != null )
+			allocationRule.setWDPSolver(_wdpSolver);
 		allocationRule.computeAllocation(allocatedGoods, realizedAvailabilities);
 		_allocation = (AllocationEC)allocationRule.getAllocation();
 		_logger.debug("<- computeWinnerDeterminationGeneral(...)");
 	}
 	
+	/**
+	 * The method makes expected SWs of marginal economies shared between payment rules evaluated by a multi-rule
+	 * evaluation. Marginal economies are solved by the solver of marginal economies of the auction.
+	 * @param paymentRule the EC-VCG payment rule
+	 * @return the same payment rule
+	 */
+	private ECVCGPayments shareReducedWelfares(ECVCGPayments paymentRule)
+	{
+		paymentRule.setNumberOfThreads(_numberOfThreads);
+		paymentRule.setMarginalEconomiesSolver(getMarginalEconomiesSolver());
+		if( _reducedWelfares != null )
+			paymentRule.setReducedWelfares(_reducedWelfares);
+		return paymentRule;
+	}
+	
+	/**
+	 * The method makes expected SWs of marginal economies shared between payment rules evaluated by a multi-rule
+	 * evaluation. Marginal economies are solved by the solver of marginal economies of the auction.
+	 * @param paymentRule the Exp-VCG payment rule
+	 * @return the same payment rule
+	 */
+	private ExpVCGPayments shareReducedWelfares(ExpVCGPayments paymentRule)
+	{
+		paymentRule.setNumberOfThreads(_numberOfThreads);
+		paymentRule.setMarginalEconomiesSolver(getMarginalEconomiesSolver());
+		if( _reducedWelfares != null )
+			paymentRule.setReducedWelfares(_reducedWelfares);
+		return paymentRule;
+	}
+	
+	/**
+	 * The method makes VCG payments shared between payment rules evaluated by a multi-rule evaluation, i.e., VCG payments
+	 * are computed at most once per allocation. Outside of multi-rule evaluations the rule is returned as is. EC-VCG and
+	 * Exp-VCG rules in addition share expected SWs of marginal economies (see shareReducedWelfares(...)).
+	 * @param vcgPaymentRule the name of the VCG payment rule (EC-VCG, ECC-VCG, ECR-VCG or Exp-VCG)
+	 * @param paymentRule the VCG payment rule
+	 * @return the shared payment rule
+	 */
+	private IPaymentRule shareVCGPayments(String vcgPaymentRule, IPaymentRule paymentRule)
+	{
+		if( _vcgPayments == null )
+			return paymentRule;
+		
+		return new IPaymentRule()
+		{
+			@Override
+			public List<Double> computePayments() throws Exception
+			{
+				List<Double> payments = _vcgPayments.get(vcgPaymentRule);
+				if( payments == null )
+				{
+					payments = paymentRule.computePayments();
+					_vcgPayments.put(vcgPaymentRule, payments);
+				}
+				return new ArrayList<Double>(payments);
+			}
+			
+			@Override
+			public boolean isBudgetBalanced()
+			{
+				return paymentRule.isBudgetBalanced();
+			}
+		};
+	}
+	
+	/**
+	 * The method makes the Core-selecting payment rule use shared VCG payments as lower bounds.
+	 * @param paymentRule EC-CORE payment rule
+	 * @return the payment rule
+	 */
+	private IPaymentRule shareLowerBounds(ECCorePayments paymentRule)
+	{
+		paymentRule.setLowerBoundsRule(shareVCGPayments("EC-VCG", shareReducedWelfares(new ECVCGPayments(_allocation, _numberOfBuyers, _numberOfItems, _bids, _costs, _availabilities, _cplexSolver))));
+		return paymentRule;
+	}
+	
+	/**
+	 * The method makes the Core-selecting payment rule use shared VCG payments as lower bounds.
+	 * @param paymentRule ECC-CORE payment rule
+	 * @return the payment rule
+	 */
+	private IPaymentRule shareLowerBounds(ECCCorePayments paymentRule)
+	{
+		paymentRule.setLowerBoundsRule(shareVCGPayments("ECC-VCG", new ECCVCGPayments(_allocation, _numberOfBuyers, _numberOfItems, _bids, _costs, _availabilities, _cplexSolver)));
+		return paymentRule;
+	}
+	
+	/**
+	 * The method makes the Core-selecting payment rule use shared VCG payments as lower bounds.
+	 * @param paymentRule ECR-CORE payment rule
+	 * @return the payment rule
+	 */
+	private IPaymentRule shareLowerBounds(ECRCorePayments paymentRule)
+	{
+		paymentRule.setLowerBoundsRule(shareVCGPayments("ECR-VCG", new ECRVCGPayments(_allocation, _numberOfBuyers, _numberOfItems, _bids, _costs, _availabilities, _cplexSolver)));
+		return paymentRule;
+	}
+	
+	/**
+	 * The method makes the Core-selecting payment rule use shared VCG payments as lower bounds.
+	 * @param paymentRule Exp-CORE payment rule
+	 * @return the payment rule
+	 */
+	private IPaymentRule shareLowerBounds(ExpCorePayments paymentRule)
+	{
+		paymentRule.setLowerBoundsRule(shareVCGPayments("Exp-VCG", shareReducedWelfares(new ExpVCGPayments(_allocation, _numberOfBuyers, _numberOfItems, _bids, _costs, _availabilities, _cplexSolver))));
+		return paymentRule;
+	}
+	
 	/**
 	 * The method computes and returns payments for the market.
 	 * @param pr - payment rule to be used
@@ -230,21 +604,21 @@ public class ProbabilisticCAXOR implements Auction
 			{
 				switch(_paymentRule )
 				{
-					case "EC-CORE"		:	_payments = computePayments(new ECVCGPayments(_allocation, _numberOfBuyers, _numberOfItems, _bids, _costs, _jpmf, _cplexSolver));
+					case "EC-CORE"		:	_payments = computePayments(shareVCGPayments("EC-VCG", shareReducedWelfares(new ECVCGPayments(_allocation, _numberOfBuyers, _numberOfItems, _bids, _costs, _availabilities, _cplexSolver))));
 											break;
-					case "EC-CORE_LLG"	:	_payments = computePayments(new ECVCGPayments(_allocation, _numberOfBuyers, _numberOfItems, _bids, _costs, _jpmf, _cplexSolver));
+					case "EC-CORE_LLG"	:	_payments = computePayments(shareVCGPayments("EC-VCG", shareReducedWelfares(new ECVCGPayments(_allocation, _numberOfBuyers, _numberOfItems, _bids, _costs, _availabilities, _cplexSolver))));
 											break;
-					case "ECC-CORE"		:	_payments = computePayments(new ECCVCGPayments(_allocation, _numberOfBuyers, _numberOfItems, _bids, _costs, _jpmf, _cplexSolver));
+					case "ECC-CORE"		:	_payments = computePayments(shareVCGPayments("ECC-VCG", new ECCVCGPayments(_allocation, _numberOfBuyers, _numberOfItems, _bids, _costs, _availabilities, _cplexSolver)));
 											break;
-					case "ECC-CORE_LLG"	:	_payments = computePayments(new ECCVCGPayments(_allocation, _numberOfBuyers, _numberOfItems, _bids, _costs, _jpmf, _cplexSolver));
+					case "ECC-CORE_LLG"	:	_payments = computePayments(shareVCGPayments("ECC-VCG", new ECCVCGPayments(_allocation, _numberOfBuyers, _numberOfItems, _bids, _costs, _availabilities, _cplexSolver)));
 											break;
-					case "ECR-CORE"		:	_payments = computePayments(new ECRVCGPayments(_allocation, _numberOfBuyers, _numberOfItems, _bids, _costs, _jpmf, _cplexSolver));
+					case "ECR-CORE"		:	_payments = computePayments(shareVCGPayments("ECR-VCG", new ECRVCGPayments(_allocation, _numberOfBuyers, _numberOfItems, _bids, _costs, _availabilities, _cplexSolver)));
 											break;
-					case "ECR-CORE_LLG"	:	_payments = computePayments(new ECRVCGPayments(_allocation, _numberOfBuyers, _numberOfItems, _bids, _costs, _jpmf, _cplexSolver));
+					case "ECR-CORE_LLG"	:	_payments = computePayments(shareVCGPayments("ECR-VCG", new ECRVCGPayments(_allocation, _numberOfBuyers, _numberOfItems, _bids, _costs, _availabilities, _cplexSolver)));
 											throw e;
 											//break;
 					case "Exp-CORE"		:	if( e.getMessage().equals("VCG is in the Core") )
-												_payments = computePayments(new ExpVCGPayments(_allocation, _numberOfBuyers, _numberOfItems, _bids, _costs, _jpmf, _cplexSolver));
+												_payments = computePayments(shareVCGPayments("Exp-VCG", shareReducedWelfares(new ExpVCGPayments(_allocation, _numberOfBuyers, _numberOfItems, _bids, _costs, _availabilities, _cplexSolver))));
 											else throw new RuntimeException("The Exp-CORE cannot be empty. " + e.toString());
 											break;
 					case "expostIR_ECR" :	throw e;
@@ -256,21 +630,21 @@ public class ProbabilisticCAXOR implements Auction
 			{
 				switch(_paymentRule )
 				{
-					case "EC-CORE"		:	_payments = computePayments(new ECVCGPayments(_allocation, _numberOfBuyers, _numberOfItems, _bids, _costs, _jpmf, _cplexSolver));
+					case "EC-CORE"		:	_payments = computePayments(shareVCGPayments("EC-VCG", shareReducedWelfares(new ECVCGPayments(_allocation, _numberOfBuyers, _numberOfItems, _bids, _costs, _availabilities, _cplexSolver))));
 											break;
-					case "EC-CORE_LLG"	:	_payments = computePayments(new ECVCGPayments(_allocation, _numberOfBuyers, _numberOfItems, _bids, _costs, _jpmf, _cplexSolver));
+					case "EC-CORE_LLG"	:	_payments = computePayments(shareVCGPayments("EC-VCG", shareReducedWelfares(new ECVCGPayments(_allocation, _numberOfBuyers, _numberOfItems, _bids, _costs, _availabilities, _cplexSolver))));
 											break;
 					case "ECC-CORE"		:	_payments = e.getPayments(); 
 											break;
-					case "ECC-CORE_LLG"	:	_payments = computePayments(new ECCVCGPayments(_allocation, _numberOfBuyers, _numberOfItems, _bids, _costs, _jpmf, _cplexSolver));
+					case "ECC-CORE_LLG"	:	_payments = computePayments(shareVCGPayments("ECC-VCG", new ECCVCGPayments(_allocation, _numberOfBuyers, _numberOfItems, _bids, _costs, _availabilities, _cplexSolver)));
 											break;
-					case "ECR-CORE"		:	_payments = computePayments(new ECRVCGPayments(_allocation, _numberOfBuyers, _numberOfItems, _bids, _costs, _jpmf, _cplexSolver));
+					case "ECR-CORE"		:	_payments = computePayments(shareVCGPayments("ECR-VCG", new ECRVCGPayments(_allocation, _numberOfBuyers, _numberOfItems, _bids, _costs, _availabilities, _cplexSolver)));
 											break;
-					case "ECR-CORE_LLG"	:	_payments = computePayments(new ECRVCGPayments(_allocation, _numberOfBuyers, _numberOfItems, _bids, _costs, _jpmf, _cplexSolver));
+					case "ECR-CORE_LLG"	:	_payments = computePayments(shareVCGPayments("ECR-VCG", new ECRVCGPayments(_allocation, _numberOfBuyers, _numberOfItems, _bids, _costs, _availabilities, _cplexSolver)));
 											throw e;
 											//break;
 					case "Exp-CORE"		:	if( e.getMessage().equals("VCG is in the Core") )
-												_payments = computePayments(new ExpVCGPayments(_allocation, _numberOfBuyers, _numberOfItems, _bids, _costs, _jpmf, _cplexSolver));
+												_payments = computePayments(shareVCGPayments("Exp-VCG", shareReducedWelfares(new ExpVCGPayments(_allocation, _numberOfBuyers, _numberOfItems, _bids, _costs, _availabilities, _cplexSolver))));
 											else throw new RuntimeException("The Exp-CORE cannot be empty. " + e.toString());
 											break;
 					case "expostIR_ECR" :	throw e;
@@ -324,6 +698,22 @@ public class ProbabilisticCAXOR implements Auction
 		return _allocation;
 	}
 
+	/**
+	 * @return bids of agents
+	 */
+	public List<Type> getBids()
+	{
+		return _bids;
+	}
+	
+	/**
+	 * @return costs per good
+	 */
+	public List<Double> getCosts()
+	{
+		return _costs;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see Mechanisms.Auction#resetTypes(java.util.List)
@@ -419,43 +809,19 @@ public class ProbabilisticCAXOR implements Auction
 	}
 	
 	/**
-	 * The method converts bids of all agents into a binary matrix form.
+	 * The method converts bids of all agents into the binary (bitset) format.
 	 */
 	private void convertAllBidsToBinaryFormat()
 	{
-		_binaryBids = new ArrayList<int[][]>();						//The list contains bids of all agents in a binary format
-		for(int i = 0; i < _bids.size(); ++i)
-		{
-			Type bid = _bids.get(i);									//The bid of the i-th bidder
-			int[][] binaryBid = new int[bid.getNumberOfAtoms()][_numberOfItems];
-	
-			convertBidToBinaryForm(binaryBid, bid.getNumberOfAtoms(), _numberOfItems, bid);
-			_binaryBids.add(binaryBid);
-		}
+		_binaryBids = new BinaryBids(_bids, _numberOfItems);				//Bids of all agents in the binary format
 	}
 	
 	/**
-	 * The method converts an input bid into a binary format. In the binary format the bid is represented as a matrix A [M x K],
-	 * where M is the number of atomic bids in the XOR bid and k is the number of items in the CA. A[i][j] = 1 if a package i 
-	 * contains an item j and 0 otherwise. 
-	 * @param binaryBid - the result will be stored in this matrix
-	 * @param numberOfRows - the number of rows of the binaryBid (is equal to the number of atomic bids in the bid)
-	 * @param numberOfColumns - the number of columns of the binary bid
-	 * @param bid - an XOR bid
+	 * @return memoized marginal availabilities of bundles used by the auction
 	 */
-	private void convertBidToBinaryForm(int binaryBid[][], int numberOfRows, int numberOfColumns, Type bid )
+	public MarginalAvailabilityCache getMarginalAvailabilities()
 	{
-		for(int i = 0; i < numberOfRows; ++i)
-		{
-			List<Integer> itemsSet = bid.getAtom(i).getInterestingSet();
-			List<Integer> items = new ArrayList<Integer>();
-			
-			for(Integer item : itemsSet)
-				items.add(item);
-			
-			for(int j = 0; j < items.size(); ++j)
-				binaryBid[ i ][ (int)(items.get(j))-1 ]  = 1;
-		}
+		return _availabilities;
 	}
 	
 	/**
@@ -468,24 +834,34 @@ public class ProbabilisticCAXOR implements Auction
 	public double computeExpectedMarginalAvailability(AtomicBid atom, List<Integer> allocatedGoods, List<Double> realizedAvailabilities)
 	{
 		_logger.debug("-> computeExpectedMarginalAvailability(atom: "+atom.toString()+ ", " + (allocatedGoods != null ? allocatedGoods.toString(): "")+ ", " + (realizedAvailabilities != null ? realizedAvailabilities.toString():"")+ ")");
-		double res =  _jpmf.getMarginalProbability( atom.getInterestingSet(), allocatedGoods, realizedAvailabilities);
+		double res =  _availabilities.getMarginalProbability( atom.getInterestingSet(), allocatedGoods, realizedAvailabilities);
 		_logger.debug("<- computeExpectedMarginalAvailability() = " + res);
 		return res;
 	}
 
 	private JointProbabilityMass _jpmf;				//Joint probability mass function
+	private MarginalAvailabilityCache _availabilities;	//Memoized marginal availabilities of bundles
 	private int _numberOfBuyers;					//Number of buyers participating in the auction
 	private int _numberOfItems;						//Number of items to be sold
 	private String _paymentRule;					//Payment rule to be used
 	private List<Double> _costs;					//Sellers' costs
 	private List<Type> _bids;						//Bids submitted by buyers
-	private List<int[][]> _binaryBids;				//Bids converted into a binary matrix format
+	private BinaryBids _binaryBids;					//Bids converted into a binary (bitset) format
 	private List<Double> _payments;					//A list of payments of allocated bidders
 	private AllocationEC _allocation;				//The data structure contains the resulting allocation of the auction
 	private Random _generator;						//A random number generator used to resolve the uncertainty
 	private long _randomSeed;						//A seed used to setup the random numbers generator
 
 	private IloCplex _cplexSolver;
+	private SolverContextPool _solverContextPool;	//A pool of solver contexts (the solver set by setSolver() is used if null)
+	private SolverContext _solverContext;			//The checked out solver context (null if none)
+	private IloCplex _externalSolver;				//The solver set by setSolver(), used again once the context is released
+	private IWinnerDeterminationSolver _wdpSolver;	//A non-CPLEX solver for the general WDP (CPLEX is used if null)
+	private Map<String, List<Double>> _vcgPayments;	//VCG payments shared by payment rules of a multi-rule evaluation (null if none)
+	private int _numberOfThreads;					//The number of threads used to solve WDPs of marginal economies
+	private ParallelMarginalEconomiesSolver _marginalEconomiesSolver;	//The solver of marginal economies opened by solveIt() (null if none)
+	private ExpectedReducedWelfares _reducedWelfares;	//Expected SWs of marginal economies shared by EC/Exp-VCG rules of a multi-rule evaluation (null if none)
+	private Map<String, PaymentException> _paymentExceptions;	//Payment exceptions of the last multi-rule evaluation
 	
 	static int constraintID = 0;					//Constraints counter
 }
@@ -5,6 +5,7 @@ import ilog.cplex.IloCplex;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Random;
+import java.util.function.Supplier;
 
 import ch.uzh.ifi.MechanismDesignPrimitives.JointProbabilityMass;
 import ch.uzh.ifi.MechanismDesignPrimitives.Type;
@@ -25,6 +26,9 @@ public class ProbabilisticCAXORFactory implements IMechanismFactory
 	 * @param costsLimits - a list with upper bounds on costs which should be generated per item
 	 * @param grid - a grid modeling dependencies between different items
 	 * @param nSamples - the number of samples to be used to generate the joint probability mass function
+	 * @param jpmf - joint probability mass function shared by all produced auctions (calls of the JPMF are synchronized,
+	 *               see MarginalAvailabilityCache.java)
+	 * @param solver - CPLEX solver used if no pool of solver contexts is set up
 	 */
 	public ProbabilisticCAXORFactory(int numberOfBuyers, int numberOfItems, String paymentRule, List<Double> costsLimits, 
 									 Graph grid, int nSamples, JointProbabilityMass jpmf, IloCplex solver)
@@ -35,8 +39,30 @@ public class ProbabilisticCAXORFactory implements IMechanismFactory
 		_costsRanges = costsLimits;
 		//_grid = grid;
 		//_numberOfJpmfSamples = nSamples;
-		_jpmf = jpmf;
+		_jpmfSupplier = () -> jpmf;
 		_cplexSolver = solver;
+		_numberOfThreads = 1;
+	}
+	
+	/**
+	 * Constructor. Every produced auction gets its own JPMF from the supplier, so that auctions solved on different
+	 * threads do not share a JPMF.
+	 * @param numberOfBuyers the number of buyers in the auction
+	 * @param numberOfItems the number of items in the auction
+	 * @param paymentRule the payment rule to be used by the mechanism
+	 * @param costsLimits a list with upper bounds on costs which should be generated per item
+	 * @param jpmfSupplier a supplier of (updated) joint probability mass functions, called once per produced auction
+	 */
+	public ProbabilisticCAXORFactory(int numberOfBuyers, int numberOfItems, String paymentRule, List<Double> costsLimits, 
+									 Supplier<JointProbabilityMass> jpmfSupplier)
+	{
+		_numberOfBuyers  = numberOfBuyers;
+		_paymentRule = paymentRule;
+		_numberOfItems = numberOfItems;
+		_costsRanges = costsLimits;
+		_jpmfSupplier = jpmfSupplier;
+		_cplexSolver = null;
+		_numberOfThreads = 1;
 	}
 	
 	/*
@@ -48,6 +74,26 @@ public class ProbabilisticCAXORFactory implements IMechanismFactory
 	{
 		_cplexSolver = solver;
 	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see Mechanisms.IMechanismFactory#setSolverContextPool(Mechanisms.SolverContextPool)
+	 */
+	@Override
+	public void setSolverContextPool(SolverContextPool pool)
+	{
+		_solverContextPool = pool;
+	}
+
+	/**
+	 * The method sets up the number of threads used by produced auctions to solve WDPs of marginal economies of VCG-like
+	 * payment rules (see ProbabilisticCAXOR.setNumberOfThreads()).
+	 * @param numberOfThreads the number of threads
+	 */
+	public void setNumberOfThreads(int numberOfThreads)
+	{
+		_numberOfThreads = numberOfThreads;
+	}
 	
 	/*
 	 * (non-Javadoc)
@@ -85,9 +131,13 @@ public class ProbabilisticCAXORFactory implements IMechanismFactory
 		jpmf.setSecondaryReductionCoef(secondaryReductionCoef);
 		jpmf.update();*/
 		
-		ProbabilisticCAXOR ca = new ProbabilisticCAXOR(bids.size(), _numberOfItems, bids, costs, _jpmf);
+		ProbabilisticCAXOR ca = new ProbabilisticCAXOR(bids.size(), _numberOfItems, bids, costs, _jpmfSupplier.get());
 		ca.setPaymentRule(_paymentRule);
-		ca.setSolver(_cplexSolver);
+		if( _solverContextPool != null )
+			ca.setSolverContextPool(_solverContextPool);
+		else
+			ca.setSolver(_cplexSolver);
+		ca.setNumberOfThreads(_numberOfThreads);
 		
 		ca.setSeed(seed);
 		return ca;
@@ -119,7 +169,9 @@ public class ProbabilisticCAXORFactory implements IMechanismFactory
 	private List<Double> _costsRanges;				//Range for costs
 	//private Graph _grid;							//The grid modeling dependencies between different random variables
 	//private int _numberOfJpmfSamples;				//The number of samples to be used to generate the joint probability mass function
-	private JointProbabilityMass _jpmf;				//Joint probability mass function for availabilities of goods
+	private Supplier<JointProbabilityMass> _jpmfSupplier;	//Supplies joint probability mass functions for availabilities of goods
 	private IloCplex _cplexSolver;
+	private SolverContextPool _solverContextPool;	//A pool of solver contexts used by produced auctions (can be null)
+	private int _numberOfThreads;					//The number of threads used by produced auctions to solve marginal economies
 	//private int _numberOfBombs = 1;
 }
@@ -72,7 +72,7 @@ public class ProbabilisticReverseCA implements Auction {
 										
 										/*
 										//Compare with VCG
-										PaymentRule pr = new ProbabilisticVCGPayments(_allocation, _plans, _numberOfSellers);
+										IPaymentRule pr = new ProbabilisticVCGPayments(_allocation, _plans, _numberOfSellers);
 										List<Double> vcgPayments = pr.computePayments();
 										boolean isVCG = true;
 										for(int i = 0; i < _payments.size(); ++i)
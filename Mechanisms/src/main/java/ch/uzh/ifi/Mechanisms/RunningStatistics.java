@@ -0,0 +1,85 @@
+package ch.uzh.ifi.Mechanisms;
+
+/**
+ * The class maintains the mean and the variance of a stream of observations using the Welford's online algorithm, i.e.,
+ * without storing observations.
+ * @author Dmitry Moor
+ *
+ */
+public class RunningStatistics
+{
+
+	/**
+	 * Constructor.
+	 */
+	public RunningStatistics()
+	{
+		_numberOfObservations = 0;
+		_mean = 0.;
+		_sumOfSquaredDeviations = 0.;
+	}
+
+	/**
+	 * The method adds a new observation.
+	 * @param observation the observation
+	 */
+	public void add(double observation)
+	{
+		_numberOfObservations += 1;
+		double delta = observation - _mean;
+		_mean += delta / _numberOfObservations;
+		_sumOfSquaredDeviations += delta * (observation - _mean);
+	}
+
+	/**
+	 * @return the number of observations
+	 */
+	public long getNumberOfObservations()
+	{
+		return _numberOfObservations;
+	}
+
+	/**
+	 * @return the sample mean (0 if there are no observations)
+	 */
+	public double getMean()
+	{
+		return _mean;
+	}
+
+	/**
+	 * @return the unbiased sample variance (0 if there are less than two observations)
+	 */
+	public double getVariance()
+	{
+		return _numberOfObservations > 1 ? _sumOfSquaredDeviations / (_numberOfObservations - 1) : 0.;
+	}
+
+	/**
+	 * @return the standard error of the mean (0 if there are less than two observations)
+	 */
+	public double getStandardError()
+	{
+		return _numberOfObservations > 1 ? Math.sqrt(getVariance() / _numberOfObservations) : 0.;
+	}
+
+	/**
+	 * The method computes the width of the (normal) confidence interval of the mean.
+	 * @param criticalValue the critical value of the standard normal distribution (e.g., 1.96 for 95% confidence)
+	 * @return the width of the confidence interval
+	 */
+	public double getConfidenceIntervalWidth(double criticalValue)
+	{
+		return 2. * criticalValue * getStandardError();
+	}
+
+	@Override
+	public String toString()
+	{
+		return "E=" + _mean + " S=" + getStandardError() + " n=" + _numberOfObservations;
+	}
+
+	private long _numberOfObservations;								//The number of observations
+	private double _mean;											//The mean of observations
+	private double _sumOfSquaredDeviations;							//The sum of squared deviations from the mean
+}
@@ -0,0 +1,111 @@
+package ch.uzh.ifi.Mechanisms;
+
+import ilog.concert.IloException;
+import ilog.cplex.IloCplex;
+
+/**
+ * The class owns a CPLEX solver and its model. A context is used by one auction at a time: the auction obtains the
+ * context from a pool (see SolverContextPool.java), builds its models in the solver and returns the context afterwards.
+ * The model is cleared when the context is returned and the solver is terminated when the context is ended.
+ * The context also keeps a solver of marginal economies of VCG-like payment rules (see ParallelMarginalEconomiesSolver.java),
+ * so that its workers and their CPLEX instances are reused by all auctions which use the context.
+ */
+public class SolverContext
+{
+	/**
+	 * Constructor. The CPLEX solver is instantiated on the first request.
+	 */
+	public SolverContext()
+	{
+		_cplexSolver = null;
+		_marginalEconomiesSolver = null;
+		_isEnded = false;
+		_numberOfUses = 0;
+	}
+
+	/**
+	 * The method returns the CPLEX solver of the context.
+	 * @return CPLEX solver
+	 * @throws IloException if the solver cannot be instantiated
+	 */
+	public IloCplex getSolver() throws IloException
+	{
+		if( _isEnded ) throw new RuntimeException("The solver context was ended.");
+		if( _cplexSolver == null )
+		{
+			_cplexSolver = new IloCplex();
+			_cplexSolver.setOut(null);
+		}
+		return _cplexSolver;
+	}
+
+	/**
+	 * The method returns the solver of marginal economies of the context. The solver is instantiated on the first request
+	 * and instantiated anew if another number of threads is requested.
+	 * @param numberOfThreads the number of threads used to solve marginal economies
+	 * @return the solver of marginal economies
+	 */
+	public ParallelMarginalEconomiesSolver getMarginalEconomiesSolver(int numberOfThreads)
+	{
+		if( _isEnded ) throw new RuntimeException("The solver context was ended.");
+		if( _marginalEconomiesSolver != null && _marginalEconomiesSolver.getNumberOfThreads() != numberOfThreads )
+		{
+			_marginalEconomiesSolver.close();
+			_marginalEconomiesSolver = null;
+		}
+		if( _marginalEconomiesSolver == null )
+			_marginalEconomiesSolver = new ParallelMarginalEconomiesSolver(numberOfThreads);
+		return _marginalEconomiesSolver;
+	}
+
+	/**
+	 * The method clears the model of the solver so that the context can be used by another auction.
+	 */
+	public void reset()
+	{
+		_numberOfUses += 1;
+		if( _cplexSolver != null )
+			try
+			{
+				_cplexSolver.clearModel();
+			}
+			catch (IloException e)
+			{
+				e.printStackTrace();
+				_cplexSolver.end();								//The solver is in an unknown state and is instantiated anew
+				_cplexSolver = null;
+			}
+	}
+
+	/**
+	 * The method terminates the solvers of the context and releases the memory of their environments.
+	 */
+	public void end()
+	{
+		if( _marginalEconomiesSolver != null )
+		{
+			_marginalEconomiesSolver.close();
+			_marginalEconomiesSolver = null;
+		}
+		if( _cplexSolver != null )
+		{
+			_cplexSolver.end();
+			_cplexSolver = null;
+		}
+		_isEnded = true;
+	}
+
+	/**
+	 * The method returns how many times the context was returned to its pool.
+	 * @return the number of uses of the context
+	 */
+	public int getNumberOfUses()
+	{
+		return _numberOfUses;
+	}
+
+	private IloCplex _cplexSolver;								//CPLEX solver owned by the context
+	private ParallelMarginalEconomiesSolver _marginalEconomiesSolver;	//Solver of marginal economies owned by the context (null until requested)
+	private boolean _isEnded;									//True if the context was ended
+	private int _numberOfUses;									//The number of times the context was used
+}
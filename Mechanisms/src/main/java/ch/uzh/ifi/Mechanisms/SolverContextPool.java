@@ -0,0 +1,97 @@
+package ch.uzh.ifi.Mechanisms;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The class implements a bounded pool of solver contexts (see SolverContext.java). Every auction which runs on its own
+ * thread acquires a context from the pool, uses the CPLEX solver of the context exclusively and releases the context
+ * afterwards. If all contexts are in use, the caller waits until one of them is released. Contexts are instantiated
+ * lazily and terminated when the pool is closed.
+ */
+public class SolverContextPool
+{
+
+	private static final Logger _logger = LogManager.getLogger(SolverContextPool.class);
+
+	/**
+	 * Constructor.
+	 * @param size the maximal number of contexts (and CPLEX instances) in the pool
+	 */
+	public SolverContextPool(int size)
+	{
+		if( size < 1 ) throw new RuntimeException("The size of the pool should be positive: " + size);
+		_size = size;
+		_freeContexts = new ArrayBlockingQueue<SolverContext>(size);
+		_allContexts = new ArrayList<SolverContext>(size);
+		_isClosed = false;
+	}
+
+	/**
+	 * The method returns a free context. If no context is free and the pool is full, the method waits until a context is released.
+	 * @return a solver context to be used exclusively by the caller
+	 * @throws InterruptedException if the thread is interrupted while waiting
+	 */
+	public SolverContext acquire() throws InterruptedException
+	{
+		synchronized(this)
+		{
+			if( _isClosed ) throw new RuntimeException("The solver context pool is closed.");
+			if( _freeContexts.isEmpty() && _allContexts.size() < _size )
+			{
+				SolverContext context = new SolverContext();
+				_allContexts.add(context);
+				_logger.debug("acquire(): new context #" + _allContexts.size());
+				return context;
+			}
+		}
+		return _freeContexts.take();
+	}
+
+	/**
+	 * The method clears the model of the context and returns the context to the pool.
+	 * @param context a context obtained by acquire()
+	 */
+	public void release(SolverContext context)
+	{
+		context.reset();
+		synchronized(this)
+		{
+			if( _isClosed )
+				context.end();
+			else
+				_freeContexts.add(context);
+		}
+	}
+
+	/**
+	 * The method terminates solvers of all contexts. Contexts in use are terminated when they are released.
+	 */
+	public synchronized void close()
+	{
+		_isClosed = true;
+		List<SolverContext> freeContexts = new ArrayList<SolverContext>();
+		_freeContexts.drainTo(freeContexts);
+		for(SolverContext context : freeContexts)
+			context.end();
+	}
+
+	/**
+	 * The method returns the maximal number of contexts in the pool.
+	 * @return the size of the pool
+	 */
+	public int getSize()
+	{
+		return _size;
+	}
+
+	private int _size;											//The maximal number of contexts
+	private BlockingQueue<SolverContext> _freeContexts;			//Contexts which are not in use
+	private List<SolverContext> _allContexts;					//All contexts instantiated by the pool
+	private boolean _isClosed;									//True if the pool was closed
+}
@@ -0,0 +1,355 @@
+package ch.uzh.ifi.Mechanisms;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import ch.uzh.ifi.MechanismDesignPrimitives.Allocation;
+import ch.uzh.ifi.MechanismDesignPrimitives.SellerType;
+import ch.uzh.ifi.MechanismDesignPrimitives.Type;
+
+/**
+ * The class implements a sparse version of the surplus optimal reverse auction (BORA) for markets with many DBs. Instead
+ * of the table of induced values for all 2^n deterministic allocations of DBs (see SurplusOptimalReverseAuction.java),
+ * the auction queries the total induced value of DBs on demand and evaluates only allocations reachable from the set of
+ * sellers, i.e., allocations of DBs which have at least one seller. Allocations are encoded by longs, so that up to 64 DBs
+ * are supported.
+ *
+ * The WDP is solved heuristically by a local search over allocations of DBs: starting from the empty allocation and from
+ * the allocation of all reachable DBs, a single DB is added or removed as long as the virtual surplus improves (the best
+ * move is taken). The cheapest (in terms of the virtual cost) seller of every allocated DB is chosen. Payments are computed
+ * as in BORA with the optimal virtual surplus without a seller found by the same local search warm-started with the
+ * optimal allocation. Hence, the number of evaluated allocations grows polynomially in the number of DBs, but the
+ * allocation is optimal only if the local search reaches the global optimum (e.g., if induced values are additive).
+ * @author Dmitry Moor
+ *
+ */
+public class SparseSurplusOptimalReverseAuction implements Auction
+{
+
+	private static final Logger _logger = LogManager.getLogger(SparseSurplusOptimalReverseAuction.class);
+
+	/**
+	 * Constructor
+	 * @param bids bids of sellers
+	 * @param inducedValues the total induced value of DBs for different deterministic allocations
+	 */
+	public SparseSurplusOptimalReverseAuction(List<SellerType> bids, IInducedValueFunction inducedValues)
+	{
+		_numberOfDBs = 0;
+		for(SellerType seller : bids)
+		{
+			int dbId = seller.getAtom(0).getInterestingSet().get(0);
+			if( dbId < 1 || dbId > Long.SIZE ) throw new RuntimeException("The DB id should be within [1, " + Long.SIZE + "]: " + dbId);
+			_numberOfDBs = Math.max(_numberOfDBs, dbId);
+		}
+
+		_numberOfBidders = bids.size();
+		_bids = bids;
+		_inducedValues = inducedValues;
+		_totalInducedValues = new HashMap<Long, Double>();
+		_allocation = new Allocation();
+		_maxNumberOfMoves = _DEFAULT_MAX_NUMBER_OF_MOVES;
+	}
+
+	/**
+	 * The method solves the winner determination problem by the local search over reachable allocations of DBs.
+	 * @throws Exception if induced values cannot be computed
+	 */
+	public void computeWinnerDetermination() throws Exception
+	{
+		_minVirtualCosts = new double[_numberOfDBs];
+		_cheapestSellers = new int[_numberOfDBs];
+		Arrays.fill(_minVirtualCosts, Double.POSITIVE_INFINITY);
+		Arrays.fill(_cheapestSellers, -1);
+		for(int j = 0; j < _numberOfBidders; ++j)
+		{
+			int k = _bids.get(j).getAtom(0).getInterestingSet().get(0) - 1;
+			double virtualCost = _bids.get(j).getItsVirtualCost();
+			if( virtualCost < _minVirtualCosts[k] )
+			{
+				_minVirtualCosts[k] = virtualCost;
+				_cheapestSellers[k] = j;
+			}
+		}
+
+		long reachableDBs = 0L;
+		for(int k = 0; k < _numberOfDBs; ++k)
+			if( _cheapestSellers[k] >= 0 )
+				reachableDBs |= 1L << k;
+
+		_optimalAllocation = localSearch(reachableDBs, _minVirtualCosts, 0L);
+		_logger.debug("Det. allocation of DBs: " + Long.toBinaryString(_optimalAllocation) + "; evaluated allocations: " + _totalInducedValues.size());
+
+		List<Integer> allocatedBiddersIds = new ArrayList<Integer>();
+		List<Integer> allocatedBundles = new ArrayList<Integer>();
+		List<Double> biddersValues = new ArrayList<Double>();
+		for(int j = 0; j < _numberOfBidders; ++j)
+		{
+			int k = _bids.get(j).getAtom(0).getInterestingSet().get(0) - 1;
+			if( (_optimalAllocation & (1L << k)) != 0 && _cheapestSellers[k] == j )
+			{
+				allocatedBiddersIds.add( _bids.get(j).getAgentId() );
+				allocatedBundles.add( k + 1 );
+				biddersValues.add( _bids.get(j).getAtom(0).getValue() );					// Costs of sellers
+			}
+		}
+		_allocation = new Allocation();
+		_allocation.addAllocatedAgent(0, allocatedBiddersIds, allocatedBundles, computeTotalInducedValue(_optimalAllocation), biddersValues);
+	}
+
+	/**
+	 * The method computes payments of allocated sellers. The optimal virtual surplus without an allocated seller is found by
+	 * the local search with the next cheapest seller of its DB or without the DB if the seller is its only producer (a
+	 * monopolist).
+	 * @return payments of allocated sellers
+	 * @throws Exception if induced values cannot be computed
+	 */
+	public List<Double> computePayments() throws Exception
+	{
+		List<Integer> allocatedBidders = _allocation.getBiddersInvolved(0);
+		double virtualSurplus = computeVirtualSurplus(_optimalAllocation, _minVirtualCosts);
+
+		List<Double> payment = new ArrayList<Double>(allocatedBidders.size());
+		for(int i = 0; i < allocatedBidders.size(); ++i)
+		{
+			int winnerIdx = allocatedBidders.get(i) - 1;
+			int k = _bids.get(winnerIdx).getAtom(0).getInterestingSet().get(0) - 1;
+
+			double[] reducedMinVirtualCosts = Arrays.copyOf(_minVirtualCosts, _numberOfDBs);
+			reducedMinVirtualCosts[k] = Double.POSITIVE_INFINITY;
+			for(int j = 0; j < _numberOfBidders; ++j)
+				if( j != winnerIdx && _bids.get(j).getAtom(0).getInterestingSet().get(0) - 1 == k )
+					reducedMinVirtualCosts[k] = Math.min(reducedMinVirtualCosts[k], _bids.get(j).getItsVirtualCost());
+
+			long reducedReachableDBs = 0L;
+			for(int l = 0; l < _numberOfDBs; ++l)
+				if( reducedMinVirtualCosts[l] < Double.POSITIVE_INFINITY )
+					reducedReachableDBs |= 1L << l;
+
+			long reducedAllocation = localSearch(reducedReachableDBs, reducedMinVirtualCosts, _optimalAllocation & reducedReachableDBs);
+
+			// Every reduced allocation is feasible with the seller, so the heuristic surplus without the seller is bounded
+			double reducedVirtualSurplus = Math.min(virtualSurplus, computeVirtualSurplus(reducedAllocation, reducedMinVirtualCosts));
+			_logger.debug("reducedVirtualSurplus of seller id = " + allocatedBidders.get(i) + " is " + reducedVirtualSurplus);
+			payment.add( SurplusOptimalReverseAuction.computePayment(_bids.get(winnerIdx), virtualSurplus, reducedVirtualSurplus) );
+		}
+		return payment;
+	}
+
+	/**
+	 * The method performs the local search from the empty allocation, from the allocation of all reachable DBs and from the
+	 * given allocation and returns the best local optimum.
+	 * @param reachableDBs binary encoding of DBs which have sellers
+	 * @param minVirtualCosts virtual costs of the cheapest sellers of DBs (+inf if a DB has no sellers)
+	 * @param warmStart an allocation of reachable DBs to start the search with
+	 * @return binary encoding of the best allocation found
+	 * @throws Exception if induced values cannot be computed
+	 */
+	private long localSearch(long reachableDBs, double[] minVirtualCosts, long warmStart) throws Exception
+	{
+		long[] startAllocations = {0L, reachableDBs, warmStart};
+		long bestAllocation = 0L;
+		double bestVirtualSurplus = Double.NEGATIVE_INFINITY;
+		for(long startAllocation : startAllocations)
+		{
+			long allocation = localSearch(reachableDBs, minVirtualCosts, startAllocation, _maxNumberOfMoves);
+			double virtualSurplus = computeVirtualSurplus(allocation, minVirtualCosts);
+			if( virtualSurplus > bestVirtualSurplus )
+			{
+				bestVirtualSurplus = virtualSurplus;
+				bestAllocation = allocation;
+			}
+		}
+		return bestAllocation;
+	}
+
+	/**
+	 * The method performs the best improvement local search: in every move the reachable DB whose addition or removal
+	 * improves the virtual surplus the most is added or removed.
+	 * @param reachableDBs binary encoding of DBs which have sellers
+	 * @param minVirtualCosts virtual costs of the cheapest sellers of DBs
+	 * @param startAllocation the allocation to start with
+	 * @param maxNumberOfMoves the maximal number of moves
+	 * @return binary encoding of the local optimum
+	 * @throws Exception if induced values cannot be computed
+	 */
+	private long localSearch(long reachableDBs, double[] minVirtualCosts, long startAllocation, int maxNumberOfMoves) throws Exception
+	{
+		long allocation = startAllocation;
+		double virtualSurplus = computeVirtualSurplus(allocation, minVirtualCosts);
+		for(int move = 0; move < maxNumberOfMoves; ++move)
+		{
+			long bestNeighbour = allocation;
+			double bestVirtualSurplus = virtualSurplus;
+			for(long dbs = reachableDBs; dbs != 0; dbs &= dbs - 1)
+			{
+				long neighbour = allocation ^ Long.lowestOneBit(dbs);						// Add or remove a DB
+				double neighbourVirtualSurplus = computeVirtualSurplus(neighbour, minVirtualCosts);
+				if( neighbourVirtualSurplus > bestVirtualSurplus )
+				{
+					bestVirtualSurplus = neighbourVirtualSurplus;
+					bestNeighbour = neighbour;
+				}
+			}
+
+			if( bestNeighbour == allocation )													// Local optimum
+				break;
+			allocation = bestNeighbour;
+			virtualSurplus = bestVirtualSurplus;
+		}
+		_logger.debug("Local search from " + Long.toBinaryString(startAllocation) + " to " + Long.toBinaryString(allocation) + "; virtual surplus: " + virtualSurplus);
+		return allocation;
+	}
+
+	/**
+	 * The method computes the virtual surplus of the deterministic allocation of DBs given the cheapest sellers of DBs.
+	 * @param allocation binary encoding of the deterministic allocation of DBs
+	 * @param minVirtualCosts virtual costs of the cheapest sellers of DBs
+	 * @return the virtual surplus
+	 * @throws Exception if induced values cannot be computed
+	 */
+	private double computeVirtualSurplus(long allocation, double[] minVirtualCosts) throws Exception
+	{
+		double totalVirtualCost = 0.;
+		for(long dbs = allocation; dbs != 0; dbs &= dbs - 1)
+			totalVirtualCost += minVirtualCosts[Long.numberOfTrailingZeros(dbs)];
+		return computeTotalInducedValue(allocation) - totalVirtualCost;
+	}
+
+	/**
+	 * The method returns the total induced value of DBs. Every allocation is evaluated at most once per auction.
+	 * @param allocation binary encoding of the deterministic allocation of DBs
+	 * @return the total induced value
+	 * @throws Exception if induced values cannot be computed
+	 */
+	private double computeTotalInducedValue(long allocation) throws Exception
+	{
+		Double totalInducedValue = _totalInducedValues.get(allocation);
+		if( totalInducedValue == null )
+		{
+			totalInducedValue = _inducedValues.computeTotalInducedValue(allocation);
+			_totalInducedValues.put(allocation, totalInducedValue);
+		}
+		return totalInducedValue;
+	}
+
+	/**
+	 * The method sets the maximal number of moves of a single local search.
+	 * @param maxNumberOfMoves the maximal number of moves
+	 */
+	public void setMaxNumberOfMoves(int maxNumberOfMoves)
+	{
+		if( maxNumberOfMoves < 0 ) throw new RuntimeException("The number of moves should be non-negative: " + maxNumberOfMoves);
+		_maxNumberOfMoves = maxNumberOfMoves;
+	}
+
+	/**
+	 * @return the number of different allocations of DBs for which induced values were evaluated
+	 */
+	public int getNumberOfEvaluatedAllocations()
+	{
+		return _totalInducedValues.size();
+	}
+
+	/**
+	 * @return binary encoding of the deterministic allocation of DBs of the WDP
+	 */
+	public long getAllocatedDBs()
+	{
+		return _optimalAllocation;
+	}
+
+	/**
+	 * (non-Javadoc)
+	 * @see ch.uzh.ifi.Mechanisms.Auction#solveIt()
+	 */
+	@Override
+	public void solveIt() throws Exception
+	{
+		computeWinnerDetermination();
+		if( _allocation.getNumberOfAllocatedAuctioneers() > 0 )
+			_payments = computePayments();
+	}
+
+	/**
+	 * (non-Javadoc)
+	 * @see ch.uzh.ifi.Mechanisms.Auction#setupReservePrices(java.util.List)
+	 */
+	@Override
+	public void setupReservePrices(List<Double> reservePrices)
+	{
+		throw new RuntimeException("Not supported by the BORA auction.");
+	}
+
+	/**
+	 * (non-Javadoc)
+	 * @see ch.uzh.ifi.Mechanisms.Auction#getPayments()
+	 */
+	@Override
+	public double[] getPayments() throws Exception
+	{
+		double[] payments = new double[_payments.size()];
+		for(int i = 0; i < _payments.size(); ++i)
+			payments[i] = _payments.get(i);
+		return payments;
+	}
+
+	/**
+	 * (non-Javadoc)
+	 * @see ch.uzh.ifi.Mechanisms.Auction#getAllocation()
+	 */
+	@Override
+	public Allocation getAllocation()
+	{
+		return _allocation;
+	}
+
+	/**
+	 * (non-Javadoc)
+	 * @see ch.uzh.ifi.Mechanisms.Auction#resetTypes(java.util.List)
+	 */
+	@Override
+	public void resetTypes(List<Type> agentsTypes)
+	{
+		throw new RuntimeException("Not supported by the BORA auction.");
+	}
+
+	/**
+	 * (non-Javadoc)
+	 * @see ch.uzh.ifi.Mechanisms.Auction#resetPlanner(ch.uzh.ifi.Mechanisms.Planner)
+	 */
+	@Override
+	public void resetPlanner(Planner planner)
+	{
+		throw new RuntimeException("Not supported by the BORA auction.");
+	}
+
+	/**
+	 * (non-Javadoc)
+	 * @see ch.uzh.ifi.Mechanisms.Auction#getPaymentRule()
+	 */
+	@Override
+	public String getPaymentRule()
+	{
+		return "BORA";
+	}
+
+	private int _numberOfBidders;								// Number of bidders (sellers) in the auction
+	private int _numberOfDBs;									// Number of DBs (the largest id of a DB)
+	private List<SellerType> _bids;								// Bids of the sellers
+	private IInducedValueFunction _inducedValues;				// The total induced value of DBs
+	private Map<Long, Double> _totalInducedValues;				// Total induced values of evaluated det. allocations of DBs
+	private double[] _minVirtualCosts;							// Virtual costs of the cheapest sellers of DBs
+	private int[] _cheapestSellers;								// Indexes of the cheapest sellers of DBs (-1 if none)
+	private long _optimalAllocation;							// Binary encoding of the allocation of DBs of the WDP
+	private Allocation _allocation;								// Optimal allocation of bidders
+	private List<Double> _payments;								// Payments of the winners
+	private int _maxNumberOfMoves;								// Max number of moves of a single local search
+	private static final int _DEFAULT_MAX_NUMBER_OF_MOVES = 1000;	// Default max number of moves of a single local search
+}
@@ -5,6 +5,8 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -23,6 +25,10 @@ import ilog.cplex.IloCplex;
 
 /**
  * The class implements a surplus optimal reverse auction (BORA).
+ * Since every seller produces a single DB, the winner determination problem decomposes: for every deterministic allocation
+ * of DBs the cheapest (in terms of the virtual cost) seller of every allocated DB is chosen. Hence, by default the WDP is
+ * solved by enumeration of all 2^n deterministic allocations of DBs in O(n*2^n). The MIP formulation is used only if the
+ * enumeration is not applicable (see isEnumerable()) or if the MIP is enforced explicitly.
  * @author Dmitry Moor
  *
  */
@@ -38,20 +44,24 @@ public class SurplusOptimalReverseAuction implements Auction
 	 */
 	public SurplusOptimalReverseAuction(List<SellerType> bids, List< List<Double> > inducedValues)
 	{
-		List<Integer> dbIDs = new ArrayList<Integer>();
-		
-		//for(SellerType s : bids)
-		//	if( ! dbIDs.contains(s.getAtom(0).getInterestingSet().get(0)))
-		//		dbIDs.add( s.getAtom(0).getInterestingSet().get(0) );
-			
-		_numberOfDBs = inducedValues.size();
-		if( inducedValues.get(0).size() < Math.pow(2, _numberOfDBs) ) throw new RuntimeException("Not all induced values available: " + inducedValues.get(0).size() + "/"+_numberOfDBs);
-		if( inducedValues.get(0).size() > Math.pow(2, _numberOfDBs) ) throw new RuntimeException("Too many induced values specified.");
-		
+		this(bids, InducedValueTable.fromLists(inducedValues));
+	}
+	
+	/**
+	 * Constructor
+	 * @param bids bids of sellers
+	 * @param inducedValues the table of induced values of DBs for different deterministic allocations
+	 */
+	public SurplusOptimalReverseAuction(List<SellerType> bids, InducedValueTable inducedValues)
+	{
+		_numberOfDBs = inducedValues.getNumberOfDBs();
 		_numberOfBidders = bids.size();
 		_bids = bids;
 		_inducedValues = inducedValues;
 		_allocation = new Allocation();
+		_isMIPEnforced = false;
+		_numberOfThreads = 1;
+		_workers = null;
 	}
 	
 	/**
@@ -60,6 +70,144 @@ public class SurplusOptimalReverseAuction implements Auction
 	 */
 	public void computeWinnerDetermination() throws Exception
 	{
+		if( !_isMIPEnforced && isEnumerable() )
+			computeWinnerDeterminationByEnumeration();
+		else
+			computeWinnerDeterminationMIP();
+	}
+	
+	/**
+	 * The method checks if the WDP can be solved by enumeration of deterministic allocations of DBs, i.e., if every seller
+	 * produces one of the DBs of the auction and all virtual costs are non-negative (otherwise it might be optimal to
+	 * allocate several sellers of the same DB).
+	 * @return true if the WDP can be solved by enumeration
+	 */
+	private boolean isEnumerable()
+	{
+		for(SellerType seller : _bids)
+		{
+			int dbId = seller.getAtom(0).getInterestingSet().get(0);
+			if( dbId < 1 || dbId > _numberOfDBs || seller.getItsVirtualCost() < 0 )
+				return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * The method solves the winner determination problem by enumeration of all deterministic allocations of DBs. For every
+	 * allocation the virtual surplus is the total induced value of DBs less virtual costs of the cheapest sellers of the
+	 * allocated DBs. Ties are broken in favor of the smaller binary encoding of the allocation and in favor of the seller
+	 * with the smaller index.
+	 */
+	private void computeWinnerDeterminationByEnumeration()
+	{
+		// The cheapest seller of every DB
+		double[] minVirtualCosts = new double[_numberOfDBs];
+		int[] cheapestSellers = new int[_numberOfDBs];
+		Arrays.fill(minVirtualCosts, Double.POSITIVE_INFINITY);
+		Arrays.fill(cheapestSellers, -1);
+		for(int j = 0; j < _numberOfBidders; ++j)
+		{
+			int k = _bids.get(j).getAtom(0).getInterestingSet().get(0) - 1;
+			double virtualCost = _bids.get(j).getItsVirtualCost();
+			if( virtualCost < minVirtualCosts[k] )
+			{
+				minVirtualCosts[k] = virtualCost;
+				cheapestSellers[k] = j;
+			}
+		}
+		
+		// The allocation of DBs with the highest virtual surplus
+		int numberOfDeterministicAllocationsDBs = 1 << _numberOfDBs;
+		_totalInducedValues = new double[numberOfDeterministicAllocationsDBs];
+		int bestAllocation;
+		if( _numberOfThreads > 1 && numberOfDeterministicAllocationsDBs >= _MIN_ALLOCATIONS_PER_THREAD * _numberOfThreads )
+		{
+			int chunkSize = (numberOfDeterministicAllocationsDBs + _numberOfThreads - 1) / _numberOfThreads;
+			ForkJoinPool workers = _workers != null ? _workers : new ForkJoinPool(_numberOfThreads);
+			try
+			{
+				List<ForkJoinTask<Integer>> chunks = new ArrayList<ForkJoinTask<Integer>>(_numberOfThreads);
+				for(int t = 0; t < _numberOfThreads; ++t)
+				{
+					int allocLow = t * chunkSize;
+					int allocHigh = Math.min(numberOfDeterministicAllocationsDBs, (t+1) * chunkSize);
+					chunks.add( workers.submit( () -> findBestAllocation(minVirtualCosts, allocLow, allocHigh) ) );
+				}
+				
+				bestAllocation = chunks.get(0).join();
+				for(int t = 1; t < _numberOfThreads; ++t)			//Chunks are combined in the order of allocations
+				{
+					int chunkBestAllocation = chunks.get(t).join();
+					if( computeVirtualSurplus(chunkBestAllocation, minVirtualCosts) > computeVirtualSurplus(bestAllocation, minVirtualCosts) )
+						bestAllocation = chunkBestAllocation;
+				}
+			}
+			finally
+			{
+				if( workers != _workers )
+					workers.shutdown();
+			}
+		}
+		else
+			bestAllocation = findBestAllocation(minVirtualCosts, 0, numberOfDeterministicAllocationsDBs);
+		_logger.debug("Optimal det. allocation of DBs: " + bestAllocation);
+		
+		boolean[] isAllocated = new boolean[_numberOfBidders];
+		for(int k = 0; k < _numberOfDBs; ++k)
+			if( (bestAllocation & (1 << k)) > 0 )
+				isAllocated[cheapestSellers[k]] = true;
+		setAllocation(isAllocated);
+	}
+	
+	/**
+	 * The method finds the deterministic allocation of DBs with the highest virtual surplus within the given range.
+	 * @param minVirtualCosts virtual costs of the cheapest sellers of DBs (+inf if a DB has no sellers)
+	 * @param allocLow the first allocation of the range
+	 * @param allocHigh the allocation following the last allocation of the range
+	 * @return the binary encoding of the best allocation of the range
+	 */
+	private int findBestAllocation(double[] minVirtualCosts, int allocLow, int allocHigh)
+	{
+		int bestAllocation = allocLow;
+		double bestVirtualSurplus = computeVirtualSurplus(allocLow, minVirtualCosts);
+		for(int i = allocLow + 1; i < allocHigh; ++i)
+		{
+			double virtualSurplus = computeVirtualSurplus(i, minVirtualCosts);
+			if( virtualSurplus > bestVirtualSurplus )
+			{
+				bestVirtualSurplus = virtualSurplus;
+				bestAllocation = i;
+			}
+		}
+		return bestAllocation;
+	}
+	
+	/**
+	 * The method computes the virtual surplus of the deterministic allocation of DBs given the cheapest sellers of DBs.
+	 * The total induced value of the allocation is stored in the table of total induced values (reused by computePayments()).
+	 * @param allocation binary encoding of the deterministic allocation of DBs
+	 * @param minVirtualCosts virtual costs of the cheapest sellers of DBs (+inf if a DB has no sellers)
+	 * @return the virtual surplus (-inf if some allocated DB has no sellers)
+	 */
+	private double computeVirtualSurplus(int allocation, double[] minVirtualCosts)
+	{
+		double totalInducedValue = _inducedValues.getTotalValue(allocation);
+		double totalVirtualCost = 0.;
+		for(int k = 0; k < _numberOfDBs; ++k)
+			if( (allocation & (1 << k)) > 0 )
+				totalVirtualCost += minVirtualCosts[k];
+		_totalInducedValues[allocation] = totalInducedValue;
+		return totalInducedValue - totalVirtualCost;
+	}
+	
+	/**
+	 * The method solves the winner determination problem using the MIP formulation.
+	 * @throws Exception 
+	 */
+	private void computeWinnerDeterminationMIP() throws Exception
+	{
+		_totalInducedValues = null;
 		if( _cplexSolver == null)
 			_cplexSolver = new IloCplex();
 		else
@@ -87,29 +235,31 @@ public class SurplusOptimalReverseAuction implements Auction
 			objective = _cplexSolver.sum(objective, term);
 		}
 		
-		int numberOfDeterministicAllocationsDBs = (int)Math.pow(2, _numberOfDBs);
+		int numberOfDeterministicAllocationsDBs = 1 << _numberOfDBs;
+		IloNumExpr numberOfAllocationsDBs = _cplexSolver.constant(0.);
 		for(int i = 0; i < numberOfDeterministicAllocationsDBs; ++i)
 		{
 			// Total induced value of all DBs when the det. allocation of DBs is i
-			IloNumExpr totalInducedValueI = _cplexSolver.constant(0.);
-			for(int j = 0; j < _inducedValues.size(); ++j)
-				totalInducedValueI = _cplexSolver.sum( _inducedValues.get(j).get(i), totalInducedValueI);
+			IloNumExpr totalInducedValueI = _cplexSolver.constant(_inducedValues.getTotalValue(i));
 			
 			// z indicates whether a particular set of DBs is allocated; Add the allocated value to the objective f-n
 			IloNumVar z = _cplexSolver.numVar(0, 1, IloNumVarType.Int, "z" + i );
 			objective = _cplexSolver.sum(objective, _cplexSolver.prod(z, totalInducedValueI));
 			bundleAllocationVars.add(z);
+			numberOfAllocationsDBs = _cplexSolver.sum(numberOfAllocationsDBs, z);
 			
 			int bit = 1;
 			for(int k = 0; k < _numberOfDBs; ++k)
 			{
 				IloNumExpr constraintK = _cplexSolver.prod(1., z);
+				boolean hasSellers = false;
 				for(int j = 0; j < _numberOfBidders; ++j)
 				{
 					int dbId = _bids.get(j).getAtom(0).getInterestingSet().get(0);
 					
 					if( dbId - 1 == k)
 					{
+						hasSellers = true;
 						if( (i & bit) > 0 )  									// If DB_k is allocated in det. allocation i
 						{
 							// DB_k is allocated in a binary representation of the deterministic allocation i,
@@ -124,10 +274,12 @@ public class SurplusOptimalReverseAuction implements Auction
 						}
 					}
 				}
-				lp.addRow( _cplexSolver.ge(0., constraintK, "Bundle_"+i + "," + k) );
+				if( hasSellers || (i & bit) > 0 )						// A DB without sellers cannot be allocated but does not restrict other DBs
+					lp.addRow( _cplexSolver.ge(0., constraintK, "Bundle_"+i + "," + k) );
 				bit = bit << 1;
 			}
 		}
+		lp.addRow( _cplexSolver.ge(1., numberOfAllocationsDBs, "SingleAllocationDBs") );	// Only one det. allocation of DBs is chosen
 		
 		// Allocation variables per bundle; Allocation constraints connecting bundles and sellers 
 		_logger.debug("Obj: " + objective.toString());
@@ -136,29 +288,41 @@ public class SurplusOptimalReverseAuction implements Auction
 		
 		_cplexSolver.solve();
 		
+		boolean[] isAllocated = new boolean[_numberOfBidders];
+		for(int i = 0; i < _numberOfBidders; ++i)
+		{
+			_logger.debug("SOL: " + sellerAllocationVars.get(i).getName() + "="+_cplexSolver.getValue(sellerAllocationVars.get(i)));
+			isAllocated[i] = Math.abs( _cplexSolver.getValue(sellerAllocationVars.get(i)) - 1.0 ) < 1e-6;
+		}
+		for(int i = 0; i < bundleAllocationVars.size(); ++i)
+			_logger.debug("SOL: " + bundleAllocationVars.get(i).getName() + "="+_cplexSolver.getValue(bundleAllocationVars.get(i)));
+		
+		setAllocation(isAllocated);
+	}
+	
+	/**
+	 * The method sets the allocation of the auction given allocated sellers.
+	 * @param isAllocated isAllocated[i] is true if the i-th seller is allocated
+	 */
+	private void setAllocation(boolean[] isAllocated)
+	{
 		_allocation = new Allocation();
 		List<Integer> allocatedBiddersIds = new ArrayList<Integer>();
 		List<Integer> allocatedBundles = new ArrayList<Integer>();
 		List<Double> biddersValues = new ArrayList<Double>();
 		int deterministicAllocation = 0;
-		double autioneerValue = 0.;
 		
 		for(int i = 0; i < _numberOfBidders; ++i)
 		{
-			_logger.debug("SOL: " + sellerAllocationVars.get(i).getName() + "="+_cplexSolver.getValue(sellerAllocationVars.get(i)));
-			if( Math.abs( _cplexSolver.getValue(sellerAllocationVars.get(i)) - 1.0 ) < 1e-6 )
+			if( isAllocated[i] )
 			{
 				allocatedBiddersIds.add( _bids.get(i).getAgentId());
 				allocatedBundles.add( _bids.get(i).getAtom(0).getInterestingSet().get(0));
 				biddersValues.add( _bids.get(i).getAtom(0).getValue() );					// Costs of sellers
-				deterministicAllocation += (int)Math.pow(2, _bids.get(i).getInterestingSet(0).get(0) - 1);
+				deterministicAllocation |= 1 << (_bids.get(i).getInterestingSet(0).get(0) - 1);
 			}
 		}
-		for(int i = 0; i < bundleAllocationVars.size(); ++i)
-			_logger.debug("SOL: " + bundleAllocationVars.get(i).getName() + "="+_cplexSolver.getValue(bundleAllocationVars.get(i)));
-		
-		for(int i = 0; i < _inducedValues.size(); ++i)
-			autioneerValue += _inducedValues.get(i).get(deterministicAllocation);
+		double autioneerValue = _inducedValues.getTotalValue(deterministicAllocation);
 		
 		_allocation.addAllocatedAgent(0, allocatedBiddersIds, allocatedBundles, autioneerValue, biddersValues);
 	}
@@ -170,6 +334,9 @@ public class SurplusOptimalReverseAuction implements Auction
 	 */
 	public List<Double> computePayments() throws Exception
 	{
+		if( _totalInducedValues != null )								// The WDP was solved by enumeration
+			return computePaymentsByEnumeration();
+		
 		List<Double> payment = new ArrayList<Double>();
 
 		// 0. Compute the virtual surplus of the optimal allocation
@@ -196,10 +363,7 @@ public class SurplusOptimalReverseAuction implements Auction
 					//reducedBids.add(new SellerType(_bids.get(j)));
 					reducedBids.add(seller);
 				}	
-			// 1.2 Collect induced values of all DBs
-			List< List<Double> > inducedValues = new ArrayList<List<Double> >();
-
-			// Check if there is only a single seller producing the DB
+			// 1.2 Check if there is only a single seller producing the DB
 			boolean isMonopolist = true;
 			int dbIdToRemove = _bids.get( _allocation.getBiddersInvolved(0).get(i) - 1 ).getInterestingSet(0).get(0);
 			for(SellerType s: reducedBids)
@@ -215,22 +379,9 @@ public class SurplusOptimalReverseAuction implements Auction
 				for(SellerType s: reducedBids)		//Removal of the DB creates a gap in the enumeration of other DBs. This gap must be closed
 					if( s.getAtom(0).getInterestingSet(0).get(0) > dbIdToRemove )
 						s.getAtom(0).getInterestingSet(0).set(0, s.getAtom(0).getInterestingSet(0).get(0) - 1);
-					
-				for(int k = 0; k < _inducedValues.size(); ++k) 						// (For all DBs)
-				{
-					if( dbIdToRemove - 1 == k )
-						continue;
-					int numberOfDeterministicAllocationsDBs = (int)Math.pow(2, _numberOfDBs);
-					List<Double> inducedValuesK = new ArrayList<Double>();
-					for(int j = 0; j < numberOfDeterministicAllocationsDBs; ++j)
-					{
-						if( Math.floor( j/Math.pow(2, dbIdToRemove-1) ) % 2 == 0 )
-							inducedValuesK.add(_inducedValues.get(k).get(j));
-					}
-					_logger.debug("Induced values of DB_"+k+" for different det. allocations: " + inducedValuesK.toString());
-					inducedValues.add(inducedValuesK);
-				}
-				auction = new SurplusOptimalReverseAuction(reducedBids, inducedValues);
+
+				// Induced values of other DBs given that the removed DB is not allocated
+				auction = new SurplusOptimalReverseAuction(reducedBids, _inducedValues.removeDB(dbIdToRemove - 1));
 			}
 			else			//If the seller is a not unique producer, then the induced values of DBs do not change
 				auction = new SurplusOptimalReverseAuction(reducedBids, _inducedValues);
@@ -238,7 +389,11 @@ public class SurplusOptimalReverseAuction implements Auction
 			// 1.3 Solve the reduced auction
 			//SurplusOptimalReverseAuction auction = new SurplusOptimalReverseAuction(reducedBids, _inducedValues);
 			auction.setSolver(_cplexSolver);
+			auction.setMIPEnforced(_isMIPEnforced);
+			auction.setNumberOfThreads(_numberOfThreads);
+			auction.setWorkers(_workers);
 			auction.computeWinnerDetermination();
+			_cplexSolver = auction.getSolver();							// The solver may be instantiated by the reduced auction
 			
 			double reducedTotalInducedValue = auction.getAllocation().getAuctioneersAllocatedValue(0);
 			double reducedTotalVirtualCost = 0.;
@@ -250,25 +405,115 @@ public class SurplusOptimalReverseAuction implements Auction
 			
 			// 2. Compute the payment
 			SellerType allocatedBidder = (SellerType)_bids.get(_allocation.getBiddersInvolved(0).get(i)-1); 
-			double p = allocatedBidder.computeInverseVirtualCost( allocatedBidder.getItsVirtualCost() + virtualSurplus - reducedVirtualSurplus );
-			_logger.debug("p=phi^{-1} (" + allocatedBidder.getItsVirtualCost() + " + " + virtualSurplus + " - " + reducedVirtualSurplus + ")=" + p);
+			payment.add( computePayment(allocatedBidder, virtualSurplus, reducedVirtualSurplus) );
+		}
+		
+		return payment;
+	}
+	
+	/**
+	 * The method computes payments of allocated sellers using the table of total induced values built by the enumeration
+	 * of deterministic allocations of DBs. The optimal virtual surplus without an allocated seller is the max over the same
+	 * table with the seller removed: the next cheapest seller of its DB is used instead, and if the seller is the only
+	 * producer of the DB (a monopolist), the DB cannot be allocated and its induced value is not counted. Reduced virtual
+	 * surpluses of all allocated sellers are computed in a single pass over the table.
+	 * @return payments of allocated sellers
+	 */
+	private List<Double> computePaymentsByEnumeration()
+	{
+		List<Integer> allocatedBidders = _allocation.getBiddersInvolved(0);
+		int numberOfWinners = allocatedBidders.size();
+		
+		// The cheapest seller of every DB and virtual costs of DBs of winners if winners are removed
+		double[] minVirtualCosts = new double[_numberOfDBs];
+		Arrays.fill(minVirtualCosts, Double.POSITIVE_INFINITY);
+		for(SellerType seller : _bids)
+		{
+			int k = seller.getAtom(0).getInterestingSet().get(0) - 1;
+			minVirtualCosts[k] = Math.min(minVirtualCosts[k], seller.getItsVirtualCost());
+		}
+		
+		int[] dbsOfWinners = new int[numberOfWinners];
+		double[] reducedMinVirtualCosts = new double[numberOfWinners];		// +inf for monopolists
+		double virtualSurplus = _allocation.getAuctioneersAllocatedValue(0);
+		for(int i = 0; i < numberOfWinners; ++i)
+		{
+			int winnerIdx = allocatedBidders.get(i) - 1;
+			dbsOfWinners[i] = _bids.get(winnerIdx).getAtom(0).getInterestingSet().get(0) - 1;
+			virtualSurplus -= _bids.get(winnerIdx).getItsVirtualCost();
+			
+			reducedMinVirtualCosts[i] = Double.POSITIVE_INFINITY;
+			for(int j = 0; j < _numberOfBidders; ++j)
+				if( j != winnerIdx && _bids.get(j).getAtom(0).getInterestingSet().get(0) - 1 == dbsOfWinners[i] )
+					reducedMinVirtualCosts[i] = Math.min(reducedMinVirtualCosts[i], _bids.get(j).getItsVirtualCost());
+		}
+		
+		// Reduced virtual surpluses
+		double[] reducedVirtualSurpluses = new double[numberOfWinners];
+		Arrays.fill(reducedVirtualSurpluses, Double.NEGATIVE_INFINITY);
+		for(int j = 0; j < _totalInducedValues.length; ++j)
+		{
+			double totalVirtualCost = 0.;
+			for(int k = 0; k < _numberOfDBs; ++k)
+				if( (j & (1 << k)) > 0 )
+					totalVirtualCost += minVirtualCosts[k];
+			if( totalVirtualCost == Double.POSITIVE_INFINITY )				// Some allocated DB has no sellers
+				continue;
 			
-			if( allocatedBidder.getDistribution() == Distribution.UNIFORM )
+			for(int i = 0; i < numberOfWinners; ++i)
 			{
-				if( p > allocatedBidder.getMean() * 2)
+				int k = dbsOfWinners[i];
+				double reducedVirtualSurplus;
+				if( (j & (1 << k)) > 0 )
 				{
-					p = 2 * allocatedBidder.getMean();
-					_logger.debug("The payment must be within the support of the costs distribution.");
+					if( reducedMinVirtualCosts[i] == Double.POSITIVE_INFINITY )	// The DB of a monopolist cannot be allocated
+						continue;
+					reducedVirtualSurplus = _totalInducedValues[j] - totalVirtualCost + minVirtualCosts[k] - reducedMinVirtualCosts[i];
 				}
+				else if( reducedMinVirtualCosts[i] == Double.POSITIVE_INFINITY )	// The DB of a monopolist is removed with its value
+					reducedVirtualSurplus = _totalInducedValues[j] - _inducedValues.get(k, j) - totalVirtualCost;
+				else
+					reducedVirtualSurplus = _totalInducedValues[j] - totalVirtualCost;
+				
+				reducedVirtualSurpluses[i] = Math.max(reducedVirtualSurpluses[i], reducedVirtualSurplus);
 			}
-			else throw new RuntimeException("Not implemented for other distributions: " + allocatedBidder.getDistribution());
-			
-			payment.add(p);
 		}
 		
+		List<Double> payment = new ArrayList<Double>(numberOfWinners);
+		for(int i = 0; i < numberOfWinners; ++i)
+		{
+			_logger.debug("reducedVirtualSurplus of seller id = " + allocatedBidders.get(i) + " is " + reducedVirtualSurpluses[i]);
+			payment.add( computePayment(_bids.get(allocatedBidders.get(i) - 1), virtualSurplus, reducedVirtualSurpluses[i]) );
+		}
 		return payment;
 	}
 	
+	/**
+	 * The method computes the payment of an allocated seller as the inverse virtual cost of its virtual cost plus its
+	 * contribution to the virtual surplus. The payment is bounded by the support of the costs distribution.
+	 * @param allocatedBidder the allocated seller
+	 * @param virtualSurplus the optimal virtual surplus
+	 * @param reducedVirtualSurplus the optimal virtual surplus without the seller
+	 * @return the payment of the seller
+	 */
+	static double computePayment(SellerType allocatedBidder, double virtualSurplus, double reducedVirtualSurplus)
+	{
+		double p = allocatedBidder.computeInverseVirtualCost( allocatedBidder.getItsVirtualCost() + virtualSurplus - reducedVirtualSurplus );
+		_logger.debug("p=phi^{-1} (" + allocatedBidder.getItsVirtualCost() + " + " + virtualSurplus + " - " + reducedVirtualSurplus + ")=" + p);
+		
+		if( allocatedBidder.getDistribution() == Distribution.UNIFORM )
+		{
+			if( p > allocatedBidder.getMean() * 2)
+			{
+				p = 2 * allocatedBidder.getMean();
+				_logger.debug("The payment must be within the support of the costs distribution.");
+			}
+		}
+		else throw new RuntimeException("Not implemented for other distributions: " + allocatedBidder.getDistribution());
+		
+		return p;
+	}
+	
 	/**
 	 * (non-Javadoc)
 	 * @see ch.uzh.ifi.Mechanisms.Auction#solveIt()
@@ -276,9 +521,23 @@ public class SurplusOptimalReverseAuction implements Auction
 	@Override
 	public void solveIt() throws Exception
 	{
-		computeWinnerDetermination();
-		if( _allocation.getNumberOfAllocatedAuctioneers() > 0 )
-			_payments = computePayments();
+		boolean isPoolOwner = _numberOfThreads > 1 && _workers == null;
+		if( isPoolOwner )
+			_workers = new ForkJoinPool(_numberOfThreads);
+		try
+		{
+			computeWinnerDetermination();
+			if( _allocation.getNumberOfAllocatedAuctioneers() > 0 )
+				_payments = computePayments();
+		}
+		finally
+		{
+			if( isPoolOwner )
+			{
+				_workers.shutdown();
+				_workers = null;
+			}
+		}
 	}
 
 	/**
@@ -345,12 +604,57 @@ public class SurplusOptimalReverseAuction implements Auction
 		_cplexSolver = solver;
 	}
 	
+	/**
+	 * The method returns the CPLEX solver of the auction, i.e., the one set up by setSolver() or the one instantiated
+	 * by the auction if the WDP was solved using the MIP formulation. The solver is not terminated by the auction.
+	 * @return CPLEX solver or null if no solver was set up or needed
+	 */
+	public IloCplex getSolver()
+	{
+		return _cplexSolver;
+	}
+	
+	/**
+	 * The method enforces the MIP formulation of the WDP instead of the enumeration of deterministic allocations of DBs.
+	 * @param isMIPEnforced true if the MIP should be used
+	 */
+	public void setMIPEnforced(boolean isMIPEnforced)
+	{
+		_isMIPEnforced = isMIPEnforced;
+	}
+	
+	/**
+	 * The method sets the number of threads used to enumerate deterministic allocations of DBs.
+	 * @param numberOfThreads the number of threads
+	 */
+	public void setNumberOfThreads(int numberOfThreads)
+	{
+		if( numberOfThreads < 1 ) throw new RuntimeException("The number of threads should be positive: " + numberOfThreads);
+		_numberOfThreads = numberOfThreads;
+	}
+	
+	/**
+	 * The method sets the pool of workers used to enumerate deterministic allocations of DBs, e.g., the pool of the market
+	 * platform. The pool is not shut down by the auction. If no pool is set, solveIt() uses a dedicated pool with the
+	 * specified number of threads for the WDP and all reduced auctions.
+	 * @param workers the pool of workers (null if a dedicated pool should be used)
+	 */
+	public void setWorkers(ForkJoinPool workers)
+	{
+		_workers = workers;
+	}
+	
 	private int _numberOfBidders;								// Number of bidders (sellers) in the auction
 	private int _numberOfDBs;
 	private List<SellerType> _bids;								// Bids of the sellers
-	private List< List<Double> > _inducedValues;				// Values of the auctioneer per DB with different deterministic allocations of other DBs
+	private InducedValueTable _inducedValues;					// Values of the auctioneer per DB with different deterministic allocations of other DBs
 	private Allocation _allocation;								// Optimal allocation of bidders
 	private List<Double> _payments;								// Payments of the winners
+	private double[] _totalInducedValues;						// Total induced values of det. allocations of DBs (null if the WDP was solved by the MIP)
 	
 	private IloCplex _cplexSolver;
+	private boolean _isMIPEnforced;								// True if the WDP is solved using the MIP formulation
+	private int _numberOfThreads;								// Number of threads used to enumerate allocations of DBs
+	private ForkJoinPool _workers;								// Workers enumerating allocations of DBs (null if no pool is set)
+	private static final int _MIN_ALLOCATIONS_PER_THREAD = 1 << 10;	// Min number of allocations of DBs enumerated by a thread
 }
@@ -0,0 +1,72 @@
+package ch.uzh.ifi.Mechanisms;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The class implements the iterative posted price search with a fixed step: price += excessDemand * step. The search
+ * stops once the absolute excess demand is below the tolerance level or the maximal number of iterations is reached.
+ * @author Dmitry Moor
+ *
+ */
+public class TatonementStrategy implements IPriceSearchStrategy
+{
+
+	private static final Logger _logger = LogManager.getLogger(TatonementStrategy.class);
+
+	/**
+	 * Constructor.
+	 * @param step the step of the price update
+	 * @param tolerance the tolerance level for the excess demand
+	 * @param maxIter the maximal number of iterations
+	 */
+	public TatonementStrategy(double step, double tolerance, int maxIter)
+	{
+		_step = step;
+		_tolerance = tolerance;
+		_maxIter = maxIter;
+		_numberOfIterations = 0;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ch.uzh.ifi.Mechanisms.IPriceSearchStrategy#searchPrice(ch.uzh.ifi.Mechanisms.IExcessDemandFunction, double)
+	 */
+	@Override
+	public double searchPrice(IExcessDemandFunction excessDemand, double startPrice) throws Exception
+	{
+		double price = startPrice;
+		double diff = 0.;
+		_numberOfIterations = 0;
+
+		for(int i = 0; i < _maxIter; ++i)
+		{
+			double excessDemandMoney = excessDemand.computeExcessDemand(price);
+			_numberOfIterations += 1;
+			price = Math.max(0., price + excessDemandMoney * _step);
+			diff = Math.abs(excessDemandMoney);
+
+			if( diff < _tolerance )
+				break;
+			if( i == _maxIter - 1 ) _logger.warn("Reached MAX_ITER.");
+		}
+
+		_logger.debug("Found price: " + price + "; diff=" + diff + "; iterations=" + _numberOfIterations);
+		return price;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see ch.uzh.ifi.Mechanisms.IPriceSearchStrategy#getNumberOfIterations()
+	 */
+	@Override
+	public int getNumberOfIterations()
+	{
+		return _numberOfIterations;
+	}
+
+	private double _step;											//The step of the price update
+	private double _tolerance;										//The tolerance level for the excess demand
+	private int _maxIter;											//The maximal number of iterations
+	private int _numberOfIterations;								//The number of iterations of the last search
+}
@@ -41,6 +41,8 @@ public class VCGPayments implements IPaymentRule
 		_numberOfItems = numberOfItems;
 		_numberOfAgents = _bids.size();
 		_cplexSolver = null;
+		_numberOfThreads = 1;
+		_marginalEconomiesSolver = null;
 	}
 	
 	/**
@@ -52,6 +54,36 @@ public class VCGPayments implements IPaymentRule
 		_cplexSolver = solver;
 	}
 	
+	/**
+	 * The method sets up a solver for WDPs of sub-auctions which is used instead of CPLEX.
+	 * @param solver WDP solver
+	 */
+	public void setWDPSolver(IWinnerDeterminationSolver solver)
+	{
+		_wdpSolver = solver;
+	}
+	
+	/**
+	 * The method sets up the number of threads used to solve WDPs of marginal economies. If more than one thread is used,
+	 * every worker uses its own CPLEX instance (or the thread-safe WDP solver if it was provided).
+	 * @param numberOfThreads the number of threads
+	 */
+	public void setNumberOfThreads(int numberOfThreads)
+	{
+		_numberOfThreads = numberOfThreads;
+	}
+	
+	/**
+	 * The method sets up a solver of marginal economies shared with other payment rules (e.g., the one of a solver context),
+	 * so that its workers and CPLEX instances are reused. The shared solver is not closed by the payment rule and its
+	 * number of threads is used instead of the one set by setNumberOfThreads(...).
+	 * @param solver a solver of marginal economies
+	 */
+	public void setMarginalEconomiesSolver(ParallelMarginalEconomiesSolver solver)
+	{
+		_marginalEconomiesSolver = solver;
+	}
+	
 	/**
 	 * (non-Javadoc)
 	 * @see ch.uzh.ifi.Mechanisms.IPaymentRule#computePayments()
@@ -62,56 +94,122 @@ public class VCGPayments implements IPaymentRule
 		int numberOfAllocatedBidders = _allocation.getBiddersInvolved(0).size();
 		_payments = new ArrayList<Double>();
 		
+		//1. Compute the SW without every allocated agent
+		double[] subgameSW = isLLG() ? computeSubgameWelfaresLLG() : computeSubgameWelfares();
+		
 		for(int i = 0; i < numberOfAllocatedBidders; ++i)
+			_payments.add( computePayment(i, subgameSW[i]) );
+		return _payments;
+	}
+	
+	/**
+	 * The method computes the SW of every marginal economy, i.e., of the auction without one of the allocated bidders.
+	 * All marginal economies share the WDP model warm-started from the main allocation and may be solved concurrently.
+	 * @return the SW of the marginal economy without the i-th allocated bidder
+	 * @throws Exception if a WDP cannot be solved
+	 */
+	private double[] computeSubgameWelfares() throws Exception
+	{
+		double[][] weights = new double[_numberOfAgents][];
+		for(int i = 0; i < _numberOfAgents; ++i)
+		{
+			Type bid = _bids.get(i);
+			weights[i] = new double[bid.getNumberOfAtoms()];
+			for(int j = 0; j < bid.getNumberOfAtoms(); ++j)
+				weights[i][j] = bid.getAtom(j).getValue() - bid.getAtom(j).computeCost(_costs);
+		}
+		
+		boolean isSharedSolver = (_marginalEconomiesSolver != null);
+		ParallelMarginalEconomiesSolver solver = isSharedSolver ? _marginalEconomiesSolver : new ParallelMarginalEconomiesSolver(_numberOfThreads);
+		solver.setProblem(weights, new BinaryBids(_bids, _numberOfItems));
+		solver.setSolver(_cplexSolver);
+		solver.setWDPSolver(_wdpSolver);
+		
+		int[] excludedBidders = new int[ _allocation.getBiddersInvolved(0).size() ];
+		for(int i = 0; i < excludedBidders.length; ++i)
+			excludedBidders[i] = getBidderIdx( _allocation.getBiddersInvolved(0).get(i) );
+		
+		try
+		{
+			return solver.solveWithout(excludedBidders, MarginalEconomiesEngine.getAllocatedAtoms(_allocation, _bids));
+		}
+		finally
 		{
-			//1. Compute the SW without agent i
-			int allocatedAgentId = _allocation.getBiddersInvolved(0).get(i);
-			double allocatedAgentValue = 0.;
+			if( !isSharedSolver )
+				solver.close();
+		}
+	}
+	
+	/**
+	 * The method computes the SW of every marginal economy for the LLG domain using the closed form (see LLGKernel.java).
+	 * @return the SW of the marginal economy without the i-th allocated bidder
+	 */
+	private double[] computeSubgameWelfaresLLG()
+	{
+		double[] values = new double[LLGKernel.NUMBER_OF_BIDDERS];
+		double[] costs  = new double[LLGKernel.NUMBER_OF_BIDDERS];
+		double[] availabilities = {1., 1., 1.};
+		int bidders = LLGKernel.readBids(_bids, _costs, values, costs);
+		
+		double[] subgameSW = new double[ _allocation.getBiddersInvolved(0).size() ];
+		for(int i = 0; i < subgameSW.length; ++i)
+		{
+			int excludedBidder = 1 << getBidderIdx( _allocation.getBiddersInvolved(0).get(i) );
+			subgameSW[i] = LLGKernel.computeWelfare(bidders & ~excludedBidder, values, costs, availabilities);
+		}
+		return subgameSW;
+	}
+	
+	/**
+	 * The method computes the VCG payment of an allocated bidder.
+	 * @param i an index of the bidder in the allocation
+	 * @param subgameSW the SW of the marginal economy without the bidder
+	 * @return the VCG payment of the bidder
+	 * @throws Exception if the payment violates IR
+	 */
+	private double computePayment(int i, double subgameSW) throws Exception
+	{
+		int allocatedAgentId = _allocation.getBiddersInvolved(0).get(i);
+		double allocatedAgentValue = 0.;
+		
+		//2. Compute the SW with agent i not taking its value into account
+		double decreasedSW = 0.;
+		for(int j = 0; j < _allocation.getBiddersInvolved(0).size(); ++j)
+		{
+			int bidderId = _allocation.getBiddersInvolved(0).get(j);
+			int itsAllocatedAtom = _allocation.getAllocatedBundlesOfTrade(0).get(j);
+			AtomicBid allocatedBundle = _bids.get( bidderId-1 ).getAtom( itsAllocatedAtom );
+			double cost  = computeCost( allocatedBundle );
 			
-			List<Type> bids = new ArrayList<Type>();
-			for(int j = 0; j < _numberOfAgents; ++j)
-				if( _bids.get(j).getAgentId() != allocatedAgentId )
-					bids.add(_bids.get(j));
-
-			CAXOR auction = new CAXOR( _numberOfAgents - 1, _numberOfItems, bids, _costs);
-			if(_cplexSolver != null)
-				auction.setSolver(_cplexSolver);
-			if( isLLG() )
-				auction.computeWinnerDeterminationLLG();
+			if(bidderId != allocatedAgentId)
+				decreasedSW += allocatedBundle.getValue() - cost;
 			else
-				auction.computeWinnerDetermination();
-			
-			double subgameSW = 0.;
-			if( auction.getAllocation().getNumberOfAllocatedAuctioneers() > 0)
-				subgameSW = auction.getAllocation().getAllocatedWelfare();
-			
-			//2. Compute the SW with agent i not taking its value into account
-			double decreasedSW = 0.;
-			for(int j = 0; j < _allocation.getBiddersInvolved(0).size(); ++j)
 			{
-				int bidderId = _allocation.getBiddersInvolved(0).get(j);
-				int itsAllocatedAtom = _allocation.getAllocatedBundlesOfTrade(0).get(j);
-				AtomicBid allocatedBundle = _bids.get( bidderId-1 ).getAtom( itsAllocatedAtom );
-				double cost  = computeCost( allocatedBundle );
-				
-				if(bidderId != allocatedAgentId)
-					decreasedSW += allocatedBundle.getValue() - cost;
-				else
-				{
-					allocatedAgentValue = allocatedBundle.getValue();
-					decreasedSW += -1* cost;
-				}
+				allocatedAgentValue = allocatedBundle.getValue();
+				decreasedSW += -1* cost;
 			}
-			if( subgameSW - decreasedSW >  allocatedAgentValue + TOL)
-			{
-				_logger.error("IR violation: v=" + allocatedAgentValue + " p_vcg="+ (subgameSW - decreasedSW));
-				_logger.error("Bids: " + _bids.toString());
-				_logger.error("Costs: " + _costs.toString());
-				throw new PaymentException("IR violation for VCG", 0);
-			}
-			_payments.add(subgameSW - decreasedSW);			
 		}
-		return _payments;
+		if( subgameSW - decreasedSW >  allocatedAgentValue + TOL)
+		{
+			_logger.error("IR violation: v=" + allocatedAgentValue + " p_vcg="+ (subgameSW - decreasedSW));
+			_logger.error("Bids: " + _bids.toString());
+			_logger.error("Costs: " + _costs.toString());
+			throw new PaymentException("IR violation for VCG", 0);
+		}
+		return subgameSW - decreasedSW;
+	}
+	
+	/**
+	 * The method returns the index of a bidder in the list of bids.
+	 * @param agentId an id of the bidder
+	 * @return the index of the bidder
+	 */
+	private int getBidderIdx(int agentId)
+	{
+		for(int j = 0; j < _numberOfAgents; ++j)
+			if( _bids.get(j).getAgentId() == agentId )
+				return j;
+		throw new RuntimeException("No bid of the agent " + agentId);
 	}
 	
 	/**
@@ -167,6 +265,9 @@ public class VCGPayments implements IPaymentRule
 	private int _numberOfAgents;
 	private Allocation _allocation;	
 	private IloCplex _cplexSolver;
+	private int _numberOfThreads;									//The number of threads used to solve WDPs of marginal economies
+	private ParallelMarginalEconomiesSolver _marginalEconomiesSolver;	//A solver of marginal economies shared by payment rules (null if not shared)
+	private IWinnerDeterminationSolver _wdpSolver;					//A non-CPLEX solver for WDPs of sub-auctions (CPLEX is used if null)
 	
 	private double TOL=1e-6;
 }
@@ -0,0 +1,176 @@
+package ch.uzh.ifi.Mechanisms;
+
+import ilog.concert.IloException;
+import ilog.cplex.IloCplex;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.uzh.ifi.DomainGenerators.DomainGeneratorSpatialUncertain;
+import ch.uzh.ifi.MechanismDesignPrimitives.Allocation;
+import ch.uzh.ifi.MechanismDesignPrimitives.AllocationEC;
+import ch.uzh.ifi.MechanismDesignPrimitives.JointProbabilityMass;
+import ch.uzh.ifi.MechanismDesignPrimitives.Type;
+
+/**
+ * JMH benchmarks for core-selecting payment rules. The WDP of every instance is solved once in the setup, so that
+ * only the computation of payments is measured. Instances are generated with fixed seeds (see benchmarkJMH_WinnerDetermination.java).
+ * Empty core and "VCG is in the core" outcomes are part of the measured work and are not reported as failures.
+ * @author Dmitry Moor
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+public class benchmarkJMH_CorePayments
+{
+	/**
+	 * A deterministic spatial instance for the core payments of CAXOR.
+	 */
+	@State(Scope.Benchmark)
+	public static class DeterministicInstance
+	{
+		@Param({"9", "16"})
+		public int _numberOfGoods;									//The number of goods in the auction
+
+		@Setup(Level.Trial)
+		public void setup() throws Exception
+		{
+			_bids = benchmarkJMH_WinnerDetermination.generateBids(_numberOfGoods, _numberOfGoods / 2, benchmarkJMH_WinnerDetermination._SEED);
+			_costs = Collections.nCopies(_numberOfGoods, 0.);
+			_binaryBids = new BinaryBids(_bids, _numberOfGoods);
+			_cplexSolver = new IloCplex();
+			_cplexSolver.setOut(null);
+
+			CAXOR auction = new CAXOR(_bids.size(), _numberOfGoods, _bids, _costs);
+			auction.setSolver(_cplexSolver);
+			auction.computeWinnerDetermination();
+			_allocation = auction.getAllocation();
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown()
+		{
+			_cplexSolver.end();
+		}
+
+		List<Type> _bids;											//Bids of bidders
+		List<Double> _costs;										//Costs of goods
+		BinaryBids _binaryBids;										//Bids in the binary format
+		Allocation _allocation;										//The solution of the WDP
+		IloCplex _cplexSolver;										//CPLEX solver
+	}
+
+	/**
+	 * A spatial instance with uncertain availabilities of goods for the expected core payment rules.
+	 */
+	@State(Scope.Benchmark)
+	public static class ProbabilisticInstance
+	{
+		@Param({"9", "16"})
+		public int _numberOfGoods;									//The number of goods in the auction
+
+		@Param({"EC-CORE", "ECC-CORE", "ECR-CORE", "Exp-CORE"})
+		public String _paymentRule;									//The payment rule to be measured
+
+		@Setup(Level.Trial)
+		public void setup() throws Exception
+		{
+			DomainGeneratorSpatialUncertain domainGenerator = benchmarkJMH_WinnerDetermination.createDomainGenerator(_numberOfGoods);
+			_jpmf = domainGenerator.getJPMF();
+			_bids = benchmarkJMH_WinnerDetermination.generateBids(domainGenerator, _numberOfGoods / 2 + 1, benchmarkJMH_WinnerDetermination._SEED);
+			_costs = new ArrayList<Double>();
+			Random generator = new Random(benchmarkJMH_WinnerDetermination._SEED);
+			for(int i = 0; i < _numberOfGoods; ++i)
+				_costs.add( 20. * generator.nextDouble() );
+			_binaryBids = new BinaryBids(_bids, _numberOfGoods);
+			_cplexSolver = new IloCplex();
+			_cplexSolver.setOut(null);
+
+			ProbabilisticCAXOR auction = new ProbabilisticCAXOR(_bids.size(), _numberOfGoods, _bids, _costs, _jpmf);
+			auction.setSolver(_cplexSolver);
+			auction.setPaymentRule(_paymentRule);
+			auction.setSeed(benchmarkJMH_WinnerDetermination._SEED);
+			auction.computeWinnerDetermination();
+			_allocation = (AllocationEC)auction.getAllocation();
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown()
+		{
+			_cplexSolver.end();
+		}
+
+		/**
+		 * The method instantiates the payment rule of the instance.
+		 * @return the payment rule
+		 * @throws IloException if the payment rule cannot be instantiated
+		 */
+		IPaymentRule producePaymentRule() throws IloException
+		{
+			int numberOfBuyers = _bids.size();
+			switch( _paymentRule )
+			{
+				case "EC-CORE"	:	return new ECCorePayments(_allocation, numberOfBuyers, _numberOfGoods, _bids, _costs, _binaryBids, _jpmf, _cplexSolver);
+				case "ECC-CORE"	:	return new ECCCorePayments(_allocation, numberOfBuyers, _numberOfGoods, _bids, _costs, _binaryBids, _jpmf, _cplexSolver);
+				case "ECR-CORE"	:	return new ECRCorePayments(_allocation, numberOfBuyers, _numberOfGoods, _bids, _costs, _binaryBids, _jpmf, _cplexSolver);
+				case "Exp-CORE"	:	return new ExpCorePayments(_allocation, numberOfBuyers, _numberOfGoods, _bids, _costs, _binaryBids, _jpmf, _cplexSolver);
+				default			:	throw new RuntimeException("No such payment rule exists: " + _paymentRule);
+			}
+		}
+
+		List<Type> _bids;											//Bids of bidders
+		List<Double> _costs;										//Costs of goods
+		BinaryBids _binaryBids;										//Bids in the binary format
+		JointProbabilityMass _jpmf;									//Joint probability mass function of availabilities of goods
+		AllocationEC _allocation;									//The solution of the WDP
+		IloCplex _cplexSolver;										//CPLEX solver
+	}
+
+	@Benchmark
+	public List<Double> corePayments(DeterministicInstance instance) throws Exception
+	{
+		CorePayments paymentRule = new CorePayments(instance._allocation, instance._bids, Collections.nCopies(instance._numberOfGoods, 1),
+													instance._numberOfGoods, instance._binaryBids, instance._costs);
+		paymentRule.setSolver(instance._cplexSolver);
+		try
+		{
+			return paymentRule.computePayments();
+		}
+		catch(PaymentException e)
+		{
+			return e.getPayments();
+		}
+	}
+
+	@Benchmark
+	public List<Double> expectedCorePayments(ProbabilisticInstance instance) throws Exception
+	{
+		try
+		{
+			return instance.producePaymentRule().computePayments();
+		}
+		catch(PaymentException e)
+		{
+			return e.getPayments();
+		}
+	}
+}
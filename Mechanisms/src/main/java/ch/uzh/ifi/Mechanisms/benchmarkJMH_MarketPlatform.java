@@ -0,0 +1,196 @@
+package ch.uzh.ifi.Mechanisms;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.uzh.ifi.MechanismDesignPrimitives.AtomicBid;
+import ch.uzh.ifi.MechanismDesignPrimitives.Distribution;
+import ch.uzh.ifi.MechanismDesignPrimitives.ParametrizedQuasiLinearAgent;
+import ch.uzh.ifi.MechanismDesignPrimitives.SellerType;
+
+/**
+ * JMH benchmarks for the data market: the market demand, the tatonement price search, the BORA auction and
+ * the MDP of the dynamic pricing. Buyers are generated by BuyersGenerator and sellers' costs are drawn with
+ * fixed seeds (uniform competition as in benchmarkMarketPlatform). The fixed step tatonement is measured along with
+ * the bracketing/Brent and the adaptive step price search strategies.
+ * @author Dmitry Moor
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+public class benchmarkJMH_MarketPlatform
+{
+	/**
+	 * A market with two sellers per DB.
+	 */
+	@State(Scope.Benchmark)
+	public static class MarketInstance
+	{
+		@Param({"2", "3"})
+		public int _numberOfDBs;									//The number of DBs in the market
+
+		@Param({"100", "1000"})
+		public int _numberOfBuyers;									//The number of buyers in the market
+
+		@Setup(Level.Trial)
+		public void setup() throws Exception
+		{
+			int numberOfSellers = 2 * _numberOfDBs;
+			double costMin = 0.;
+			double costMax = 10.;
+			double costMean = (costMax + costMin) / 2;
+			double costVar = Math.pow(costMax-costMin, 2) / 12.;
+
+			Random generator = new Random(_SEED);
+			_sellers = new ArrayList<SellerType>();
+			for(int i = 0; i < numberOfSellers; ++i)
+			{
+				AtomicBid sellerBid = new AtomicBid(i+1, Arrays.asList( i % _numberOfDBs + 1 ), costMin + generator.nextDouble() * (costMax - costMin));
+				_sellers.add( new SellerType(sellerBid, Distribution.UNIFORM, costMean, costVar) );
+			}
+
+			BuyersGenerator buyersGenerator = new BuyersGenerator(_numberOfDBs, _ENDOWMENT, _SEED);
+			_buyers = new ArrayList<ParametrizedQuasiLinearAgent>();
+			for(int i = 0; i < _numberOfBuyers; ++i)
+				_buyers.add(buyersGenerator.generateBuyer(i+1));
+
+			_market = produceMarket();
+			_inducedValues = _market.computeInducedValueTable(_PRICE);
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown()
+		{
+			_market.endSolver();
+		}
+
+		/**
+		 * The method instantiates a new market platform with the tolerance and the step used by benchmarkMarketPlatform.
+		 * @return the market platform
+		 * @throws Exception if the market cannot be instantiated
+		 */
+		MarketPlatform produceMarket() throws Exception
+		{
+			MarketPlatform market = new MarketPlatform(_buyers, _sellers);
+			market.setToleranceLvl( _numberOfDBs == 2 ? 1e-6 : 0.1 );
+			market.setStep( _numberOfDBs == 2 ? 1e-3 : 1e-4 );
+			return market;
+		}
+
+		List<SellerType> _sellers;									//Sellers of DBs
+		List<ParametrizedQuasiLinearAgent> _buyers;					//Buyers of rows
+		MarketPlatform _market;										//The market platform
+		InducedValueTable _inducedValues;							//Induced values of DBs at the benchmark price
+	}
+
+	/**
+	 * An MDP of the dynamic pricing.
+	 */
+	@State(Scope.Benchmark)
+	public static class MDPInstance
+	{
+		@Param({"4", "6"})
+		public int _T;												//The time horizon
+
+		@Setup(Level.Trial)
+		public void setup()
+		{
+			_mdp = new MDP(5, _T, 1., 0.5, 1., 0.5);
+		}
+
+		MDP _mdp;													//The MDP to be solved
+	}
+
+	@Benchmark
+	public List<Double> marketDemand(MarketInstance instance)
+	{
+		instance._market.resetCache();										//Otherwise the cached demand is measured
+		return instance._market.computeMarketDemand(_PRICE, (1 << instance._numberOfDBs) - 1);
+	}
+
+	@Benchmark
+	public double tatonementPriceSearch(MarketInstance instance) throws Exception
+	{
+		MarketPlatform market = instance.produceMarket();
+		try
+		{
+			return market.tatonementPriceSearch(0.);
+		}
+		finally
+		{
+			market.endSolver();
+		}
+	}
+
+	@Benchmark
+	public double brentPriceSearch(MarketInstance instance) throws Exception
+	{
+		return priceSearch(instance, new BrentPriceSearchStrategy());
+	}
+
+	@Benchmark
+	public double adaptiveStepPriceSearch(MarketInstance instance) throws Exception
+	{
+		return priceSearch(instance, new AdaptiveStepPriceSearchStrategy());
+	}
+
+	/**
+	 * The method searches for the equilibrium price of a new market platform using the given strategy.
+	 * @param instance the market instance
+	 * @param strategy the price search strategy
+	 * @return the equilibrium price
+	 * @throws Exception if the price cannot be found
+	 */
+	private double priceSearch(MarketInstance instance, IPriceSearchStrategy strategy) throws Exception
+	{
+		MarketPlatform market = instance.produceMarket();
+		market.setPriceSearchStrategy(strategy);
+		try
+		{
+			return market.searchPrice(0.);
+		}
+		finally
+		{
+			market.endSolver();
+		}
+	}
+
+	@Benchmark
+	public double[] surplusOptimalReverseAuction(MarketInstance instance) throws Exception
+	{
+		SurplusOptimalReverseAuction auction = new SurplusOptimalReverseAuction(instance._sellers, instance._inducedValues);
+		auction.setSolver(instance._market.getSolver());
+		auction.solveIt();
+		return auction.getPayments();
+	}
+
+	@Benchmark
+	public MDP valueIteration(MDPInstance instance)
+	{
+		instance._mdp.solveByValueIteration();
+		return instance._mdp;
+	}
+
+	static final int _SEED = 2016;										//A seed used to generate instances
+	static final double _ENDOWMENT = 10.;								//Endowment of buyers with money
+	static final double _PRICE = 0.5;									//The price at which the demand and induced values are measured
+}
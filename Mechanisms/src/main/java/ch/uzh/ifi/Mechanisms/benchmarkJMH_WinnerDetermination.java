@@ -0,0 +1,185 @@
+package ch.uzh.ifi.Mechanisms;
+
+import ilog.concert.IloException;
+import ilog.cplex.IloCplex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.uzh.ifi.DomainGenerators.DomainGeneratorSpatialUncertain;
+import ch.uzh.ifi.DomainGenerators.SpacialDomainGenerationException;
+import ch.uzh.ifi.MechanismDesignPrimitives.Allocation;
+import ch.uzh.ifi.MechanismDesignPrimitives.AtomicBid;
+import ch.uzh.ifi.MechanismDesignPrimitives.CombinatorialType;
+import ch.uzh.ifi.MechanismDesignPrimitives.Type;
+
+/**
+ * JMH benchmarks for the winner determination of combinatorial auctions. Instances are generated with fixed seeds,
+ * so that measurements of different releases are comparable. Run with the "jmh" profile (see pom.xml):
+ * java -jar target/benchmarks.jar benchmarkJMH_WinnerDetermination
+ * @author Dmitry Moor
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+public class benchmarkJMH_WinnerDetermination
+{
+	/**
+	 * An LLG instance: two local bidders interested in one good each and a global bidder interested in both goods.
+	 */
+	@State(Scope.Benchmark)
+	public static class LLGInstance
+	{
+		@Setup(Level.Trial)
+		public void setup()
+		{
+			Random generator = new Random(_SEED);
+			double globalValue = 2. * generator.nextDouble();
+			List<Type> bids = new ArrayList<Type>();
+			bids.add( new CombinatorialType( new AtomicBid(1, Arrays.asList(1), generator.nextDouble()) ) );
+			bids.add( new CombinatorialType( new AtomicBid(2, Arrays.asList(2), generator.nextDouble()) ) );
+			bids.add( new CombinatorialType( new AtomicBid(3, Arrays.asList(1, 2), globalValue) ) );
+			_auction = new CAXOR(bids.size(), 2, bids, Arrays.asList(0., 0.));
+		}
+
+		CAXOR _auction;												//The LLG auction
+	}
+
+	/**
+	 * A spatial CATS-like instance with the specified number of goods solved either by CPLEX or by the pure-Java solver.
+	 */
+	@State(Scope.Benchmark)
+	public static class SpatialInstance
+	{
+		@Param({"9", "16", "32"})
+		public int _numberOfGoods;										//The number of goods in the auction
+
+		@Param({"CPLEX", "BranchAndBound"})
+		public String _solverName;										//The WDP solver to be used
+
+		@Setup(Level.Trial)
+		public void setup() throws SpacialDomainGenerationException, IloException
+		{
+			_bids = generateBids(_numberOfGoods, _numberOfGoods / 2, _SEED);
+			_costs = new ArrayList<Double>();
+			Random generator = new Random(_SEED);
+			for(int i = 0; i < _numberOfGoods; ++i)
+				_costs.add( 10. * generator.nextDouble() );
+
+			if( _solverName.equals("CPLEX") )
+			{
+				_cplexSolver = new IloCplex();
+				_cplexSolver.setOut(null);
+			}
+			else
+				_wdpSolver = new BranchAndBoundWDPSolver();
+		}
+
+		@TearDown(Level.Trial)
+		public void tearDown()
+		{
+			if( _cplexSolver != null )
+				_cplexSolver.end();
+		}
+
+		/**
+		 * The method instantiates a new auction which uses the solver of the instance.
+		 * @return an auction
+		 */
+		CAXOR produceAuction()
+		{
+			CAXOR auction = new CAXOR(_bids.size(), _numberOfGoods, _bids, _costs);
+			if( _cplexSolver != null )
+				auction.setSolver(_cplexSolver);
+			else
+				auction.setWDPSolver(_wdpSolver);
+			return auction;
+		}
+
+		List<Type> _bids;											//Bids of bidders
+		List<Double> _costs;										//Costs of goods
+		IloCplex _cplexSolver;										//CPLEX solver (null if not used)
+		IWinnerDeterminationSolver _wdpSolver;						//Pure-Java solver (null if not used)
+	}
+
+	@Benchmark
+	public Allocation winnerDeterminationLLG(LLGInstance instance)
+	{
+		instance._auction.computeWinnerDeterminationLLG();
+		return instance._auction.getAllocation();
+	}
+
+	@Benchmark
+	public Allocation winnerDetermination(SpatialInstance instance) throws IloException
+	{
+		CAXOR auction = instance.produceAuction();
+		auction.computeWinnerDetermination();
+		return auction.getAllocation();
+	}
+
+	/**
+	 * The method generates bids of bidders in the spatial domain with a fixed seed.
+	 * @param numberOfGoods the number of goods
+	 * @param numberOfBidders the number of bidders
+	 * @param seed a seed of the instance
+	 * @return bids of bidders
+	 * @throws SpacialDomainGenerationException if the domain cannot be generated
+	 */
+	static List<Type> generateBids(int numberOfGoods, int numberOfBidders, int seed) throws SpacialDomainGenerationException
+	{
+		return generateBids(createDomainGenerator(numberOfGoods), numberOfBidders, seed);
+	}
+
+	/**
+	 * The method generates bids of bidders using the specified domain generator.
+	 * @param domainGenerator a domain generator
+	 * @param numberOfBidders the number of bidders
+	 * @param seed a seed of the instance
+	 * @return bids of bidders
+	 * @throws SpacialDomainGenerationException if bids cannot be generated
+	 */
+	static List<Type> generateBids(DomainGeneratorSpatialUncertain domainGenerator, int numberOfBidders, int seed) throws SpacialDomainGenerationException
+	{
+		List<Type> bids = new ArrayList<Type>();
+		for(int i = 0; i < numberOfBidders; ++i)
+			bids.add( domainGenerator.generateBid(seed * 100 + i * 10, i + 1) );
+		return bids;
+	}
+
+	/**
+	 * The method instantiates a spatial domain generator with the joint probability mass function used by benchmarkProbabilisticCAXOR_CATS.
+	 * @param numberOfGoods the number of goods
+	 * @return the domain generator
+	 * @throws SpacialDomainGenerationException if the domain cannot be generated
+	 */
+	static DomainGeneratorSpatialUncertain createDomainGenerator(int numberOfGoods) throws SpacialDomainGenerationException
+	{
+		DomainGeneratorSpatialUncertain domainGenerator = new DomainGeneratorSpatialUncertain(numberOfGoods);
+		domainGenerator.setNumberOfJPMFSamples(10000);
+		domainGenerator.setNumberOfBombsToThrow(1);
+		domainGenerator.setBombsParameters(Arrays.asList(0.3), Arrays.asList(0.2), Arrays.asList(1.), Arrays.asList(1.));
+		domainGenerator.generateJPMF();
+		return domainGenerator;
+	}
+
+	static final int _SEED = 2016;										//A seed used to generate instances
+}
@@ -1,7 +1,6 @@
 package ch.uzh.ifi.Mechanisms;
 
 import ilog.concert.IloException;
-import ilog.cplex.IloCplex;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -23,6 +22,10 @@ public class benchmarkProbabilisticCAXOR_CATS
 {
 
 	private static final Logger _logger = LogManager.getLogger(benchmarkProbabilisticCAXOR_CATS.class);
+	private static final int EFFICIENCY = 0;						//Indexes of metrics of a game
+	private static final int IR_VIOLATIONS = 1;
+	private static final int EMPTY_CORE = 2;
+	private static final int NUMBER_OF_METRICS = 3;
 	
 	/**
 	 * Entry point
@@ -62,8 +65,9 @@ public class benchmarkProbabilisticCAXOR_CATS
 
 		int numberOfGoods = problemSize.equals("small") ? 9 : 16;
 		int numberOfAgents= problemSize.equals("small") ? 5 : 8;
-		int numberOfSampleGames = 100;
-		int numberOfRuns = 1;
+		int numberOfSampleGames = 100;									//The max number of games
+		int numberOfThreads = args.length > 5 ? Integer.parseInt(args[5]) : 1;
+		double targetWidth  = args.length > 6 ? Double.parseDouble(args[6]) : 0.;	//The width of the 95% CI to stop at (0 to play all games)
 		double primaryReductionCoef = isLowVariance ? 0.3 : 0.6;
 		double secondaryReductionCoef = isLowVariance ? 0.2 : 0.1;
 		
@@ -110,137 +114,119 @@ public class benchmarkProbabilisticCAXOR_CATS
 			List<Type> types = new ArrayList<Type>();
 			IntStream.range(0, numberOfAgents).boxed().forEach( i -> types.add( new CombinatorialType( new AtomicBid(i+1, Arrays.asList(0), 0.) ) ) ); 	//Add dummy types
 
-			IloCplex solver = new IloCplex();
+			DomainGeneratorSpatialUncertain domainGenerator;
+			try
+			{
+				domainGenerator = new DomainGeneratorSpatialUncertain(numberOfGoods);
+				domainGenerator.setNumberOfJPMFSamples(10000);
+				domainGenerator.setNumberOfBombsToThrow(1);
+				domainGenerator.setBombsParameters(Arrays.asList(primaryReductionCoef), Arrays.asList(secondaryReductionCoef), Arrays.asList(1.), Arrays.asList(1.));
+				domainGenerator.generateJPMF();
+			}
+			catch (SpacialDomainGenerationException e1) 
+			{
+				e1.printStackTrace();
+				continue;
+			}
 			
-			int[] irViolation  =  new int[numberOfSampleGames];
-			double[] efficiency = new double[numberOfSampleGames];
-			int[] emptyCoreCounter = new int[numberOfSampleGames];
-			int[] vcgInCoreCounter = new int[numberOfSampleGames];
+			//Realizations of availabilities are drawn from samples of the JPMF by every game using its own seed, so that
+			//results do not depend on the number of threads
+			AvailabilitySampleIndex samples = AvailabilitySampleIndex.fromJPMF(domainGenerator.getJPMF(), 10000);
 			
-			for(int j = 0; j < numberOfRuns; ++j)
+			final int costsLimitIdx = k;
+			final double shading = shadingFactor;
+			MonteCarloEstimator estimator = new MonteCarloEstimator(new MonteCarloEstimator.IGame()
 			{
-				DomainGeneratorSpatialUncertain domainGenerator;
-				try {
-					domainGenerator = new DomainGeneratorSpatialUncertain(numberOfGoods);
-				
-					domainGenerator.setNumberOfJPMFSamples(10000);
-					domainGenerator.setNumberOfBombsToThrow(1);
-					domainGenerator.setBombsParameters(Arrays.asList(primaryReductionCoef), Arrays.asList(secondaryReductionCoef), Arrays.asList(1.), Arrays.asList(1.));
-					domainGenerator.generateJPMF();
-				
-					for(int i = 0; i < numberOfSampleGames; ++i)
-					{
-						//System.out.println("i="+i);
-						Random generator = new Random(j*10000 + i);
-						//generator.setSeed(System.nanoTime());
+				@Override
+				public ProbabilisticCAXOR generateAuction(int i) throws Exception
+				{
+					Random generator = new Random(i);
 					
-						List<Type> bids = new ArrayList<Type>();
+					List<Type> bids = new ArrayList<Type>();
+					synchronized(domainGenerator)
+					{
 						for(int q = 0; q < numberOfAgents; ++q)
 						{
-							Type ct = domainGenerator.generateBid(j*10000 + i*100 + q*10, types.get(q).getAgentId());
+							Type ct = domainGenerator.generateBid(i*100 + q*10, types.get(q).getAgentId());
 							for(int s = 0; s < ct.getNumberOfAtoms(); ++s)
-								ct.getAtom(s).setValue( ct.getAtom(s).getValue() * shadingFactor );
+								ct.getAtom(s).setValue( ct.getAtom(s).getValue() * shading );
 							bids.add(ct);
 						}
+					}
 					
-						List<Double> costs = new ArrayList<Double>();
-						for(int q = 0; q < numberOfGoods; ++q)
-							costs.add( costsLimit[k] * generator.nextDouble());
+					List<Double> costs = new ArrayList<Double>();
+					for(int q = 0; q < numberOfGoods; ++q)
+						costs.add( costsLimit[costsLimitIdx] * generator.nextDouble());
 					
-						ProbabilisticCAXOR auction = new ProbabilisticCAXOR( bids.size(), numberOfGoods, bids, costs, domainGenerator.getJPMF());
-						auction.setSolver(solver);
-						auction.setPaymentRule(paymentRule);
-						auction.setSeed(System.nanoTime());
+					MarginalAvailabilityCache availabilities = new MarginalAvailabilityCache(domainGenerator.getJPMF(), samples);
+					availabilities.setSeed(i);
 					
-						try
-						{
-							try
-							{
-								auction.solveIt();
-							}
-							catch(PaymentException e)
-							{
-								if(e.getMessage().equals("Empty Core"))
-									emptyCoreCounter[i] += 1;
-								else if(e.getMessage().equals("VCG is in the Core"))
-									vcgInCoreCounter[i] += 1;
-							}
-							AllocationEC allocation = (AllocationEC)auction.getAllocation();
-							double[] payments = auction.getPayments();
-								
-							int numberOfAllocatedAgents = 0;
-							if(allocation.getNumberOfAllocatedAuctioneers() > 0)
-								numberOfAllocatedAgents = allocation.getBiddersInvolved(0).size();
+					ProbabilisticCAXOR auction = new ProbabilisticCAXOR( bids.size(), numberOfGoods, bids, costs, availabilities);
+					auction.setPaymentRule(paymentRule);
+					auction.setSeed(i);
+					return auction;
+				}
+				
+				@Override
+				public double[] evaluate(int i, ProbabilisticCAXOR auction, PaymentException paymentException) throws Exception
+				{
+					double[] metrics = new double[NUMBER_OF_METRICS];
+					if( paymentException != null && paymentException.getMessage().equals("Empty Core") )
+						metrics[EMPTY_CORE] = 1.;
+					
+					AllocationEC allocation = (AllocationEC)auction.getAllocation();
+					double[] payments = auction.getPayments();
+					
+					int numberOfAllocatedAgents = 0;
+					if(allocation.getNumberOfAllocatedAuctioneers() > 0)
+						numberOfAllocatedAgents = allocation.getBiddersInvolved(0).size();
+					
+					for(int q = 0; q < numberOfAllocatedAgents; ++q)
+					{
+						int allocatedBidderId = allocation.getBiddersInvolved(0).get(q);
+						int allocatedBundleIdx = allocation.getAllocatedBundlesOfTrade(0).get(q);
+						AtomicBid allocatedAtom = auction.getBids().get(allocatedBidderId-1).getAtom(allocatedBundleIdx);
+						double value = allocatedAtom.getValue() / shading;
+						double realizedAvailability = allocation.getRealizedRV(0, q);
+						if( value*realizedAvailability - payments[q] < 0 )
+							metrics[IR_VIOLATIONS] += 100.;								//In percent
 						
-							for(int q = 0; q < numberOfAllocatedAgents; ++q)
-							{
-								int allocatedBidderId = allocation.getBiddersInvolved(0).get(q);
-								int allocatedBundleIdx = allocation.getAllocatedBundlesOfTrade(0).get(q);
-								double value = bids.get(allocatedBidderId-1).getAtom(allocatedBundleIdx).getValue() / shadingFactor;
-								double realizedAvailability = allocation.getRealizedRV(0, q);
-								if( value*realizedAvailability - payments[q] < 0 )
-									irViolation[i]+=1;
-							
-								double realizedValue = value*realizedAvailability; 
-								double realizedCost = bids.get(allocatedBidderId-1).getAtom(allocatedBundleIdx).computeCost(costs)*realizedAvailability;
-								efficiency[i] += realizedValue - realizedCost;
-							}
-						}
-						catch (Exception e) 
-						{
-						e.printStackTrace();
-						}
+						double realizedValue = value*realizedAvailability; 
+						double realizedCost = allocatedAtom.computeCost(auction.getCosts())*realizedAvailability;
+						metrics[EFFICIENCY] += realizedValue - realizedCost;
 					}
-					//System.out.println("[IRV]="+irViolation[j]);
-					//System.out.println("Eff=" + efficiency[j]);
-					//System.out.println("EmptyCore=" + emptyCoreCounter[j]);
-					//System.out.println("VCG in the Core=" + vcgInCoreCounter[j]);
-				} 
-				catch (SpacialDomainGenerationException e1) 
+					return metrics;
+				}
+			}, NUMBER_OF_METRICS, numberOfThreads);
+			
+			if( targetWidth > 0 )
+			{
+				double[] targetWidths = new double[NUMBER_OF_METRICS];
+				switch(testName)
 				{
-					e1.printStackTrace();
+				case "Efficiency"		:	targetWidths[EFFICIENCY] = targetWidth;		break;
+				case "IRV"				:	targetWidths[IR_VIOLATIONS] = targetWidth;	break;
+				case "EmptyCore"		:	targetWidths[EMPTY_CORE] = targetWidth;		break;
 				}
+				estimator.setTargetWidths(targetWidths);
 			}
 			
-			double irMean = 0.;
-			double effMean = 0.;
-			double emptyCoreMean = 0.;
-			for(int j = 0; j < numberOfSampleGames; ++j)
+			MonteCarloEstimator.EstimationResult result;
+			try
 			{
-				irMean += irViolation[j];
-				effMean+= efficiency[j];
-				emptyCoreMean += emptyCoreCounter[j];
+				result = estimator.run(numberOfSampleGames);
 			}
-			irMean /= numberOfSampleGames;
-			irMean *= 100;
-			effMean/= numberOfSampleGames;
-			emptyCoreMean /=numberOfSampleGames;
-			
-			double effStdErr = 0.;
-			for(int j = 0; j < numberOfSampleGames; ++j)
-				effStdErr += Math.pow(efficiency[j] - effMean, 2);
-
-			effStdErr /= numberOfSampleGames;
-			effStdErr = Math.sqrt(effStdErr);
-			effStdErr = effStdErr / Math.sqrt(numberOfSampleGames);
-
-			
-			double irStdErr = 0.;
-			for(int j = 0; j < numberOfSampleGames; ++j)
-				irStdErr += Math.pow(irViolation[j] - irMean, 2);
-
-			irStdErr /= numberOfSampleGames;
-			irStdErr = Math.sqrt(irStdErr);
-			irStdErr = irStdErr / Math.sqrt(numberOfSampleGames);
-
-			
-			double emptyCoreStdErr = 0.;
-			for(int j = 0; j < numberOfSampleGames; ++j)
-				emptyCoreStdErr += Math.pow(emptyCoreCounter[j] - emptyCoreMean, 2);
-
-			emptyCoreStdErr /= numberOfSampleGames;
-			emptyCoreStdErr = Math.sqrt(emptyCoreStdErr);
-			emptyCoreStdErr = emptyCoreStdErr / Math.sqrt(numberOfSampleGames);
+			catch (InterruptedException e)
+			{
+				throw new RuntimeException(e);
+			}
+			double effMean = result.getStatistics(EFFICIENCY).getMean();
+			double effStdErr = result.getStatistics(EFFICIENCY).getStandardError();
+			double irMean = result.getStatistics(IR_VIOLATIONS).getMean();
+			double irStdErr = result.getStatistics(IR_VIOLATIONS).getStandardError();
+			double emptyCoreMean = result.getStatistics(EMPTY_CORE).getMean();
+			double emptyCoreStdErr = result.getStatistics(EMPTY_CORE).getStandardError();
+			_logger.debug("Games: " + result.getNumberOfGames() + "; failed: " + result.getNumberOfFailedGames());
 
 			switch(testName)
 			{
@@ -100,8 +100,7 @@ public class benchmarkMarketPlatform {
 
 		//1. Create sellers
 		double costMean = (costMax + costMin) / 2;
-		double costVar = 0.;
-		double[] costs = new double[numberOfSellers];
+		final double costVar;
 		
 		if( costDistribution.toUpperCase().equals("UNIFORM") )  
 			costVar = Math.pow(costMax-costMin, 2) / 12.;
@@ -112,149 +111,113 @@ public class benchmarkMarketPlatform {
 		List<Double> surplus = new ArrayList<Double>();
 		double[][] profits = new double[nSamples][numberOfSellers];
 		List<Allocation> allocations = new ArrayList<Allocation>();
-				
-		//3. Compute equilibrium prices and allocation for the sample. Do the measurements in equilibrium for each sample.				
-		for(int s = 0; s < nSamples; ++s)
-		{
-			Random gen = new Random( s * 1000 );
-			List<SellerType> sellers = new ArrayList<SellerType>();
-			
-			// 3.1 Generate sellers
-			for(int i = 0; i < numberOfSellers; ++i)
+		
+		final double samplesStartPrice = startPrice;
+		final double samplesTOL = TOL;
+		final double samplesStep = step;
+		
+		//3. Compute equilibrium prices and allocation for the samples. Do the measurements in equilibrium for each sample.
+		MarketEquilibriumBatch batch = new MarketEquilibriumBatch( s -> 
 			{
-				// 3.1.1. Generate cost
-				if( costDistribution.toUpperCase().equals("UNIFORM") )
-					costs[i] = costMin + gen.nextDouble() * (costMax - costMin);
-				else throw new RuntimeException("Not implemented.");
+				Random gen = new Random( s * 1000 );
+				List<SellerType> sellers = new ArrayList<SellerType>();
 				
-				// 3.1.2. Choose the bundle (DB produced by the seller)
-				if( competition.toUpperCase().equals("UNIFORM"))
+				// 3.1 Generate sellers
+				for(int i = 0; i < numberOfSellers; ++i)
 				{
-					int producedDB = dbIDs[ i % numberOfDBs ];
-					AtomicBid sellerBid = new AtomicBid(i+1, Arrays.asList( producedDB ), costs[i]);
-					SellerType seller = new SellerType(sellerBid, Distribution.UNIFORM, costMean, costVar);
-					_logger.debug("Create seller id=" + (i+1) + ". DB produced: " + producedDB);
-					sellers.add(seller);
-				}
-				else if( competition.toUpperCase().equals("LINEAR"))						// 1 + d + 2d + ... + (#DBs-1)*d = #sellers     (arithmetic progression)
-				{
-					int d = (int)Math.floor(2. * (numberOfSellers - 1) / numberOfDBs / (numberOfDBs - 1));	// Increment of the number of sellers per DB 
+					double cost = 0.;
+					// 3.1.1. Generate cost
+					if( costDistribution.toUpperCase().equals("UNIFORM") )
+						cost = costMin + gen.nextDouble() * (costMax - costMin);
+					else throw new RuntimeException("Not implemented.");
 					
-					int producedDB = 0;
-					if( i+1 == 1 )
-						producedDB = dbIDs[0];
-					else
-						for(int j = 1; j <= numberOfDBs; ++j)
-							if( 1 + d*j*(j-1)/2 <= i+1 && i+1 < 1 + d*j*(j+1)/2)
-								producedDB = dbIDs[j-1];
-					
-					AtomicBid sellerBid = new AtomicBid(i+1, Arrays.asList( producedDB ), costs[i]);
-					SellerType seller = new SellerType(sellerBid, Distribution.UNIFORM, costMean, costVar);
-					_logger.debug("Create seller id=" + (i+1) + ". DB produced: " + producedDB);
-					sellers.add(seller);
+					// 3.1.2. Choose the bundle (DB produced by the seller)
+					if( competition.toUpperCase().equals("UNIFORM"))
+					{
+						int producedDB = dbIDs[ i % numberOfDBs ];
+						AtomicBid sellerBid = new AtomicBid(i+1, Arrays.asList( producedDB ), cost);
+						SellerType seller = new SellerType(sellerBid, Distribution.UNIFORM, costMean, costVar);
+						_logger.debug("Create seller id=" + (i+1) + ". DB produced: " + producedDB);
+						sellers.add(seller);
+					}
+					else if( competition.toUpperCase().equals("LINEAR"))						// 1 + d + 2d + ... + (#DBs-1)*d = #sellers     (arithmetic progression)
+					{
+						int d = (int)Math.floor(2. * (numberOfSellers - 1) / numberOfDBs / (numberOfDBs - 1));	// Increment of the number of sellers per DB 
+						
+						int producedDB = 0;
+						if( i+1 == 1 )
+							producedDB = dbIDs[0];
+						else
+							for(int j = 1; j <= numberOfDBs; ++j)
+								if( 1 + d*j*(j-1)/2 <= i+1 && i+1 < 1 + d*j*(j+1)/2)
+									producedDB = dbIDs[j-1];
+						
+						AtomicBid sellerBid = new AtomicBid(i+1, Arrays.asList( producedDB ), cost);
+						SellerType seller = new SellerType(sellerBid, Distribution.UNIFORM, costMean, costVar);
+						_logger.debug("Create seller id=" + (i+1) + ". DB produced: " + producedDB);
+						sellers.add(seller);
+					}
+					else if( competition.toUpperCase().equals("MONOPOLISTS"))
+					{
+						// Number of sellers equals to the number of monopolists. For other DBs competition is equal to 2.
+						int numberOfMonopolists = 2 * numberOfDBs - numberOfSellers;
+						int producedDB = 0;
+						if( i < numberOfMonopolists )
+							producedDB = dbIDs[i];
+						else
+							producedDB = dbIDs[numberOfMonopolists + (i - numberOfMonopolists)%(numberOfDBs-numberOfMonopolists) ];
+						
+						AtomicBid sellerBid = new AtomicBid(i+1, Arrays.asList( producedDB ), cost);
+						SellerType seller = new SellerType(sellerBid, Distribution.UNIFORM, costMean, costVar);
+						_logger.debug("Create seller id=" + (i+1) + ". DB produced: " + producedDB);
+						sellers.add(seller);
+					}
 				}
-				else if( competition.toUpperCase().equals("MONOPOLISTS"))
-				{
-					// Number of sellers equals to the number of monopolists. For other DBs competition is equal to 2.
-					int numberOfMonopolists = 2 * numberOfDBs - numberOfSellers;
-					int producedDB = 0;
-					if( i < numberOfMonopolists )
-						producedDB = dbIDs[i];
-					else
-						producedDB = dbIDs[numberOfMonopolists + (i - numberOfMonopolists)%(numberOfDBs-numberOfMonopolists) ];
-					
-					AtomicBid sellerBid = new AtomicBid(i+1, Arrays.asList( producedDB ), costs[i]);
-					SellerType seller = new SellerType(sellerBid, Distribution.UNIFORM, costMean, costVar);
-					_logger.debug("Create seller id=" + (i+1) + ". DB produced: " + producedDB);
-					sellers.add(seller);
-				}
-			}
-			
-			//3.2. Generate buyers
-			_logger.debug("Generate  buyers...");
-			BuyersGenerator buyersGenerator = new BuyersGenerator(numberOfDBs, endowment, s);
-			List<ParametrizedQuasiLinearAgent> buyers = new CopyOnWriteArrayList<ParametrizedQuasiLinearAgent>();
-			
-			for(int i = 0; i < numberOfBuyers; ++i)
-				buyers.add(buyersGenerator.generateBuyer(i+1));
-			
-			//3.2. Create market platform and evaluate the market demand
-			MarketPlatform mp = new MarketPlatform(buyers, sellers);
-			mp.setToleranceLvl(TOL);
-			mp.setStep(step);
-			mp.setNumberOfThreads(nThreads);
-					
-			//3.3. Compute the equilibrium price
-			double price  =  mp.tatonementPriceSearch(startPrice);
-			//mp.resetCache();
+				
+				//3.2. Generate buyers
+				_logger.debug("Generate  buyers...");
+				BuyersGenerator buyersGenerator = new BuyersGenerator(numberOfDBs, endowment, s);
+				List<ParametrizedQuasiLinearAgent> buyers = new CopyOnWriteArrayList<ParametrizedQuasiLinearAgent>();
+				
+				for(int i = 0; i < numberOfBuyers; ++i)
+					buyers.add(buyersGenerator.generateBuyer(i+1));
+				
+				return new MarketEquilibriumBatch.MarketSample(sellers, buyers, samplesStartPrice);
+			}, nThreads);
+		
+		batch.setConfigurator( mp -> 
+			{
+				mp.setToleranceLvl(samplesTOL);
+				mp.setStep(samplesStep);
+			});
+		
+		//3.4. Measure the efficiency, surplus, etc.
+		for(MarketEquilibriumBatch.EquilibriumResult result : batch.run(nSamples))
+		{
+			if( result.getError() != null ) throw result.getError();
 			
-			p.add(price);
+			int s = result.getIndex();
+			double price = result.getPrice();
 			_logger.debug("Price = " + price);
 			
-			//---------------------------------------------------
-			//
-			//3.4. Measure the efficiency, surplus, etc.
-			//
-			//---------------------------------------------------
-			_logger.debug("Start benchmarking with the equilibrium price p="+price);
-			
-			//3.4.1.
-			List< List<Double> > inducedValues = mp.computeValuesOfDBs(price);
-			System.out.println(">>" + inducedValues.get(0).toString());
-			
-			//Now, solve the BORA auction with the induced values of DBs and compute the total payment to be accrued to sellers
-			_logger.debug("Instantiate BORA...");
-			SurplusOptimalReverseAuction auction = new SurplusOptimalReverseAuction(sellers, inducedValues);
-			auction.setSolver(mp.getSolver());
-			auction.solveIt();
-			
-			Allocation allocation = auction.getAllocation();
-			double[] payments = auction.getPayments();
+			Allocation allocation = result.getAllocation();
 			allocations.add(allocation);
-			
-			int alloc = 0;									// Binary representation of the deterministic allocation of DBs
-			double totalCost = 0.;
+			profits[s] = result.getProfits();
 			for(int i = 0; i < allocation.getBiddersInvolved(0).size(); ++i )
 			{
 				int sellerId = allocation.getBiddersInvolved(0).get(i);
-				totalCost += sellers.get(sellerId-1).getAtom(0).getValue();
-				profits[s][sellerId - 1] = payments[i] - sellers.get(sellerId-1).getAtom(0).getValue();
-				int bit = 1 << (sellers.get(sellerId-1).getInterestingSet(0).get(0) - 1);
-				alloc = alloc | bit;
-				System.out.println("Seller with id="+ sellerId + " is allocated. Payment="+payments[i]);
-				System.out.println("Profit of this seller ("+sellers.get(sellerId-1).getAgentId()+") is " + payments[i] + "-" + sellers.get(sellerId-1).getAtom(0).getValue() + " = " + profits[s][sellerId - 1] );
-			}
-			System.out.println("Allocation of BORA: " + allocation.getBiddersInvolved(0).toString() + "(" + alloc + ")");
-			
-			if(alloc == 0) 					//trivial equilibrium
-				p.remove(p.size()-1);		//remove the last element
-			
-			//3.4.2.			
-			for(int k = 0; k < numberOfDBs; ++k)
-			{
-				int dbId = dbIDs[k];
-				double dbValue = inducedValues.get(dbId-1).get(alloc);
-				System.out.println( "DB's value " + dbValue );
+				System.out.println("Seller with id="+ sellerId + " is allocated. Payment="+result.getPayments()[i]);
+				System.out.println("Profit of this seller ("+sellerId+") is " + profits[s][sellerId - 1] );
 			}
+			System.out.println("Allocation of BORA: " + allocation.getBiddersInvolved(0).toString() + "(" + result.getAllocatedDBs() + ")");
+			System.out.println("Total surplus of buyers: " + result.getSurplus() );
+			System.out.println("Total welfare: " + result.getWelfare() );
 			
-			// Compute buyers' utility
-			double totalUtility = 0.;
-			double totalValue = 0.;
-			for(int i = 0; i < numberOfBuyers; ++i)
-			{
-				List<Double> consumptionBundle = buyers.get(i).solveConsumptionProblem(price);
-				totalUtility += buyers.get(i).computeUtility(alloc, numberOfDBs, consumptionBundle) - buyers.get(i).getEndowment();
-				totalValue += buyers.get(i).computeUtility(alloc, numberOfDBs, consumptionBundle) - consumptionBundle.get(0);
-			}
-			System.out.println("Total surplus of buyers: " + totalUtility );
-			System.out.println("Total welfare: " + (totalValue - totalCost) );
-			surplus.add( totalUtility );
-			welfare.add( totalValue - totalCost );
-//welfare.add(totalUtility);//!!!!!!!!!!!!!!!!!!!
-			if(alloc == 0) 								//trivial equilibrium
+			if( !result.isTrivial() )							//Trivial equilibria are not measured
 			{
-				surplus.remove(surplus.size()-1);		//remove the last element
-				welfare.remove(welfare.size()-1);
+				p.add(price);
+				surplus.add( result.getSurplus() );
+				welfare.add( result.getWelfare() );
 			}
 		}
 		
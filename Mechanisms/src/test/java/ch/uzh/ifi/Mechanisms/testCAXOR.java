@@ -6,6 +6,10 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.Test;
 
@@ -84,6 +88,104 @@ public class testCAXOR {
 		assertTrue( vcg.get(1) == 10 );
 	}
 
+	/**
+	 * The same setup as in testCAXOR_Simple but the WDP is solved using the pure-Java branch-and-bound solver.
+	 * Check allocation
+	 * Check VCG payments
+	 * @throws Exception
+	 */
+	@Test
+	public void testCAXOR_SimpleBranchAndBound() throws Exception {
+		
+		int numberOfAgents = 2;
+		int numberOfItems = 4;
+		List<Double> costs = new ArrayList<Double>();
+		for(int i = 0; i < numberOfItems; ++i)
+			costs.add(0.);
+				
+		//Create bid 1:
+		AtomicBid atom1 = new AtomicBid(1, Arrays.asList(1), 20);
+		AtomicBid atom2 = new AtomicBid(1, Arrays.asList(2), 20);
+		AtomicBid atom3 = new AtomicBid(1, Arrays.asList(3, 4), 10);
+		Type bid1 = new CombinatorialType(atom1, atom2, atom3);
+		
+		//Create bid 2:
+		AtomicBid atom21 = new AtomicBid(2, Arrays.asList(1, 2), 35);
+		AtomicBid atom22 = new AtomicBid(2, Arrays.asList(3), 10);
+		Type bid2 = new CombinatorialType(atom21, atom22);
+		
+		List<Type> bids = Arrays.asList(bid1, bid2);
+		
+		CAXOR ca = new CAXOR(numberOfAgents, numberOfItems, bids, costs);
+		ca.setWDPSolver(new BranchAndBoundWDPSolver());
+		ca.computeWinnerDetermination();
+		
+		Allocation allocation = ca.getAllocation();
+		assertTrue( allocation.getNumberOfAllocatedAuctioneers() == 1 );
+		assertTrue( allocation.getBiddersInvolved(0).size() == 2 );
+		assertTrue( allocation.getBiddersInvolved(0).get(0) == 1 );
+		assertTrue( allocation.getBiddersInvolved(0).get(1) == 2 );
+		
+		assertTrue( allocation.getAllocatedWelfare() == 45);
+		
+		assertTrue( allocation.getAllocatedBundlesOfTrade(0).size() == 2);
+		assertTrue( allocation.getAllocatedBundlesOfTrade(0).get(0) == 2);
+		assertTrue( allocation.getAllocatedBundlesOfTrade(0).get(1) == 0);
+		
+		List<Double> vcg = ca.computeVCG();		
+		assertTrue( vcg.size() == 2 );
+		assertTrue( vcg.get(0) == 0);
+		assertTrue( vcg.get(1) == 10 );
+	}
+	
+	/**
+	 * Random instances with a fixed seed are solved using CPLEX and using the pure-Java branch-and-bound solver.
+	 * Check that both solvers find allocations with the same welfare.
+	 * @throws Exception
+	 */
+	@Test
+	public void testCAXOR_BranchAndBoundVsCPLEX() throws Exception {
+		
+		Random generator = new Random(1);
+		for(int instance = 0; instance < 50; ++instance)
+		{
+			int numberOfAgents = 2 + generator.nextInt(5);
+			int numberOfItems = 4 + generator.nextInt(80);
+			List<Double> costs = new ArrayList<Double>();
+			for(int k = 0; k < numberOfItems; ++k)
+				costs.add(0.);
+			
+			List<Type> bids = new ArrayList<Type>();
+			for(int i = 0; i < numberOfAgents; ++i)
+			{
+				int numberOfAtoms = 1 + generator.nextInt(5);
+				Type bid = new CombinatorialType();
+				for(int j = 0; j < numberOfAtoms; ++j)
+				{
+					int bundleSize = 1 + generator.nextInt(4);
+					List<Integer> items = new ArrayList<Integer>();
+					while( items.size() < bundleSize )
+					{
+						int itemId = 1 + generator.nextInt(numberOfItems);
+						if( !items.contains(itemId) )
+							items.add(itemId);
+					}
+					bid.addAtomicBid(new AtomicBid(i + 1, items, 1. + 10. * generator.nextDouble()));
+				}
+				bids.add(bid);
+			}
+			
+			CAXOR caCPLEX = new CAXOR(numberOfAgents, numberOfItems, bids, costs);
+			caCPLEX.computeWinnerDetermination();
+			
+			CAXOR caBranchAndBound = new CAXOR(numberOfAgents, numberOfItems, bids, costs);
+			caBranchAndBound.setWDPSolver(new BranchAndBoundWDPSolver());
+			caBranchAndBound.computeWinnerDetermination();
+			
+			assertEquals(caCPLEX.getAllocation().getAllocatedWelfare(), caBranchAndBound.getAllocation().getAllocatedWelfare(), 1e-6);
+		}
+	}
+
 	@Test
 	public void testCAXOR3() throws Exception {
 		
@@ -150,6 +252,186 @@ public class testCAXOR {
 		assertTrue( vcg.get(1) == 10 );
 	}
 	
+	/**
+	 * The same setup as in testCAXOR3 but VCG payments are computed by several threads which share
+	 * the thread-safe branch-and-bound WDP solver.
+	 * @throws Exception
+	 */
+	@Test
+	public void testCAXOR3_ParallelVCG() throws Exception {
+		
+		int numberOfAgents = 3;
+		int numberOfItems = 4;
+		List<Double> costs = Arrays.asList(0., 0., 0., 0.);
+		List<Type> bids = createBidsCAXOR3();
+		
+		IWinnerDeterminationSolver wdpSolver = new BranchAndBoundWDPSolver();
+		CAXOR ca = new CAXOR(numberOfAgents, numberOfItems, bids, costs);
+		ca.setWDPSolver(wdpSolver);
+		ca.computeWinnerDetermination();
+		Allocation allocation = ca.getAllocation();
+		assertTrue( allocation.getAllocatedWelfare() == 55 );
+		
+		VCGPayments vcgRule = new VCGPayments(allocation, bids, Arrays.asList(1, 1, 1, 1), numberOfItems, costs);
+		vcgRule.setWDPSolver(wdpSolver);
+		vcgRule.setNumberOfThreads(4);
+		List<Double> vcg = vcgRule.computePayments();
+		assertTrue( vcg.size() == 2 );
+		assertTrue( vcg.get(0) == 30);
+		assertTrue( vcg.get(1) == 10 );
+		
+		//The same solver of marginal economies is used by two payment rules and is not closed by them
+		ParallelMarginalEconomiesSolver sharedSolver = new ParallelMarginalEconomiesSolver(4);
+		for(int k = 0; k < 2; ++k)
+		{
+			vcgRule = new VCGPayments(allocation, bids, Arrays.asList(1, 1, 1, 1), numberOfItems, costs);
+			vcgRule.setWDPSolver(wdpSolver);
+			vcgRule.setMarginalEconomiesSolver(sharedSolver);
+			vcg = vcgRule.computePayments();
+			assertTrue( vcg.size() == 2 );
+			assertTrue( vcg.get(0) == 30);
+			assertTrue( vcg.get(1) == 10 );
+		}
+		sharedSolver.close();
+		
+		//The auction opens one solver of marginal economies with the given number of threads per solveIt()
+		ca = new CAXOR(numberOfAgents, numberOfItems, bids, costs);
+		ca.setWDPSolver(wdpSolver);
+		ca.setNumberOfThreads(4);
+		ca.solveIt();
+		assertTrue( ca.getPayments().length == 2 );
+		assertTrue( ca.getPayments()[0] == 30 );
+		assertTrue( ca.getPayments()[1] == 10 );
+	}
+	
+	/**
+	 * The method creates the bids of testCAXOR3: 3 bidders, 4 items.
+	 * @return the bids of the bidders
+	 */
+	private static List<Type> createBidsCAXOR3()
+	{
+		Type bid1 = new CombinatorialType(new AtomicBid(1, Arrays.asList(1), 20), new AtomicBid(1, Arrays.asList(2), 20), 
+		                                  new AtomicBid(1, Arrays.asList(3, 4), 10));
+		Type bid2 = new CombinatorialType(new AtomicBid(2, Arrays.asList(1, 2), 35), new AtomicBid(2, Arrays.asList(3), 10));
+		Type bid3 = new CombinatorialType(new AtomicBid(3, Arrays.asList(1), 20), new AtomicBid(3, Arrays.asList(2), 20),
+		                                  new AtomicBid(3, Arrays.asList(3, 4), 20), new AtomicBid(3, Arrays.asList(1, 2), 40),
+		                                  new AtomicBid(3, Arrays.asList(3), 10));
+		return Arrays.asList(bid1, bid2, bid3);
+	}
+	
+	/**
+	 * The same setup as in testCAXOR3 but several auctions produced by the factory are solved concurrently.
+	 * The auctions share a pool of two solver contexts.
+	 * @throws Exception
+	 */
+	@Test
+	public void testCAXOR3_SolverContextPool() throws Exception {
+		
+		int numberOfAgents = 3;
+		int numberOfItems = 4;
+		int numberOfAuctions = 6;
+		
+		List<Type> bids = createBidsCAXOR3();
+		
+		SolverContextPool pool = new SolverContextPool(2);
+		IMechanismFactory factory = new CAXORFactory(numberOfAgents, numberOfItems, "VCG", Arrays.asList(0., 0., 0., 0.), null);
+		factory.setSolverContextPool(pool);
+		
+		ExecutorService executor = Executors.newFixedThreadPool(numberOfAuctions);
+		List<Future<double[]>> results = new ArrayList<Future<double[]>>();
+		for(int k = 0; k < numberOfAuctions; ++k)
+		{
+			final Auction auction = factory.produceMechanism(bids, k);
+			results.add( executor.submit( () -> { auction.solveIt(); return auction.getPayments(); } ) );
+		}
+		
+		for(Future<double[]> result : results)
+		{
+			double[] vcg = result.get();
+			assertTrue( vcg.length == 2 );
+			assertTrue( vcg[0] == 30 );
+			assertTrue( vcg[1] == 10 );
+		}
+		executor.shutdown();
+		pool.close();
+	}
+	
+	/**
+	 * The same setup as in testCAXOR3 but the auction keeps a solver context checked out after solveIt(), so that
+	 * the WDP can be solved again by the same solver. The context is returned to the pool once released.
+	 * @throws Exception
+	 */
+	@Test
+	public void testCAXOR3_AcquireSolverContext() throws Exception {
+		
+		int numberOfAgents = 3;
+		int numberOfItems = 4;
+		List<Double> costs = Arrays.asList(0., 0., 0., 0.);
+		
+		List<Type> bids = createBidsCAXOR3();
+		
+		SolverContextPool pool = new SolverContextPool(1);
+		CAXOR ca = new CAXOR(numberOfAgents, numberOfItems, bids, costs);
+		ca.setPaymentRule("VCG");
+		ca.setSolverContextPool(pool);
+		
+		ca.acquireSolverContext();
+		ca.solveIt();
+		ca.computeWinnerDetermination();
+		assertTrue( ca.getAllocation().getAllocatedWelfare() == 55 );
+		List<Double> vcg = ca.computeVCG();							//Marginal economies are solved by the solver of the context
+		assertTrue( vcg.size() == 2 );
+		assertTrue( vcg.get(0) == 30);
+		assertTrue( vcg.get(1) == 10 );
+		ca.releaseSolverContext();
+		
+		SolverContext context = pool.acquire();
+		assertTrue( context.getNumberOfUses() == 1 );
+		pool.release(context);
+		pool.close();
+	}
+	
+	/**
+	 * A batch of auctions with random costs is solved by one and by three workers. Results should be delivered
+	 * in the input order and should not depend on the number of workers.
+	 * @throws Exception
+	 */
+	@Test
+	public void testCAXOR3_BatchExecutor() throws Exception {
+		
+		int numberOfAgents = 3;
+		int numberOfItems = 4;
+		int numberOfAuctions = 20;
+		
+		List<Type> bids = createBidsCAXOR3();
+		
+		List<List<Type>> typeProfiles = new ArrayList<List<Type>>();
+		List<Long> seeds = new ArrayList<Long>();
+		for(int k = 0; k < numberOfAuctions; ++k)
+		{
+			typeProfiles.add(bids);
+			seeds.add(100L + k);
+		}
+		
+		AuctionBatchExecutor sequential = new AuctionBatchExecutor(new CAXORFactory(numberOfAgents, numberOfItems, "VCG", Arrays.asList(5., 5., 5., 5.), null), 1);
+		List<AuctionBatchExecutor.AuctionResult> expected = sequential.run(typeProfiles, seeds);
+		sequential.shutdown();
+		
+		AuctionBatchExecutor parallel = new AuctionBatchExecutor(new CAXORFactory(numberOfAgents, numberOfItems, "VCG", Arrays.asList(5., 5., 5., 5.), null), 3);
+		List<AuctionBatchExecutor.AuctionResult> results = parallel.run(typeProfiles, seeds);
+		parallel.shutdown();
+		
+		assertTrue( results.size() == numberOfAuctions );
+		for(int k = 0; k < numberOfAuctions; ++k)
+		{
+			assertTrue( results.get(k).getIndex() == k );
+			assertTrue( results.get(k).getSeed() == 100L + k );
+			assertTrue( results.get(k).getError() == null );
+			assertTrue( Arrays.equals(results.get(k).getPayments(), expected.get(k).getPayments()) );
+			assertEquals( expected.get(k).getAllocation().getAllocatedWelfare(), results.get(k).getAllocation().getAllocatedWelfare(), 1e-6 );
+		}
+	}
+	
 	@Test
 	public void testReservedPrice() throws Exception {
 		
@@ -580,6 +862,124 @@ public class testCAXOR {
 		}
 	}
 	
+	/**
+	 * Allocation, VCG and core payments of the LLG domain computed by the closed-form kernel.
+	 */
+	@Test
+	public void testLLGKernel() 
+	{
+		double[] values = {0.1, 0.2, 0.21};
+		double[] costs  = {0.05, 0.1, 0.15};
+		double[] availabilities = {1., 1., 1.};
+		
+		int allocation = LLGKernel.computeAllocation(LLGKernel.ALL_BIDDERS, values, costs, availabilities);
+		assertTrue( allocation == (LLGKernel.LOCAL1 | LLGKernel.LOCAL2) );
+		assertTrue( Math.abs( LLGKernel.computeWelfare(LLGKernel.ALL_BIDDERS, values, costs, availabilities) - 0.15 ) < 1e-6 );
+		assertTrue( Math.abs( LLGKernel.computeWelfare(LLGKernel.GLOBAL, values, costs, availabilities) - 0.06 ) < 1e-6 );
+		
+		double[] vcg = new double[LLGKernel.NUMBER_OF_BIDDERS];
+		LLGKernel.computeVCGPayments(LLGKernel.ALL_BIDDERS, allocation, values, costs, vcg);
+		assertTrue( Math.abs( vcg[0] - 0.05 ) < 1e-6 );
+		assertTrue( Math.abs( vcg[1] - 0.11 ) < 1e-6 );
+		assertTrue( vcg[2] == 0. );
+		
+		//Without the global bidder the second local bidder pays its cost only
+		LLGKernel.computeVCGPayments(LLGKernel.LOCAL1 | LLGKernel.LOCAL2, allocation, values, costs, vcg);
+		assertTrue( Math.abs( vcg[0] - 0.05 ) < 1e-6 );
+		assertTrue( Math.abs( vcg[1] - 0.1 ) < 1e-6 );
+		LLGKernel.computeVCGPayments(LLGKernel.ALL_BIDDERS, allocation, values, costs, vcg);
+		
+		double A = costs[0] + costs[1] + LLGKernel.computeWelfare(LLGKernel.GLOBAL, values, costs, availabilities);
+		assertTrue( !LLGKernel.isCoreEmpty(vcg[0], vcg[1], A, values[0], values[1]) );
+		
+		double[] payments = new double[2];
+		LLGKernel.projectOnCore(vcg[0], vcg[1], A, values[0], values[1], true, payments);
+		assertTrue( Math.abs( payments[0] - 0.075 ) < 1e-6 );
+		assertTrue( Math.abs( payments[1] - 0.135 ) < 1e-6 );
+		
+		//The global bidder wins if its value is high enough
+		values[2] = 0.5;
+		assertTrue( LLGKernel.computeAllocation(LLGKernel.ALL_BIDDERS, values, costs, availabilities) == LLGKernel.GLOBAL );
+	}
+	
+	/**
+	 * A lower bound of the only winner exceeds its upper bound by 5e-5. With the default (strict) check the engine reports
+	 * the empty core before the constraint generation starts. With the tolerance 1e-4 used by CORE the check passes and
+	 * the engine proceeds to the SEP (the provider stops it there).
+	 */
+	@Test
+	public void testEmptyCoreTolerance() throws Exception
+	{
+		AtomicBid atom = new AtomicBid(1, Arrays.asList(1), 0.1);
+		List<Type> bids = new LinkedList<Type>();
+		bids.add(new CombinatorialType(atom));
+		
+		Allocation allocation = new Allocation();
+		allocation.addAllocatedAgent(0, Arrays.asList(1), Arrays.asList(0), 0.1, Arrays.asList(0.1));
+		
+		ICoreConstraintProvider provider = new ICoreConstraintProvider()
+		{
+			@Override
+			public List<Double> computeLowerBounds()
+			{
+				return new ArrayList<Double>(Arrays.asList(0.10005));
+			}
+			
+			@Override
+			public double computeUpperBound(int winnerIdx)
+			{
+				return 0.1;
+			}
+			
+			@Override
+			public double computeSEPCoefficient(int bidderIdx, int atomIdx)
+			{
+				throw new RuntimeException("SEP reached");
+			}
+			
+			@Override
+			public double computeWinnersSEPValue(int winnerIdx)
+			{
+				return 0.1;
+			}
+			
+			@Override
+			public double computeWinnersSEPCost(int winnerIdx)
+			{
+				return 0.;
+			}
+			
+			@Override
+			public boolean isGammaSFormulation()
+			{
+				return true;
+			}
+		};
+		
+		CoreConstraintGenerationEngine engine = new CoreConstraintGenerationEngine(allocation, 1, 1, bids, new BinaryBids(bids, 1), provider);
+		try
+		{
+			engine.computePayments();
+			fail("The core should be empty");
+		}
+		catch(PaymentException e)
+		{
+			assertEquals("Empty Core", e.getMessage());
+		}
+		
+		engine = new CoreConstraintGenerationEngine(allocation, 1, 1, bids, new BinaryBids(bids, 1), provider);
+		engine.setEmptyCoreTolerance(1e-4);
+		try
+		{
+			engine.computePayments();
+			fail("The constraint generation should reach the SEP");
+		}
+		catch(RuntimeException e)
+		{
+			assertEquals("SEP reached", e.getMessage());
+		}
+	}
+	
 	/*
 	@Test
 	public void testCAXOR_CORE() 
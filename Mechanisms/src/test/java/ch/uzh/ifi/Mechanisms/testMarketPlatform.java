@@ -273,7 +273,7 @@ public class testMarketPlatform {
 			double price  =  mp.tatonementPriceSearch(0.);
 			System.out.println("Equilibrium price = " + price);
 			
-			List< List<Double> > inducedValues = mp.computeValuesOfDBs(price);
+			InducedValueTable inducedValues = mp.computeInducedValueTable(price);
 			//System.out.println(">>" + inducedValues.get(0).toString());
 			//System.out.println(">>" + inducedValues.get(1).toString());
 			
@@ -568,4 +568,190 @@ public class testMarketPlatform {
 	}*/
 	
 	
+	/**
+	 * Demands and values of DBs computed by several workers should be the same as the ones computed on the calling thread.
+	 * Both platforms share the same buyers.
+	 * @throws Exception 
+	 */
+	@Test
+	public void testParallelVsSequentialEvaluation() throws Exception
+	{
+		int numberOfDBs = 3;
+		int numberOfBuyers = 50;
+		double endowment = 10;
+		
+		List<SellerType> sellers = new LinkedList<SellerType>();
+		for(int j = 0; j < numberOfDBs; ++j)
+		{
+			AtomicBid sellerBid = new AtomicBid(j+1, Arrays.asList(j+1), 0.5 * (j+1));
+			sellers.add(new SellerType(sellerBid, Distribution.UNIFORM, 0.5, 1./12.));
+		}
+		
+		BuyersGenerator gen = new BuyersGenerator(numberOfDBs, endowment, 1);
+		List<ParametrizedQuasiLinearAgent> buyers = new LinkedList<ParametrizedQuasiLinearAgent>();
+		for(int i = 0; i < numberOfBuyers; ++i)
+			buyers.add(gen.generateBuyer(i+1));
+		
+		MarketPlatform mpSequential = new MarketPlatform(buyers, sellers);
+		MarketPlatform mpParallel = new MarketPlatform(buyers, sellers);
+		mpParallel.setNumberOfThreads(4);
+		
+		double[] prices = {0., 0.5, 1.5, 3.};
+		for(double price : prices)
+		{
+			for(int alloc = 0; alloc < (1 << numberOfDBs); ++alloc)
+			{
+				List<Double> demandSequential = mpSequential.computeMarketDemand(price, alloc);
+				List<Double> demandParallel = mpParallel.computeMarketDemand(price, alloc);
+				assertEquals(demandSequential.get(0), demandParallel.get(0), 1e-9);
+				assertEquals(demandSequential.get(1), demandParallel.get(1), 1e-9);
+			}
+			
+			mpSequential.resetCache();
+			mpParallel.resetCache();
+			List< List<Double> > valuesSequential = mpSequential.computeValuesOfDBs(price);
+			List< List<Double> > valuesParallel = mpParallel.computeValuesOfDBs(price);
+			for(int k = 0; k < numberOfDBs; ++k)
+				for(int alloc = 0; alloc < (1 << numberOfDBs); ++alloc)
+					assertEquals(valuesSequential.get(k).get(alloc), valuesParallel.get(k).get(alloc), 1e-9);
+		}
+		
+		mpParallel.shutdown();
+		mpSequential.endSolver();
+		mpParallel.endSolver();
+	}
+	
+	/**
+	 * There are 40 DBs with a single seller each. Values of buyers grow with the number of allocated DBs, so that the
+	 * sparse BORA auction should allocate all DBs including the ones encoded by bits above 32.
+	 * @throws Exception 
+	 */
+	@Test
+	public void testSparseModeWithManyDBs() throws Exception
+	{
+		int numberOfDBs = 40;
+		int numberOfBuyers = 5;
+		double endowment = 100;
+		double price = 0.5;
+		
+		List<SellerType> sellers = new LinkedList<SellerType>();
+		for(int j = 0; j < numberOfDBs; ++j)
+		{
+			AtomicBid sellerBid = new AtomicBid(j+1, Arrays.asList(j+1), 0.01 * (j % 10));
+			sellers.add(new SellerType(sellerBid, Distribution.UNIFORM, 0.5, 1./12.));
+		}
+		
+		// The marginal value of a row is 1 + 0.1 * (the number of allocated DBs) and the threshold is the number of allocated DBs
+		IBuyerValueFunction valueFunction = new IBuyerValueFunction() 
+		{
+			@Override
+			public double getMarginalValue(long allocation)
+			{
+				return 1. + 0.1 * Long.bitCount(allocation);
+			}
+			
+			@Override
+			public double getThreshold(long allocation)
+			{
+				return Long.bitCount(allocation);
+			}
+		};
+		List<BuyerDemandOracle> buyers = new LinkedList<BuyerDemandOracle>();
+		for(int i = 0; i < numberOfBuyers; ++i)
+			buyers.add(new BuyerDemandOracle(endowment, valueFunction));
+		
+		MarketPlatform mp = MarketPlatform.fromDemandOracles(buyers, sellers);
+		mp.setSparseMode(true);
+		assertEquals(numberOfDBs, mp.getNumberOfDBs());
+		
+		Auction auction = mp.solveBORA(price);
+		assertEquals(numberOfDBs, auction.getAllocation().getBiddersInvolved(0).size());
+		
+		long allDBs = (1L << numberOfDBs) - 1;
+		List<Double> marketDemand = mp.computeMarketDemand(price, allDBs);
+		assertEquals(numberOfBuyers * numberOfDBs, marketDemand.get(1), 1e-6);
+		assertEquals(numberOfBuyers * (endowment - price * numberOfDBs), marketDemand.get(0), 1e-6);
+		
+		mp.endSolver();
+	}
+	
+	/**
+	 * The demand oracle of a buyer with linear threshold value functions should reproduce the consumption problem of the
+	 * agent for every deterministic allocation of DBs and every price, also if the budget of the buyer is binding.
+	 */
+	@Test
+	public void testDemandOracleVsAgent()
+	{
+		int numberOfDBs = 2;
+		
+		// 4 possible deterministic allocations, {0b00, 0b01, 0b10, 0b11}
+		Map<Integer, LinearThresholdValueFunction> valueFunctions1 = new HashMap<Integer, LinearThresholdValueFunction>();
+		valueFunctions1.put(0, new LinearThresholdValueFunction(0, 0, Arrays.asList(0., 0.)));
+		valueFunctions1.put(1, new LinearThresholdValueFunction(4, 1, Arrays.asList(0., 1.)));
+		valueFunctions1.put(2, new LinearThresholdValueFunction(4, 1, Arrays.asList(1., 0.)));
+		valueFunctions1.put(3, new LinearThresholdValueFunction(6, 1, Arrays.asList(1., 1.)));
+		
+		Map<Integer, LinearThresholdValueFunction> valueFunctions2 = new HashMap<Integer, LinearThresholdValueFunction>();
+		valueFunctions2.put(0, new LinearThresholdValueFunction(0, 0, Arrays.asList(0., 0.)));
+		valueFunctions2.put(1, new LinearThresholdValueFunction(1, 2, Arrays.asList(0., 1.)));
+		valueFunctions2.put(2, new LinearThresholdValueFunction(1, 2, Arrays.asList(1., 0.)));
+		valueFunctions2.put(3, new LinearThresholdValueFunction(1, 4, Arrays.asList(1., 1.)));
+		
+		List<ParametrizedQuasiLinearAgent> buyers = Arrays.asList(new ParametrizedQuasiLinearAgent(1, 10., valueFunctions1),
+		                                                          new ParametrizedQuasiLinearAgent(2, 10., valueFunctions2),
+		                                                          new ParametrizedQuasiLinearAgent(3, 1., valueFunctions1));	// The budget is binding
+		double[] prices = {0., 0.5, 1.5, 3., 5., 7.};
+		
+		for(ParametrizedQuasiLinearAgent buyer : buyers)
+		{
+			BuyerDemandOracle oracle = new BuyerDemandOracle(buyer, numberOfDBs);
+			for(int allocMask = 0; allocMask < (1 << numberOfDBs); ++allocMask)
+				for(double price : prices)
+				{
+					buyer.updateAllocProbabilityDistribution(allocMask, numberOfDBs);
+					List<Double> optBundle = buyer.solveConsumptionProblem(price);
+					double[] res = oracle.solveConsumptionProblem(price, allocMask);
+					
+					assertEquals(optBundle.get(0), res[BuyerDemandOracle.MONEY], 1e-6);
+					assertEquals(optBundle.get(1), res[BuyerDemandOracle.ROWS], 1e-6);
+					assertEquals(buyer.computeUtility(optBundle) - buyer.getEndowment(), res[BuyerDemandOracle.VALUE], 1e-6);
+				}
+		}
+	}
+	
+	/**
+	 * The cache of the market demand should be indexed by both the price and the allocation of DBs and should evict
+	 * the least recently used entry when full.
+	 */
+	@Test
+	public void testDemandCache()
+	{
+		DemandCache cache = new DemandCache(2);
+		double[] res = new double[BuyerDemandOracle.RESULT_SIZE];
+		
+		cache.put(1., 0b01, new double[] {10., 1., 5.});
+		cache.put(2., 0b01, new double[] {12., 2., 6.});
+		assertTrue( cache.get(1., 0b01, res) );
+		assertTrue(Math.abs( res[BuyerDemandOracle.MONEY] - 10. ) < 1e-6);
+		assertTrue(Math.abs( res[BuyerDemandOracle.ROWS] - 1. ) < 1e-6);
+		assertFalse( cache.get(1., 0b10, res) );
+		
+		cache.put(3., 0b01, new double[] {14., 3., 7.});						// Evicts (2., 0b01) as the least recently used entry
+		assertEquals(2, cache.size());
+		assertEquals(1, cache.getEvictions());
+		assertFalse( cache.get(2., 0b01, res) );
+		assertTrue( cache.get(1., 0b01, res) );
+		assertTrue( cache.get(3., 0b01, res) );
+		assertTrue(Math.abs( res[BuyerDemandOracle.VALUE] - 7. ) < 1e-6);
+		assertEquals(3, cache.getHits());
+		assertEquals(2, cache.getMisses());
+		
+		// Nearby prices are interpolated if a tolerance is set
+		cache.setPriceTolerance(1.);
+		cache.put(0.5, 0b01, new double[] {10., 1., 5.});
+		cache.put(1.5, 0b01, new double[] {12., 3., 6.});
+		assertTrue( cache.get(1., 0b01, res) );
+		assertTrue(Math.abs( res[BuyerDemandOracle.ROWS] - 2. ) < 1e-6);
+		assertFalse( cache.get(3., 0b01, res) );
+	}
 }
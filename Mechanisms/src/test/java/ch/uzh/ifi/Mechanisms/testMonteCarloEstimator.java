@@ -0,0 +1,254 @@
+package ch.uzh.ifi.Mechanisms;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import ch.uzh.ifi.DomainGenerators.GridGenerator;
+import ch.uzh.ifi.MechanismDesignPrimitives.AllocationEC;
+import ch.uzh.ifi.MechanismDesignPrimitives.AtomicBid;
+import ch.uzh.ifi.MechanismDesignPrimitives.CombinatorialType;
+import ch.uzh.ifi.MechanismDesignPrimitives.FocusedBombingStrategy;
+import ch.uzh.ifi.MechanismDesignPrimitives.IBombingStrategy;
+import ch.uzh.ifi.MechanismDesignPrimitives.JointProbabilityMass;
+import ch.uzh.ifi.MechanismDesignPrimitives.Type;
+
+public class testMonteCarloEstimator {
+
+	/**
+	 * For observations 1, 2, ..., n the mean is (n+1)/2 and the unbiased variance is n(n+1)/12. The same holds for
+	 * observations shifted by a large constant (up to the shift of the mean), i.e., the online algorithm should not
+	 * lose precision because of the magnitude of observations.
+	 */
+	@Test
+	public void testRunningStatistics()
+	{
+		RunningStatistics statistics = new RunningStatistics();
+		assertEquals(0, statistics.getNumberOfObservations());
+		assertEquals(0., statistics.getMean(), 1e-12);
+		assertEquals(0., statistics.getVariance(), 1e-12);
+
+		statistics.add(5.);
+		assertEquals(5., statistics.getMean(), 1e-12);
+		assertEquals(0., statistics.getVariance(), 1e-12);
+		assertEquals(0., statistics.getStandardError(), 1e-12);
+
+		int n = 1000;
+		double shift = 1e9;
+		RunningStatistics shiftedStatistics = new RunningStatistics();
+		statistics = new RunningStatistics();
+		for(int i = 1; i <= n; ++i)
+		{
+			statistics.add(i);
+			shiftedStatistics.add(shift + i);
+		}
+
+		assertEquals(n, statistics.getNumberOfObservations());
+		assertEquals((n + 1) / 2., statistics.getMean(), 1e-9);
+		assertEquals(n * (n + 1) / 12., statistics.getVariance(), 1e-6);
+		assertEquals(Math.sqrt((n + 1) / 12.), statistics.getStandardError(), 1e-9);
+		assertEquals(2. * 1.96 * Math.sqrt((n + 1) / 12.), statistics.getConfidenceIntervalWidth(1.96), 1e-9);
+
+		assertEquals(shift + (n + 1) / 2., shiftedStatistics.getMean(), 1e-6);
+		assertEquals(n * (n + 1) / 12., shiftedStatistics.getVariance(), 1e-3);
+	}
+
+	/**
+	 * Observations of the metric alternate between 1 and 0. After n games with k = ceil(n/2) ones the variance is
+	 * k(n-k) / (n(n-1)) and the width of the 95% confidence interval is 2 * 1.96 * sqrt(k(n-k) / (n^2 (n-1))), e.g.,
+	 * 1.96 / sqrt(n-1) for even n. The width 0.2 is first reached after 98 games. The width 0.4 is first reached after
+	 * 25 games, but the estimation should not stop before the min number of games. Failed games and metrics without
+	 * requirements should not affect the stopping rule.
+	 */
+	@Test
+	public void testStoppingRule()
+	{
+		MonteCarloEstimator estimator = new MonteCarloEstimator(null, 2, 1);
+		estimator.setTargetWidths(new double[] {0.2, 0.});
+		assertEquals(98, countGamesToStop(estimator));
+
+		estimator.setTargetWidths(new double[] {0.4, 0.});
+		assertEquals(30, countGamesToStop(estimator));
+
+		estimator.setMinNumberOfGames(10);
+		assertEquals(25, countGamesToStop(estimator));
+
+		//Failed games are not observations
+		MonteCarloEstimator.EstimationResult result = new MonteCarloEstimator.EstimationResult(2);
+		for(int i = 0; i < 26; ++i)
+		{
+			estimator.aggregate(result, null);
+			estimator.aggregate(result, new double[] {i % 2 == 0 ? 1. : 0., 100. * i});
+		}
+		assertEquals(52, result.getNumberOfGames());
+		assertEquals(26, result.getNumberOfFailedGames());
+		assertTrue( estimator.isConverged(result) );
+
+		//No target widths: the estimation never stops early
+		estimator.setTargetWidths(null);
+		assertFalse( estimator.isConverged(result) );
+		
+		//No metric has a requirement: the estimation never stops early
+		estimator.setTargetWidths(new double[] {0., 0.});
+		assertFalse( estimator.isConverged(result) );
+	}
+
+	/**
+	 * EC-VCG auctions of the LLG domain are played by one and by three workers. Every auction draws realizations of
+	 * availabilities from a shared index of samples with the index of the game as the seed, so estimates should not
+	 * depend on the number of workers. Auctions of the parallel run use the solver contexts of a pool set by the caller;
+	 * every game should use a context and the pool should not be closed by the estimator.
+	 * @throws Exception
+	 */
+	@Test
+	public void testRun() throws Exception
+	{
+		int numberOfGames = 40;
+		LLGGame game = new LLGGame();
+		
+		MonteCarloEstimator sequential = new MonteCarloEstimator(game, 2, 1);
+		MonteCarloEstimator.EstimationResult expected = sequential.run(numberOfGames);
+		assertEquals(numberOfGames, expected.getNumberOfGames());
+		assertEquals(0, expected.getNumberOfFailedGames());
+		assertFalse( expected.isConverged() );
+		
+		SolverContextPool pool = new SolverContextPool(3);
+		MonteCarloEstimator parallel = new MonteCarloEstimator(game, 2, 3);
+		parallel.setSolverContextPool(pool);
+		MonteCarloEstimator.EstimationResult result = parallel.run(numberOfGames);
+		assertEquals(numberOfGames, result.getNumberOfGames());
+		assertEquals(0, result.getNumberOfFailedGames());
+		for(int k = 0; k < 2; ++k)
+		{
+			assertEquals(numberOfGames, result.getStatistics(k).getNumberOfObservations());
+			assertEquals(expected.getStatistics(k).getMean(), result.getStatistics(k).getMean(), 1e-12);
+			assertEquals(expected.getStatistics(k).getVariance(), result.getStatistics(k).getVariance(), 1e-12);
+		}
+		
+		int numberOfUses = 0;
+		List<SolverContext> contexts = new ArrayList<SolverContext>();
+		for(int i = 0; i < pool.getSize(); ++i)
+		{
+			contexts.add(pool.acquire());
+			numberOfUses += contexts.get(i).getNumberOfUses();
+		}
+		assertEquals(numberOfGames, numberOfUses);
+		for(SolverContext context : contexts)
+			pool.release(context);
+		pool.close();
+	}
+
+	/**
+	 * Once the requested width is reached, games which were produced in advance should be cancelled, i.e., at most the
+	 * max number of pending games (two per worker) should be played in addition. If no metric has a requirement, all
+	 * games should be played.
+	 * @throws Exception
+	 */
+	@Test
+	public void testRunCancellation() throws Exception
+	{
+		int numberOfThreads = 3;
+		LLGGame game = new LLGGame();
+		MonteCarloEstimator estimator = new MonteCarloEstimator(game, 2, numberOfThreads);
+		estimator.setTargetWidths(new double[] {1e6, 0.});
+		estimator.setMinNumberOfGames(5);
+		
+		MonteCarloEstimator.EstimationResult result = estimator.run(1000);
+		assertTrue( result.isConverged() );
+		assertEquals(5, result.getNumberOfGames());
+		assertTrue( game.getNumberOfAuctions() <= 5 + 2 * numberOfThreads );
+		
+		estimator.setTargetWidths(new double[] {0., 0.});
+		result = estimator.run(20);
+		assertFalse( result.isConverged() );
+		assertEquals(20, result.getNumberOfGames());
+	}
+
+	/**
+	 * The method feeds alternating observations 1, 0, 1, ... of the first metric to the estimator.
+	 * @param estimator the estimator
+	 * @return the number of games after which the estimation stops
+	 */
+	private int countGamesToStop(MonteCarloEstimator estimator)
+	{
+		MonteCarloEstimator.EstimationResult result = new MonteCarloEstimator.EstimationResult(2);
+		for(int i = 0; i < 1000; ++i)
+		{
+			estimator.aggregate(result, new double[] {i % 2 == 0 ? 1. : 0., i});
+			if( estimator.isConverged(result) )
+				return result.getNumberOfGames();
+		}
+		return -1;
+	}
+
+	/**
+	 * A sample game: an EC-VCG auction of the LLG domain (see testProbabilisticCAXOR.testECVCG_LLG). Metrics are the
+	 * expected welfare of the allocation and the revenue of the auction.
+	 */
+	private static class LLGGame implements MonteCarloEstimator.IGame
+	{
+		LLGGame()
+		{
+			_bids = new LinkedList<Type>();
+			_bids.add(new CombinatorialType(new AtomicBid(1, Arrays.asList(1), 0.1)));
+			_bids.add(new CombinatorialType(new AtomicBid(2, Arrays.asList(2), 0.2)));
+			_bids.add(new CombinatorialType(new AtomicBid(3, Arrays.asList(1, 2), 0.15)));
+			_costs = Arrays.asList(0.05, 0.1);
+			
+			GridGenerator generator = new GridGenerator(1, 2);
+			generator.setSeed(0);
+			generator.buildProximityGraph();
+			
+			_jpmf = new JointProbabilityMass( generator.getGrid() );
+			_jpmf.setNumberOfSamples(10000);
+			_jpmf.setNumberOfBombsToThrow(1);
+			List<IBombingStrategy> bombingStrategies = new LinkedList<IBombingStrategy>();
+			bombingStrategies.add(new FocusedBombingStrategy(generator.getGrid(), 1, 1.0, 0.5));
+			_jpmf.setBombs(bombingStrategies, Arrays.asList(1.));
+			_jpmf.update();
+			
+			_index = AvailabilitySampleIndex.fromJPMF(_jpmf, 1000);
+			_numberOfAuctions = new AtomicInteger(0);
+		}
+		
+		@Override
+		public ProbabilisticCAXOR generateAuction(int gameIdx) throws Exception
+		{
+			_numberOfAuctions.incrementAndGet();
+			MarginalAvailabilityCache availabilities = new MarginalAvailabilityCache(_jpmf, _index);
+			availabilities.setSeed(gameIdx);
+			ProbabilisticCAXOR auction = new ProbabilisticCAXOR(_bids.size(), 2, _bids, _costs, availabilities);
+			auction.setPaymentRule("EC-VCG");
+			return auction;
+		}
+		
+		@Override
+		public double[] evaluate(int gameIdx, ProbabilisticCAXOR auction, PaymentException paymentException) throws Exception
+		{
+			double revenue = 0.;
+			for(double payment : auction.getPayments())
+				revenue += payment;
+			return new double[] { ((AllocationEC)auction.getAllocation()).getExpectedWelfare(), revenue };
+		}
+		
+		/**
+		 * @return the number of auctions produced by the game
+		 */
+		int getNumberOfAuctions()
+		{
+			return _numberOfAuctions.get();
+		}
+		
+		private List<Type> _bids;									//Bids of the LLG domain
+		private List<Double> _costs;								//Costs of goods
+		private JointProbabilityMass _jpmf;							//Joint probability mass function of availabilities
+		private AvailabilitySampleIndex _index;						//Samples shared by auctions of all games
+		private AtomicInteger _numberOfAuctions;					//The number of produced auctions
+	}
+}
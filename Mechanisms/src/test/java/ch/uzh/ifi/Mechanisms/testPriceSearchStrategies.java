@@ -0,0 +1,152 @@
+package ch.uzh.ifi.Mechanisms;
+
+import static org.junit.Assert.*;
+
+import java.util.LinkedList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class testPriceSearchStrategies {
+
+	/**
+	 * The excess demand 2*(5.5 - p) is linear with the root 5.5. Starting from 0 with the initial step 1 the bracketing
+	 * evaluates prices 0, 1, 3 and 7 (the step doubles) and the root is bracketed by [3, 7]. Since the excess demand is
+	 * linear, the first secant step finds the root.
+	 * @throws Exception
+	 */
+	@Test
+	public void testBrentLinear() throws Exception
+	{
+		List<Double> evaluatedPrices = new LinkedList<Double>();
+		IExcessDemandFunction excessDemand = p -> { evaluatedPrices.add(p); return 2. * (5.5 - p); };
+
+		BrentPriceSearchStrategy strategy = new BrentPriceSearchStrategy(1e-7, 1e-9, 1., 100);
+		double price = strategy.searchPrice(excessDemand, 0.);
+
+		assertEquals(5.5, price, 1e-7);
+		assertEquals(0., evaluatedPrices.get(0), 1e-12);
+		assertEquals(1., evaluatedPrices.get(1), 1e-12);
+		assertEquals(3., evaluatedPrices.get(2), 1e-12);
+		assertEquals(7., evaluatedPrices.get(3), 1e-12);
+		assertEquals(5, evaluatedPrices.size());
+		assertEquals(evaluatedPrices.size(), strategy.getNumberOfIterations());
+	}
+
+	/**
+	 * The excess demand 1/(1+p) - 0.2 is convex with the root 4. Bracketing from the price 10 should go downwards.
+	 * @throws Exception
+	 */
+	@Test
+	public void testBrentNonlinear() throws Exception
+	{
+		List<Double> evaluatedPrices = new LinkedList<Double>();
+		IExcessDemandFunction excessDemand = p -> { evaluatedPrices.add(p); return 1. / (1. + p) - 0.2; };
+
+		BrentPriceSearchStrategy strategy = new BrentPriceSearchStrategy(1e-10, 1e-12, 1., 100);
+		double price = strategy.searchPrice(excessDemand, 10.);
+
+		assertEquals(4., price, 1e-8);
+		assertEquals(10., evaluatedPrices.get(0), 1e-12);
+		assertEquals(9., evaluatedPrices.get(1), 1e-12);
+		assertEquals(7., evaluatedPrices.get(2), 1e-12);
+		assertEquals(3., evaluatedPrices.get(3), 1e-12);
+		assertEquals(evaluatedPrices.size(), strategy.getNumberOfIterations());
+		assertTrue(strategy.getNumberOfIterations() <= 12);
+	}
+
+	/**
+	 * The excess demand jumps over 0 at the price 2.5, so that it never vanishes. The search should stop once the
+	 * bracket is narrower than the price tolerance.
+	 * @throws Exception
+	 */
+	@Test
+	public void testBrentJump() throws Exception
+	{
+		IExcessDemandFunction excessDemand = p -> p < 2.5 ? 1. : -1.;
+
+		BrentPriceSearchStrategy strategy = new BrentPriceSearchStrategy(1e-7, 1e-6, 1., 100);
+		double price = strategy.searchPrice(excessDemand, 0.);
+
+		assertEquals(2.5, price, 1e-6);
+		assertTrue(strategy.getNumberOfIterations() < 100);
+	}
+
+	/**
+	 * If the excess demand is negative at any price, the price 0 should be returned after a single evaluation.
+	 * @throws Exception
+	 */
+	@Test
+	public void testBrentNegativeExcessDemand() throws Exception
+	{
+		IExcessDemandFunction excessDemand = p -> -1. - p;
+
+		BrentPriceSearchStrategy strategy = new BrentPriceSearchStrategy();
+		double price = strategy.searchPrice(excessDemand, 0.);
+
+		assertEquals(0., price, 1e-12);
+		assertEquals(1, strategy.getNumberOfIterations());
+	}
+
+	/**
+	 * The adaptive step should converge to the root of the excess demand 2*(3 - p) and should need fewer evaluations
+	 * than the tatonement with the same (fixed) step.
+	 * @throws Exception
+	 */
+	@Test
+	public void testAdaptiveStep() throws Exception
+	{
+		List<Double> evaluatedPrices = new LinkedList<Double>();
+		IExcessDemandFunction excessDemand = p -> { evaluatedPrices.add(p); return 2. * (3. - p); };
+
+		AdaptiveStepPriceSearchStrategy strategy = new AdaptiveStepPriceSearchStrategy(1e-7, 1e-12, 0.01, 1000);
+		double price = strategy.searchPrice(excessDemand, 0.);
+
+		assertEquals(3., price, 1e-7);
+		assertEquals(evaluatedPrices.size(), strategy.getNumberOfIterations());
+
+		TatonementStrategy tatonement = new TatonementStrategy(0.01, 1e-7, 10000);
+		assertEquals(3., tatonement.searchPrice(excessDemand, 0.), 1e-7);
+		assertTrue(strategy.getNumberOfIterations() < tatonement.getNumberOfIterations());
+	}
+
+	/**
+	 * The adaptive step should stop at the price 0 if the excess demand is negative at any price.
+	 * @throws Exception
+	 */
+	@Test
+	public void testAdaptiveStepNegativeExcessDemand() throws Exception
+	{
+		IExcessDemandFunction excessDemand = p -> -1. - p;
+
+		AdaptiveStepPriceSearchStrategy strategy = new AdaptiveStepPriceSearchStrategy();
+		double price = strategy.searchPrice(excessDemand, 1.);
+
+		assertEquals(0., price, 1e-12);
+	}
+
+	/**
+	 * With the step 0.1 the tatonement for the excess demand 2*(3 - p) reduces the distance to the root by the factor
+	 * 0.8 per iteration, i.e., the distance after k evaluations is 3 * 0.8^k.
+	 * @throws Exception
+	 */
+	@Test
+	public void testTatonement() throws Exception
+	{
+		IExcessDemandFunction excessDemand = p -> 2. * (3. - p);
+
+		TatonementStrategy strategy = new TatonementStrategy(0.1, 1e-7, 10000);
+		double price = strategy.searchPrice(excessDemand, 0.);
+		assertEquals(3., price, 1e-7);
+
+		// The excess demand drops below the tolerance once 6 * 0.8^(k-1) < 1e-7
+		int expectedIterations = (int)Math.ceil(Math.log(1e-7 / 6.) / Math.log(0.8)) + 1;
+		assertEquals(expectedIterations, strategy.getNumberOfIterations());
+
+		// The search stops after MAX_ITER evaluations
+		strategy = new TatonementStrategy(0.1, 1e-7, 5);
+		price = strategy.searchPrice(excessDemand, 0.);
+		assertEquals(5, strategy.getNumberOfIterations());
+		assertEquals(3. - 3. * Math.pow(0.8, 5), price, 1e-9);
+	}
+}
@@ -7,6 +7,7 @@ import ilog.cplex.IloCplex;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import org.junit.Test;
 
@@ -3940,4 +3941,288 @@ public class testProbabilisticCAXOR {
 		}
 	}*/
 	
+	/*
+	 * Marginal availabilities of bundles memoized by the cache should coincide with the ones computed by the JPMF.
+	 * Neither the order of goods of the bundle nor the order of conditioning goods should matter.
+	 */
+	@Test
+	public void testMarginalAvailabilityCache()
+	{
+		GridGenerator generator = new GridGenerator(1, 2);
+		generator.setSeed(0);
+		generator.buildProximityGraph();
+		Graph grid = generator.getGrid();
+		
+		double primaryReductionCoef = 1.0;
+		double secondaryReductionCoef = 0.5;
+		JointProbabilityMass jpmf = new JointProbabilityMass( grid );
+		jpmf.setNumberOfSamples(10000);
+		jpmf.setNumberOfBombsToThrow(1);
+		
+		IBombingStrategy b = new FocusedBombingStrategy(grid, 1, primaryReductionCoef, secondaryReductionCoef);
+		List<IBombingStrategy> bombingStrategies = new LinkedList<IBombingStrategy>();
+		bombingStrategies.add(b);
+		
+		List<Double> probDistribution = new LinkedList<Double>();
+		probDistribution.add(1.);
+		
+		jpmf.setBombs(bombingStrategies, probDistribution);
+		jpmf.update();
+		
+		MarginalAvailabilityCache availabilities = new MarginalAvailabilityCache(jpmf);
+		assertTrue( availabilities.getJPMF() == jpmf );
+		
+		double p12 = availabilities.getMarginalProbability(Arrays.asList(1, 2), null, null);
+		assertTrue( Math.abs( p12 - jpmf.getMarginalProbability(Arrays.asList(1, 2), null, null) ) < 1e-12 );
+		assertTrue( availabilities.getMisses() == 1 && availabilities.getHits() == 0 );
+		
+		double p21 = availabilities.getMarginalProbability(Arrays.asList(2, 1), null, null);
+		assertTrue( p21 == p12 );
+		assertTrue( availabilities.getMisses() == 1 && availabilities.getHits() == 1 );
+		
+		//Conditioning on the realized availability of the 2nd good
+		double p1 = availabilities.getMarginalProbability(Arrays.asList(1), Arrays.asList(2), Arrays.asList(0.5));
+		assertTrue( Math.abs( p1 - jpmf.getMarginalProbability(Arrays.asList(1), Arrays.asList(2), Arrays.asList(0.5)) ) < 1e-12 );
+		assertTrue( availabilities.getMarginalProbability(Arrays.asList(1), Arrays.asList(2), Arrays.asList(0.5)) == p1 );
+		assertTrue( availabilities.getMisses() == 2 && availabilities.getHits() == 2 );
+		
+		//Different realization: a new entry
+		availabilities.getMarginalProbability(Arrays.asList(1), Arrays.asList(2), Arrays.asList(0.));
+		assertTrue( availabilities.getMisses() == 3 && availabilities.size() == 3 );
+		
+		availabilities.clear();
+		assertTrue( availabilities.size() == 0 );
+		availabilities.getMarginalProbability(Arrays.asList(1, 2), null, null);
+		assertTrue( availabilities.getMisses() == 4 );
+		
+		//The full cache drops all entries
+		availabilities.setCapacity(2);
+		availabilities.getMarginalProbability(Arrays.asList(1), null, null);
+		assertTrue( availabilities.size() == 2 && availabilities.getFlushes() == 0 );
+		availabilities.getMarginalProbability(Arrays.asList(1), Arrays.asList(2), Arrays.asList(0.5));
+		assertTrue( availabilities.size() == 1 && availabilities.getFlushes() == 1 );
+		
+		//The realization 0.5 of the 2nd good is missing from the index: the JPMF should be used
+		List<double[]> samples = new LinkedList<double[]>();
+		samples.add(new double[] {1.0, 1.0});
+		samples.add(new double[] {0.0, 1.0});
+		AvailabilitySampleIndex index = new AvailabilitySampleIndex(samples);
+		assertTrue( index.condition(Arrays.asList(2), Arrays.asList(0.5)) == null );
+		
+		availabilities = new MarginalAvailabilityCache(jpmf, index);
+		assertTrue( Math.abs( availabilities.getMarginalProbability(Arrays.asList(1), null, null) - 0.5 ) < 1e-12 );
+		assertTrue( availabilities.getMarginalProbability(Arrays.asList(1), Arrays.asList(2), Arrays.asList(0.5)) == p1 );
+		
+		List<List<Integer>> bundles = new LinkedList<List<Integer>>();
+		bundles.add(Arrays.asList(1));
+		bundles.add(Arrays.asList(1, 2));
+		double[] probabilities = availabilities.getMarginalProbabilities(bundles, Arrays.asList(2), Arrays.asList(0.5));
+		assertTrue( probabilities[0] == p1 );
+		assertTrue( Math.abs( probabilities[1] - jpmf.getMarginalProbability(Arrays.asList(1, 2), Arrays.asList(2), Arrays.asList(0.5)) ) < 1e-12 );
+		assertTrue( availabilities.getMisses() == 3 && availabilities.getHits() == 1 );
+	}
+	
+	/*
+	 * The index of samples should compute expected minimal availabilities of goods of bundles, conditioned on realized
+	 * availabilities of some goods if needed.
+	 */
+	@Test
+	public void testAvailabilitySampleIndex()
+	{
+		List<double[]> samples = new LinkedList<double[]>();
+		samples.add(new double[] {1.0, 0.5, 1.0});
+		samples.add(new double[] {0.5, 1.0, 0.0});
+		samples.add(new double[] {1.0, 1.0, 1.0});
+		samples.add(new double[] {0.0, 0.5, 1.0});
+		
+		AvailabilitySampleIndex index = new AvailabilitySampleIndex(samples);
+		assertTrue( index.getNumberOfGoods() == 3 );
+		assertTrue( index.getNumberOfSamples() == 4 );
+		
+		assertTrue( Math.abs( index.getMarginalProbability(Arrays.asList(1), null, null) - 2.5/4 ) < 1e-6 );
+		assertTrue( Math.abs( index.getMarginalProbability(Arrays.asList(1, 2), null, null) - 2.0/4 ) < 1e-6 );
+		assertTrue( Math.abs( index.getMarginalProbability(Arrays.asList(3, 2, 1), null, null) - 1.5/4 ) < 1e-6 );
+		assertTrue( Math.abs( index.getMarginalProbability(new LinkedList<Integer>(), null, null) - 1. ) < 1e-6 );
+		
+		//Only the 1st and the 4th samples are consistent
+		assertTrue( index.condition(Arrays.asList(2), Arrays.asList(0.5)).getNumberOfSamples() == 2 );
+		assertTrue( Math.abs( index.getMarginalProbability(Arrays.asList(1), Arrays.asList(2), Arrays.asList(0.5)) - 0.5 ) < 1e-6 );
+		assertTrue( Math.abs( index.getMarginalProbability(Arrays.asList(1, 3), Arrays.asList(3, 2), Arrays.asList(1.0, 0.5)) - 0.5 ) < 1e-6 );
+		
+		List<List<Integer>> bundles = new LinkedList<List<Integer>>();
+		bundles.add(Arrays.asList(1));
+		bundles.add(Arrays.asList(1, 2));
+		bundles.add(Arrays.asList(3));
+		double[] probabilities = index.getMarginalProbabilities(bundles, Arrays.asList(3), Arrays.asList(1.0));
+		assertTrue( Math.abs( probabilities[0] - 2.0/3 ) < 1e-6 );
+		assertTrue( Math.abs( probabilities[1] - 1.5/3 ) < 1e-6 );
+		assertTrue( Math.abs( probabilities[2] - 1. ) < 1e-6 );
+		
+		//The cache answers misses using the index
+		MarginalAvailabilityCache availabilities = new MarginalAvailabilityCache(null, index);
+		probabilities = availabilities.getMarginalProbabilities(bundles, null, null);
+		assertTrue( Math.abs( probabilities[1] - 2.0/4 ) < 1e-6 );
+		assertTrue( availabilities.getMisses() == 3 && availabilities.getHits() == 0 );
+		assertTrue( availabilities.getMarginalProbability(Arrays.asList(2, 1), null, null) == probabilities[1] );
+		assertTrue( availabilities.getMisses() == 3 && availabilities.getHits() == 1 );
+	}
+	
+	/*
+	 * Several payment rules evaluated for the same bid profile in the LLG domain. The WDP is solved once, so all rules
+	 * share the allocation and the realization of availabilities.
+	 */
+	@Test
+	public void testMultiRuleEvaluation_LLG() throws Exception
+	{
+		List<Integer> items = Arrays.asList(1, 2);
+		
+		CombinatorialType t1 = new CombinatorialType();
+		t1.addAtomicBid(new AtomicBid(1, Arrays.asList(items.get(0)), 0.1));				//Local bidder
+		CombinatorialType t2 = new CombinatorialType();
+		t2.addAtomicBid(new AtomicBid(2, Arrays.asList(items.get(1)), 0.2));				//Local bidder
+		CombinatorialType t3 = new CombinatorialType();
+		t3.addAtomicBid(new AtomicBid(3, Arrays.asList(items.get(0), items.get(1)), 0.15));	//Global bidder
+		
+		List<Type> bids = new LinkedList<Type>();
+		bids.add(t1);
+		bids.add(t2);
+		bids.add(t3);
+		
+		List<Double> costs = new LinkedList<Double>();
+		costs.add(0.05);
+		costs.add(0.1);
+		
+		GridGenerator generator = new GridGenerator(1, 2);
+		generator.setSeed(0);
+		generator.buildProximityGraph();
+		Graph grid = generator.getGrid();
+		
+		JointProbabilityMass jpmf = new JointProbabilityMass( grid );
+		jpmf.setNumberOfSamples(1000000);
+		jpmf.setNumberOfBombsToThrow(1);
+		
+		List<IBombingStrategy> bombingStrategies = new LinkedList<IBombingStrategy>();
+		bombingStrategies.add(new FocusedBombingStrategy(grid, 1, 1.0, 0.5));
+		List<Double> probDistribution = new LinkedList<Double>();
+		probDistribution.add(1.);
+		jpmf.setBombs(bombingStrategies, probDistribution);
+		jpmf.update();
+		
+		ProbabilisticCAXOR auction = new ProbabilisticCAXOR( bids.size(), items.size(), bids, costs, jpmf);
+		auction.setSeed(0);
+		auction.setPaymentRule("EC-CORE_LLG");
+		
+		Map<String, List<Double>> payments = auction.solveIt(Arrays.asList("EC-VCG_LLG", "EC-CORE_LLG", "Exp-VCG_LLG"));
+		assertTrue( auction.getPaymentRule().equals("EC-CORE_LLG") );
+		assertTrue( payments.keySet().toString().equals("[EC-VCG_LLG, EC-CORE_LLG, Exp-VCG_LLG]") );
+		
+		AllocationEC allocation = (AllocationEC)auction.getAllocation();
+		assertTrue( allocation.getBiddersInvolved(0).size() == 2 );
+		for(String paymentRule : payments.keySet())
+			assertTrue( payments.get(paymentRule).size() == 2 );
+		
+		//EC-VCG payments depend on the realized availability (see testECVCG_LLG)
+		List<Double> ecvcgPayments = payments.get("EC-VCG_LLG");
+		assertTrue( allocation.getRealizedRV(0, 0) == 0.5 || allocation.getRealizedRV(0, 0) == 0. );
+		assertTrue( allocation.getRealizedRV(0, 1) == 0.5 || allocation.getRealizedRV(0, 1) == 0. );
+		assertTrue( Math.abs( ecvcgPayments.get(0) - (allocation.getRealizedRV(0, 0) == 0.5 ? 0.025 : 0.) ) < 1e-4);
+		assertTrue( Math.abs( ecvcgPayments.get(1) - (allocation.getRealizedRV(0, 1) == 0.5 ? 0.05  : 0.) ) < 1e-4);
+		
+		//EC-VCG payments are lower bounds of EC-CORE payments
+		for(int i = 0; i < 2; ++i)
+			assertTrue( payments.get("EC-CORE_LLG").get(i) >= ecvcgPayments.get(i) - 1e-6 );
+		
+		checkSingleRulePayments(bids, costs, items.size(), jpmf, payments, auction.getPaymentExceptions());
+	}
+	
+	/*
+	 * Several payment rules evaluated for the same bid profile in the general domain (see testECVCG_CATS2_ConstraintGeneration).
+	 */
+	@Test
+	public void testMultiRuleEvaluation_General() throws Exception
+	{
+		List<Integer> items = Arrays.asList(1, 2, 3, 4);
+		
+		CombinatorialType t1 = new CombinatorialType();
+		t1.addAtomicBid(new AtomicBid(1, Arrays.asList(items.get(0), items.get(1), items.get(2), items.get(3)), 141.524));
+		t1.addAtomicBid(new AtomicBid(1, Arrays.asList(items.get(1)), 53.1275));
+		CombinatorialType t2 = new CombinatorialType();
+		t2.addAtomicBid(new AtomicBid(2, Arrays.asList(items.get(0), items.get(1), items.get(2), items.get(3)), 178.591));
+		t2.addAtomicBid(new AtomicBid(2, Arrays.asList(items.get(0)), 51.2827));
+		CombinatorialType t3 = new CombinatorialType();
+		t3.addAtomicBid(new AtomicBid(3, Arrays.asList(items.get(3), items.get(1)), 34.8635));
+		t3.addAtomicBid(new AtomicBid(3, Arrays.asList(items.get(3), items.get(0)), 108.519));
+		
+		List<Type> bids = new LinkedList<Type>();
+		bids.add(t1);
+		bids.add(t2);
+		bids.add(t3);
+		
+		List<Double> costs = Arrays.asList(36.25, 21.52, 13.85, 9.04);
+		
+		GridGenerator generator = new GridGenerator(2, 2);
+		generator.setSeed(0);
+		generator.buildProximityGraph();
+		Graph grid = generator.getGrid();
+		
+		JointProbabilityMass jpmf = new JointProbabilityMass( grid );
+		jpmf.setNumberOfSamples(1000000);
+		jpmf.setNumberOfBombsToThrow(1);
+		
+		List<IBombingStrategy> bombingStrategies = new LinkedList<IBombingStrategy>();
+		bombingStrategies.add(new FocusedBombingStrategy(grid, 1, 0.3, 0.2));
+		List<Double> probDistribution = new LinkedList<Double>();
+		probDistribution.add(1.);
+		jpmf.setBombs(bombingStrategies, probDistribution);
+		jpmf.update();
+		
+		ProbabilisticCAXOR auction = new ProbabilisticCAXOR( bids.size(), items.size(), bids, costs, jpmf);
+		auction.setSeed(0);
+		
+		Map<String, List<Double>> payments = auction.solveIt(Arrays.asList("EC-VCG", "EC-CORE", "Exp-VCG", "Exp-CORE"));
+		assertTrue( payments.keySet().toString().equals("[EC-VCG, EC-CORE, Exp-VCG, Exp-CORE]") );
+		
+		AllocationEC allocation = (AllocationEC)auction.getAllocation();
+		assertTrue( allocation.getBiddersInvolved(0).size() == 2 );
+		assertTrue( allocation.getBiddersInvolved(0).get(0) == 1 );
+		assertTrue( allocation.getBiddersInvolved(0).get(1) == 3 );
+		
+		//VCG payments are lower bounds of Core payments
+		for(String paymentRule : Arrays.asList("EC", "Exp"))
+			if( !auction.getPaymentExceptions().containsKey(paymentRule + "-CORE") )
+				for(int i = 0; i < 2; ++i)
+					assertTrue( payments.get(paymentRule + "-CORE").get(i) >= payments.get(paymentRule + "-VCG").get(i) - 1e-6 );
+		
+		checkSingleRulePayments(bids, costs, items.size(), jpmf, payments, auction.getPaymentExceptions());
+	}
+	
+	/*
+	 * The method checks that payments of a multi-rule evaluation coincide with payments of single-rule evaluations
+	 * of the same bid profile with the same seed (i.e., with the same realization of availabilities).
+	 */
+	private void checkSingleRulePayments(List<Type> bids, List<Double> costs, int numberOfItems, JointProbabilityMass jpmf,
+										 Map<String, List<Double>> payments, Map<String, PaymentException> paymentExceptions) throws Exception
+	{
+		for(String paymentRule : payments.keySet())
+		{
+			ProbabilisticCAXOR auction = new ProbabilisticCAXOR( bids.size(), numberOfItems, bids, costs, jpmf);
+			auction.setSeed(0);
+			auction.setPaymentRule(paymentRule);
+			try
+			{
+				auction.solveIt();
+			}
+			catch(PaymentException e)
+			{
+				assertTrue( paymentExceptions.containsKey(paymentRule) );
+				continue;
+			}
+			assertTrue( !paymentExceptions.containsKey(paymentRule) );
+			
+			double[] singleRulePayments = auction.getPayments();
+			assertTrue( singleRulePayments.length == payments.get(paymentRule).size() );
+			for(int i = 0; i < singleRulePayments.length; ++i)
+				assertTrue( Math.abs( singleRulePayments[i] - payments.get(paymentRule).get(i) ) < 1e-6 );
+		}
+	}
 }
@@ -5,6 +5,7 @@ import static org.junit.Assert.*;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 
 import org.junit.Test;
 
@@ -264,6 +265,161 @@ public class testSurplusOptimalReverseAuction
 		assertTrue( Math.abs(payments.get(1) - 0.525) < 1e-6);
 	}
 	
+	/**
+	 * Two sellers per DB, 12 DBs with random induced values. The parallel enumeration of deterministic allocations of DBs
+	 * should produce the same allocation as the sequential one.
+	 * @throws Exception
+	 */
+	@Test
+	public void testBORAParallelEnumeration() throws Exception
+	{
+		int numberOfDBs = 12;
+		Random generator = new Random(1);
+		
+		List<SellerType> bids = new ArrayList<SellerType>();
+		for(int i = 0; i < 2 * numberOfDBs; ++i)
+		{
+			AtomicBid atom = new AtomicBid(i + 1, Arrays.asList(i % numberOfDBs + 1), generator.nextDouble());
+			bids.add(new SellerType(atom, Distribution.UNIFORM, 0.5, 1./12.));
+		}
+		
+		List<List<Double> > inducedValues = new ArrayList<List<Double> >();
+		for(int k = 0; k < numberOfDBs; ++k)
+		{
+			List<Double> inducedValuesK = new ArrayList<Double>();
+			for(int j = 0; j < (1 << numberOfDBs); ++j)
+				inducedValuesK.add( (j & (1 << k)) > 0 ? 2. * generator.nextDouble() : 0. );
+			inducedValues.add(inducedValuesK);
+		}
+		
+		SurplusOptimalReverseAuction auction = new SurplusOptimalReverseAuction(bids, inducedValues);
+		auction.computeWinnerDetermination();
+		
+		SurplusOptimalReverseAuction auctionParallel = new SurplusOptimalReverseAuction(bids, inducedValues);
+		auctionParallel.setNumberOfThreads(4);
+		auctionParallel.computeWinnerDetermination();
+		
+		assertTrue(auction.getAllocation().getBiddersInvolved(0).size() > 0);
+		assertTrue(auction.getAllocation().getBiddersInvolved(0).equals(auctionParallel.getAllocation().getBiddersInvolved(0)));
+		assertTrue(auction.getAllocation().getAuctioneersAllocatedValue(0) == auctionParallel.getAllocation().getAuctioneersAllocatedValue(0));
+	}
+	
+	/**
+	 * Additive induced values of 10 DBs, some DBs have a single seller. The local search of the sparse BORA auction should
+	 * find the same allocation and payments as the enumeration.
+	 * @throws Exception
+	 */
+	@Test
+	public void testSparseBORA() throws Exception
+	{
+		int numberOfDBs = 10;
+		Random generator = new Random(2);
+		
+		List<SellerType> bids = new ArrayList<SellerType>();
+		for(int i = 0; i < numberOfDBs + numberOfDBs / 2; ++i)
+		{
+			AtomicBid atom = new AtomicBid(i + 1, Arrays.asList(i % numberOfDBs + 1), generator.nextDouble());
+			bids.add(new SellerType(atom, Distribution.UNIFORM, 0.5, 1./12.));
+		}
+		
+		double[] valuesOfDBs = new double[numberOfDBs];
+		for(int k = 0; k < numberOfDBs; ++k)
+			valuesOfDBs[k] = 2. * generator.nextDouble();
+		
+		InducedValueTable inducedValues = new InducedValueTable(numberOfDBs);
+		for(int k = 0; k < numberOfDBs; ++k)
+			for(int j = 0; j < inducedValues.getNumberOfAllocations(); ++j)
+				inducedValues.set(k, j, (j & (1 << k)) > 0 ? valuesOfDBs[k] : 0.);
+		
+		SurplusOptimalReverseAuction auction = new SurplusOptimalReverseAuction(bids, inducedValues);
+		auction.solveIt();
+		
+		SparseSurplusOptimalReverseAuction sparseAuction = new SparseSurplusOptimalReverseAuction(bids, alloc -> inducedValues.getTotalValue((int)alloc));
+		sparseAuction.solveIt();
+		
+		assertTrue(auction.getAllocation().getBiddersInvolved(0).size() > 0);
+		assertTrue(auction.getAllocation().getBiddersInvolved(0).equals(sparseAuction.getAllocation().getBiddersInvolved(0)));
+		assertTrue(Math.abs(auction.getAllocation().getAuctioneersAllocatedValue(0) - sparseAuction.getAllocation().getAuctioneersAllocatedValue(0)) < 1e-9);
+		for(int i = 0; i < auction.getPayments().length; ++i)
+			assertTrue(Math.abs(auction.getPayments()[i] - sparseAuction.getPayments()[i]) < 1e-9);
+		assertTrue(sparseAuction.getNumberOfEvaluatedAllocations() < inducedValues.getNumberOfAllocations());
+	}
+	
+	/**
+	 * 40 DBs with additive induced values: every DB whose value exceeds the virtual cost of its seller is allocated.
+	 * @throws Exception
+	 */
+	@Test
+	public void testSparseBORAManyDBs() throws Exception
+	{
+		int numberOfDBs = 40;
+		Random generator = new Random(3);
+		
+		List<SellerType> bids = new ArrayList<SellerType>();
+		for(int i = 0; i < numberOfDBs; ++i)
+		{
+			AtomicBid atom = new AtomicBid(i + 1, Arrays.asList(i + 1), generator.nextDouble());
+			bids.add(new SellerType(atom, Distribution.UNIFORM, 0.5, 1./12.));
+		}
+		
+		double[] valuesOfDBs = new double[numberOfDBs];
+		long expectedAllocation = 0L;
+		for(int k = 0; k < numberOfDBs; ++k)
+		{
+			valuesOfDBs[k] = 2. * generator.nextDouble();
+			if( valuesOfDBs[k] > bids.get(k).getItsVirtualCost() )
+				expectedAllocation |= 1L << k;
+		}
+		
+		SparseSurplusOptimalReverseAuction auction = new SparseSurplusOptimalReverseAuction(bids, alloc -> 
+		{
+			double value = 0.;
+			for(int k = 0; k < numberOfDBs; ++k)
+				if( (alloc & (1L << k)) != 0 )
+					value += valuesOfDBs[k];
+			return value;
+		});
+		auction.solveIt();
+		
+		assertTrue(auction.getAllocatedDBs() == expectedAllocation);
+		assertTrue(auction.getPayments().length == Long.bitCount(expectedAllocation));
+		for(int i = 0; i < auction.getPayments().length; ++i)
+			assertTrue(auction.getPayments()[i] >= bids.get(auction.getAllocation().getBiddersInvolved(0).get(i) - 1).getAtom(0).getValue());
+	}
+	
+	/**
+	 * Removal of a DB from the table of induced values: the projection on allocations in which the DB is not allocated.
+	 */
+	@Test
+	public void testInducedValueTable()
+	{
+		int numberOfDBs = 3;
+		List<List<Double> > inducedValues = new ArrayList<List<Double> >();
+		for(int k = 0; k < numberOfDBs; ++k)
+		{
+			List<Double> inducedValuesK = new ArrayList<Double>();
+			for(int j = 0; j < (1 << numberOfDBs); ++j)
+				inducedValuesK.add( 10. * k + j );
+			inducedValues.add(inducedValuesK);
+		}
+		
+		InducedValueTable table = InducedValueTable.fromLists(inducedValues);
+		assertTrue( table.getNumberOfDBs() == 3 );
+		assertTrue( table.get(2, 5) == 25. );
+		assertTrue( table.getTotalValue(5) == 45. );
+		assertTrue( table.toLists().equals(inducedValues) );
+		
+		InducedValueTable reducedTable = table.removeDB(1);			// DB_3 becomes DB_2
+		assertTrue( reducedTable.getNumberOfDBs() == 2 );
+		assertTrue( reducedTable.get(0, 0) == 0. );
+		assertTrue( reducedTable.get(0, 1) == 1. );
+		assertTrue( reducedTable.get(0, 2) == 4. );
+		assertTrue( reducedTable.get(0, 3) == 5. );
+		assertTrue( reducedTable.get(1, 3) == 25. );
+		
+		assertTrue( table.removeDB(0).removeDB(0).removeDB(0).getNumberOfAllocations() == 1 );
+	}
+	
 	/**
 	 * Different distributions of sellers, second price.
 	 */